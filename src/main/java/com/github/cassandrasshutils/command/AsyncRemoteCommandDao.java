@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.File;
+
+/**
+ * Asynchronous counterpart to RemoteCommandDao. Every method returns
+ * immediately with a future; the remote work is done on an I/O executor.
+ * Failures (ConnectionException, IOException, etc) are reported through the
+ * future rather than thrown.
+ *
+ * @author Jeffrey DeYoung
+ */
+public interface AsyncRemoteCommandDao
+{
+
+    /**
+     * Get the IP address or hostname that this DAO is associated with.
+     *
+     * @return The IP address or hostname that this DAO is associated with.
+     */
+    public String getHost();
+
+    /**
+     * Establishes a connection to a remote system.
+     *
+     * @return Future that completes once connected, or fails with a
+     * CannotConnectException.
+     */
+    public ListenableFuture<Void> connect();
+
+    /**
+     * Logs off of the remote system. Should only be called once all
+     * outstanding futures have completed.
+     */
+    public void logOff();
+
+    /**
+     * Sends a command to a remote system.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @return Future holding the response from the remote system.
+     */
+    public ListenableFuture<String> sendCommand(String commandToSend);
+
+    /**
+     * Sends a command to a remote system and streams its output, one line at
+     * a time, to a handler. The handler is called on an I/O thread.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @param handler Handler that receives each line of output.
+     * @return Future holding the exit status of the remote command.
+     */
+    public ListenableFuture<Integer> sendCommand(String commandToSend, LineHandler handler);
+
+    /**
+     * Pushes a file from the local machine to the remote machine.
+     *
+     * @param localFile Local file to push.
+     * @param remotePath Directory path on the remote machine to push to.
+     * @return Future that completes once the file has been pushed.
+     */
+    public ListenableFuture<Void> pushFile(File localFile, String remotePath);
+
+    /**
+     * Pulls a file from the remote to the local machine.
+     *
+     * @param remoteFileToPull File path on the remote machine to pull the file
+     * from.
+     * @param localFile Local file to write the remote file to.
+     * @return Future that completes once the file has been pulled.
+     */
+    public ListenableFuture<Void> pullFile(String remoteFileToPull, File localFile);
+}
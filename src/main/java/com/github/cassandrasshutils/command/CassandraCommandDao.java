@@ -15,6 +15,15 @@
  */
 package com.github.cassandrasshutils.command;
 
+import com.github.cassandrasshutils.command.domain.NodetoolServer;
+import com.github.cassandrasshutils.command.domain.TableStats;
+import com.github.cassandrasshutils.command.domain.ThreadPoolStats;
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Dao for executing remote Cassandra commands. Mostly nodetool related actions.
  * @author jeffrey
@@ -24,16 +33,78 @@ public interface CassandraCommandDao
     /**
      * Gets the response from nodetool status.
      * @return The nodetool status response as a string.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run.
      */
-    public String getNodetoolStatus();
+    public String getNodetoolStatus() throws ConnectionException, IOException;
     
     /**
      * Gets the response from nodetool status for a particular keyspace.
      * @param keyspace The keyspace you want to get the status for.
-     * @return 
+     * @return The nodetool status response as a string; ownership is the
+     * effective ownership for the keyspace.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run.
      */
-    public String getNodetoolStatus(String keyspace);
-    
-    
+    public String getNodetoolStatus(String keyspace) throws ConnectionException, IOException;
+
+    /**
+     * Gets nodetool status, parsed into a NodetoolServer per node.
+     * @return Every node in the cluster, as this node sees it.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run, or its output isn't a
+     * status (eg: nodetool can't reach Cassandra).
+     */
+    public List<NodetoolServer> getNodetoolServers() throws ConnectionException, IOException;
+
+    /**
+     * Gets nodetool status for a particular keyspace, parsed into a
+     * NodetoolServer per node.
+     * @param keyspace The keyspace you want to get the status for.
+     * @return Every node in the cluster, as this node sees it, with its
+     * effective ownership for the keyspace.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run, or its output isn't a
+     * status (eg: nodetool can't reach Cassandra).
+     */
+    public List<NodetoolServer> getNodetoolServers(String keyspace) throws ConnectionException, IOException;
+
+    /**
+     * Gets the node's thread pool stats, as nodetool tpstats shows them.
+     * @return Each pool's stats, keyed by pool name.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the stats can't be read.
+     */
+    public Map<String, ThreadPoolStats> getThreadPoolStats() throws ConnectionException, IOException;
+
+    /**
+     * Gets the node's stats for every table, as nodetool tablestats shows
+     * them.
+     * @return Each table's stats on this node.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the stats can't be read.
+     */
+    public List<TableStats> getTableStats() throws ConnectionException, IOException;
+
+    /**
+     * Gets the node's stats for every table in a keyspace.
+     * @param keyspace The keyspace you want the table stats for.
+     * @return Each of the keyspace's tables' stats on this node.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the stats can't be read (including if there is
+     * no such keyspace).
+     */
+    public List<TableStats> getTableStats(String keyspace) throws ConnectionException, IOException;
+
+    /**
+     * Gets the token ranges of a keyspace and the nodes holding replicas of
+     * each, as nodetool describering shows them.
+     * @param keyspace The keyspace you want the ranges for.
+     * @return Each range of the ring, with its replicas.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the ranges can't be read (including if there is
+     * no such keyspace).
+     */
+    public List<TokenRange> getTokenRanges(String keyspace) throws ConnectionException, IOException;
     
 }
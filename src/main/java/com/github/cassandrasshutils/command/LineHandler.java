@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import java.io.IOException;
+
+/**
+ * Callback for receiving the output of a remote command one line at a time,
+ * as it arrives.
+ *
+ * @author Jeffrey DeYoung
+ */
+public interface LineHandler
+{
+
+    /**
+     * Called once for each line of output, in order. The line terminator is
+     * not included. Output is not read from the remote system while this
+     * method is running, so a slow handler slows down the remote command
+     * rather than buffering its output in memory.
+     *
+     * @param line Line of output from the remote command.
+     * @throws IOException If the handler wants to abort reading the output.
+     */
+    public void handleLine(String line) throws IOException;
+}
@@ -16,10 +16,14 @@
 package com.github.cassandrasshutils.command;
 
 
+import com.github.cassandrasshutils.command.domain.DeltaSyncResult;
 import com.github.cassandrasshutils.exceptions.CannotConnectException;
 import com.github.cassandrasshutils.exceptions.ConnectionException;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
 
 /**
  * Dao for interacting with remote systems using standard terminal commands.
@@ -33,6 +37,15 @@ public interface RemoteCommandDao {
      * @return The IP address or hostname that this DAO is associated with.
      */
     public String getHost();
+
+    /**
+     * Identifies the machine and login this DAO talks to (eg:
+     * user@host:port). DAOs with the same key reach the same place; the host
+     * alone isn't enough when one IP forwards several ports to different
+     * machines.
+     * @return A key for the machine and login this DAO talks to.
+     */
+    public String getConnectionKey();
     
     /**
      * Establishes a connection to a remote system.
@@ -56,6 +69,66 @@ public interface RemoteCommandDao {
      */
     public String sendCommand(String commandToSend) throws ConnectionException, IOException;
 
+    /**
+     * Sends a command to a remote system and streams its output, one line at
+     * a time, to a handler as it arrives. Output is never accumulated in
+     * memory, so this is suitable for commands with very large output (log
+     * files, sstabledump, etc).
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @param handler Handler that receives each line of output.
+     * @return The exit status of the remote command, or -1 if the remote
+     * system did not report one.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the output or the
+     * handler throws.
+     */
+    public int sendCommand(String commandToSend, LineHandler handler) throws ConnectionException, IOException;
+
+    /**
+     * Sends a command to a remote system and copies its raw output to the
+     * passed in stream as it arrives. The stream is flushed but not closed.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @param sink Stream to write the output of the command to.
+     * @return The exit status of the remote command, or -1 if the remote
+     * system did not report one.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the output or writing
+     * to the sink.
+     */
+    public int sendCommand(String commandToSend, OutputStream sink) throws ConnectionException, IOException;
+
+    /**
+     * Sends a command to a remote system and copies its raw output to the
+     * passed in channel as it arrives. The channel is not closed.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @param sink Channel to write the output of the command to.
+     * @return The exit status of the remote command, or -1 if the remote
+     * system did not report one.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the output or writing
+     * to the sink.
+     */
+    public int sendCommand(String commandToSend, WritableByteChannel sink) throws ConnectionException, IOException;
+
+    /**
+     * Runs a (possibly multi-line) shell script on the remote system with
+     * <code>sh</code>, in a single round trip. The script is sent as the
+     * shell's input, so it needs no quoting and doesn't depend on the login
+     * shell.
+     *
+     * @param script Script to run.
+     * @return The output of the script, trimmed.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the output.
+     */
+    public String sendScript(String script) throws ConnectionException, IOException;
+
     /**
      * Pushes a file from the local machine to the remote machine.
      *
@@ -76,4 +149,130 @@ public interface RemoteCommandDao {
      * @throws IOException if there is a problem pulling or writing the file.
      */
     public void pullFile(String remoteFileToPull, File localFile) throws ConnectionException, IOException;
+
+    /**
+     * Pushes several files from the local machine to the same directory on
+     * the remote machine. Cheaper than calling pushFile for each file.
+     *
+     * @param localFiles Local files to push.
+     * @param remotePath Directory path on the remote machine to push to.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading or sending a file.
+     */
+    public void pushFiles(List<File> localFiles, String remotePath) throws ConnectionException, IOException;
+
+    /**
+     * Pulls several files from the remote machine into a local directory.
+     * Cheaper than calling pullFile for each file.
+     *
+     * @param remoteFilesToPull File paths on the remote machine to pull.
+     * @param localDirectory Local directory to write the files to; must
+     * already exist.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem pulling or writing a file.
+     */
+    public void pullFiles(List<String> remoteFilesToPull, File localDirectory) throws ConnectionException, IOException;
+
+    /**
+     * Pulls a large file from the remote to the local machine, moving several
+     * byte ranges of the file at once, and verifies that it arrived intact.
+     *
+     * @param remoteFileToPull File path on the remote machine to pull the file
+     * from.
+     * @param localFile Local file to write the remote file to. Overwritten if
+     * it exists.
+     * @param parallelism Number of byte ranges to move at once.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem pulling or writing the file,
+     * or it did not arrive intact.
+     */
+    public void pullLargeFile(String remoteFileToPull, File localFile, int parallelism) throws ConnectionException, IOException;
+
+    /**
+     * Pulls a file from the remote to the local machine such that, if the
+     * pull is interrupted, calling this again carries on from where it left
+     * off rather than starting over. Progress is checkpointed locally.
+     *
+     * @param remoteFileToPull File path on the remote machine to pull the file
+     * from.
+     * @param localFile Local file to write the remote file to. Overwritten
+     * once the pull is complete.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem pulling or writing the file.
+     */
+    public void pullFileResumable(String remoteFileToPull, File localFile) throws ConnectionException, IOException;
+
+    /**
+     * Pushes a file from the local machine to the remote machine such that,
+     * if the push is interrupted, calling this again carries on from where it
+     * left off rather than starting over. Progress is checkpointed locally.
+     *
+     * @param localFile Local file to push.
+     * @param remotePath Directory path on the remote machine to push to.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading or sending the file.
+     */
+    public void pushFileResumable(File localFile, String remotePath) throws ConnectionException, IOException;
+
+    /**
+     * Pulls a whole directory from the remote machine as a single stream,
+     * rather than file by file.
+     *
+     * @param remoteDirectory Directory path on the remote machine to pull.
+     * @param localDirectory Local directory to pull into; the remote directory
+     * ends up as a subdirectory of it, by name.
+     * @param compress True to compress the stream.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem pulling or writing the files.
+     */
+    public void pullDirectory(String remoteDirectory, File localDirectory, boolean compress) throws ConnectionException, IOException;
+
+    /**
+     * Pushes a whole directory to the remote machine as a single stream,
+     * rather than file by file.
+     *
+     * @param localDirectory Local directory to push.
+     * @param remotePath Directory path on the remote machine to push to; the
+     * local directory ends up as a subdirectory of it, by name.
+     * @param compress True to compress the stream.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading or sending the files.
+     */
+    public void pushDirectory(File localDirectory, String remotePath, boolean compress) throws ConnectionException, IOException;
+
+    /**
+     * Brings the copy of a file on the remote machine up to date with the
+     * local file, sending only the parts that differ rather than the whole
+     * file. Falls back to pushing the whole file when there is no remote copy
+     * or little of it matches.
+     *
+     * @param localFile Local file to sync.
+     * @param remotePath Directory path on the remote machine holding the
+     * copy.
+     * @return What was done, including how many bytes were sent.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading or sending the file.
+     */
+    public DeltaSyncResult syncFile(File localFile, String remotePath) throws ConnectionException, IOException;
+
+    /**
+     * Opens a local port forward through the connection: connections to the
+     * returned port on 127.0.0.1 are carried to the remote host and port, as
+     * seen from the remote machine. The forward is removed when we log off.
+     *
+     * @param remoteHost Host to connect to, from the remote machine (eg:
+     * 127.0.0.1 for the remote machine itself).
+     * @param remotePort Port to connect to on that host.
+     * @return The local port that forwards to the remote host and port.
+     * @throws ConnectionException if there is a problem with the connection.
+     */
+    public int forwardLocalPort(String remoteHost, int remotePort) throws ConnectionException;
+
+    /**
+     * Removes a local port forward opened with forwardLocalPort. Does nothing
+     * if there is no such forward.
+     *
+     * @param localPort The local port returned by forwardLocalPort.
+     */
+    public void removeLocalPortForward(int localPort);
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.Server;
+
+/**
+ * Creates RemoteCommandDaos for servers. Used by anything that needs to talk
+ * to many servers with the same credentials.
+ *
+ * @author Jeffrey DeYoung
+ */
+public interface RemoteCommandDaoFactory
+{
+
+    /**
+     * Creates a (not yet connected) RemoteCommandDao for a server.
+     *
+     * @param server Server to create the DAO for.
+     * @return A RemoteCommandDao for the server; call connect() before using
+     * it.
+     */
+    public RemoteCommandDao createRemoteCommandDao(Server server);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+/**
+ * Knows how to control the Cassandra service on a node with a particular
+ * service manager (systemd, sysvinit, a custom script, ...). Implementations
+ * only build commands; running them is up to the caller, so they can also be
+ * embedded in larger scripts.
+ *
+ * @author Jeffrey DeYoung
+ */
+public interface ServiceManager
+{
+
+    /**
+     * Short name of this service manager, for logging.
+     *
+     * @return The name.
+     */
+    public String getName();
+
+    /**
+     * Command line command to start Cassandra.
+     *
+     * @return The command.
+     */
+    public String getStartCommand();
+
+    /**
+     * Command line command to stop Cassandra.
+     *
+     * @return The command.
+     */
+    public String getStopCommand();
+
+    /**
+     * Command line command to restart Cassandra.
+     *
+     * @return The command.
+     */
+    public String getRestartCommand();
+
+    /**
+     * Command line command that prints exactly one word, the service's
+     * state: one of ServiceState.getWord(). Should be cheap; it is run often.
+     *
+     * @return The command.
+     */
+    public String getStatusCommand();
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.TransferProgress;
+
+/**
+ * Receives progress reports for file transfers. Called on the thread doing
+ * the transfer, so it should return quickly.
+ *
+ * @author Jeffrey DeYoung
+ */
+public interface TransferProgressListener
+{
+
+    /**
+     * Called when a transfer starts, periodically while it runs, and once
+     * more (with isDone() true) when it finishes.
+     *
+     * @param progress How far along the transfer is.
+     */
+    public void onProgress(TransferProgress progress);
+}
@@ -0,0 +1,420 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Table statistics from many nodes, merged into cluster wide figures per
+ * table.
+ *
+ * Nodes' stats are folded in as they arrive and then thrown away, so memory
+ * is per table, not per node and table. Each table is a row, and each
+ * running total is a primitive array indexed by row (rather than an object
+ * per table per node), which keeps a few thousand tables across a large
+ * cluster to a few flat arrays. TableSummaries are built from the arrays when
+ * asked for.
+ *
+ * Not thread safe while being filled; the collector fills it on one thread
+ * and hands it over once done, after which any number of threads may read
+ * it.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ClusterTableStats
+{
+
+    /**
+     * Rows allocated up front; the arrays double when full.
+     */
+    private static final int INITIAL_ROWS = 64;
+
+    /**
+     * Row of each table, keyed by keyspace.table.
+     */
+    private final Map<String, Integer> rows = new HashMap<>();
+
+    /**
+     * Table names in each keyspace, sorted.
+     */
+    private final Map<String, Set<String>> tablesByKeyspace = new LinkedHashMap<>();
+
+    /**
+     * Nodes that reported stats.
+     */
+    private final List<Server> nodes = new ArrayList<>();
+
+    /**
+     * Nodes whose stats couldn't be read, and why.
+     */
+    private final Map<Server, Throwable> failures = new LinkedHashMap<>();
+
+    /**
+     * Number of rows in use.
+     */
+    private int size = 0;
+
+    //running totals, one element per row
+    private String[] keyspaceNames = new String[INITIAL_ROWS];
+    private String[] tableNames = new String[INITIAL_ROWS];
+    private int[] nodeCounts = new int[INITIAL_ROWS];
+    private long[] sstables = new long[INITIAL_ROWS];
+    private int[] maxSSTables = new int[INITIAL_ROWS];
+    private long[] diskSpace = new long[INITIAL_ROWS];
+    private long[] maxDiskSpace = new long[INITIAL_ROWS];
+    private long[] partitions = new long[INITIAL_ROWS];
+    private long[] reads = new long[INITIAL_ROWS];
+    private double[] readLatencyTotals = new double[INITIAL_ROWS];//mean latency x reads, summed
+    private long[] writes = new long[INITIAL_ROWS];
+    private double[] writeLatencyTotals = new double[INITIAL_ROWS];
+    private long[] minPartition = new long[INITIAL_ROWS];
+    private long[] maxPartition = new long[INITIAL_ROWS];
+    private double[] partitionBytesTotals = new double[INITIAL_ROWS];//mean size x partitions, summed
+    private long[] partitionBytesWeights = new long[INITIAL_ROWS];
+    private double[] tombstoneTotals = new double[INITIAL_ROWS];//mean tombstones x weight, summed
+    private double[] tombstoneWeights = new double[INITIAL_ROWS];
+    private long[] maxTombstones = new long[INITIAL_ROWS];
+    private long[][] histograms = new long[INITIAL_ROWS][];
+
+    /**
+     * Folds one node's table stats into the totals.
+     *
+     * @param server Node the stats are from.
+     * @param tables The node's table stats.
+     */
+    public void add(Server server, List<TableStats> tables)
+    {
+        nodes.add(server);
+        for (TableStats stats : tables)
+        {
+            int row = row(stats.getKeyspace(), stats.getTable());
+            nodeCounts[row]++;
+            sstables[row] += stats.getSSTableCount();
+            maxSSTables[row] = Math.max(maxSSTables[row], stats.getSSTableCount());
+            diskSpace[row] += stats.getLiveDiskSpaceUsed();
+            maxDiskSpace[row] = Math.max(maxDiskSpace[row], stats.getLiveDiskSpaceUsed());
+            partitions[row] += stats.getPartitionCount();
+            reads[row] += stats.getReadCount();
+            if (stats.getReadCount() > 0 && !Double.isNaN(stats.getReadLatencyMs()))
+            {
+                readLatencyTotals[row] += stats.getReadLatencyMs() * stats.getReadCount();
+            }
+            writes[row] += stats.getWriteCount();
+            if (stats.getWriteCount() > 0 && !Double.isNaN(stats.getWriteLatencyMs()))
+            {
+                writeLatencyTotals[row] += stats.getWriteLatencyMs() * stats.getWriteCount();
+            }
+            if (stats.getMaxPartitionBytes() > 0)//0 means no data on the node
+            {
+                minPartition[row] = Math.min(minPartition[row], stats.getMinPartitionBytes());
+                maxPartition[row] = Math.max(maxPartition[row], stats.getMaxPartitionBytes());
+                long weight = Math.max(1, stats.getPartitionCount());
+                partitionBytesTotals[row] += (double) stats.getMeanPartitionBytes() * weight;
+                partitionBytesWeights[row] += weight;
+            }
+            if (!Double.isNaN(stats.getMeanTombstonesPerSlice()))
+            {//weighted by reads, as that's what the mean is over; nodes with no reads count once
+                double weight = Math.max(1, stats.getReadCount());
+                tombstoneTotals[row] += stats.getMeanTombstonesPerSlice() * weight;
+                tombstoneWeights[row] += weight;
+            }
+            maxTombstones[row] = Math.max(maxTombstones[row], stats.getMaxTombstonesPerSlice());
+            histograms[row] = mergeHistogram(histograms[row], stats.getPartitionSizeHistogram());
+        }
+    }
+
+    /**
+     * Records a node whose stats couldn't be read.
+     *
+     * @param server The node.
+     * @param error Why its stats couldn't be read.
+     */
+    public void addFailure(Server server, Throwable error)
+    {
+        failures.put(server, error);
+    }
+
+    /**
+     * Nodes that reported stats.
+     *
+     * @return the nodes
+     */
+    public List<Server> getNodes()
+    {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * Nodes whose stats couldn't be read, and why. The figures only cover
+     * the nodes that reported.
+     *
+     * @return the failures
+     */
+    public Map<Server, Throwable> getFailures()
+    {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Every keyspace that any node reported a table in.
+     *
+     * @return The keyspace names.
+     */
+    public Set<String> getKeyspaces()
+    {
+        return Collections.unmodifiableSet(new TreeSet<>(tablesByKeyspace.keySet()));
+    }
+
+    /**
+     * Tables in a keyspace.
+     *
+     * @param keyspace Keyspace name.
+     * @return The table names, sorted; empty if no node reported the
+     * keyspace.
+     */
+    public Set<String> getTableNames(String keyspace)
+    {
+        Set<String> tables = tablesByKeyspace.get(keyspace);
+        return tables == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(tables);
+    }
+
+    /**
+     * Cluster wide stats for a table.
+     *
+     * @param keyspace Keyspace name.
+     * @param table Table name.
+     * @return The table's stats, or null if no node reported it.
+     */
+    public TableSummary getTable(String keyspace, String table)
+    {
+        Integer row = rows.get(key(keyspace, table));
+        return row == null ? null : summarize(row);
+    }
+
+    /**
+     * Cluster wide stats for every table in a keyspace.
+     *
+     * @param keyspace Keyspace name.
+     * @return The tables' stats, by table name; empty if no node reported
+     * the keyspace.
+     */
+    public List<TableSummary> getTables(String keyspace)
+    {
+        List<TableSummary> summaries = new ArrayList<>();
+        for (String table : getTableNames(keyspace))
+        {
+            summaries.add(getTable(keyspace, table));
+        }
+        return summaries;
+    }
+
+    /**
+     * Cluster wide stats for every table.
+     *
+     * @return Every table's stats, by keyspace then table name.
+     */
+    public List<TableSummary> getTables()
+    {
+        List<TableSummary> summaries = new ArrayList<>(size);
+        for (String keyspace : getKeyspaces())
+        {
+            summaries.addAll(getTables(keyspace));
+        }
+        return summaries;
+    }
+
+    /**
+     * Works out a percentile from a partition size histogram in Cassandra's
+     * EstimatedHistogram layout: bucket i counts values up to the i'th
+     * offset, and the last bucket counts anything bigger. Like Cassandra, the
+     * answer is the upper bound of the bucket the percentile falls in; if it
+     * falls in the overflow bucket, the largest offset is returned.
+     *
+     * @param buckets Bucket counts.
+     * @param percentile Percentile, from 0 to 1.
+     * @return The percentile, or -1 if the histogram is null or empty.
+     */
+    public static long percentile(long[] buckets, double percentile)
+    {
+        if (buckets == null || buckets.length < 2)
+        {
+            return -1;
+        }
+        long count = 0;
+        for (long bucket : buckets)
+        {
+            count += bucket;
+        }
+        if (count == 0)
+        {
+            return -1;
+        }
+        long[] offsets = histogramOffsets(buckets.length - 1);
+        long target = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < offsets.length; i++)
+        {
+            seen += buckets[i];
+            if (seen >= target)
+            {
+                return offsets[i];
+            }
+        }
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * Bucket upper bounds of Cassandra's EstimatedHistogram: 1, 2, 3, ...
+     * growing by 20% a bucket.
+     *
+     * @param count Number of offsets (one fewer than the number of buckets).
+     * @return The offsets.
+     */
+    static long[] histogramOffsets(int count)
+    {
+        long[] offsets = new long[count];
+        long last = 1;
+        offsets[0] = last;
+        for (int i = 1; i < count; i++)
+        {
+            long next = Math.round(last * 1.2);
+            if (next == last)
+            {
+                next++;
+            }
+            offsets[i] = next;
+            last = next;
+        }
+        return offsets;
+    }
+
+    /**
+     * Builds a summary from a row's totals.
+     */
+    private TableSummary summarize(int row)
+    {
+        long[] histogram = histograms[row];
+        boolean anyPartitions = partitionBytesWeights[row] > 0;
+        return new TableSummary(keyspaceNames[row], tableNames[row], nodeCounts[row],
+                sstables[row], maxSSTables[row], diskSpace[row], maxDiskSpace[row], partitions[row],
+                reads[row], reads[row] == 0 ? Double.NaN : readLatencyTotals[row] / reads[row],
+                writes[row], writes[row] == 0 ? Double.NaN : writeLatencyTotals[row] / writes[row],
+                anyPartitions ? minPartition[row] : 0, maxPartition[row],
+                anyPartitions ? Math.round(partitionBytesTotals[row] / partitionBytesWeights[row]) : 0,
+                tombstoneWeights[row] == 0 ? Double.NaN : tombstoneTotals[row] / tombstoneWeights[row], maxTombstones[row],
+                percentile(histogram, 0.5), percentile(histogram, 0.95), percentile(histogram, 0.99));
+    }
+
+    /**
+     * Finds a table's row, adding one if it's new.
+     */
+    private int row(String keyspace, String table)
+    {
+        String key = key(keyspace, table);
+        Integer row = rows.get(key);
+        if (row != null)
+        {
+            return row;
+        }
+        if (size == keyspaceNames.length)
+        {
+            grow();
+        }
+        int added = size++;
+        keyspaceNames[added] = keyspace;
+        tableNames[added] = table;
+        minPartition[added] = Long.MAX_VALUE;
+        rows.put(key, added);
+        Set<String> tables = tablesByKeyspace.get(keyspace);
+        if (tables == null)
+        {
+            tables = new TreeSet<>();
+            tablesByKeyspace.put(keyspace, tables);
+        }
+        tables.add(table);
+        return added;
+    }
+
+    /**
+     * Doubles every array.
+     */
+    private void grow()
+    {
+        int capacity = keyspaceNames.length * 2;
+        keyspaceNames = Arrays.copyOf(keyspaceNames, capacity);
+        tableNames = Arrays.copyOf(tableNames, capacity);
+        nodeCounts = Arrays.copyOf(nodeCounts, capacity);
+        sstables = Arrays.copyOf(sstables, capacity);
+        maxSSTables = Arrays.copyOf(maxSSTables, capacity);
+        diskSpace = Arrays.copyOf(diskSpace, capacity);
+        maxDiskSpace = Arrays.copyOf(maxDiskSpace, capacity);
+        partitions = Arrays.copyOf(partitions, capacity);
+        reads = Arrays.copyOf(reads, capacity);
+        readLatencyTotals = Arrays.copyOf(readLatencyTotals, capacity);
+        writes = Arrays.copyOf(writes, capacity);
+        writeLatencyTotals = Arrays.copyOf(writeLatencyTotals, capacity);
+        minPartition = Arrays.copyOf(minPartition, capacity);
+        maxPartition = Arrays.copyOf(maxPartition, capacity);
+        partitionBytesTotals = Arrays.copyOf(partitionBytesTotals, capacity);
+        partitionBytesWeights = Arrays.copyOf(partitionBytesWeights, capacity);
+        tombstoneTotals = Arrays.copyOf(tombstoneTotals, capacity);
+        tombstoneWeights = Arrays.copyOf(tombstoneWeights, capacity);
+        maxTombstones = Arrays.copyOf(maxTombstones, capacity);
+        histograms = Arrays.copyOf(histograms, capacity);
+    }
+
+    /**
+     * Adds a node's histogram into the merged one, bucket by bucket. Every
+     * node uses the same bucket layout, so the sum is exact; if one somehow
+     * has more buckets, the merged histogram grows to match.
+     */
+    private static long[] mergeHistogram(long[] merged, long[] buckets)
+    {
+        if (buckets == null)
+        {
+            return merged;
+        }
+        if (merged == null)
+        {
+            return buckets.clone();
+        }
+        if (buckets.length > merged.length)
+        {
+            merged = Arrays.copyOf(merged, buckets.length);
+        }
+        for (int i = 0; i < buckets.length; i++)
+        {
+            merged[i] += buckets[i];
+        }
+        return merged;
+    }
+
+    /**
+     * Key of a table in the row map.
+     */
+    private static String key(String keyspace, String table)
+    {
+        return keyspace + "." + table;
+    }
+}
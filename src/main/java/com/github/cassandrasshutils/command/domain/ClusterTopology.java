@@ -0,0 +1,304 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of a cluster's topology (which nodes are in which
+ * datacenter and rack, and whether they are up), as one node saw it in
+ * nodetool status. Everything is worked out when the snapshot is built, so
+ * reads are just map lookups and are safe from any number of threads.
+ *
+ * The NodetoolServers in a snapshot are never changed once it is built;
+ * callers should treat them as read only too.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ClusterTopology
+{
+
+    /**
+     * Every node, in the order nodetool listed them.
+     */
+    private final List<NodetoolServer> servers;
+
+    /**
+     * Every node, keyed by IP.
+     */
+    private final Map<String, NodetoolServer> serversByIp;
+
+    /**
+     * Nodes in each datacenter, in the order nodetool listed them.
+     */
+    private final Map<String, List<NodetoolServer>> serversByDatacenter;
+
+    /**
+     * Every up and normal (UN) node, grouped by datacenter.
+     */
+    private final List<NodetoolServer> upServers;
+
+    /**
+     * Up and normal (UN) nodes in each datacenter.
+     */
+    private final Map<String, List<NodetoolServer>> upServersByDatacenter;
+
+    /**
+     * Node that the status was read from.
+     */
+    private final String source;
+
+    /**
+     * When the status was read, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+
+    /**
+     * Bumped each time a refresh finds the topology different from the one
+     * before it; unchanged refreshes keep the version.
+     */
+    private final long version;
+
+    /**
+     * Constructor.
+     *
+     * @param servers Every node, in the order nodetool listed them.
+     * @param source Node that the status was read from.
+     * @param timestamp When the status was read, in milliseconds since the
+     * epoch.
+     * @param version Version of the topology; see getVersion().
+     */
+    public ClusterTopology(List<NodetoolServer> servers, String source, long timestamp, long version)
+    {
+        if (servers == null)
+        {
+            throw new IllegalArgumentException("Servers cannot be null");
+        }
+        Map<String, NodetoolServer> byIp = new LinkedHashMap<>();
+        Map<String, List<NodetoolServer>> byDc = new LinkedHashMap<>();
+        Map<String, List<NodetoolServer>> upByDc = new LinkedHashMap<>();
+        for (NodetoolServer server : servers)
+        {
+            byIp.put(server.getIp(), server);
+            add(byDc, server.getDatacenter(), server);
+            if (server.isUpAndNormal())
+            {
+                add(upByDc, server.getDatacenter(), server);
+            } else if (!upByDc.containsKey(server.getDatacenter()))
+            {
+                upByDc.put(server.getDatacenter(), new ArrayList<NodetoolServer>());
+            }
+        }
+        this.servers = Collections.unmodifiableList(new ArrayList<>(servers));
+        this.serversByIp = Collections.unmodifiableMap(byIp);
+        this.serversByDatacenter = freeze(byDc);
+        this.upServersByDatacenter = freeze(upByDc);
+        List<NodetoolServer> up = new ArrayList<>();
+        for (List<NodetoolServer> dcServers : upByDc.values())
+        {
+            up.addAll(dcServers);
+        }
+        this.upServers = Collections.unmodifiableList(up);
+        this.source = source;
+        this.timestamp = timestamp;
+        this.version = version;
+    }
+
+    /**
+     * Every node, in the order nodetool listed them.
+     *
+     * @return the servers
+     */
+    public List<NodetoolServer> getServers()
+    {
+        return servers;
+    }
+
+    /**
+     * Gets a node by IP.
+     *
+     * @param ip IP of the node.
+     * @return The node, or null if it isn't in the cluster.
+     */
+    public NodetoolServer getServer(String ip)
+    {
+        return serversByIp.get(ip);
+    }
+
+    /**
+     * The cluster's datacenters, in the order nodetool listed them.
+     *
+     * @return The datacenter names.
+     */
+    public Set<String> getDatacenters()
+    {
+        return serversByDatacenter.keySet();
+    }
+
+    /**
+     * Nodes in a datacenter.
+     *
+     * @param datacenter Name of the datacenter.
+     * @return The datacenter's nodes; empty if there is no such datacenter.
+     */
+    public List<NodetoolServer> getServers(String datacenter)
+    {
+        List<NodetoolServer> dcServers = serversByDatacenter.get(datacenter);
+        return dcServers == null ? Collections.<NodetoolServer>emptyList() : dcServers;
+    }
+
+    /**
+     * Every up and normal (UN) node.
+     *
+     * @return The up nodes, grouped by datacenter.
+     */
+    public List<NodetoolServer> getUpServers()
+    {
+        return upServers;
+    }
+
+    /**
+     * Up and normal (UN) nodes in a datacenter.
+     *
+     * @param datacenter Name of the datacenter.
+     * @return The datacenter's up nodes; empty if there is no such
+     * datacenter.
+     */
+    public List<NodetoolServer> getUpServers(String datacenter)
+    {
+        List<NodetoolServer> up = upServersByDatacenter.get(datacenter);
+        return up == null ? Collections.<NodetoolServer>emptyList() : up;
+    }
+
+    /**
+     * True if the node is in the cluster and up and normal (UN).
+     *
+     * @param ip IP of the node.
+     * @return True if the node is UN.
+     */
+    public boolean isUp(String ip)
+    {
+        NodetoolServer server = serversByIp.get(ip);
+        return server != null && server.isUpAndNormal();
+    }
+
+    /**
+     * Node that the status was read from.
+     *
+     * @return the source
+     */
+    public String getSource()
+    {
+        return source;
+    }
+
+    /**
+     * When the status was read, in milliseconds since the epoch.
+     *
+     * @return the timestamp
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * Bumped each time a refresh finds the topology different from the one
+     * before it; unchanged refreshes keep the version. Readers that derive
+     * their own state from a snapshot can compare versions to know when to
+     * rebuild it.
+     *
+     * @return the version
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * True if the other snapshot has the same nodes, in the same
+     * datacenters, racks, status and state, with the same host IDs. Load
+     * and ownership are ignored; they drift all the time.
+     *
+     * @param other Snapshot to compare with; may be null.
+     * @return True if the topology is the same.
+     */
+    public boolean isSameTopology(ClusterTopology other)
+    {
+        if (other == null || other.servers.size() != servers.size())
+        {
+            return false;
+        }
+        for (NodetoolServer server : servers)
+        {
+            NodetoolServer theirs = other.serversByIp.get(server.getIp());
+            if (theirs == null
+                    || server.isUp() != theirs.isUp()
+                    || server.getState() != theirs.getState()
+                    || !Objects.equals(server.getDatacenter(), theirs.getDatacenter())
+                    || !Objects.equals(server.getRack(), theirs.getRack())
+                    || !Objects.equals(server.getHostId(), theirs.getHostId()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "ClusterTopology{" + "nodes=" + servers.size() + ", up=" + upServers.size() + ", datacenters=" + getDatacenters()
+                + ", source=" + source + ", timestamp=" + timestamp + ", version=" + version + '}';
+    }
+
+    /**
+     * Adds a server to its datacenter's list.
+     */
+    private static void add(Map<String, List<NodetoolServer>> byDc, String datacenter, NodetoolServer server)
+    {
+        List<NodetoolServer> dcServers = byDc.get(datacenter);
+        if (dcServers == null)
+        {
+            dcServers = new ArrayList<>();
+            byDc.put(datacenter, dcServers);
+        }
+        dcServers.add(server);
+    }
+
+    /**
+     * Makes the map and its lists unmodifiable.
+     */
+    private static Map<String, List<NodetoolServer>> freeze(Map<String, List<NodetoolServer>> byDc)
+    {
+        for (Map.Entry<String, List<NodetoolServer>> entry : byDc.entrySet())
+        {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(byDc);
+    }
+}
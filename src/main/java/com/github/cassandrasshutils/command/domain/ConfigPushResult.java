@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * What happened to a config file on a single server during a distribution.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ConfigPushResult
+{
+
+    /**
+     * What was done to the file.
+     */
+    public enum Outcome
+    {
+
+        /**
+         * The server already had the same content; nothing was pushed.
+         */
+        UNCHANGED,
+        /**
+         * The server did not have the file; it was pushed.
+         */
+        CREATED,
+        /**
+         * The server had different content; the file was pushed.
+         */
+        UPDATED
+    }
+
+    /**
+     * What was done to the file.
+     */
+    private final Outcome outcome;
+
+    /**
+     * SHA-256 (hex) of the file on the server before we did anything; null if
+     * it did not exist.
+     */
+    private final String previousDigest;
+
+    /**
+     * SHA-256 (hex) of the file on the server afterwards.
+     */
+    private final String currentDigest;
+
+    /**
+     * True if the server's copy had changed since we last saw it (someone
+     * edited it by hand, or it was pushed from somewhere else).
+     */
+    private final boolean drifted;
+
+    /**
+     * Constructor.
+     *
+     * @param outcome What was done to the file.
+     * @param previousDigest SHA-256 of the file on the server before we did
+     * anything; null if it did not exist.
+     * @param currentDigest SHA-256 of the file on the server afterwards.
+     * @param drifted True if the server's copy had changed since we last saw
+     * it.
+     */
+    public ConfigPushResult(Outcome outcome, String previousDigest, String currentDigest, boolean drifted)
+    {
+        this.outcome = outcome;
+        this.previousDigest = previousDigest;
+        this.currentDigest = currentDigest;
+        this.drifted = drifted;
+    }
+
+    /**
+     * What was done to the file.
+     *
+     * @return the outcome
+     */
+    public Outcome getOutcome()
+    {
+        return outcome;
+    }
+
+    /**
+     * SHA-256 (hex) of the file on the server before we did anything; null if
+     * it did not exist.
+     *
+     * @return the previousDigest
+     */
+    public String getPreviousDigest()
+    {
+        return previousDigest;
+    }
+
+    /**
+     * SHA-256 (hex) of the file on the server afterwards.
+     *
+     * @return the currentDigest
+     */
+    public String getCurrentDigest()
+    {
+        return currentDigest;
+    }
+
+    /**
+     * True if the server's copy had changed since we last saw it.
+     *
+     * @return the drifted
+     */
+    public boolean isDrifted()
+    {
+        return drifted;
+    }
+
+    /**
+     * True if the file was pushed to the server.
+     *
+     * @return True if the file was created or updated.
+     */
+    public boolean isChanged()
+    {
+        return outcome != Outcome.UNCHANGED;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "ConfigPushResult{" + "outcome=" + outcome + ", previousDigest=" + previousDigest + ", currentDigest=" + currentDigest + ", drifted=" + drifted + '}';
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * What a delta sync of a single file did: whether the remote copy was already
+ * up to date, how much of the file was reused from the remote copy, and how
+ * much had to be sent.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class DeltaSyncResult
+{
+
+    /**
+     * Path of the file on the remote machine.
+     */
+    private final String remoteFile;
+
+    /**
+     * Size of the local file, in bytes.
+     */
+    private final long fileSize;
+
+    /**
+     * Block size used to compare the files; zero if no comparison was made.
+     */
+    private final int blockSize;
+
+    /**
+     * Number of bytes reused from the remote copy.
+     */
+    private final long matchedBytes;
+
+    /**
+     * Number of bytes sent over the wire (file data only, not checksums).
+     */
+    private final long sentBytes;
+
+    /**
+     * True if the remote copy was already identical and nothing was sent.
+     */
+    private final boolean upToDate;
+
+    /**
+     * True if the whole file was pushed instead of a delta, because there was
+     * no remote copy, too little of it matched, or the delta failed to apply.
+     */
+    private final boolean fullPush;
+
+    /**
+     * How long the sync took, in milliseconds.
+     */
+    private final long elapsedMs;
+
+    /**
+     * Constructor.
+     *
+     * @param remoteFile Path of the file on the remote machine.
+     * @param fileSize Size of the local file, in bytes.
+     * @param blockSize Block size used to compare the files; zero if no
+     * comparison was made.
+     * @param matchedBytes Number of bytes reused from the remote copy.
+     * @param sentBytes Number of bytes sent over the wire.
+     * @param upToDate True if the remote copy was already identical.
+     * @param fullPush True if the whole file was pushed instead of a delta.
+     * @param elapsedMs How long the sync took, in milliseconds.
+     */
+    public DeltaSyncResult(String remoteFile, long fileSize, int blockSize, long matchedBytes, long sentBytes, boolean upToDate, boolean fullPush, long elapsedMs)
+    {
+        this.remoteFile = remoteFile;
+        this.fileSize = fileSize;
+        this.blockSize = blockSize;
+        this.matchedBytes = matchedBytes;
+        this.sentBytes = sentBytes;
+        this.upToDate = upToDate;
+        this.fullPush = fullPush;
+        this.elapsedMs = elapsedMs;
+    }
+
+    /**
+     * Path of the file on the remote machine.
+     *
+     * @return the remoteFile
+     */
+    public String getRemoteFile()
+    {
+        return remoteFile;
+    }
+
+    /**
+     * Size of the local file, in bytes.
+     *
+     * @return the fileSize
+     */
+    public long getFileSize()
+    {
+        return fileSize;
+    }
+
+    /**
+     * Block size used to compare the files; zero if no comparison was made.
+     *
+     * @return the blockSize
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * Number of bytes reused from the remote copy.
+     *
+     * @return the matchedBytes
+     */
+    public long getMatchedBytes()
+    {
+        return matchedBytes;
+    }
+
+    /**
+     * Number of bytes sent over the wire (file data only, not checksums).
+     *
+     * @return the sentBytes
+     */
+    public long getSentBytes()
+    {
+        return sentBytes;
+    }
+
+    /**
+     * True if the remote copy was already identical and nothing was sent.
+     *
+     * @return the upToDate
+     */
+    public boolean isUpToDate()
+    {
+        return upToDate;
+    }
+
+    /**
+     * True if the whole file was pushed instead of a delta.
+     *
+     * @return the fullPush
+     */
+    public boolean isFullPush()
+    {
+        return fullPush;
+    }
+
+    /**
+     * How long the sync took, in milliseconds.
+     *
+     * @return the elapsedMs
+     */
+    public long getElapsedMs()
+    {
+        return elapsedMs;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "DeltaSyncResult{" + "remoteFile=" + remoteFile + ", fileSize=" + fileSize + ", blockSize=" + blockSize
+                + ", matchedBytes=" + matchedBytes + ", sentBytes=" + sentBytes + ", upToDate=" + upToDate
+                + ", fullPush=" + fullPush + ", elapsedMs=" + elapsedMs + '}';
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * The outcome of draining and then stopping a node.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class DrainResult
+{
+
+    /**
+     * Host that was drained.
+     */
+    private final String host;
+
+    /**
+     * True if nodetool drain finished successfully before the node was
+     * stopped.
+     */
+    private final boolean drained;
+
+    /**
+     * How long the drain took (or ran for before we gave up on it), in
+     * milliseconds.
+     */
+    private final long drainMs;
+
+    /**
+     * Most flush tasks seen pending (or running) at once during the drain.
+     */
+    private final long peakPendingFlushes;
+
+    /**
+     * True if the service stopped.
+     */
+    private final boolean stopped;
+
+    /**
+     * How long the service took to stop after the drain, in milliseconds.
+     */
+    private final long stopMs;
+
+    /**
+     * Output of nodetool drain if it failed; null otherwise.
+     */
+    private final String drainError;
+
+    /**
+     * Constructor.
+     *
+     * @param host Host that was drained.
+     * @param drained True if nodetool drain finished successfully before the
+     * node was stopped.
+     * @param drainMs How long the drain took, in milliseconds.
+     * @param peakPendingFlushes Most flush tasks seen pending (or running) at
+     * once during the drain.
+     * @param stopped True if the service stopped.
+     * @param stopMs How long the service took to stop after the drain, in
+     * milliseconds.
+     * @param drainError Output of nodetool drain if it failed; null
+     * otherwise.
+     */
+    public DrainResult(String host, boolean drained, long drainMs, long peakPendingFlushes, boolean stopped, long stopMs, String drainError)
+    {
+        this.host = host;
+        this.drained = drained;
+        this.drainMs = drainMs;
+        this.peakPendingFlushes = peakPendingFlushes;
+        this.stopped = stopped;
+        this.stopMs = stopMs;
+        this.drainError = drainError;
+    }
+
+    /**
+     * Host that was drained.
+     *
+     * @return the host
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * True if nodetool drain finished successfully before the node was
+     * stopped.
+     *
+     * @return the drained
+     */
+    public boolean isDrained()
+    {
+        return drained;
+    }
+
+    /**
+     * How long the drain took (or ran for before we gave up on it), in
+     * milliseconds.
+     *
+     * @return the drainMs
+     */
+    public long getDrainMs()
+    {
+        return drainMs;
+    }
+
+    /**
+     * Most flush tasks seen pending (or running) at once during the drain.
+     *
+     * @return the peakPendingFlushes
+     */
+    public long getPeakPendingFlushes()
+    {
+        return peakPendingFlushes;
+    }
+
+    /**
+     * True if the service stopped.
+     *
+     * @return the stopped
+     */
+    public boolean isStopped()
+    {
+        return stopped;
+    }
+
+    /**
+     * How long the service took to stop after the drain, in milliseconds.
+     *
+     * @return the stopMs
+     */
+    public long getStopMs()
+    {
+        return stopMs;
+    }
+
+    /**
+     * Output of nodetool drain if it failed; null otherwise.
+     *
+     * @return the drainError
+     */
+    public String getDrainError()
+    {
+        return drainError;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "DrainResult{" + "host=" + host + ", drained=" + drained + ", drainMs=" + drainMs + ", peakPendingFlushes=" + peakPendingFlushes
+                + ", stopped=" + stopped + ", stopMs=" + stopMs + ", drainError=" + drainError + '}';
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * The outcome of running something on a single server as part of a cluster
+ * wide operation: either a result, or the reason it failed.
+ *
+ * @param <T> Type of the result.
+ * @author Jeffrey DeYoung
+ */
+public class HostResult<T>
+{
+
+    /**
+     * Server this is the result for.
+     */
+    private final Server server;
+
+    /**
+     * Result of the operation; null if it failed.
+     */
+    private final T result;
+
+    /**
+     * Reason the operation failed; null if it succeeded.
+     */
+    private final Throwable error;
+
+    /**
+     * True if the operation was abandoned because it ran past its timeout.
+     */
+    private final boolean timedOut;
+
+    /**
+     * How long the operation ran for, in milliseconds.
+     */
+    private final long elapsedMs;
+
+    /**
+     * Constructor.
+     *
+     * @param server Server this is the result for.
+     * @param result Result of the operation; null if it failed.
+     * @param error Reason the operation failed; null if it succeeded.
+     * @param timedOut True if the operation was abandoned because it ran past
+     * its timeout.
+     * @param elapsedMs How long the operation ran for, in milliseconds.
+     */
+    public HostResult(Server server, T result, Throwable error, boolean timedOut, long elapsedMs)
+    {
+        this.server = server;
+        this.result = result;
+        this.error = error;
+        this.timedOut = timedOut;
+        this.elapsedMs = elapsedMs;
+    }
+
+    /**
+     * Server this is the result for.
+     *
+     * @return the server
+     */
+    public Server getServer()
+    {
+        return server;
+    }
+
+    /**
+     * Result of the operation; null if it failed.
+     *
+     * @return the result
+     */
+    public T getResult()
+    {
+        return result;
+    }
+
+    /**
+     * Reason the operation failed; null if it succeeded.
+     *
+     * @return the error
+     */
+    public Throwable getError()
+    {
+        return error;
+    }
+
+    /**
+     * True if the operation was abandoned because it ran past its timeout.
+     *
+     * @return the timedOut
+     */
+    public boolean isTimedOut()
+    {
+        return timedOut;
+    }
+
+    /**
+     * How long the operation ran for, in milliseconds.
+     *
+     * @return the elapsedMs
+     */
+    public long getElapsedMs()
+    {
+        return elapsedMs;
+    }
+
+    /**
+     * True if the operation completed without error.
+     *
+     * @return True if the operation succeeded.
+     */
+    public boolean isSuccess()
+    {
+        return error == null && !timedOut;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "HostResult{" + "server=" + server.getIp() + ", success=" + isSuccess() + ", timedOut=" + timedOut
+                + ", elapsedMs=" + elapsedMs + ", result=" + result + ", error=" + error + '}';
+    }
+}
@@ -22,9 +22,257 @@ package com.github.cassandrasshutils.command.domain;
 public class NodetoolServer extends Server
 {
 
+    /**
+     * A node's state, the second letter of its status code.
+     */
+    public enum State
+    {
+
+        /**
+         * Normal; the node owns its ranges.
+         */
+        NORMAL,
+        /**
+         * Leaving the ring (decommissioning).
+         */
+        LEAVING,
+        /**
+         * Joining the ring (bootstrapping).
+         */
+        JOINING,
+        /**
+         * Moving to a new token.
+         */
+        MOVING;
+
+        /**
+         * Finds the state for its letter in nodetool status.
+         *
+         * @param code N, L, J or M.
+         * @return The state, or null if the letter isn't one.
+         */
+        public static State fromCode(char code)
+        {
+            switch (code)
+            {
+                case 'N':
+                    return NORMAL;
+                case 'L':
+                    return LEAVING;
+                case 'J':
+                    return JOINING;
+                case 'M':
+                    return MOVING;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * The letter nodetool status uses for this state.
+         *
+         * @return N, L, J or M.
+         */
+        public char getCode()
+        {
+            return name().charAt(0);
+        }
+    }
+
+    /**
+     * True if the node is up (U), false if it is down (D).
+     */
+    private boolean up;
+
+    /**
+     * The node's state.
+     */
+    private State state;
+
+    /**
+     * Data the node holds, in bytes, as reported (so only accurate to the
+     * precision nodetool prints). -1 if unknown.
+     */
+    private long loadBytes = -1;
+
+    /**
+     * Number of tokens the node owns.
+     */
+    private int tokens;
+
+    /**
+     * Share of the ring the node owns (effectively, if a keyspace was given),
+     * as a percentage. NaN if nodetool couldn't say ("?").
+     */
+    private double ownership = Double.NaN;
+
+    /**
+     * The node's host ID.
+     */
+    private String hostId;
+
+    /**
+     * Constructor.
+     *
+     * @param ip Ip address for this server.
+     * @param clusterName Cluster name for this server.
+     */
     public NodetoolServer(String ip, String clusterName)
     {
         super(ip, clusterName);
     }
-    
+
+    /**
+     * True if the node is up (U), false if it is down (D).
+     *
+     * @return the up
+     */
+    public boolean isUp()
+    {
+        return up;
+    }
+
+    /**
+     * True if the node is up (U), false if it is down (D).
+     *
+     * @param up the up to set
+     */
+    public void setUp(boolean up)
+    {
+        this.up = up;
+    }
+
+    /**
+     * The node's state.
+     *
+     * @return the state
+     */
+    public State getState()
+    {
+        return state;
+    }
+
+    /**
+     * The node's state.
+     *
+     * @param state the state to set
+     */
+    public void setState(State state)
+    {
+        this.state = state;
+    }
+
+    /**
+     * The two letter status code nodetool status shows, eg: UN.
+     *
+     * @return The status code.
+     */
+    public String getStatusCode()
+    {
+        return (up ? "U" : "D") + (state == null ? "?" : String.valueOf(state.getCode()));
+    }
+
+    /**
+     * True if the node is up and normal (UN).
+     *
+     * @return True if the node is up and normal.
+     */
+    public boolean isUpAndNormal()
+    {
+        return up && state == State.NORMAL;
+    }
+
+    /**
+     * Data the node holds, in bytes, as reported (so only accurate to the
+     * precision nodetool prints). -1 if unknown.
+     *
+     * @return the loadBytes
+     */
+    public long getLoadBytes()
+    {
+        return loadBytes;
+    }
+
+    /**
+     * Data the node holds, in bytes. -1 if unknown.
+     *
+     * @param loadBytes the loadBytes to set
+     */
+    public void setLoadBytes(long loadBytes)
+    {
+        this.loadBytes = loadBytes;
+    }
+
+    /**
+     * Number of tokens the node owns.
+     *
+     * @return the tokens
+     */
+    public int getTokens()
+    {
+        return tokens;
+    }
+
+    /**
+     * Number of tokens the node owns.
+     *
+     * @param tokens the tokens to set
+     */
+    public void setTokens(int tokens)
+    {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Share of the ring the node owns (effectively, if a keyspace was given),
+     * as a percentage. NaN if nodetool couldn't say ("?").
+     *
+     * @return the ownership
+     */
+    public double getOwnership()
+    {
+        return ownership;
+    }
+
+    /**
+     * Share of the ring the node owns, as a percentage. NaN if unknown.
+     *
+     * @param ownership the ownership to set
+     */
+    public void setOwnership(double ownership)
+    {
+        this.ownership = ownership;
+    }
+
+    /**
+     * The node's host ID.
+     *
+     * @return the hostId
+     */
+    public String getHostId()
+    {
+        return hostId;
+    }
+
+    /**
+     * The node's host ID.
+     *
+     * @param hostId the hostId to set
+     */
+    public void setHostId(String hostId)
+    {
+        this.hostId = hostId;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "NodetoolServer{" + "ip=" + getIp() + ", status=" + getStatusCode() + ", datacenter=" + getDatacenter() + ", rack=" + getRack()
+                + ", loadBytes=" + loadBytes + ", tokens=" + tokens + ", ownership=" + ownership + ", hostId=" + hostId + '}';
+    }
 }
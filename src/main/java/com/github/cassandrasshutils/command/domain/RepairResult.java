@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of a subrange repair: how many subranges the ring was split
+ * into, how many were repaired by this run or an earlier one, and which
+ * couldn't be repaired and why.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class RepairResult
+{
+
+    /**
+     * Keyspace that was repaired.
+     */
+    private final String keyspace;
+
+    /**
+     * Number of subranges the ring was split into.
+     */
+    private final int totalSubranges;
+
+    /**
+     * Subranges skipped because an earlier run had already repaired them.
+     */
+    private final int previouslyRepaired;
+
+    /**
+     * Subranges repaired by this run.
+     */
+    private final int repaired;
+
+    /**
+     * Subranges that failed every attempt, with the last error for each.
+     */
+    private final Map<TokenRange, String> failures;
+
+    /**
+     * True if the repair stopped before every subrange was attempted.
+     */
+    private final boolean halted;
+
+    /**
+     * How long the whole repair took, in milliseconds.
+     */
+    private final long elapsedMs;
+
+    /**
+     * Constructor.
+     *
+     * @param keyspace Keyspace that was repaired.
+     * @param totalSubranges Number of subranges the ring was split into.
+     * @param previouslyRepaired Subranges skipped because an earlier run had
+     * already repaired them.
+     * @param repaired Subranges repaired by this run.
+     * @param failures Subranges that failed every attempt, with the last error
+     * for each.
+     * @param halted True if the repair stopped before every subrange was
+     * attempted.
+     * @param elapsedMs How long the whole repair took, in milliseconds.
+     */
+    public RepairResult(String keyspace, int totalSubranges, int previouslyRepaired, int repaired, Map<TokenRange, String> failures, boolean halted, long elapsedMs)
+    {
+        this.keyspace = keyspace;
+        this.totalSubranges = totalSubranges;
+        this.previouslyRepaired = previouslyRepaired;
+        this.repaired = repaired;
+        this.failures = Collections.unmodifiableMap(failures);
+        this.halted = halted;
+        this.elapsedMs = elapsedMs;
+    }
+
+    /**
+     * Keyspace that was repaired.
+     *
+     * @return the keyspace
+     */
+    public String getKeyspace()
+    {
+        return keyspace;
+    }
+
+    /**
+     * Number of subranges the ring was split into.
+     *
+     * @return the totalSubranges
+     */
+    public int getTotalSubranges()
+    {
+        return totalSubranges;
+    }
+
+    /**
+     * Subranges skipped because an earlier run had already repaired them.
+     *
+     * @return the previouslyRepaired
+     */
+    public int getPreviouslyRepaired()
+    {
+        return previouslyRepaired;
+    }
+
+    /**
+     * Subranges repaired by this run.
+     *
+     * @return the repaired
+     */
+    public int getRepaired()
+    {
+        return repaired;
+    }
+
+    /**
+     * Subranges that failed every attempt, with the last error for each.
+     * Running the repair again with the same progress file retries just
+     * these (and any that were never attempted).
+     *
+     * @return the failures
+     */
+    public Map<TokenRange, String> getFailures()
+    {
+        return failures;
+    }
+
+    /**
+     * True if the repair stopped before every subrange was attempted.
+     *
+     * @return the halted
+     */
+    public boolean isHalted()
+    {
+        return halted;
+    }
+
+    /**
+     * How long the whole repair took, in milliseconds.
+     *
+     * @return the elapsedMs
+     */
+    public long getElapsedMs()
+    {
+        return elapsedMs;
+    }
+
+    /**
+     * True if every subrange of the ring has now been repaired.
+     *
+     * @return True if nothing failed and nothing is left.
+     */
+    public boolean isComplete()
+    {
+        return !halted && failures.isEmpty() && previouslyRepaired + repaired == totalSubranges;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "RepairResult{" + "keyspace=" + keyspace + ", totalSubranges=" + totalSubranges + ", previouslyRepaired=" + previouslyRepaired
+                + ", repaired=" + repaired + ", failed=" + failures.size() + ", halted=" + halted + ", elapsedMs=" + elapsedMs + '}';
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of a rolling restart: each node that was restarted (or failed
+ * to), and whether the restart was halted part way through.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class RollingRestartResult
+{
+
+    /**
+     * Each node that was attempted, in the order they completed. The result
+     * is how long the node took to come back up, in milliseconds.
+     */
+    private final Map<Server, HostResult<Long>> nodeResults;
+
+    /**
+     * True if the restart stopped before every node was restarted.
+     */
+    private final boolean halted;
+
+    /**
+     * Why the restart was halted; null if it wasn't.
+     */
+    private final String haltReason;
+
+    /**
+     * How long the whole restart took, in milliseconds.
+     */
+    private final long elapsedMs;
+
+    /**
+     * Constructor.
+     *
+     * @param nodeResults Each node that was attempted, in the order they
+     * completed.
+     * @param halted True if the restart stopped before every node was
+     * restarted.
+     * @param haltReason Why the restart was halted; null if it wasn't.
+     * @param elapsedMs How long the whole restart took, in milliseconds.
+     */
+    public RollingRestartResult(Map<Server, HostResult<Long>> nodeResults, boolean halted, String haltReason, long elapsedMs)
+    {
+        this.nodeResults = Collections.unmodifiableMap(nodeResults);
+        this.halted = halted;
+        this.haltReason = haltReason;
+        this.elapsedMs = elapsedMs;
+    }
+
+    /**
+     * Each node that was attempted, in the order they completed. Nodes that
+     * were never reached (because the restart halted) are absent.
+     *
+     * @return the nodeResults
+     */
+    public Map<Server, HostResult<Long>> getNodeResults()
+    {
+        return nodeResults;
+    }
+
+    /**
+     * True if the restart stopped before every node was restarted.
+     *
+     * @return the halted
+     */
+    public boolean isHalted()
+    {
+        return halted;
+    }
+
+    /**
+     * Why the restart was halted; null if it wasn't.
+     *
+     * @return the haltReason
+     */
+    public String getHaltReason()
+    {
+        return haltReason;
+    }
+
+    /**
+     * How long the whole restart took, in milliseconds.
+     *
+     * @return the elapsedMs
+     */
+    public long getElapsedMs()
+    {
+        return elapsedMs;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "RollingRestartResult{" + "nodes=" + nodeResults.size() + ", halted=" + halted + ", haltReason=" + haltReason + ", elapsedMs=" + elapsedMs + '}';
+    }
+}
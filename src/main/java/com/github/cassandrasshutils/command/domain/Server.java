@@ -48,6 +48,21 @@ public class Server
      */
     private String clusterName;
 
+    /**
+     * Datacenter this server is in, as Cassandra knows it. Optional.
+     */
+    private String datacenter;
+
+    /**
+     * Rack this server is in, as Cassandra knows it. Optional.
+     */
+    private String rack;
+
+    /**
+     * True if this server is a seed node for its cluster.
+     */
+    private boolean seed;
+
     /**
      * Constructor that sets the required fields.
      * @param ip Ip address for this server.
@@ -160,6 +175,66 @@ public class Server
         this.clusterName = clusterName;
     }
 
+    /**
+     * Datacenter this server is in, as Cassandra knows it. Optional.
+     *
+     * @return the datacenter
+     */
+    public String getDatacenter()
+    {
+        return datacenter;
+    }
+
+    /**
+     * Datacenter this server is in, as Cassandra knows it. Optional.
+     *
+     * @param datacenter the datacenter to set
+     */
+    public void setDatacenter(String datacenter)
+    {
+        this.datacenter = datacenter;
+    }
+
+    /**
+     * Rack this server is in, as Cassandra knows it. Optional.
+     *
+     * @return the rack
+     */
+    public String getRack()
+    {
+        return rack;
+    }
+
+    /**
+     * Rack this server is in, as Cassandra knows it. Optional.
+     *
+     * @param rack the rack to set
+     */
+    public void setRack(String rack)
+    {
+        this.rack = rack;
+    }
+
+    /**
+     * True if this server is a seed node for its cluster.
+     *
+     * @return the seed
+     */
+    public boolean isSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * True if this server is a seed node for its cluster.
+     *
+     * @param seed the seed to set
+     */
+    public void setSeed(boolean seed)
+    {
+        this.seed = seed;
+    }
+
     /**
      * Simple toString(). Used for logging, etc.
      *
@@ -168,7 +243,19 @@ public class Server
     @Override
     public String toString()
     {
-        return "Server{" + "ip=" + getIp() + ", friendlyName=" + getFriendlyName() + ", dnsName=" + getDnsName() + ", clusterName=" + getClusterName() + '}';
+        return "Server{" + "ip=" + getIp() + ", friendlyName=" + getFriendlyName() + ", dnsName=" + getDnsName() + ", clusterName=" + getClusterName()
+                + ", datacenter=" + getDatacenter() + ", rack=" + getRack() + ", seed=" + isSeed() + '}';
+    }
+
+    /**
+     * Hash code for this object. Only uses the ip field, to match equals().
+     *
+     * @return A hash code for this object.
+     */
+    @Override
+    public int hashCode()
+    {
+        return Objects.hashCode(this.ip);
     }
 
     /**
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * Something that can be done to the Cassandra service on a node.
+ *
+ * @author Jeffrey DeYoung
+ */
+public enum ServiceAction
+{
+
+    /**
+     * Start the service, unless it is already running, and wait for it to
+     * serve clients.
+     */
+    START(true),
+    /**
+     * Stop the service, unless it is already stopped, and wait for it to go
+     * down.
+     */
+    STOP(false),
+    /**
+     * Restart the service and wait for it to serve clients.
+     */
+    RESTART(true);
+
+    /**
+     * True if the service should be running once the action is done.
+     */
+    private final boolean leavesRunning;
+
+    /**
+     * Constructor.
+     *
+     * @param leavesRunning True if the service should be running once the
+     * action is done.
+     */
+    private ServiceAction(boolean leavesRunning)
+    {
+        this.leavesRunning = leavesRunning;
+    }
+
+    /**
+     * True if the service should be running once the action is done.
+     *
+     * @return the leavesRunning
+     */
+    public boolean isLeavesRunning()
+    {
+        return leavesRunning;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * The outcome of a start, stop or restart done as a single remote script.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ServiceControlResult
+{
+
+    /**
+     * Host the action was done on.
+     */
+    private final String host;
+
+    /**
+     * Action that was asked for.
+     */
+    private final ServiceAction action;
+
+    /**
+     * True if the service was running before the action.
+     */
+    private final boolean wasRunning;
+
+    /**
+     * True if the service was actually told to start/stop/restart; false if
+     * it was already in the wanted state.
+     */
+    private final boolean acted;
+
+    /**
+     * True if the service reached the wanted state (serving clients, or
+     * stopped) before the deadline.
+     */
+    private final boolean reached;
+
+    /**
+     * The service's state as of the end of the script.
+     */
+    private final ServiceState finalState;
+
+    /**
+     * How long the whole round trip took, in milliseconds.
+     */
+    private final long elapsedMs;
+
+    /**
+     * Constructor.
+     *
+     * @param host Host the action was done on.
+     * @param action Action that was asked for.
+     * @param wasRunning True if the service was running before the action.
+     * @param acted True if the service was actually told to
+     * start/stop/restart.
+     * @param reached True if the service reached the wanted state before the
+     * deadline.
+     * @param finalState The service's state as of the end of the script.
+     * @param elapsedMs How long the whole round trip took, in milliseconds.
+     */
+    public ServiceControlResult(String host, ServiceAction action, boolean wasRunning, boolean acted, boolean reached, ServiceState finalState, long elapsedMs)
+    {
+        this.host = host;
+        this.action = action;
+        this.wasRunning = wasRunning;
+        this.acted = acted;
+        this.reached = reached;
+        this.finalState = finalState;
+        this.elapsedMs = elapsedMs;
+    }
+
+    /**
+     * Host the action was done on.
+     *
+     * @return the host
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * Action that was asked for.
+     *
+     * @return the action
+     */
+    public ServiceAction getAction()
+    {
+        return action;
+    }
+
+    /**
+     * True if the service was running before the action.
+     *
+     * @return the wasRunning
+     */
+    public boolean isWasRunning()
+    {
+        return wasRunning;
+    }
+
+    /**
+     * True if the service was actually told to start/stop/restart; false if
+     * it was already in the wanted state.
+     *
+     * @return the acted
+     */
+    public boolean isActed()
+    {
+        return acted;
+    }
+
+    /**
+     * True if the service reached the wanted state (serving clients, or
+     * stopped) before the deadline.
+     *
+     * @return the reached
+     */
+    public boolean isReached()
+    {
+        return reached;
+    }
+
+    /**
+     * The service's state as of the end of the script.
+     *
+     * @return the finalState
+     */
+    public ServiceState getFinalState()
+    {
+        return finalState;
+    }
+
+    /**
+     * How long the whole round trip took, in milliseconds.
+     *
+     * @return the elapsedMs
+     */
+    public long getElapsedMs()
+    {
+        return elapsedMs;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "ServiceControlResult{" + "host=" + host + ", action=" + action + ", wasRunning=" + wasRunning + ", acted=" + acted
+                + ", reached=" + reached + ", finalState=" + finalState + ", elapsedMs=" + elapsedMs + '}';
+    }
+}
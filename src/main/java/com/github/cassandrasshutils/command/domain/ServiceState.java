@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * State of the Cassandra service on a node, as reported by a ServiceManager's
+ * status command.
+ *
+ * @author Jeffrey DeYoung
+ */
+public enum ServiceState
+{
+
+    /**
+     * The service is running.
+     */
+    RUNNING,
+    /**
+     * The service is stopped normally.
+     */
+    STOPPED,
+    /**
+     * The service is neither running nor stopped normally; it has probably
+     * crashed and may not start again without some other change on the node.
+     */
+    CRASHED,
+    /**
+     * We aren't allowed to control (or query) the service.
+     */
+    DENIED;
+
+    /**
+     * The word a status command prints for this state.
+     *
+     * @return The state's name, in lower case.
+     */
+    public String getWord()
+    {
+        return name().toLowerCase();
+    }
+
+    /**
+     * Finds the state for a word a status command printed.
+     *
+     * @param word Word to look up; surrounding whitespace is ignored.
+     * @return The state, or null if the word isn't one.
+     */
+    public static ServiceState fromWord(String word)
+    {
+        String trimmed = word.trim();
+        for (ServiceState state : values())
+        {
+            if (state.getWord().equals(trimmed))
+            {
+                return state;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+import java.util.Arrays;
+
+/**
+ * Statistics for one table on one node, as nodetool tablestats (or the
+ * table's metrics MBeans) report them.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TableStats
+{
+
+    /**
+     * Keyspace the table is in.
+     */
+    private String keyspace;
+
+    /**
+     * Name of the table.
+     */
+    private String table;
+
+    /**
+     * Number of live SSTables.
+     */
+    private int sstableCount;
+
+    /**
+     * Disk space used by live SSTables, in bytes.
+     */
+    private long liveDiskSpaceUsed;
+
+    /**
+     * Estimated number of partitions on the node.
+     */
+    private long partitionCount;
+
+    /**
+     * Local reads since the node started.
+     */
+    private long readCount;
+
+    /**
+     * Mean local read latency, in milliseconds. NaN if there have been no reads.
+     */
+    private double readLatencyMs = Double.NaN;
+
+    /**
+     * Local writes since the node started.
+     */
+    private long writeCount;
+
+    /**
+     * Mean local write latency, in milliseconds. NaN if there have been no writes.
+     */
+    private double writeLatencyMs = Double.NaN;
+
+    /**
+     * Size of the smallest compacted partition, in bytes.
+     */
+    private long minPartitionBytes;
+
+    /**
+     * Size of the largest compacted partition, in bytes.
+     */
+    private long maxPartitionBytes;
+
+    /**
+     * Mean size of compacted partitions, in bytes.
+     */
+    private long meanPartitionBytes;
+
+    /**
+     * Mean tombstones read per slice over the last five minutes. NaN if unknown.
+     */
+    private double meanTombstonesPerSlice = Double.NaN;
+
+    /**
+     * Most tombstones read by one slice over the last five minutes.
+     */
+    private long maxTombstonesPerSlice;
+
+    /**
+     * Bucket counts of the table's partition size histogram (Cassandra's
+     * EstimatedHistogram layout; see PartitionSizeHistogram). Null if the
+     * histogram wasn't available (nodetool doesn't print it).
+     */
+    private long[] partitionSizeHistogram;
+
+    /**
+     * Constructor.
+     *
+     * @param keyspace Keyspace the table is in.
+     * @param table Name of the table.
+     */
+    public TableStats(String keyspace, String table)
+    {
+        this.keyspace = keyspace;
+        this.table = table;
+    }
+
+    /**
+     * Number of live SSTables.
+     *
+     * @return the sstableCount
+     */
+    public int getSSTableCount()
+    {
+        return sstableCount;
+    }
+
+    /**
+     * Number of live SSTables.
+     *
+     * @param sstableCount the sstableCount to set
+     */
+    public void setSSTableCount(int sstableCount)
+    {
+        this.sstableCount = sstableCount;
+    }
+
+    /**
+     * Disk space used by live SSTables, in bytes.
+     *
+     * @return the liveDiskSpaceUsed
+     */
+    public long getLiveDiskSpaceUsed()
+    {
+        return liveDiskSpaceUsed;
+    }
+
+    /**
+     * Disk space used by live SSTables, in bytes.
+     *
+     * @param liveDiskSpaceUsed the liveDiskSpaceUsed to set
+     */
+    public void setLiveDiskSpaceUsed(long liveDiskSpaceUsed)
+    {
+        this.liveDiskSpaceUsed = liveDiskSpaceUsed;
+    }
+
+    /**
+     * Estimated number of partitions on the node.
+     *
+     * @return the partitionCount
+     */
+    public long getPartitionCount()
+    {
+        return partitionCount;
+    }
+
+    /**
+     * Estimated number of partitions on the node.
+     *
+     * @param partitionCount the partitionCount to set
+     */
+    public void setPartitionCount(long partitionCount)
+    {
+        this.partitionCount = partitionCount;
+    }
+
+    /**
+     * Local reads since the node started.
+     *
+     * @return the readCount
+     */
+    public long getReadCount()
+    {
+        return readCount;
+    }
+
+    /**
+     * Local reads since the node started.
+     *
+     * @param readCount the readCount to set
+     */
+    public void setReadCount(long readCount)
+    {
+        this.readCount = readCount;
+    }
+
+    /**
+     * Mean local read latency, in milliseconds. NaN if there have been no reads.
+     *
+     * @return the readLatencyMs
+     */
+    public double getReadLatencyMs()
+    {
+        return readLatencyMs;
+    }
+
+    /**
+     * Mean local read latency, in milliseconds. NaN if there have been no reads.
+     *
+     * @param readLatencyMs the readLatencyMs to set
+     */
+    public void setReadLatencyMs(double readLatencyMs)
+    {
+        this.readLatencyMs = readLatencyMs;
+    }
+
+    /**
+     * Local writes since the node started.
+     *
+     * @return the writeCount
+     */
+    public long getWriteCount()
+    {
+        return writeCount;
+    }
+
+    /**
+     * Local writes since the node started.
+     *
+     * @param writeCount the writeCount to set
+     */
+    public void setWriteCount(long writeCount)
+    {
+        this.writeCount = writeCount;
+    }
+
+    /**
+     * Mean local write latency, in milliseconds. NaN if there have been no writes.
+     *
+     * @return the writeLatencyMs
+     */
+    public double getWriteLatencyMs()
+    {
+        return writeLatencyMs;
+    }
+
+    /**
+     * Mean local write latency, in milliseconds. NaN if there have been no writes.
+     *
+     * @param writeLatencyMs the writeLatencyMs to set
+     */
+    public void setWriteLatencyMs(double writeLatencyMs)
+    {
+        this.writeLatencyMs = writeLatencyMs;
+    }
+
+    /**
+     * Size of the smallest compacted partition, in bytes.
+     *
+     * @return the minPartitionBytes
+     */
+    public long getMinPartitionBytes()
+    {
+        return minPartitionBytes;
+    }
+
+    /**
+     * Size of the smallest compacted partition, in bytes.
+     *
+     * @param minPartitionBytes the minPartitionBytes to set
+     */
+    public void setMinPartitionBytes(long minPartitionBytes)
+    {
+        this.minPartitionBytes = minPartitionBytes;
+    }
+
+    /**
+     * Size of the largest compacted partition, in bytes.
+     *
+     * @return the maxPartitionBytes
+     */
+    public long getMaxPartitionBytes()
+    {
+        return maxPartitionBytes;
+    }
+
+    /**
+     * Size of the largest compacted partition, in bytes.
+     *
+     * @param maxPartitionBytes the maxPartitionBytes to set
+     */
+    public void setMaxPartitionBytes(long maxPartitionBytes)
+    {
+        this.maxPartitionBytes = maxPartitionBytes;
+    }
+
+    /**
+     * Mean size of compacted partitions, in bytes.
+     *
+     * @return the meanPartitionBytes
+     */
+    public long getMeanPartitionBytes()
+    {
+        return meanPartitionBytes;
+    }
+
+    /**
+     * Mean size of compacted partitions, in bytes.
+     *
+     * @param meanPartitionBytes the meanPartitionBytes to set
+     */
+    public void setMeanPartitionBytes(long meanPartitionBytes)
+    {
+        this.meanPartitionBytes = meanPartitionBytes;
+    }
+
+    /**
+     * Mean tombstones read per slice over the last five minutes. NaN if unknown.
+     *
+     * @return the meanTombstonesPerSlice
+     */
+    public double getMeanTombstonesPerSlice()
+    {
+        return meanTombstonesPerSlice;
+    }
+
+    /**
+     * Mean tombstones read per slice over the last five minutes. NaN if unknown.
+     *
+     * @param meanTombstonesPerSlice the meanTombstonesPerSlice to set
+     */
+    public void setMeanTombstonesPerSlice(double meanTombstonesPerSlice)
+    {
+        this.meanTombstonesPerSlice = meanTombstonesPerSlice;
+    }
+
+    /**
+     * Most tombstones read by one slice over the last five minutes.
+     *
+     * @return the maxTombstonesPerSlice
+     */
+    public long getMaxTombstonesPerSlice()
+    {
+        return maxTombstonesPerSlice;
+    }
+
+    /**
+     * Most tombstones read by one slice over the last five minutes.
+     *
+     * @param maxTombstonesPerSlice the maxTombstonesPerSlice to set
+     */
+    public void setMaxTombstonesPerSlice(long maxTombstonesPerSlice)
+    {
+        this.maxTombstonesPerSlice = maxTombstonesPerSlice;
+    }
+
+    /**
+     * Keyspace the table is in.
+     *
+     * @return the keyspace
+     */
+    public String getKeyspace()
+    {
+        return keyspace;
+    }
+
+    /**
+     * Name of the table.
+     *
+     * @return the table
+     */
+    public String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * Bucket counts of the table's partition size histogram. Null if the
+     * histogram wasn't available.
+     *
+     * @return the partitionSizeHistogram
+     */
+    public long[] getPartitionSizeHistogram()
+    {
+        return partitionSizeHistogram;
+    }
+
+    /**
+     * Bucket counts of the table's partition size histogram.
+     *
+     * @param partitionSizeHistogram the partitionSizeHistogram to set
+     */
+    public void setPartitionSizeHistogram(long[] partitionSizeHistogram)
+    {
+        this.partitionSizeHistogram = partitionSizeHistogram;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "TableStats{" + "table=" + keyspace + "." + table + ", sstableCount=" + sstableCount + ", liveDiskSpaceUsed=" + liveDiskSpaceUsed
+                + ", partitionCount=" + partitionCount + ", readCount=" + readCount + ", readLatencyMs=" + readLatencyMs + ", writeCount=" + writeCount
+                + ", writeLatencyMs=" + writeLatencyMs + ", minPartitionBytes=" + minPartitionBytes + ", maxPartitionBytes=" + maxPartitionBytes
+                + ", meanPartitionBytes=" + meanPartitionBytes + ", meanTombstonesPerSlice=" + meanTombstonesPerSlice
+                + ", maxTombstonesPerSlice=" + maxTombstonesPerSlice + ", partitionSizeHistogram=" + Arrays.toString(partitionSizeHistogram) + '}';
+    }
+}
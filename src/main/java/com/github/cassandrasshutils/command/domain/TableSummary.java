@@ -0,0 +1,374 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * Cluster wide statistics for one table, merged from every node that
+ * reported it. Counts and sizes are summed, maximums are the maximum on any
+ * node, means are weighted by what they are a mean of (latency by operation
+ * count, partition size by partition count), and percentiles come from the
+ * nodes' merged partition size histograms. Immutable; get these from
+ * ClusterTableStats.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TableSummary
+{
+
+    /**
+     * Keyspace the table is in.
+     */
+    private final String keyspace;
+
+    /**
+     * Name of the table.
+     */
+    private final String table;
+
+    /**
+     * Number of nodes that reported the table.
+     */
+    private final int nodes;
+
+    /**
+     * Live SSTables across the cluster.
+     */
+    private final long sstableCount;
+
+    /**
+     * Most live SSTables on any one node.
+     */
+    private final int maxSSTableCount;
+
+    /**
+     * Disk space used by live SSTables across the cluster, in bytes.
+     */
+    private final long liveDiskSpaceUsed;
+
+    /**
+     * Most disk space used by live SSTables on any one node, in bytes.
+     */
+    private final long maxLiveDiskSpaceUsed;
+
+    /**
+     * Estimated partitions summed across nodes (so each partition is counted once per replica).
+     */
+    private final long partitionCount;
+
+    /**
+     * Local reads across the cluster.
+     */
+    private final long readCount;
+
+    /**
+     * Mean local read latency across the cluster, in milliseconds. NaN if there have been no reads.
+     */
+    private final double readLatencyMs;
+
+    /**
+     * Local writes across the cluster.
+     */
+    private final long writeCount;
+
+    /**
+     * Mean local write latency across the cluster, in milliseconds. NaN if there have been no writes.
+     */
+    private final double writeLatencyMs;
+
+    /**
+     * Size of the smallest compacted partition on any node, in bytes.
+     */
+    private final long minPartitionBytes;
+
+    /**
+     * Size of the largest compacted partition on any node, in bytes.
+     */
+    private final long maxPartitionBytes;
+
+    /**
+     * Mean size of compacted partitions across the cluster, in bytes.
+     */
+    private final long meanPartitionBytes;
+
+    /**
+     * Mean tombstones read per slice across the cluster (last five minutes). NaN if unknown.
+     */
+    private final double meanTombstonesPerSlice;
+
+    /**
+     * Most tombstones read by one slice on any node (last five minutes).
+     */
+    private final long maxTombstonesPerSlice;
+
+    /**
+     * Median partition size across the cluster, in bytes, from the merged histograms. -1 if no node reported a histogram.
+     */
+    private final long p50PartitionBytes;
+
+    /**
+     * 95th percentile partition size across the cluster, in bytes. -1 if no node reported a histogram.
+     */
+    private final long p95PartitionBytes;
+
+    /**
+     * 99th percentile partition size across the cluster, in bytes. -1 if no node reported a histogram.
+     */
+    private final long p99PartitionBytes;
+
+    /**
+     * Constructor; see the getters for what each value is.
+     */
+    TableSummary(String keyspace, String table, int nodes, long sstableCount, int maxSSTableCount, long liveDiskSpaceUsed,
+            long maxLiveDiskSpaceUsed, long partitionCount, long readCount, double readLatencyMs, long writeCount, double writeLatencyMs,
+            long minPartitionBytes, long maxPartitionBytes, long meanPartitionBytes, double meanTombstonesPerSlice, long maxTombstonesPerSlice,
+            long p50PartitionBytes, long p95PartitionBytes, long p99PartitionBytes)
+    {
+        this.keyspace = keyspace;
+        this.table = table;
+        this.nodes = nodes;
+        this.sstableCount = sstableCount;
+        this.maxSSTableCount = maxSSTableCount;
+        this.liveDiskSpaceUsed = liveDiskSpaceUsed;
+        this.maxLiveDiskSpaceUsed = maxLiveDiskSpaceUsed;
+        this.partitionCount = partitionCount;
+        this.readCount = readCount;
+        this.readLatencyMs = readLatencyMs;
+        this.writeCount = writeCount;
+        this.writeLatencyMs = writeLatencyMs;
+        this.minPartitionBytes = minPartitionBytes;
+        this.maxPartitionBytes = maxPartitionBytes;
+        this.meanPartitionBytes = meanPartitionBytes;
+        this.meanTombstonesPerSlice = meanTombstonesPerSlice;
+        this.maxTombstonesPerSlice = maxTombstonesPerSlice;
+        this.p50PartitionBytes = p50PartitionBytes;
+        this.p95PartitionBytes = p95PartitionBytes;
+        this.p99PartitionBytes = p99PartitionBytes;
+    }
+
+    /**
+     * Keyspace the table is in.
+     *
+     * @return the keyspace
+     */
+    public String getKeyspace()
+    {
+        return keyspace;
+    }
+
+    /**
+     * Name of the table.
+     *
+     * @return the table
+     */
+    public String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * Number of nodes that reported the table.
+     *
+     * @return the nodes
+     */
+    public int getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Live SSTables across the cluster.
+     *
+     * @return the sstableCount
+     */
+    public long getSSTableCount()
+    {
+        return sstableCount;
+    }
+
+    /**
+     * Most live SSTables on any one node.
+     *
+     * @return the maxSSTableCount
+     */
+    public int getMaxSSTableCount()
+    {
+        return maxSSTableCount;
+    }
+
+    /**
+     * Disk space used by live SSTables across the cluster, in bytes.
+     *
+     * @return the liveDiskSpaceUsed
+     */
+    public long getLiveDiskSpaceUsed()
+    {
+        return liveDiskSpaceUsed;
+    }
+
+    /**
+     * Most disk space used by live SSTables on any one node, in bytes.
+     *
+     * @return the maxLiveDiskSpaceUsed
+     */
+    public long getMaxLiveDiskSpaceUsed()
+    {
+        return maxLiveDiskSpaceUsed;
+    }
+
+    /**
+     * Estimated partitions summed across nodes (so each partition is counted once per replica).
+     *
+     * @return the partitionCount
+     */
+    public long getPartitionCount()
+    {
+        return partitionCount;
+    }
+
+    /**
+     * Local reads across the cluster.
+     *
+     * @return the readCount
+     */
+    public long getReadCount()
+    {
+        return readCount;
+    }
+
+    /**
+     * Mean local read latency across the cluster, in milliseconds. NaN if there have been no reads.
+     *
+     * @return the readLatencyMs
+     */
+    public double getReadLatencyMs()
+    {
+        return readLatencyMs;
+    }
+
+    /**
+     * Local writes across the cluster.
+     *
+     * @return the writeCount
+     */
+    public long getWriteCount()
+    {
+        return writeCount;
+    }
+
+    /**
+     * Mean local write latency across the cluster, in milliseconds. NaN if there have been no writes.
+     *
+     * @return the writeLatencyMs
+     */
+    public double getWriteLatencyMs()
+    {
+        return writeLatencyMs;
+    }
+
+    /**
+     * Size of the smallest compacted partition on any node, in bytes.
+     *
+     * @return the minPartitionBytes
+     */
+    public long getMinPartitionBytes()
+    {
+        return minPartitionBytes;
+    }
+
+    /**
+     * Size of the largest compacted partition on any node, in bytes.
+     *
+     * @return the maxPartitionBytes
+     */
+    public long getMaxPartitionBytes()
+    {
+        return maxPartitionBytes;
+    }
+
+    /**
+     * Mean size of compacted partitions across the cluster, in bytes.
+     *
+     * @return the meanPartitionBytes
+     */
+    public long getMeanPartitionBytes()
+    {
+        return meanPartitionBytes;
+    }
+
+    /**
+     * Mean tombstones read per slice across the cluster (last five minutes). NaN if unknown.
+     *
+     * @return the meanTombstonesPerSlice
+     */
+    public double getMeanTombstonesPerSlice()
+    {
+        return meanTombstonesPerSlice;
+    }
+
+    /**
+     * Most tombstones read by one slice on any node (last five minutes).
+     *
+     * @return the maxTombstonesPerSlice
+     */
+    public long getMaxTombstonesPerSlice()
+    {
+        return maxTombstonesPerSlice;
+    }
+
+    /**
+     * Median partition size across the cluster, in bytes, from the merged histograms. -1 if no node reported a histogram.
+     *
+     * @return the p50PartitionBytes
+     */
+    public long getP50PartitionBytes()
+    {
+        return p50PartitionBytes;
+    }
+
+    /**
+     * 95th percentile partition size across the cluster, in bytes. -1 if no node reported a histogram.
+     *
+     * @return the p95PartitionBytes
+     */
+    public long getP95PartitionBytes()
+    {
+        return p95PartitionBytes;
+    }
+
+    /**
+     * 99th percentile partition size across the cluster, in bytes. -1 if no node reported a histogram.
+     *
+     * @return the p99PartitionBytes
+     */
+    public long getP99PartitionBytes()
+    {
+        return p99PartitionBytes;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "TableSummary{" + "table=" + keyspace + "." + table + ", nodes=" + nodes + ", sstableCount=" + sstableCount
+                + ", maxSSTableCount=" + maxSSTableCount + ", liveDiskSpaceUsed=" + liveDiskSpaceUsed + ", partitionCount=" + partitionCount
+                + ", readLatencyMs=" + readLatencyMs + ", writeLatencyMs=" + writeLatencyMs + ", maxPartitionBytes=" + maxPartitionBytes
+                + ", p99PartitionBytes=" + p99PartitionBytes + ", maxTombstonesPerSlice=" + maxTombstonesPerSlice + '}';
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * One thread pool's line from <code>nodetool tpstats</code>.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ThreadPoolStats
+{
+
+    /**
+     * Name of the pool, eg: MemtableFlushWriter.
+     */
+    private final String poolName;
+
+    /**
+     * Tasks currently running.
+     */
+    private final long active;
+
+    /**
+     * Tasks waiting to run.
+     */
+    private final long pending;
+
+    /**
+     * Tasks completed since the node started.
+     */
+    private final long completed;
+
+    /**
+     * Tasks currently blocked because the queue is full.
+     */
+    private final long blocked;
+
+    /**
+     * Tasks ever blocked since the node started.
+     */
+    private final long allTimeBlocked;
+
+    /**
+     * Constructor.
+     *
+     * @param poolName Name of the pool.
+     * @param active Tasks currently running.
+     * @param pending Tasks waiting to run.
+     * @param completed Tasks completed since the node started.
+     * @param blocked Tasks currently blocked because the queue is full.
+     * @param allTimeBlocked Tasks ever blocked since the node started.
+     */
+    public ThreadPoolStats(String poolName, long active, long pending, long completed, long blocked, long allTimeBlocked)
+    {
+        this.poolName = poolName;
+        this.active = active;
+        this.pending = pending;
+        this.completed = completed;
+        this.blocked = blocked;
+        this.allTimeBlocked = allTimeBlocked;
+    }
+
+    /**
+     * Name of the pool, eg: MemtableFlushWriter.
+     *
+     * @return the poolName
+     */
+    public String getPoolName()
+    {
+        return poolName;
+    }
+
+    /**
+     * Tasks currently running.
+     *
+     * @return the active
+     */
+    public long getActive()
+    {
+        return active;
+    }
+
+    /**
+     * Tasks waiting to run.
+     *
+     * @return the pending
+     */
+    public long getPending()
+    {
+        return pending;
+    }
+
+    /**
+     * Tasks completed since the node started.
+     *
+     * @return the completed
+     */
+    public long getCompleted()
+    {
+        return completed;
+    }
+
+    /**
+     * Tasks currently blocked because the queue is full.
+     *
+     * @return the blocked
+     */
+    public long getBlocked()
+    {
+        return blocked;
+    }
+
+    /**
+     * Tasks ever blocked since the node started.
+     *
+     * @return the allTimeBlocked
+     */
+    public long getAllTimeBlocked()
+    {
+        return allTimeBlocked;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "ThreadPoolStats{" + "poolName=" + poolName + ", active=" + active + ", pending=" + pending + ", completed=" + completed
+                + ", blocked=" + blocked + ", allTimeBlocked=" + allTimeBlocked + '}';
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A range of tokens, (start, end], and the nodes that hold replicas of it.
+ * A range whose start is not less than its end wraps around the end of the
+ * ring.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TokenRange
+{
+
+    /**
+     * Token the range starts after (exclusive).
+     */
+    private final BigInteger start;
+
+    /**
+     * Token the range ends at (inclusive).
+     */
+    private final BigInteger end;
+
+    /**
+     * Addresses of the nodes holding replicas of the range.
+     */
+    private final List<String> endpoints;
+
+    /**
+     * Constructor.
+     *
+     * @param start Token the range starts after (exclusive).
+     * @param end Token the range ends at (inclusive).
+     * @param endpoints Addresses of the nodes holding replicas of the range.
+     */
+    public TokenRange(BigInteger start, BigInteger end, List<String> endpoints)
+    {
+        if (start == null || end == null)
+        {
+            throw new IllegalArgumentException("Tokens cannot be null");
+        }
+        this.start = start;
+        this.end = end;
+        this.endpoints = endpoints == null ? Collections.<String>emptyList() : Collections.unmodifiableList(endpoints);
+    }
+
+    /**
+     * Token the range starts after (exclusive).
+     *
+     * @return the start
+     */
+    public BigInteger getStart()
+    {
+        return start;
+    }
+
+    /**
+     * Token the range ends at (inclusive).
+     *
+     * @return the end
+     */
+    public BigInteger getEnd()
+    {
+        return end;
+    }
+
+    /**
+     * Addresses of the nodes holding replicas of the range.
+     *
+     * @return the endpoints
+     */
+    public List<String> getEndpoints()
+    {
+        return endpoints;
+    }
+
+    /**
+     * True if the range wraps around the end of the ring.
+     *
+     * @return True if start is not less than end.
+     */
+    public boolean isWrapping()
+    {
+        return start.compareTo(end) >= 0;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "TokenRange{" + "start=" + start + ", end=" + end + ", endpoints=" + endpoints + '}';
+    }
+
+    /**
+     * Hash code for this object. Only uses the tokens, to match equals().
+     *
+     * @return A hash code for this object.
+     */
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(start, end);
+    }
+
+    /**
+     * Equals method for this object. Ranges are equal if they cover the same
+     * tokens, whoever holds them.
+     *
+     * @param obj Object to compare to.
+     * @return True if the objects are equal.
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass())
+        {
+            return false;
+        }
+        final TokenRange other = (TokenRange) obj;
+        return start.equals(other.start) && end.equals(other.end);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.domain;
+
+/**
+ * A snapshot of how far along a single file transfer is.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TransferProgress
+{
+
+    /**
+     * Which way a transfer is going.
+     */
+    public enum Direction
+    {
+
+        /**
+         * Local to remote.
+         */
+        PUSH,
+        /**
+         * Remote to local.
+         */
+        PULL
+    }
+
+    /**
+     * Host on the other end of the transfer.
+     */
+    private final String host;
+
+    /**
+     * Which way the transfer is going.
+     */
+    private final Direction direction;
+
+    /**
+     * Path being read from.
+     */
+    private final String source;
+
+    /**
+     * Path being written to.
+     */
+    private final String destination;
+
+    /**
+     * Total size of the transfer in bytes; -1 if it isn't known.
+     */
+    private final long totalBytes;
+
+    /**
+     * Bytes moved so far.
+     */
+    private final long bytesTransferred;
+
+    /**
+     * Time since the transfer started, in milliseconds.
+     */
+    private final long elapsedMs;
+
+    /**
+     * Time from the start of the transfer until the first data arrived (or
+     * was sent), in milliseconds; -1 if no data has moved yet.
+     */
+    private final long timeToFirstByteMs;
+
+    /**
+     * True if this is the final report for the transfer.
+     */
+    private final boolean done;
+
+    /**
+     * Constructor.
+     *
+     * @param host Host on the other end of the transfer.
+     * @param direction Which way the transfer is going.
+     * @param source Path being read from.
+     * @param destination Path being written to.
+     * @param totalBytes Total size of the transfer in bytes; -1 if it isn't
+     * known.
+     * @param bytesTransferred Bytes moved so far.
+     * @param elapsedMs Time since the transfer started, in milliseconds.
+     * @param timeToFirstByteMs Time until the first data moved, in
+     * milliseconds; -1 if none has yet.
+     * @param done True if this is the final report for the transfer.
+     */
+    public TransferProgress(String host, Direction direction, String source, String destination, long totalBytes, long bytesTransferred, long elapsedMs, long timeToFirstByteMs, boolean done)
+    {
+        this.host = host;
+        this.direction = direction;
+        this.source = source;
+        this.destination = destination;
+        this.totalBytes = totalBytes;
+        this.bytesTransferred = bytesTransferred;
+        this.elapsedMs = elapsedMs;
+        this.timeToFirstByteMs = timeToFirstByteMs;
+        this.done = done;
+    }
+
+    /**
+     * Host on the other end of the transfer.
+     *
+     * @return the host
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * Which way the transfer is going.
+     *
+     * @return the direction
+     */
+    public Direction getDirection()
+    {
+        return direction;
+    }
+
+    /**
+     * Path being read from.
+     *
+     * @return the source
+     */
+    public String getSource()
+    {
+        return source;
+    }
+
+    /**
+     * Path being written to.
+     *
+     * @return the destination
+     */
+    public String getDestination()
+    {
+        return destination;
+    }
+
+    /**
+     * Total size of the transfer in bytes; -1 if it isn't known.
+     *
+     * @return the totalBytes
+     */
+    public long getTotalBytes()
+    {
+        return totalBytes;
+    }
+
+    /**
+     * Bytes moved so far.
+     *
+     * @return the bytesTransferred
+     */
+    public long getBytesTransferred()
+    {
+        return bytesTransferred;
+    }
+
+    /**
+     * Time since the transfer started, in milliseconds.
+     *
+     * @return the elapsedMs
+     */
+    public long getElapsedMs()
+    {
+        return elapsedMs;
+    }
+
+    /**
+     * Time from the start of the transfer until the first data moved, in
+     * milliseconds; -1 if no data has moved yet. A long wait here with a good
+     * rate afterwards points at the remote disk or SFTP server rather than the
+     * link.
+     *
+     * @return the timeToFirstByteMs
+     */
+    public long getTimeToFirstByteMs()
+    {
+        return timeToFirstByteMs;
+    }
+
+    /**
+     * True if this is the final report for the transfer.
+     *
+     * @return the done
+     */
+    public boolean isDone()
+    {
+        return done;
+    }
+
+    /**
+     * Average rate of the transfer so far.
+     *
+     * @return Bytes per second; zero if no time has passed.
+     */
+    public double getBytesPerSecond()
+    {
+        return elapsedMs <= 0 ? 0 : bytesTransferred * 1000.0 / elapsedMs;
+    }
+
+    /**
+     * How far along the transfer is.
+     *
+     * @return Percent complete, 0 to 100; -1 if the total size isn't known.
+     */
+    public double getPercentComplete()
+    {
+        if (totalBytes < 0)
+        {
+            return -1;
+        }
+        return totalBytes == 0 ? 100 : bytesTransferred * 100.0 / totalBytes;
+    }
+
+    /**
+     * Simple toString(). Used for logging, etc.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "TransferProgress{" + "host=" + host + ", direction=" + direction + ", source=" + source + ", destination=" + destination
+                + ", totalBytes=" + totalBytes + ", bytesTransferred=" + bytesTransferred + ", elapsedMs=" + elapsedMs
+                + ", timeToFirstByteMs=" + timeToFirstByteMs + ", done=" + done + '}';
+    }
+}
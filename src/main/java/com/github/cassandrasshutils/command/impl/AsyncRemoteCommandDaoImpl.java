@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.AsyncRemoteCommandDao;
+import com.github.cassandrasshutils.command.LineHandler;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.functions.ClusterCommandExecutor;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+/**
+ * AsyncRemoteCommandDao that wraps a (blocking) RemoteCommandDao and runs its
+ * operations on a small, shared I/O executor. The callers don't block, but
+ * the work does: at most DEFAULT_IO_THREADS operations (or as many as the
+ * executor passed in has threads) run at once, and the rest wait in the
+ * executor's queue for a thread. Many queued operations therefore finish no
+ * sooner than they would with a thread each; pass in a bigger executor if
+ * more need to run at the same time.
+ *
+ * The wrapped DAO must be thread safe (SSHCommandDaoImpl is) if more than
+ * one operation may be outstanding at a time.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class AsyncRemoteCommandDaoImpl implements AsyncRemoteCommandDao
+{
+
+    /**
+     * Default number of threads in the shared I/O executor.
+     */
+    public static final int DEFAULT_IO_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Shared I/O executor; created the first time it is needed.
+     */
+    private static ListeningExecutorService defaultExecutor = null;
+
+    /**
+     * DAO that does the actual (blocking) work.
+     */
+    private final RemoteCommandDao delegate;
+
+    /**
+     * Executor that the blocking work is run on.
+     */
+    private final ListeningExecutorService executor;
+
+    /**
+     * Constructor that uses the shared I/O executor.
+     *
+     * @param delegate DAO that does the actual (blocking) work.
+     */
+    public AsyncRemoteCommandDaoImpl(RemoteCommandDao delegate)
+    {
+        this(delegate, getDefaultExecutor());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate DAO that does the actual (blocking) work.
+     * @param executor Executor that the blocking work is run on.
+     */
+    public AsyncRemoteCommandDaoImpl(RemoteCommandDao delegate, ListeningExecutorService executor)
+    {
+        if (delegate == null)
+        {
+            throw new IllegalArgumentException("Delegate DAO cannot be null");
+        }
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    /**
+     * Gets the shared I/O executor, creating it if needed. Its threads are
+     * daemon threads, so it never needs to be shut down.
+     *
+     * @return The shared I/O executor.
+     */
+    public static synchronized ListeningExecutorService getDefaultExecutor()
+    {
+        if (defaultExecutor == null)
+        {
+            defaultExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(DEFAULT_IO_THREADS,
+                    new ClusterCommandExecutor.NamedDaemonThreadFactory("remote-command-io")));
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Get the IP address or hostname that this DAO is associated with.
+     *
+     * @return The IP address or hostname that this DAO is associated with.
+     */
+    @Override
+    public String getHost()
+    {
+        return delegate.getHost();
+    }
+
+    /**
+     * Establishes a connection to a remote system.
+     *
+     * @return Future that completes once connected, or fails with a
+     * CannotConnectException.
+     */
+    @Override
+    public ListenableFuture<Void> connect()
+    {
+        return executor.submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                delegate.connect();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Logs off of the remote system. Should only be called once all
+     * outstanding futures have completed.
+     */
+    @Override
+    public void logOff()
+    {
+        delegate.logOff();
+    }
+
+    /**
+     * Sends a command to a remote system.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @return Future holding the response from the remote system.
+     */
+    @Override
+    public ListenableFuture<String> sendCommand(final String commandToSend)
+    {
+        return executor.submit(new Callable<String>()
+        {
+            @Override
+            public String call() throws Exception
+            {
+                return delegate.sendCommand(commandToSend);
+            }
+        });
+    }
+
+    /**
+     * Sends a command to a remote system and streams its output, one line at
+     * a time, to a handler. The handler is called on an I/O thread.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @param handler Handler that receives each line of output.
+     * @return Future holding the exit status of the remote command.
+     */
+    @Override
+    public ListenableFuture<Integer> sendCommand(final String commandToSend, final LineHandler handler)
+    {
+        return executor.submit(new Callable<Integer>()
+        {
+            @Override
+            public Integer call() throws Exception
+            {
+                return delegate.sendCommand(commandToSend, handler);
+            }
+        });
+    }
+
+    /**
+     * Pushes a file from the local machine to the remote machine.
+     *
+     * @param localFile Local file to push.
+     * @param remotePath Directory path on the remote machine to push to.
+     * @return Future that completes once the file has been pushed.
+     */
+    @Override
+    public ListenableFuture<Void> pushFile(final File localFile, final String remotePath)
+    {
+        return executor.submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                delegate.pushFile(localFile, remotePath);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Pulls a file from the remote to the local machine.
+     *
+     * @param remoteFileToPull File path on the remote machine to pull the file
+     * from.
+     * @param localFile Local file to write the remote file to.
+     * @return Future that completes once the file has been pulled.
+     */
+    @Override
+    public ListenableFuture<Void> pullFile(final String remoteFileToPull, final File localFile)
+    {
+        return executor.submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                delegate.pullFile(remoteFileToPull, localFile);
+                return null;
+            }
+        });
+    }
+}
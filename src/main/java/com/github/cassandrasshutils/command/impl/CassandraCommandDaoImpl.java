@@ -16,7 +16,16 @@
 package com.github.cassandrasshutils.command.impl;
 
 import com.github.cassandrasshutils.command.CassandraCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.domain.NodetoolServer;
 import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TableStats;
+import com.github.cassandrasshutils.command.domain.ThreadPoolStats;
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Dao for executing remote Cassandra commands. Mostly nodetool related actions.
@@ -26,43 +35,244 @@ import com.github.cassandrasshutils.command.domain.Server;
 public class CassandraCommandDaoImpl implements CassandraCommandDao
 {
 
+    /**
+     * Command for getting the status of the cluster.
+     */
+    public static final String NODETOOL_STATUS_COMMAND = "nodetool status";
+
+    /**
+     * Command for getting the node's thread pool stats.
+     */
+    public static final String NODETOOL_TPSTATS_COMMAND = "nodetool tpstats";
+
+    /**
+     * Command for getting the node's table stats.
+     */
+    public static final String NODETOOL_TABLESTATS_COMMAND = "nodetool tablestats";
+
+    /**
+     * Command for getting a keyspace's token ranges and their replicas.
+     */
+    public static final String NODETOOL_DESCRIBERING_COMMAND = "nodetool describering";
+
     /**
      * Server that we will be executing our Cassandra commands against.
      */
-    private Server server;
+    private final Server server;
+
+    /**
+     * Connection to the server that commands are sent over.
+     */
+    private final RemoteCommandDao command;
 
     /**
      * Constructor.
      *
      * @param server Server that we will be executing our Cassandra commands
      * against.
+     * @param command Connected DAO for the server that commands are sent
+     * over.
      */
-    public CassandraCommandDaoImpl(Server server)
+    public CassandraCommandDaoImpl(Server server, RemoteCommandDao command)
     {
+        if (server == null)
+        {
+            throw new IllegalArgumentException("Server cannot be null");
+        }
+        if (command == null)
+        {
+            throw new IllegalArgumentException("Command DAO cannot be null");
+        }
         this.server = server;
+        this.command = command;
     }
 
     /**
      * Gets the response from nodetool status.
      *
      * @return The nodetool status response as a string.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run.
      */
     @Override
-    public String getNodetoolStatus()
+    public String getNodetoolStatus() throws ConnectionException, IOException
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return command.sendCommand(NODETOOL_STATUS_COMMAND);
     }
 
     /**
      * Gets the response from nodetool status for a particular keyspace.
      *
      * @param keyspace The keyspace you want to get the status for.
-     * @return
+     * @return The nodetool status response as a string; ownership is the
+     * effective ownership for the keyspace.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run.
+     */
+    @Override
+    public String getNodetoolStatus(String keyspace) throws ConnectionException, IOException
+    {
+        if (keyspace == null || keyspace.isEmpty())
+        {
+            throw new IllegalArgumentException("Keyspace cannot be null or empty");
+        }
+        return command.sendCommand(NODETOOL_STATUS_COMMAND + " " + ShellUtils.quoteIfNeeded(keyspace));
+    }
+
+    /**
+     * Gets nodetool status, parsed into a NodetoolServer per node.
+     *
+     * @return Every node in the cluster, as this node sees it.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run, or its output isn't a
+     * status (eg: nodetool can't reach Cassandra).
+     */
+    @Override
+    public List<NodetoolServer> getNodetoolServers() throws ConnectionException, IOException
+    {
+        return parse(getNodetoolStatus());
+    }
+
+    /**
+     * Gets nodetool status for a particular keyspace, parsed into a
+     * NodetoolServer per node.
+     *
+     * @param keyspace The keyspace you want to get the status for.
+     * @return Every node in the cluster, as this node sees it, with its
+     * effective ownership for the keyspace.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run, or its output isn't a
+     * status (eg: nodetool can't reach Cassandra).
+     */
+    @Override
+    public List<NodetoolServer> getNodetoolServers(String keyspace) throws ConnectionException, IOException
+    {
+        return parse(getNodetoolStatus(keyspace));
+    }
+
+    /**
+     * Gets the node's thread pool stats, as nodetool tpstats shows them.
+     *
+     * @return Each pool's stats, keyed by pool name.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run, or its output isn't
+     * tpstats.
      */
     @Override
-    public String getNodetoolStatus(String keyspace)
+    public Map<String, ThreadPoolStats> getThreadPoolStats() throws ConnectionException, IOException
+    {
+        String output = command.sendCommand(NODETOOL_TPSTATS_COMMAND);
+        Map<String, ThreadPoolStats> pools = TpstatsParser.parse(output);
+        if (pools.isEmpty())
+        {
+            throw new IOException("Unexpected nodetool tpstats output from: " + server.getIp() + "; output: " + output);
+        }
+        return pools;
+    }
+
+    /**
+     * Gets the node's stats for every table, as nodetool tablestats shows
+     * them.
+     *
+     * @return Each table's stats on this node. Partition size histograms
+     * aren't included; nodetool doesn't print them.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run, or its output isn't
+     * tablestats.
+     */
+    @Override
+    public List<TableStats> getTableStats() throws ConnectionException, IOException
+    {
+        return parseTableStats(command.sendCommand(NODETOOL_TABLESTATS_COMMAND));
+    }
+
+    /**
+     * Gets the node's stats for every table in a keyspace.
+     *
+     * @param keyspace The keyspace you want the table stats for.
+     * @return Each of the keyspace's tables' stats on this node.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run, or its output isn't
+     * tablestats (including if there is no such keyspace).
+     */
+    @Override
+    public List<TableStats> getTableStats(String keyspace) throws ConnectionException, IOException
+    {
+        if (keyspace == null || keyspace.isEmpty())
+        {
+            throw new IllegalArgumentException("Keyspace cannot be null or empty");
+        }
+        return parseTableStats(command.sendCommand(NODETOOL_TABLESTATS_COMMAND + " " + ShellUtils.quoteIfNeeded(keyspace)));
+    }
+
+    /**
+     * Gets the token ranges of a keyspace and the nodes holding replicas of
+     * each.
+     *
+     * @param keyspace The keyspace you want the ranges for.
+     * @return Each range of the ring, with its replicas.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the command can't be run, or its output isn't a
+     * ring (including if there is no such keyspace, or the partitioner's
+     * tokens aren't numeric).
+     */
+    @Override
+    public List<TokenRange> getTokenRanges(String keyspace) throws ConnectionException, IOException
+    {
+        if (keyspace == null || keyspace.isEmpty())
+        {
+            throw new IllegalArgumentException("Keyspace cannot be null or empty");
+        }
+        return parseTokenRanges(command.sendCommand(NODETOOL_DESCRIBERING_COMMAND + " " + ShellUtils.quoteIfNeeded(keyspace)), server);
+    }
+
+    /**
+     * Parses describering; a ring always has at least one range, so no ranges
+     * means nodetool printed an error instead. Shared with the JMX DAO, which
+     * gets the same lines back from describeRingJMX.
+     */
+    static List<TokenRange> parseTokenRanges(String output, Server server) throws IOException
+    {
+        List<TokenRange> ranges;
+        try
+        {
+            ranges = DescriberingParser.parse(output);
+        } catch (NumberFormatException e)
+        {
+            throw new IOException("Non numeric tokens from: " + server.getIp() + "; only the Murmur3 and Random partitioners are supported", e);
+        }
+        if (ranges.isEmpty())
+        {
+            throw new IOException("Unexpected nodetool describering output from: " + server.getIp() + "; output: " + output);
+        }
+        return ranges;
+    }
+
+    /**
+     * Parses tablestats; nodetool prints at least the table count, so no
+     * "Keyspace" line at all means it printed an error instead.
+     */
+    private List<TableStats> parseTableStats(String output) throws IOException
+    {
+        if (!output.contains("Keyspace"))
+        {
+            throw new IOException("Unexpected nodetool tablestats output from: " + server.getIp() + "; output: " + output);
+        }
+        return TablestatsParser.parse(output);
+    }
+
+    /**
+     * Parses a status; a cluster always has at least the node we asked, so
+     * no nodes means nodetool printed an error instead.
+     */
+    private List<NodetoolServer> parse(String status) throws IOException
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        List<NodetoolServer> servers = NodetoolStatusParser.parse(status, server.getClusterName());
+        if (servers.isEmpty())
+        {
+            throw new IOException("Unexpected nodetool status output from: " + server.getIp() + "; output: " + status);
+        }
+        return servers;
     }
 
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps the number of channels open at once on an SSH session. Each channel
+ * takes a permit before it is opened and gives it back once it has been
+ * disconnected; callers beyond the cap queue in arrival order.
+ *
+ * One channel can also be kept open between uses (SSHCommandDaoImpl's cached
+ * SFTP channel). A use of it takes a permit first and only then the cached
+ * channel's lock, so nobody holds the lock while waiting for a permit. While
+ * idle the cached channel holds no permit, so whoever takes the last permit
+ * closes it. That only fails when someone holds the lock, and they hold a
+ * permit for the cached channel as well, so the cap holds either way.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ChannelLimiter
+{
+
+    /**
+     * Host the session is to; for error messages.
+     */
+    private final String host;
+
+    /**
+     * Closes the cached channel if it's open. Only called with the cached
+     * channel lock held.
+     */
+    private final Runnable cachedChannelCloser;
+
+    /**
+     * Lock guarding the cached channel; also serializes its uses.
+     */
+    private final ReentrantLock cachedChannelLock = new ReentrantLock();
+
+    /**
+     * Permits for opening channels; one per open channel. Fair so that
+     * waiting callers are served in order.
+     */
+    private volatile Semaphore permits;
+
+    /**
+     * Cap on the number of channels open at once.
+     */
+    private volatile int maxChannels;
+
+    /**
+     * How long to wait for a free channel before giving up, in milliseconds.
+     * Zero or less means wait indefinitely.
+     */
+    private volatile long waitTimeoutMs = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param host Host the session is to; for error messages.
+     * @param maxChannels Cap on the number of channels open at once.
+     * @param cachedChannelCloser Closes the cached channel if it's open; only
+     * called with the cached channel lock held.
+     */
+    public ChannelLimiter(String host, int maxChannels, Runnable cachedChannelCloser)
+    {
+        this.host = host;
+        this.cachedChannelCloser = cachedChannelCloser;
+        setMaxChannels(maxChannels);
+    }
+
+    /**
+     * Cap on the number of channels open at once. Applies to channels opened
+     * after this call.
+     *
+     * @param maxChannels the maxChannels to set
+     */
+    public void setMaxChannels(int maxChannels)
+    {
+        if (maxChannels < 1)
+        {
+            throw new IllegalArgumentException("Max channels must be at least 1");
+        }
+        this.maxChannels = maxChannels;
+        this.permits = new Semaphore(maxChannels, true);
+    }
+
+    /**
+     * Cap on the number of channels open at once.
+     *
+     * @return the maxChannels
+     */
+    public int getMaxChannels()
+    {
+        return maxChannels;
+    }
+
+    /**
+     * How long to wait for a free channel before giving up, in milliseconds.
+     * Zero or less means wait indefinitely.
+     *
+     * @param waitTimeoutMs the waitTimeoutMs to set
+     */
+    public void setWaitTimeoutMs(long waitTimeoutMs)
+    {
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    /**
+     * How long to wait for a free channel before giving up, in milliseconds.
+     * Zero or less means wait indefinitely.
+     *
+     * @return the waitTimeoutMs
+     */
+    public long getWaitTimeoutMs()
+    {
+        return waitTimeoutMs;
+    }
+
+    /**
+     * Waits for a free slot for a new channel. If that takes the last slot,
+     * the cached channel is closed if it's idle, so it never sits open on top
+     * of the cap. The returned semaphore must be released once the channel
+     * has been disconnected.
+     *
+     * @return The semaphore the permit was taken from.
+     * @throws ConnectionException If we time out or are interrupted while
+     * waiting.
+     */
+    public Semaphore acquire() throws ConnectionException
+    {
+        Semaphore taken = waitForPermit();
+        if (taken.availablePermits() == 0)
+        {
+            closeIdleCachedChannel();
+        }
+        return taken;
+    }
+
+    /**
+     * Waits for a free slot and then for the cached channel, in that order.
+     * The caller may open the cached channel if it isn't open, and must call
+     * unlockCachedChannel with the returned semaphore once done with it.
+     *
+     * @return The semaphore the permit was taken from.
+     * @throws ConnectionException If we time out or are interrupted while
+     * waiting for a slot.
+     */
+    public Semaphore lockCachedChannel() throws ConnectionException
+    {
+        Semaphore taken = waitForPermit();
+        cachedChannelLock.lock();
+        return taken;
+    }
+
+    /**
+     * Lets go of the cached channel, leaving it open for the next use, and
+     * gives back the permit taken by lockCachedChannel.
+     *
+     * @param taken Semaphore returned by lockCachedChannel.
+     */
+    public void unlockCachedChannel(Semaphore taken)
+    {
+        cachedChannelLock.unlock();
+        taken.release();
+    }
+
+    /**
+     * Closes the cached channel, waiting for any use of it to finish first.
+     */
+    public void closeCachedChannel()
+    {
+        cachedChannelLock.lock();
+        try
+        {
+            cachedChannelCloser.run();
+        } finally
+        {
+            cachedChannelLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the cached channel if nobody is using it.
+     */
+    private void closeIdleCachedChannel()
+    {
+        if (cachedChannelLock.tryLock())
+        {
+            try
+            {
+                if (cachedChannelLock.getHoldCount() == 1)
+                {//more than one means this thread is in the middle of using it
+                    cachedChannelCloser.run();
+                }
+            } finally
+            {
+                cachedChannelLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits for a free slot.
+     *
+     * @return The semaphore the permit was taken from.
+     * @throws ConnectionException If we time out or are interrupted while
+     * waiting.
+     */
+    private Semaphore waitForPermit() throws ConnectionException
+    {
+        Semaphore current = permits;
+        try
+        {
+            if (waitTimeoutMs <= 0)
+            {
+                current.acquire();
+            } else if (!current.tryAcquire(waitTimeoutMs, TimeUnit.MILLISECONDS))
+            {
+                throw new ConnectionException("Timed out waiting for a free channel to: " + host
+                        + "; " + maxChannels + " channels are already open.");
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException(e);
+        }
+        return current;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.CassandraCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.ClusterTopology;
+import com.github.cassandrasshutils.command.domain.NodetoolServer;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import com.github.cassandrasshutils.functions.ClusterCommandExecutor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a snapshot of a cluster's topology so that callers asking "which
+ * nodes are up in which datacenter" don't each run nodetool status (and
+ * start a nodetool JVM) on a remote host.
+ *
+ * The snapshot is an immutable ClusterTopology held in an atomic reference:
+ * a refresh builds a whole new snapshot and swaps it in, so reads never
+ * block, never make a remote call, and always see a consistent topology.
+ * Refreshes run one at a time, either on demand or on a schedule, and read
+ * the status from a different node each time (rotating through the up nodes
+ * of the last snapshot, or the contact points before there is one), moving
+ * on to the next node if one can't be reached. The contact points are tried
+ * once UP_NODES_BEFORE_CONTACT_POINTS up nodes have failed, and if a refresh
+ * only succeeds through a contact point (eg: the addresses nodetool reports
+ * aren't ones we can SSH to) the next refresh starts with the contact points,
+ * so an unreachable cluster address only costs connect timeouts once rather
+ * than on every refresh. A failed refresh leaves the last snapshot in place.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ClusterTopologyCache
+{
+
+    /**
+     * Default time between scheduled refreshes.
+     */
+    public static final long DEFAULT_REFRESH_PERIOD_MS = 30 * 1000;
+
+    /**
+     * Number of up nodes tried before the contact points.
+     */
+    public static final int UP_NODES_BEFORE_CONTACT_POINTS = 2;
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Factory used to create a DAO for the node we read the status from.
+     */
+    private final RemoteCommandDaoFactory daoFactory;
+
+    /**
+     * Nodes to read the status from until we have a snapshot (or when no
+     * node in it is up).
+     */
+    private final List<Server> contactPoints;
+
+    /**
+     * The current snapshot; null until the first refresh succeeds.
+     */
+    private final AtomicReference<ClusterTopology> topology = new AtomicReference<>();
+
+    /**
+     * Which candidate the next refresh starts with.
+     */
+    private final AtomicInteger nextSource = new AtomicInteger();
+
+    /**
+     * True if the last successful refresh read from a contact point that
+     * wasn't an up node of the snapshot before it; the next refresh then
+     * starts with the contact points. Guarded by refreshLock.
+     */
+    private boolean contactPointsFirst = false;
+
+    /**
+     * Held while refreshing, so refreshes don't overlap.
+     */
+    private final Object refreshLock = new Object();
+
+    /**
+     * Runs scheduled refreshes; null if not started. Guarded by this.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructor.
+     *
+     * @param daoFactory Factory used to create a DAO for the node we read the
+     * status from.
+     * @param contactPoints Nodes to read the status from until we have a
+     * snapshot. Their cluster name is given to the nodes in each snapshot.
+     */
+    public ClusterTopologyCache(RemoteCommandDaoFactory daoFactory, Collection<Server> contactPoints)
+    {
+        if (daoFactory == null)
+        {
+            throw new IllegalArgumentException("DAO factory cannot be null");
+        }
+        if (contactPoints == null || contactPoints.isEmpty())
+        {
+            throw new IllegalArgumentException("Contact points cannot be null or empty");
+        }
+        this.daoFactory = daoFactory;
+        this.contactPoints = new ArrayList<>(contactPoints);
+    }
+
+    /**
+     * Gets the current snapshot. Never makes a remote call.
+     *
+     * @return The current snapshot, or null if there hasn't been a successful
+     * refresh yet.
+     */
+    public ClusterTopology getTopology()
+    {
+        return topology.get();
+    }
+
+    /**
+     * Reads the topology now and swaps it in as the current snapshot.
+     *
+     * @return The new snapshot.
+     * @throws ConnectionException If no candidate node could be reached; the
+     * last snapshot is kept.
+     * @throws IOException If nodetool status couldn't be read from any node
+     * that could be reached; the last snapshot is kept.
+     */
+    public ClusterTopology refresh() throws ConnectionException, IOException
+    {
+        synchronized (refreshLock)
+        {
+            ClusterTopology previous = topology.get();
+            Exception last = null;
+            for (Server source : candidates(previous))
+            {
+                try
+                {
+                    List<NodetoolServer> servers = readStatus(source);
+                    long version = previous == null ? 1 : previous.getVersion();
+                    ClusterTopology next = new ClusterTopology(servers, source.getIp(), System.currentTimeMillis(), version);
+                    if (previous != null && !next.isSameTopology(previous))
+                    {
+                        next = new ClusterTopology(servers, source.getIp(), next.getTimestamp(), version + 1);
+                        logger.info("Cluster topology changed: " + next);
+                    }
+                    topology.set(next);
+                    contactPointsFirst = previous != null && !previous.isUp(source.getIp());
+                    return next;
+                } catch (ConnectionException | IOException e)
+                {
+                    logger.debug("Could not read the topology from: " + source.getIp(), e);
+                    last = e;
+                }
+            }
+            if (last instanceof ConnectionException)
+            {
+                throw (ConnectionException) last;
+            }
+            throw (IOException) last;
+        }
+    }
+
+    /**
+     * Starts refreshing on a schedule, with the first refresh right away.
+     * Does nothing if already started.
+     *
+     * @param periodMs Time between the end of one refresh and the start of
+     * the next.
+     */
+    public synchronized void start(long periodMs)
+    {
+        if (periodMs <= 0)
+        {
+            throw new IllegalArgumentException("Refresh period must be positive");
+        }
+        if (scheduler != null)
+        {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ClusterCommandExecutor.NamedDaemonThreadFactory("cluster-topology-refresher"));
+        scheduler.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    refresh();
+                } catch (ConnectionException | IOException | RuntimeException e)
+                {
+                    logger.warn("Could not refresh the cluster topology; keeping the last snapshot.", e);
+                }
+            }
+        }, 0, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops scheduled refreshes. The current snapshot is kept.
+     */
+    public synchronized void stop()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Nodes to try reading the status from, in order: the first
+     * UP_NODES_BEFORE_CONTACT_POINTS up nodes of the last snapshot (starting
+     * with the next one in rotation), then the contact points, then the rest
+     * of the up nodes; each node only once. If the last refresh only worked
+     * through a contact point, the contact points come first. Before there is
+     * a snapshot (or when no node in it is up) it is just the contact points.
+     * Every list is rotated.
+     */
+    private List<Server> candidates(ClusterTopology previous)
+    {
+        int rotation = nextSource.getAndIncrement() & Integer.MAX_VALUE;
+        List<Server> contacts = rotate(contactPoints, rotation);
+        if (previous == null || previous.getUpServers().isEmpty())
+        {
+            return contacts;
+        }
+        List<Server> up = rotate(new ArrayList<Server>(previous.getUpServers()), rotation);
+        int upFirst = contactPointsFirst ? 0 : Math.min(UP_NODES_BEFORE_CONTACT_POINTS, up.size());
+        List<Server> ordered = new ArrayList<>(up.subList(0, upFirst));
+        ordered.addAll(contacts);
+        ordered.addAll(up.subList(upFirst, up.size()));
+        List<Server> candidates = new ArrayList<>();
+        Set<String> ips = new HashSet<>();
+        for (Server server : ordered)
+        {
+            if (ips.add(server.getIp()))
+            {
+                candidates.add(server);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Copy of the list starting at the given position (modulo its size) and
+     * wrapping round.
+     */
+    private static List<Server> rotate(List<Server> servers, int first)
+    {
+        List<Server> rotated = new ArrayList<>(servers.size());
+        for (int i = 0; i < servers.size(); i++)
+        {
+            rotated.add(servers.get((first + i) % servers.size()));
+        }
+        return rotated;
+    }
+
+    /**
+     * Reads and parses nodetool status from one node.
+     */
+    private List<NodetoolServer> readStatus(Server source) throws ConnectionException, IOException
+    {
+        RemoteCommandDao command = daoFactory.createRemoteCommandDao(source);
+        command.connect();
+        try
+        {
+            CassandraCommandDao cassandra = new CassandraCommandDaoImpl(new Server(source.getIp(), contactPoints.get(0).getClusterName()), command);
+            return cassandra.getNodetoolServers();
+        } finally
+        {
+            command.logOff();
+        }
+    }
+}
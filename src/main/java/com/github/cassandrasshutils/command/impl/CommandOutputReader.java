@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads the output of a remote command in blocks and decodes it with a
+ * streaming CharsetDecoder. Multi-byte characters that are split across two
+ * reads are carried over to the next block rather than being mangled.
+ *
+ * Instances hold reusable buffers and are therefore <b>not</b> thread safe;
+ * use one reader per thread (or per command).
+ *
+ * @author Jeffrey DeYoung
+ */
+public class CommandOutputReader
+{
+
+    /**
+     * Default size of the read buffer, in bytes. Matches the default JSch
+     * channel pipe size, so a single read usually drains the pipe.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * Default charset used to decode remote output.
+     */
+    public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Reusable buffer that raw bytes are read into.
+     */
+    private final ByteBuffer byteBuffer;
+
+    /**
+     * Reusable buffer that decoded characters are written into.
+     */
+    private final CharBuffer charBuffer;
+
+    /**
+     * Decoder used for converting the raw bytes into characters.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * Constructor that uses UTF-8 and the default buffer size.
+     */
+    public CommandOutputReader()
+    {
+        this(DEFAULT_CHARSET, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param charset Charset the remote output is encoded in.
+     * @param bufferSize Size of the read buffer, in bytes.
+     */
+    public CommandOutputReader(Charset charset, int bufferSize)
+    {
+        if (charset == null)
+        {
+            throw new IllegalArgumentException("Charset cannot be null");
+        }
+        if (bufferSize < 16)
+        {
+            throw new IllegalArgumentException("Buffer size must be at least 16 bytes");
+        }
+        this.byteBuffer = ByteBuffer.allocate(bufferSize);
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.charBuffer = CharBuffer.allocate((int) Math.ceil(bufferSize * (double) decoder.maxCharsPerByte()) + 1);
+    }
+
+    /**
+     * Reads the stream until end of stream and returns everything that was
+     * read as a String. The stream is not closed.
+     *
+     * @param in Stream to read from.
+     * @return The decoded contents of the stream.
+     * @throws IOException If there is a problem reading from the stream.
+     */
+    public String readFully(InputStream in) throws IOException
+    {
+        StringBuilder sb = new StringBuilder(byteBuffer.capacity());
+        read(in, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Reads the stream until end of stream, appending decoded characters to
+     * the passed in Appendable one block at a time. The stream is not closed.
+     *
+     * @param in Stream to read from.
+     * @param out Where to append the decoded output to.
+     * @return The number of raw bytes read from the stream.
+     * @throws IOException If there is a problem reading from the stream or
+     * appending to the output.
+     */
+    public long read(InputStream in, Appendable out) throws IOException
+    {
+        decoder.reset();
+        byteBuffer.clear();
+        long total = 0;
+        byte[] bytes = byteBuffer.array();
+        int read;
+        while ((read = in.read(bytes, byteBuffer.position(), byteBuffer.remaining())) != -1)
+        {
+            total += read;
+            byteBuffer.position(byteBuffer.position() + read);
+            byteBuffer.flip();
+            decode(out, false);
+            byteBuffer.compact();//keeps any partial multi-byte character for the next read
+        }
+        byteBuffer.flip();
+        decode(out, true);
+        charBuffer.clear();
+        CoderResult result = decoder.flush(charBuffer);
+        checkResult(result);
+        drain(out);
+        byteBuffer.clear();
+        return total;
+    }
+
+    /**
+     * Copies the raw (undecoded) bytes of the stream to the passed in
+     * OutputStream one block at a time until end of stream. Neither stream is
+     * closed.
+     *
+     * @param in Stream to read from.
+     * @param out Stream to write to.
+     * @return The number of bytes copied.
+     * @throws IOException If there is a problem reading or writing.
+     */
+    public long copy(InputStream in, OutputStream out) throws IOException
+    {
+        byte[] bytes = byteBuffer.array();
+        long total = 0;
+        int read;
+        while ((read = in.read(bytes)) != -1)
+        {
+            out.write(bytes, 0, read);
+            total += read;
+        }
+        out.flush();
+        return total;
+    }
+
+    /**
+     * Decodes whatever is in the byte buffer into the char buffer and drains
+     * it into the output.
+     *
+     * @param out Where to append the decoded output to.
+     * @param endOfInput True if there is no more input coming.
+     * @throws IOException If the output cannot be appended to.
+     */
+    private void decode(Appendable out, boolean endOfInput) throws IOException
+    {
+        CoderResult result;
+        do
+        {
+            charBuffer.clear();
+            result = decoder.decode(byteBuffer, charBuffer, endOfInput);
+            checkResult(result);
+            drain(out);
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Appends the current contents of the char buffer to the output.
+     *
+     * @param out Where to append the decoded output to.
+     * @throws IOException If the output cannot be appended to.
+     */
+    private void drain(Appendable out) throws IOException
+    {
+        charBuffer.flip();
+        if (!charBuffer.hasRemaining())
+        {
+            return;
+        }
+        if (out instanceof StringBuilder)
+        {//bulk copy; Appendable.append(CharSequence) would go char by char
+            ((StringBuilder) out).append(charBuffer.array(), charBuffer.position(), charBuffer.remaining());
+        } else
+        {
+            out.append(charBuffer);
+        }
+    }
+
+    /**
+     * Throws if the decoder reported an actual error (rather than just
+     * underflow/overflow).
+     *
+     * @param result Result from the decoder.
+     * @throws CharacterCodingException If the result is an error.
+     */
+    private static void checkResult(CoderResult result) throws CharacterCodingException
+    {
+        if (result.isError())
+        {
+            result.throwException();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.ServiceManager;
+
+/**
+ * Controls Cassandra with commands of your choosing, eg: scripts shipped with
+ * a tarball install. The status command is judged by its exit code alone:
+ * zero means running, anything else means stopped.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class CustomServiceManager implements ServiceManager
+{
+
+    /**
+     * Command line command to start Cassandra.
+     */
+    private final String startCommand;
+
+    /**
+     * Command line command to stop Cassandra.
+     */
+    private final String stopCommand;
+
+    /**
+     * Command line command to restart Cassandra.
+     */
+    private final String restartCommand;
+
+    /**
+     * Command line command that exits zero if Cassandra is running.
+     */
+    private final String statusCommand;
+
+    /**
+     * Constructor; restarts are done as a stop then a start.
+     *
+     * @param startCommand Command line command to start Cassandra.
+     * @param stopCommand Command line command to stop Cassandra.
+     * @param statusCommand Command line command that exits zero if Cassandra
+     * is running.
+     */
+    public CustomServiceManager(String startCommand, String stopCommand, String statusCommand)
+    {
+        this(startCommand, stopCommand, "{ " + stopCommand + "; } && { " + startCommand + "; }", statusCommand);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param startCommand Command line command to start Cassandra.
+     * @param stopCommand Command line command to stop Cassandra.
+     * @param restartCommand Command line command to restart Cassandra.
+     * @param statusCommand Command line command that exits zero if Cassandra
+     * is running.
+     */
+    public CustomServiceManager(String startCommand, String stopCommand, String restartCommand, String statusCommand)
+    {
+        if (startCommand == null || stopCommand == null || restartCommand == null || statusCommand == null)
+        {
+            throw new IllegalArgumentException("Commands cannot be null");
+        }
+        this.startCommand = startCommand;
+        this.stopCommand = stopCommand;
+        this.restartCommand = restartCommand;
+        this.statusCommand = statusCommand;
+    }
+
+    /**
+     * Short name of this service manager, for logging.
+     *
+     * @return The name.
+     */
+    @Override
+    public String getName()
+    {
+        return "custom";
+    }
+
+    /**
+     * Command line command to start Cassandra.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getStartCommand()
+    {
+        return startCommand;
+    }
+
+    /**
+     * Command line command to stop Cassandra.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getStopCommand()
+    {
+        return stopCommand;
+    }
+
+    /**
+     * Command line command to restart Cassandra.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getRestartCommand()
+    {
+        return restartCommand;
+    }
+
+    /**
+     * Command line command that prints the service's state as one word.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getStatusCommand()
+    {
+        return "if { " + statusCommand + "; } > /dev/null 2>&1; then echo running; else echo stopped; fi";
+    }
+}
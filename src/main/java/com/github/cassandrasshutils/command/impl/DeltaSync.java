@@ -0,0 +1,575 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.domain.DeltaSyncResult;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings a remote copy of a file up to date with a local one by sending only
+ * the parts that differ, in the manner of rsync.
+ *
+ * The remote side checksums its copy in fixed size blocks (a cksum CRC as the
+ * weak checksum and an MD5 as the strong one) using only dd, cksum and md5sum
+ * over the exec channel. The local side rolls the same weak checksum along
+ * its copy a byte at a time, so blocks are found even when data has been
+ * inserted or removed in front of them, and confirms each weak match with the
+ * MD5. What's left is sent as a single literal data file over SFTP, and a
+ * small script fed to the remote shell rebuilds the file from the old copy
+ * and the literal data, checks its MD5, and moves it into place.
+ *
+ * If there is no remote copy, too little of it matches, or the rebuilt file
+ * doesn't check out, the whole file is pushed instead.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class DeltaSync
+{
+
+    /**
+     * Smallest block size used.
+     */
+    public static final int MIN_BLOCK_SIZE = 2 * 1024;
+
+    /**
+     * Largest block size used.
+     */
+    public static final int MAX_BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * Roughly how many blocks the remote copy is split into; each one costs a
+     * couple of process launches on the remote side.
+     */
+    public static final int TARGET_BLOCK_COUNT = 1024;
+
+    /**
+     * If more than this fraction of the file has to be sent anyway, just push
+     * the whole thing.
+     */
+    public static final double FULL_PUSH_RATIO = 0.75;
+
+    /**
+     * Files larger than this are always pushed whole; the delta is computed
+     * in memory.
+     */
+    public static final long MAX_DELTA_FILE_SIZE = 512L * 1024 * 1024;
+
+    /**
+     * Suffix of the literal data file on the remote machine.
+     */
+    private static final String DELTA_SUFFIX = ".csu-delta";
+
+    /**
+     * Suffix of the rebuilt file on the remote machine, before it is moved
+     * into place.
+     */
+    private static final String NEW_SUFFIX = ".csu-new";
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * DAO whose session the sync happens over.
+     */
+    private final SSHCommandDaoImpl dao;
+
+    /**
+     * Constructor.
+     *
+     * @param dao DAO whose session the sync happens over; must be connected.
+     */
+    public DeltaSync(SSHCommandDaoImpl dao)
+    {
+        this.dao = dao;
+    }
+
+    /**
+     * Brings the remote copy of a file up to date with the local one.
+     *
+     * @param localFile Local file to sync.
+     * @param remotePath Directory path on the remote machine holding the
+     * copy.
+     * @return What was done.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading or sending the file.
+     */
+    public DeltaSyncResult sync(File localFile, String remotePath) throws ConnectionException, IOException
+    {
+        long start = System.currentTimeMillis();
+        String remoteFile = remotePath + (remotePath.endsWith("/") ? "" : "/") + localFile.getName();
+        long size = localFile.length();
+        SftpATTRS attrs = statOrNull(remoteFile);
+        if (attrs == null || attrs.getSize() == 0 || size == 0 || size > MAX_DELTA_FILE_SIZE)
+        {
+            return pushWhole(localFile, remotePath, remoteFile, 0, start);
+        }
+        byte[] local = Files.readAllBytes(localFile.toPath());
+        String localMd5 = md5(local, 0, local.length);
+        int blockSize = chooseBlockSize(attrs.getSize());
+
+        List<BlockSignature> remoteBlocks = new ArrayList<>();
+        String response = dao.sendCommand(buildSignatureCommand(remoteFile, blockSize, localMd5));
+        for (String line : response.split("\n"))
+        {
+            String[] parts = line.trim().split(" ");
+            if (parts.length == 1 && parts[0].equals("SAME"))
+            {
+                logger.debug("'" + remoteFile + "' on: " + dao.getHost() + " is already up to date.");
+                return new DeltaSyncResult(remoteFile, size, blockSize, size, 0, true, false, System.currentTimeMillis() - start);
+            } else if (parts.length == 4 && parts[0].equals("B"))
+            {
+                remoteBlocks.add(new BlockSignature(Integer.parseInt(parts[1]), Long.parseLong(parts[2]), parts[3]));
+            }
+        }
+
+        List<Op> ops = diff(local, blockSize, remoteBlocks);
+        long literalBytes = 0;
+        for (Op op : ops)
+        {
+            if (!op.isCopy())
+            {
+                literalBytes += op.getLength();
+            }
+        }
+        if (literalBytes > FULL_PUSH_RATIO * size)
+        {
+            logger.debug("Only " + (size - literalBytes) + " of " + size + " bytes of '" + remoteFile + "' match on: " + dao.getHost() + "; pushing it whole.");
+            return pushWhole(localFile, remotePath, remoteFile, blockSize, start);
+        }
+
+        pushLiterals(local, ops, remoteFile + DELTA_SUFFIX);
+        String script = buildRebuildScript(remoteFile, blockSize, ops, localMd5, attrs.getUId(), attrs.getGId(), attrs.getPermissions() & 07777);
+        String result = dao.sendScript(script);
+        if (!result.contains("CSU_DELTA_STATUS=0"))
+        {
+            logger.warn("Delta for: '" + remoteFile + "' did not apply cleanly on: " + dao.getHost() + " (" + result + "); pushing it whole.");
+            return pushWhole(localFile, remotePath, remoteFile, blockSize, start);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        logger.debug("Synced: '" + remoteFile + "' on: " + dao.getHost() + "; sent " + literalBytes + " of " + size + " bytes in " + elapsed + "ms");
+        return new DeltaSyncResult(remoteFile, size, blockSize, size - literalBytes, literalBytes, false, false, elapsed);
+    }
+
+    /**
+     * Works out how to build the local file out of blocks of the remote copy
+     * plus literal data.
+     *
+     * @param local Contents of the local file.
+     * @param blockSize Size of the remote blocks.
+     * @param remoteBlocks Signatures of the (full size) remote blocks.
+     * @return Operations that rebuild the local file, in order. Adjacent
+     * remote blocks are merged into a single copy.
+     */
+    public static List<Op> diff(byte[] local, int blockSize, List<BlockSignature> remoteBlocks)
+    {
+        Map<Long, List<BlockSignature>> byWeak = new HashMap<>();
+        for (BlockSignature block : remoteBlocks)
+        {
+            List<BlockSignature> list = byWeak.get(block.getWeak());
+            if (list == null)
+            {
+                list = new ArrayList<>(1);
+                byWeak.put(block.getWeak(), list);
+            }
+            list.add(block);
+        }
+        List<Op> ops = new ArrayList<>();
+        int literalStart = 0;
+        int lastMatched = -2;
+        int pos = 0;
+        RollingChecksum rolling = new RollingChecksum(blockSize);
+        if (local.length >= blockSize && !byWeak.isEmpty())
+        {
+            rolling.reset(local, 0);
+            while (true)
+            {
+                int matched = -1;
+                List<BlockSignature> candidates = byWeak.get(rolling.getValue());
+                if (candidates != null)
+                {
+                    String strong = md5(local, pos, blockSize);
+                    for (BlockSignature candidate : candidates)
+                    {
+                        if (candidate.getStrong().equals(strong))
+                        {
+                            matched = candidate.getIndex();
+                            if (matched == lastMatched + 1)
+                            {
+                                break;//prefer the block that continues the current run
+                            }
+                        }
+                    }
+                }
+                if (matched >= 0)
+                {
+                    if (literalStart < pos)
+                    {
+                        ops.add(Op.literal(literalStart, pos - literalStart));
+                    }
+                    Op previous = ops.isEmpty() ? null : ops.get(ops.size() - 1);
+                    if (previous != null && previous.isCopy() && matched == lastMatched + 1)
+                    {
+                        ops.set(ops.size() - 1, Op.copy(previous.getStart(), previous.getLength() + 1));
+                    } else
+                    {
+                        ops.add(Op.copy(matched, 1));
+                    }
+                    lastMatched = matched;
+                    pos += blockSize;
+                    literalStart = pos;
+                    if (pos + blockSize > local.length)
+                    {
+                        break;
+                    }
+                    rolling.reset(local, pos);
+                } else
+                {
+                    if (pos + blockSize >= local.length)
+                    {
+                        break;
+                    }
+                    rolling.roll(local[pos], local[pos + blockSize]);
+                    pos++;
+                }
+            }
+        }
+        if (literalStart < local.length)
+        {
+            ops.add(Op.literal(literalStart, local.length - literalStart));
+        }
+        return ops;
+    }
+
+    /**
+     * Picks a block size for a remote file of the given size: aiming for
+     * around TARGET_BLOCK_COUNT blocks, rounded up to a power of two.
+     */
+    static int chooseBlockSize(long remoteSize)
+    {
+        int blockSize = MIN_BLOCK_SIZE;
+        while (blockSize < MAX_BLOCK_SIZE && (long) blockSize * TARGET_BLOCK_COUNT < remoteSize)
+        {
+            blockSize <<= 1;
+        }
+        return blockSize;
+    }
+
+    /**
+     * Command that prints SAME if the remote file already has the given MD5,
+     * or otherwise a "B index cksum md5" line for every full block.
+     */
+    private static String buildSignatureCommand(String remoteFile, int blockSize, String localMd5)
+    {
+        return "f=" + ShellUtils.quote(remoteFile) + "; b=" + blockSize + "; "
+                + "if [ \"$(md5sum < \"$f\" | cut -c1-32)\" = \"" + localMd5 + "\" ]; then echo SAME; exit 0; fi; "
+                + "n=$(($(wc -c < \"$f\") / b)); i=0; "
+                + "while [ $i -lt $n ]; do "
+                + "echo \"B $i $(dd if=\"$f\" bs=$b skip=$i count=1 2>/dev/null | cksum | cut -d' ' -f1)"
+                + " $(dd if=\"$f\" bs=$b skip=$i count=1 2>/dev/null | md5sum | cut -c1-32)\"; "
+                + "i=$((i+1)); done";
+    }
+
+    /**
+     * Script that rebuilds the file next to the old copy, checks its MD5,
+     * gives it the old copy's owner, group and permissions and moves it into
+     * place. If we aren't allowed to give it the old owner the script fails,
+     * rather than leave a file owned by us in place of, say, one owned by
+     * cassandra. Always cleans up after itself and reports its status.
+     */
+    private static String buildRebuildScript(String remoteFile, int blockSize, List<Op> ops, String localMd5, int uid, int gid, int mode)
+    {
+        StringBuilder script = new StringBuilder();
+        script.append("f=").append(ShellUtils.quote(remoteFile)).append('\n');
+        script.append("d=").append(ShellUtils.quote(remoteFile + DELTA_SUFFIX)).append('\n');
+        script.append("n=").append(ShellUtils.quote(remoteFile + NEW_SUFFIX)).append('\n');
+        script.append("{\n");
+        long dataOffset = 0;
+        for (Op op : ops)
+        {
+            if (op.isCopy())
+            {
+                script.append("dd if=\"$f\" bs=").append(blockSize).append(" skip=").append(op.getStart())
+                        .append(" count=").append(op.getLength()).append(" 2>/dev/null\n");
+            } else
+            {
+                script.append("tail -c +").append(dataOffset + 1).append(" \"$d\" | head -c ").append(op.getLength()).append('\n');
+                dataOffset += op.getLength();
+            }
+        }
+        script.append("} > \"$n\" && [ \"$(md5sum < \"$n\" | cut -c1-32)\" = \"").append(localMd5).append("\" ]")
+                .append(" && chown ").append(uid).append(':').append(gid).append(" \"$n\"")
+                .append(" && chmod ").append(Integer.toOctalString(mode)).append(" \"$n\" && mv -f \"$n\" \"$f\"\n");
+        script.append("s=$?\n");
+        script.append("rm -f \"$d\" \"$n\"\n");
+        script.append("echo \"CSU_DELTA_STATUS=$s\"\n");
+        return script.toString();
+    }
+
+    /**
+     * Sends the literal data, back to back, as a single file.
+     */
+    private void pushLiterals(byte[] local, List<Op> ops, final String remoteDeltaFile) throws ConnectionException, IOException
+    {
+        List<InputStream> parts = new ArrayList<>();
+        for (Op op : ops)
+        {
+            if (!op.isCopy())
+            {
+                parts.add(new ByteArrayInputStream(local, (int) op.getStart(), (int) op.getLength()));
+            }
+        }
+        final InputStream data = new SequenceInputStream(Collections.enumeration(parts));
+        dao.withNewSftpChannel(new SSHCommandDaoImpl.SftpCallable<Void>()
+        {
+            @Override
+            public Void call(ChannelSftp c) throws SftpException
+            {
+                c.put(data, remoteDeltaFile);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Pushes the whole file.
+     */
+    private DeltaSyncResult pushWhole(File localFile, String remotePath, String remoteFile, int blockSize, long start) throws ConnectionException, IOException
+    {
+        dao.pushFile(localFile, remotePath);
+        long size = localFile.length();
+        return new DeltaSyncResult(remoteFile, size, blockSize, 0, size, false, true, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Gets the attributes of a remote file.
+     *
+     * @return The attributes, or null if the file does not exist.
+     */
+    private SftpATTRS statOrNull(final String remoteFile) throws ConnectionException, IOException
+    {
+        return dao.withNewSftpChannel(new SSHCommandDaoImpl.SftpCallable<SftpATTRS>()
+        {
+            @Override
+            public SftpATTRS call(ChannelSftp c) throws SftpException
+            {
+                try
+                {
+                    return c.stat(remoteFile);
+                } catch (SftpException e)
+                {
+                    if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE)
+                    {
+                        return null;
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * MD5 (hex) of part of a buffer.
+     */
+    private static String md5(byte[] buffer, int offset, int length)
+    {
+        MessageDigest md5 = ParallelSftpDownloader.newMd5();
+        md5.update(buffer, offset, length);
+        return ParallelSftpDownloader.toHex(md5.digest());
+    }
+
+    /**
+     * Checksums of one full size block of the remote copy.
+     */
+    public static class BlockSignature
+    {
+
+        /**
+         * Index of the block in the remote copy.
+         */
+        private final int index;
+
+        /**
+         * Weak (cksum) checksum of the block.
+         */
+        private final long weak;
+
+        /**
+         * Strong (MD5, hex) checksum of the block.
+         */
+        private final String strong;
+
+        /**
+         * Constructor.
+         *
+         * @param index Index of the block in the remote copy.
+         * @param weak Weak (cksum) checksum of the block.
+         * @param strong Strong (MD5, hex) checksum of the block.
+         */
+        public BlockSignature(int index, long weak, String strong)
+        {
+            this.index = index;
+            this.weak = weak;
+            this.strong = strong;
+        }
+
+        /**
+         * Index of the block in the remote copy.
+         *
+         * @return the index
+         */
+        public int getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * Weak (cksum) checksum of the block.
+         *
+         * @return the weak
+         */
+        public long getWeak()
+        {
+            return weak;
+        }
+
+        /**
+         * Strong (MD5, hex) checksum of the block.
+         *
+         * @return the strong
+         */
+        public String getStrong()
+        {
+            return strong;
+        }
+    }
+
+    /**
+     * One step in rebuilding the file: either copy a run of blocks from the
+     * remote copy, or insert a range of the local file.
+     */
+    public static class Op
+    {
+
+        /**
+         * True to copy remote blocks, false to insert local data.
+         */
+        private final boolean copy;
+
+        /**
+         * First remote block to copy, or offset of the local data.
+         */
+        private final long start;
+
+        /**
+         * Number of remote blocks to copy, or length of the local data.
+         */
+        private final long length;
+
+        /**
+         * Constructor.
+         */
+        private Op(boolean copy, long start, long length)
+        {
+            this.copy = copy;
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Copy a run of blocks from the remote copy.
+         *
+         * @param firstBlock First remote block to copy.
+         * @param blockCount Number of blocks to copy.
+         * @return The operation.
+         */
+        public static Op copy(long firstBlock, long blockCount)
+        {
+            return new Op(true, firstBlock, blockCount);
+        }
+
+        /**
+         * Insert a range of the local file.
+         *
+         * @param offset Offset of the data in the local file.
+         * @param length Length of the data.
+         * @return The operation.
+         */
+        public static Op literal(long offset, long length)
+        {
+            return new Op(false, offset, length);
+        }
+
+        /**
+         * True to copy remote blocks, false to insert local data.
+         *
+         * @return the copy
+         */
+        public boolean isCopy()
+        {
+            return copy;
+        }
+
+        /**
+         * First remote block to copy, or offset of the local data.
+         *
+         * @return the start
+         */
+        public long getStart()
+        {
+            return start;
+        }
+
+        /**
+         * Number of remote blocks to copy, or length of the local data.
+         *
+         * @return the length
+         */
+        public long getLength()
+        {
+            return length;
+        }
+
+        /**
+         * Simple toString(). Used for logging, etc.
+         *
+         * @return A String representation of this object.
+         */
+        @Override
+        public String toString()
+        {
+            return (copy ? "copy{block=" : "literal{offset=") + start + (copy ? ", blocks=" : ", length=") + length + '}';
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the token ranges of a keyspace, as printed by
+ * <code>nodetool describering</code> (and returned, a line per range, by
+ * StorageService's describeRingJMX): one
+ * <code>TokenRange(start_token:..., end_token:..., endpoints:[...], ...)</code>
+ * per range. Only numeric tokens (Murmur3 and Random partitioners) are
+ * understood.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class DescriberingParser
+{
+
+    private static final String RANGE_PREFIX = "TokenRange(";
+    private static final String START = "start_token:";
+    private static final String END = "end_token:";
+    private static final String ENDPOINTS = "endpoints:[";
+
+    /**
+     * Utility class; no instances.
+     */
+    private DescriberingParser()
+    {
+    }
+
+    /**
+     * Parses the output of nodetool describering.
+     *
+     * @param output Output of nodetool describering.
+     * @return Each range, in the order listed.
+     * @throws NumberFormatException If a token isn't numeric (an order
+     * preserving partitioner).
+     */
+    public static List<TokenRange> parse(String output)
+    {
+        List<TokenRange> ranges = new ArrayList<>();
+        for (String line : output.split("\n"))
+        {
+            int at = line.indexOf(RANGE_PREFIX);
+            if (at < 0)
+            {
+                continue;
+            }
+            String start = field(line, START, ',', at);
+            String end = field(line, END, ',', at);
+            String endpoints = field(line, ENDPOINTS, ']', at);
+            if (start == null || end == null)
+            {
+                continue;
+            }
+            List<String> replicas = new ArrayList<>();
+            if (endpoints != null)
+            {
+                for (String endpoint : endpoints.split(","))
+                {
+                    if (!endpoint.trim().isEmpty())
+                    {
+                        replicas.add(endpoint.trim());
+                    }
+                }
+            }
+            ranges.add(new TokenRange(new BigInteger(start), new BigInteger(end), replicas));
+        }
+        return ranges;
+    }
+
+    /**
+     * Value after a label, up to a terminator; null if the label isn't there.
+     * The first match wins, so "endpoints:[" finds the replicas rather than
+     * "rpc_endpoints:[" after them.
+     */
+    private static String field(String line, String label, char terminator, int from)
+    {
+        int start = line.indexOf(label, from);
+        if (start < 0)
+        {
+            return null;
+        }
+        start += label.length();
+        int end = line.indexOf(terminator, start);
+        return (end < 0 ? line.substring(start) : line.substring(start, end)).trim();
+    }
+}
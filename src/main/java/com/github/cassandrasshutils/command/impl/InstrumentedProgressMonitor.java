@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.cassandrasshutils.command.TransferProgressListener;
+import com.github.cassandrasshutils.command.domain.TransferProgress;
+import com.github.cassandrasshutils.command.domain.TransferProgress.Direction;
+import com.jcraft.jsch.SftpProgressMonitor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures a single SFTP transfer: bytes moved, rate, and time to first byte.
+ * Reports progress to an optional listener (at most once per report
+ * interval, plus at the start and end), records the finished transfer in an
+ * optional metrics registry, and logs a summary.
+ *
+ * Metrics are named sftp.[host].[push|pull].*, plus an sftp.[host].bytes
+ * meter covering both directions, whose rates are the host's aggregate
+ * throughput. Dots in the host become underscores (sftp.10_0_0_1.pull.bytes)
+ * so the host stays a single segment of the name:
+ * <ul>
+ * <li>bytes - meter of bytes moved, marked as they move</li>
+ * <li>transfers - timer of whole transfers</li>
+ * <li>time-to-first-byte - histogram, in milliseconds</li>
+ * <li>bytes-per-second - histogram of each transfer's average rate</li>
+ * </ul>
+ *
+ * A monitor is good for one transfer; JSch calls it from the transferring
+ * thread only.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class InstrumentedProgressMonitor implements SftpProgressMonitor
+{
+
+    /**
+     * Default minimum time between progress reports.
+     */
+    public static final long DEFAULT_REPORT_INTERVAL_MS = 1000;
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(InstrumentedProgressMonitor.class);
+
+    /**
+     * Host on the other end of the transfer.
+     */
+    private final String host;
+
+    /**
+     * Host as it appears in metric names, with dots replaced by underscores.
+     */
+    private final String metricsHost;
+
+    /**
+     * Which way the transfer is going.
+     */
+    private final Direction direction;
+
+    /**
+     * Listener to report progress to; may be null.
+     */
+    private final TransferProgressListener listener;
+
+    /**
+     * Registry to record metrics in; may be null.
+     */
+    private final MetricRegistry metrics;
+
+    /**
+     * Minimum time between progress reports, in nanoseconds.
+     */
+    private final long reportIntervalNanos;
+
+    /**
+     * Meter of bytes moved in this direction to this host; null if there is
+     * no registry. Looked up once, since it is marked for every block.
+     */
+    private final Meter directionBytes;
+
+    /**
+     * Meter of bytes moved in either direction to this host; null if there
+     * is no registry.
+     */
+    private final Meter hostBytes;
+
+    /**
+     * Path being read from.
+     */
+    private String source;
+
+    /**
+     * Path being written to.
+     */
+    private String destination;
+
+    /**
+     * Total size of the transfer; -1 if unknown.
+     */
+    private long totalBytes = -1;
+
+    /**
+     * Bytes moved so far.
+     */
+    private long bytesTransferred = 0;
+
+    /**
+     * When the transfer started (nanoTime).
+     */
+    private long startNanos;
+
+    /**
+     * When the first data moved (nanoTime); zero until then.
+     */
+    private long firstByteNanos = 0;
+
+    /**
+     * When progress was last reported (nanoTime).
+     */
+    private long lastReportNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param host Host on the other end of the transfer.
+     * @param direction Which way the transfer is going.
+     * @param listener Listener to report progress to; may be null.
+     * @param metrics Registry to record metrics in; may be null.
+     * @param reportIntervalMs Minimum time between progress reports, in
+     * milliseconds.
+     */
+    public InstrumentedProgressMonitor(String host, Direction direction, TransferProgressListener listener, MetricRegistry metrics, long reportIntervalMs)
+    {
+        this.host = host;
+        this.metricsHost = host.replace('.', '_');
+        this.direction = direction;
+        this.listener = listener;
+        this.metrics = metrics;
+        this.reportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reportIntervalMs);
+        this.startNanos = System.nanoTime();
+        if (metrics != null)
+        {
+            directionBytes = metrics.meter(MetricRegistry.name("sftp", metricsHost, direction.name().toLowerCase(), "bytes"));
+            hostBytes = metrics.meter(MetricRegistry.name("sftp", metricsHost, "bytes"));
+        } else
+        {
+            directionBytes = null;
+            hostBytes = null;
+        }
+    }
+
+    /**
+     * Called by JSch when the transfer starts.
+     *
+     * @param op PUT or GET.
+     * @param src Path being read from.
+     * @param dest Path being written to.
+     * @param max Total size of the transfer, or UNKNOWN_SIZE.
+     */
+    @Override
+    public void init(int op, String src, String dest, long max)
+    {
+        source = src;
+        destination = dest;
+        totalBytes = max == UNKNOWN_SIZE ? -1 : max;
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        report(false);
+    }
+
+    /**
+     * Called by JSch each time a block of data moves.
+     *
+     * @param count Bytes moved since the last call.
+     * @return Always true; we never cancel the transfer.
+     */
+    @Override
+    public boolean count(long count)
+    {
+        long now = System.nanoTime();
+        if (firstByteNanos == 0 && count > 0)
+        {
+            firstByteNanos = now;
+        }
+        bytesTransferred += count;
+        if (directionBytes != null)
+        {
+            directionBytes.mark(count);
+            hostBytes.mark(count);
+        }
+        if (listener != null && now - lastReportNanos >= reportIntervalNanos)
+        {
+            lastReportNanos = now;
+            report(false);
+        }
+        return true;
+    }
+
+    /**
+     * Called by JSch when the transfer finishes.
+     */
+    @Override
+    public void end()
+    {
+        TransferProgress progress = report(true);
+        if (metrics != null)
+        {
+            String prefix = MetricRegistry.name("sftp", metricsHost, direction.name().toLowerCase());
+            metrics.timer(MetricRegistry.name(prefix, "transfers")).update(progress.getElapsedMs(), TimeUnit.MILLISECONDS);
+            if (progress.getTimeToFirstByteMs() >= 0)
+            {
+                metrics.histogram(MetricRegistry.name(prefix, "time-to-first-byte")).update(progress.getTimeToFirstByteMs());
+            }
+            metrics.histogram(MetricRegistry.name(prefix, "bytes-per-second")).update((long) progress.getBytesPerSecond());
+        }
+        logger.debug((direction == Direction.PULL ? "Pulled " : "Pushed ") + bytesTransferred + " bytes: '" + source + "' -> '" + destination
+                + "' (" + host + ") in " + progress.getElapsedMs() + "ms; " + String.format("%.1f", progress.getBytesPerSecond() / (1024 * 1024))
+                + " MB/s; first byte after " + progress.getTimeToFirstByteMs() + "ms");
+    }
+
+    /**
+     * Bytes moved so far.
+     *
+     * @return the bytesTransferred
+     */
+    public long getBytesTransferred()
+    {
+        return bytesTransferred;
+    }
+
+    /**
+     * Builds a snapshot and hands it to the listener, if there is one.
+     */
+    private TransferProgress report(boolean done)
+    {
+        long now = System.nanoTime();
+        TransferProgress progress = new TransferProgress(host, direction, source, destination, totalBytes, bytesTransferred,
+                TimeUnit.NANOSECONDS.toMillis(now - startNanos),
+                firstByteNanos == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(firstByteNanos - startNanos), done);
+        if (listener != null)
+        {
+            try
+            {
+                listener.onProgress(progress);
+            } catch (RuntimeException e)
+            {
+                logger.warn("Transfer progress listener threw; ignoring.", e);
+            }
+        }
+        return progress;
+    }
+}
@@ -0,0 +1,921 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.CassandraCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.domain.NodetoolServer;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TableStats;
+import com.github.cassandrasshutils.command.domain.ThreadPoolStats;
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import com.github.cassandrasshutils.exceptions.JmxAddressInUseException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanException;
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CassandraCommandDao that reads Cassandra's MBeans over JMX instead of
+ * running nodetool, which starts a new JVM on the node for every call. JMX
+ * is reached through a local port forward on the node's SSH connection, so
+ * the JMX port doesn't need to be open to us; the connection is kept open
+ * between calls, so each call is a handful of round trips rather than
+ * seconds of nodetool start up.
+ *
+ * The JMX connection is opened on first use (or by connect) and lasts until
+ * logOff; if it breaks it is reopened once before giving up. The SSH DAO
+ * must stay connected for as long as this is in use. Calls are made one at
+ * a time.
+ *
+ * Datacenters and racks are looked up once per node and remembered, as they
+ * don't change.
+ *
+ * The first connect installs a socket factory for RMI (see
+ * JmxTunnelSocketFactory) with RMISocketFactory.setSocketFactory. That is
+ * JVM wide and can only be done once: it fails if something else in the JVM
+ * has already installed one, and anything else in the JVM that uses RMI goes
+ * through this one afterwards (addresses no DAO is connected to are connected
+ * to directly, as before).
+ *
+ * RMI connects to wherever a node's JMX stub says it is, and keeps
+ * connections by that address for the whole JVM, so nodes whose stubs give
+ * the same address can't be told apart. With Cassandra's default local only
+ * JMX every stub gives 127.0.0.1, so <b>only one node at a time can be
+ * read</b> unless java.rmi.server.hostname is set to a distinct address on
+ * each node. While one DAO is connected (until its logOff), connecting
+ * another at the same address fails with a JmxAddressInUseException, or,
+ * with a stub wait time set, waits up to that long for the first to log off.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class JmxCassandraCommandDaoImpl implements CassandraCommandDao
+{
+
+    /**
+     * Cassandra's default JMX port.
+     */
+    public static final int DEFAULT_JMX_PORT = 7199;
+
+    /**
+     * Default longest wait for another node with the same stub address to log
+     * off; zero, so connecting fails straight away. DAOs stay connected until
+     * logOff, so waiting only helps when the other DAO is about to log off.
+     */
+    public static final long DEFAULT_STUB_WAIT_MS = 0;
+
+    /**
+     * MBean for the node's view of the ring.
+     */
+    static final ObjectName STORAGE_SERVICE = objectName("org.apache.cassandra.db:type=StorageService");
+
+    /**
+     * MBean for looking up nodes' datacenters and racks.
+     */
+    static final ObjectName ENDPOINT_SNITCH_INFO = objectName("org.apache.cassandra.db:type=EndpointSnitchInfo");
+
+    /**
+     * Pattern matching every thread pool metric.
+     */
+    static final ObjectName THREAD_POOL_METRICS = objectName("org.apache.cassandra.metrics:type=ThreadPools,*");
+
+    /**
+     * Signature of MBean operations that take one String.
+     */
+    private static final String[] STRING_SIGNATURE =
+    {
+        String.class.getName()
+    };
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Server that we will be executing our Cassandra commands against.
+     */
+    private final Server server;
+
+    /**
+     * Connection to the server that JMX is tunnelled through.
+     */
+    private final RemoteCommandDao command;
+
+    /**
+     * JMX port on the server.
+     */
+    private final int jmxPort;
+
+    /**
+     * JMX username; null if JMX doesn't need authentication.
+     */
+    private String jmxUser;
+
+    /**
+     * JMX password; null if JMX doesn't need authentication.
+     */
+    private String jmxPassword;
+
+    /**
+     * Longest to wait for another node with the same stub address to log off,
+     * in milliseconds. Guarded by this.
+     */
+    private long stubWaitMs = DEFAULT_STUB_WAIT_MS;
+
+    /**
+     * Each node's datacenter and rack, keyed by address.
+     */
+    private final ConcurrentMap<String, String[]> locations = new ConcurrentHashMap<>();
+
+    /**
+     * Open JMX connector; null if not connected. Guarded by this.
+     */
+    private JMXConnector connector;
+
+    /**
+     * Connection from the connector; null if not connected. Guarded by this.
+     */
+    private MBeanServerConnection connection;
+
+    /**
+     * Tunnel the connection goes through; null if not connected. Guarded by
+     * this.
+     */
+    private JmxTunnelSocketFactory.Tunnel tunnel;
+
+    /**
+     * Constructor that uses the default JMX port.
+     *
+     * @param server Server that we will be executing our Cassandra commands
+     * against.
+     * @param command Connected DAO for the server that JMX is tunnelled
+     * through.
+     */
+    public JmxCassandraCommandDaoImpl(Server server, RemoteCommandDao command)
+    {
+        this(server, command, DEFAULT_JMX_PORT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param server Server that we will be executing our Cassandra commands
+     * against.
+     * @param command Connected DAO for the server that JMX is tunnelled
+     * through.
+     * @param jmxPort JMX port on the server.
+     */
+    public JmxCassandraCommandDaoImpl(Server server, RemoteCommandDao command, int jmxPort)
+    {
+        if (server == null)
+        {
+            throw new IllegalArgumentException("Server cannot be null");
+        }
+        if (command == null)
+        {
+            throw new IllegalArgumentException("Command DAO cannot be null");
+        }
+        if (jmxPort <= 0)
+        {
+            throw new IllegalArgumentException("JMX port must be positive");
+        }
+        this.server = server;
+        this.command = command;
+        this.jmxPort = jmxPort;
+    }
+
+    /**
+     * Sets the credentials to use if JMX authentication is enabled. Takes
+     * effect on the next connect.
+     *
+     * @param jmxUser JMX username.
+     * @param jmxPassword JMX password.
+     */
+    public synchronized void setJmxCredentials(String jmxUser, String jmxPassword)
+    {
+        this.jmxUser = jmxUser;
+        this.jmxPassword = jmxPassword;
+    }
+
+    /**
+     * Sets the longest to wait, when connecting, for another node whose JMX
+     * stub gives the same address to log off. Zero (the default) fails
+     * straight away. Takes effect on the next connect.
+     *
+     * @param stubWaitMs Time to wait, in milliseconds.
+     */
+    public synchronized void setStubWaitMs(long stubWaitMs)
+    {
+        if (stubWaitMs < 0)
+        {
+            throw new IllegalArgumentException("Stub wait cannot be negative");
+        }
+        this.stubWaitMs = stubWaitMs;
+    }
+
+    /**
+     * Gets the longest to wait, when connecting, for another node whose JMX
+     * stub gives the same address to log off.
+     *
+     * @return Time to wait, in milliseconds.
+     */
+    public synchronized long getStubWaitMs()
+    {
+        return stubWaitMs;
+    }
+
+    /**
+     * Opens the tunnel and JMX connection, if they aren't already open.
+     * Optional; the first call that needs them opens them anyway. If another
+     * node with the same stub address is connected, waits up to the stub
+     * wait time for it to log off and tries again.
+     *
+     * @throws ConnectionException If the port forward can't be opened.
+     * @throws JmxAddressInUseException If another node with the same stub
+     * address is still connected after the stub wait time.
+     * @throws IOException If JMX can't be connected to.
+     */
+    public synchronized void connect() throws ConnectionException, IOException
+    {
+        if (connection != null)
+        {
+            return;
+        }
+        JmxTunnelSocketFactory factory = JmxTunnelSocketFactory.getInstance();
+        long deadline = System.currentTimeMillis() + stubWaitMs;
+        Map<String, Object> env = new HashMap<>();
+        if (jmxUser != null)
+        {
+            env.put(JMXConnector.CREDENTIALS, new String[]
+            {
+                jmxUser, jmxPassword
+            });
+        }
+        JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://" + server.getIp() + ":" + jmxPort + "/jmxrmi");
+        while (true)
+        {
+            int localPort = command.forwardLocalPort("127.0.0.1", jmxPort);
+            JmxTunnelSocketFactory.Tunnel attempt = new JmxTunnelSocketFactory.Tunnel(server.getIp(), localPort);
+            tunnel = attempt;
+            logger.debug("Connecting to JMX on: " + server.getIp() + " via local port: " + localPort);
+            factory.enter(attempt);
+            try
+            {
+                connector = JMXConnectorFactory.connect(url, env);
+                connection = connector.getMBeanServerConnection();
+                return;
+            } catch (IOException | RuntimeException e)
+            {
+                logOff();
+                //RMI may have wrapped or swallowed the conflict, so ask the tunnel
+                JmxAddressInUseException conflict = attempt.getConflict();
+                if (conflict == null)
+                {
+                    throw e;
+                }
+                //a holder that has already logged off was a stale pooled socket; try again now
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                if (!factory.awaitUnregistered(attempt.getConflictHolder(), remaining))
+                {
+                    throw conflict;
+                }
+                logger.debug("JMX on: " + conflict.getHolderHostName() + " logged off of: " + conflict.getAddress() + "; connecting to: " + server.getIp() + " again.");
+            } finally
+            {
+                factory.exit();
+            }
+        }
+    }
+
+    /**
+     * Closes the JMX connection and its tunnel. Does not log off the SSH
+     * DAO. Calling anything else afterwards reconnects.
+     */
+    public synchronized void logOff()
+    {
+        if (connector != null)
+        {
+            try
+            {
+                connector.close();
+            } catch (IOException | RuntimeException e)
+            {
+                logger.debug("Problem closing JMX connection to: " + server.getIp(), e);
+            }
+        }
+        if (tunnel != null)
+        {
+            try
+            {
+                JmxTunnelSocketFactory.getInstance().unregister(tunnel);
+            } catch (IOException e)
+            {//can't happen; we only get a tunnel once the factory is installed
+                logger.debug("Problem unregistering JMX tunnel to: " + server.getIp(), e);
+            }
+            command.removeLocalPortForward(tunnel.getLocalPort());
+        }
+        connector = null;
+        connection = null;
+        tunnel = null;
+    }
+
+    /**
+     * Gets the cluster's status, in the same layout as nodetool status.
+     *
+     * @return The status, as nodetool would print it.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the status can't be read over JMX.
+     */
+    @Override
+    public String getNodetoolStatus() throws ConnectionException, IOException
+    {
+        return formatStatus(getNodetoolServers());
+    }
+
+    /**
+     * Gets the cluster's status for a particular keyspace, in the same layout
+     * as nodetool status.
+     *
+     * @param keyspace The keyspace you want to get the status for.
+     * @return The status, as nodetool would print it; ownership is the
+     * effective ownership for the keyspace.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the status can't be read over JMX (including if
+     * there is no such keyspace).
+     */
+    @Override
+    public String getNodetoolStatus(String keyspace) throws ConnectionException, IOException
+    {
+        return formatStatus(getNodetoolServers(keyspace));
+    }
+
+    /**
+     * Gets the cluster's status, one NodetoolServer per node.
+     *
+     * @return Every node in the cluster, as this node sees it, grouped by
+     * datacenter.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the status can't be read over JMX.
+     */
+    @Override
+    public List<NodetoolServer> getNodetoolServers() throws ConnectionException, IOException
+    {
+        return readServers(null);
+    }
+
+    /**
+     * Gets the cluster's status for a particular keyspace, one
+     * NodetoolServer per node.
+     *
+     * @param keyspace The keyspace you want to get the status for.
+     * @return Every node in the cluster, as this node sees it, grouped by
+     * datacenter, with its effective ownership for the keyspace.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the status can't be read over JMX (including if
+     * there is no such keyspace).
+     */
+    @Override
+    public List<NodetoolServer> getNodetoolServers(String keyspace) throws ConnectionException, IOException
+    {
+        if (keyspace == null || keyspace.isEmpty())
+        {
+            throw new IllegalArgumentException("Keyspace cannot be null or empty");
+        }
+        return readServers(keyspace);
+    }
+
+    /**
+     * Gets the node's thread pool stats from its thread pool metrics.
+     *
+     * @return Each pool's stats, keyed by pool name.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the stats can't be read over JMX.
+     */
+    @Override
+    public Map<String, ThreadPoolStats> getThreadPoolStats() throws ConnectionException, IOException
+    {
+        return withConnection(new JmxOperation<Map<String, ThreadPoolStats>>()
+        {
+            @Override
+            public Map<String, ThreadPoolStats> run(MBeanServerConnection c) throws IOException, JMException
+            {
+                Map<String, long[]> values = new TreeMap<>();//active, pending, completed, blocked, all time blocked
+                for (ObjectName name : c.queryNames(THREAD_POOL_METRICS, null))
+                {
+                    int index = threadPoolMetricIndex(name.getKeyProperty("name"));
+                    String pool = name.getKeyProperty("scope");
+                    if (index < 0 || pool == null)
+                    {
+                        continue;
+                    }
+                    long[] pools = values.get(pool);
+                    if (pools == null)
+                    {
+                        pools = new long[5];
+                        values.put(pool, pools);
+                    }
+                    pools[index] = ((Number) c.getAttribute(name, index < 3 ? "Value" : "Count")).longValue();//gauges, then counters
+                }
+                Map<String, ThreadPoolStats> stats = new TreeMap<>();
+                for (Map.Entry<String, long[]> entry : values.entrySet())
+                {
+                    long[] v = entry.getValue();
+                    stats.put(entry.getKey(), new ThreadPoolStats(entry.getKey(), v[0], v[1], v[2], v[3], v[4]));
+                }
+                return stats;
+            }
+        });
+    }
+
+    /**
+     * Gets the node's stats for every table, from the tables' metrics MBeans.
+     *
+     * @return Each table's stats on this node, including its partition size
+     * histogram.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the stats can't be read over JMX.
+     */
+    @Override
+    public List<TableStats> getTableStats() throws ConnectionException, IOException
+    {
+        return readTableStats(null);
+    }
+
+    /**
+     * Gets the node's stats for every table in a keyspace, from the tables'
+     * metrics MBeans.
+     *
+     * @param keyspace The keyspace you want the table stats for.
+     * @return Each of the keyspace's tables' stats on this node; empty if
+     * there is no such keyspace.
+     * @throws ConnectionException If we can't reach the server.
+     * @throws IOException If the stats can't be read over JMX.
+     */
+    @Override
+    public List<TableStats> getTableStats(String keyspace) throws ConnectionException, IOException
+    {
+        if (keyspace == null || keyspace.isEmpty())
+        {
+            throw new IllegalArgumentException("Keyspace cannot be null or empty");
+        }
+        return readTableStats(keyspace);
+    }
+
+    /**
+     * Gets the token ranges of a keyspace and the nodes holding replicas of
+     * each. describeRingJMX hands back the same lines nodetool describering
+     * prints, so they're parsed the same way.
+     *
+     * @param keyspace The keyspace you want the ranges for.
+     * @return Each range of the ring, with its replicas.
+     * @throws ConnectionException If we can't open the tunnel.
+     * @throws IOException If the ranges can't be read (including if there is
+     * no such keyspace, or the partitioner's tokens aren't numeric).
+     */
+    @Override
+    public List<TokenRange> getTokenRanges(final String keyspace) throws ConnectionException, IOException
+    {
+        if (keyspace == null || keyspace.isEmpty())
+        {
+            throw new IllegalArgumentException("Keyspace cannot be null or empty");
+        }
+        List<String> lines = withConnection(new JmxOperation<List<String>>()
+        {
+            @Override
+            public List<String> run(MBeanServerConnection c) throws IOException, JMException
+            {
+                return list(c.invoke(STORAGE_SERVICE, "describeRingJMX", new Object[]
+                {
+                    keyspace
+                }, STRING_SIGNATURE));
+            }
+        });
+        StringBuilder output = new StringBuilder();
+        for (String line : lines)
+        {
+            output.append(line).append('\n');
+        }
+        return CassandraCommandDaoImpl.parseTokenRanges(output.toString(), server);
+    }
+
+    /**
+     * Reads table metrics. Tables are found by their LiveSSTableCount metric;
+     * pre 3.0 nodes call them ColumnFamily rather than Table. Metrics a
+     * version doesn't have are left at their defaults.
+     */
+    private List<TableStats> readTableStats(final String keyspace) throws ConnectionException, IOException
+    {
+        return withConnection(new JmxOperation<List<TableStats>>()
+        {
+            @Override
+            public List<TableStats> run(MBeanServerConnection c) throws IOException, JMException
+            {
+                String type = "Table";
+                Set<ObjectName> names = c.queryNames(tableMetricPattern(type, keyspace), null);
+                if (names.isEmpty())
+                {
+                    type = "ColumnFamily";
+                    names = c.queryNames(tableMetricPattern(type, keyspace), null);
+                }
+                Map<String, TableStats> tables = new TreeMap<>();
+                for (ObjectName name : names)
+                {
+                    String ks = name.getKeyProperty("keyspace");
+                    String table = name.getKeyProperty("scope");
+                    String prefix = "org.apache.cassandra.metrics:type=" + type + ",keyspace=" + ks + ",scope=" + table + ",name=";
+                    TableStats stats = new TableStats(ks, table);
+                    stats.setSSTableCount((int) longMetric(c, prefix + "LiveSSTableCount", "Value"));
+                    stats.setLiveDiskSpaceUsed(longMetric(c, prefix + "LiveDiskSpaceUsed", "Count"));
+                    stats.setPartitionCount(longMetric(c, prefix + "EstimatedPartitionCount", "Value"));
+                    stats.setMinPartitionBytes(longMetric(c, prefix + "MinPartitionSize", "Value"));
+                    stats.setMaxPartitionBytes(longMetric(c, prefix + "MaxPartitionSize", "Value"));
+                    stats.setMeanPartitionBytes(longMetric(c, prefix + "MeanPartitionSize", "Value"));
+                    long reads = longMetric(c, prefix + "ReadLatency", "Count");
+                    stats.setReadCount(reads);
+                    if (reads > 0)
+                    {
+                        stats.setReadLatencyMs(longMetric(c, prefix + "ReadTotalLatency", "Count") / 1000d / reads);//microseconds
+                    }
+                    long writes = longMetric(c, prefix + "WriteLatency", "Count");
+                    stats.setWriteCount(writes);
+                    if (writes > 0)
+                    {
+                        stats.setWriteLatencyMs(longMetric(c, prefix + "WriteTotalLatency", "Count") / 1000d / writes);
+                    }
+                    Object tombstones = metric(c, prefix + "TombstoneScannedHistogram", "Mean");
+                    if (tombstones instanceof Number)
+                    {
+                        stats.setMeanTombstonesPerSlice(((Number) tombstones).doubleValue());
+                        stats.setMaxTombstonesPerSlice(longMetric(c, prefix + "TombstoneScannedHistogram", "Max"));
+                    }
+                    Object histogram = metric(c, prefix + "EstimatedPartitionSizeHistogram", "Value");
+                    if (histogram instanceof long[])
+                    {
+                        stats.setPartitionSizeHistogram((long[]) histogram);
+                    }
+                    tables.put(ks + "." + table, stats);
+                }
+                return new ArrayList<>(tables.values());
+            }
+        });
+    }
+
+    /**
+     * Reads the ring from StorageService, the way nodetool status does.
+     */
+    private List<NodetoolServer> readServers(final String keyspace) throws ConnectionException, IOException
+    {
+        return withConnection(new JmxOperation<List<NodetoolServer>>()
+        {
+            @Override
+            public List<NodetoolServer> run(MBeanServerConnection c) throws IOException, JMException
+            {
+                Set<String> live = new LinkedHashSet<>(JmxCassandraCommandDaoImpl.<String>list(c.getAttribute(STORAGE_SERVICE, "LiveNodes")));
+                List<String> unreachable = list(c.getAttribute(STORAGE_SERVICE, "UnreachableNodes"));
+                Set<String> joining = new LinkedHashSet<>(JmxCassandraCommandDaoImpl.<String>list(c.getAttribute(STORAGE_SERVICE, "JoiningNodes")));
+                Set<String> leaving = new LinkedHashSet<>(JmxCassandraCommandDaoImpl.<String>list(c.getAttribute(STORAGE_SERVICE, "LeavingNodes")));
+                Set<String> moving = new LinkedHashSet<>(JmxCassandraCommandDaoImpl.<String>list(c.getAttribute(STORAGE_SERVICE, "MovingNodes")));
+                Map<String, String> loads = map(c.getAttribute(STORAGE_SERVICE, "LoadMap"));
+                Map<String, String> tokenToEndpoint = map(c.getAttribute(STORAGE_SERVICE, "TokenToEndpointMap"));
+                Map<String, String> hostIds = map(c.getAttribute(STORAGE_SERVICE, "EndpointToHostId"));
+                Map<String, Float> ownership = readOwnership(c, keyspace);
+
+                Map<String, Integer> tokens = new HashMap<>();
+                Set<String> endpoints = new LinkedHashSet<>();
+                for (String endpoint : tokenToEndpoint.values())
+                {
+                    Integer count = tokens.get(endpoint);
+                    tokens.put(endpoint, count == null ? 1 : count + 1);
+                    endpoints.add(endpoint);
+                }
+                endpoints.addAll(live);
+                endpoints.addAll(unreachable);
+                endpoints.addAll(joining);
+
+                Map<String, Map<String, NodetoolServer>> byDc = new TreeMap<>();
+                for (String endpoint : endpoints)
+                {
+                    String[] location = location(c, endpoint);
+                    NodetoolServer node = new NodetoolServer(endpoint, server.getClusterName());
+                    node.setDatacenter(location[0]);
+                    node.setRack(location[1]);
+                    node.setUp(live.contains(endpoint));
+                    node.setState(joining.contains(endpoint) ? NodetoolServer.State.JOINING
+                            : leaving.contains(endpoint) ? NodetoolServer.State.LEAVING
+                                    : moving.contains(endpoint) ? NodetoolServer.State.MOVING : NodetoolServer.State.NORMAL);
+                    String load = loads.get(endpoint);
+                    node.setLoadBytes(load == null ? -1 : NodetoolStatusParser.parseLoad(load));
+                    Integer count = tokens.get(endpoint);
+                    node.setTokens(count == null ? 0 : count);
+                    Float owns = ownership.get(endpoint);
+                    node.setOwnership(owns == null ? Double.NaN : owns * 100d);
+                    node.setHostId(hostIds.get(endpoint));
+                    Map<String, NodetoolServer> dcNodes = byDc.get(location[0]);
+                    if (dcNodes == null)
+                    {
+                        dcNodes = new TreeMap<>();
+                        byDc.put(location[0], dcNodes);
+                    }
+                    dcNodes.put(endpoint, node);
+                }
+                List<NodetoolServer> servers = new ArrayList<>(endpoints.size());
+                for (Map<String, NodetoolServer> dcNodes : byDc.values())
+                {
+                    servers.addAll(dcNodes.values());
+                }
+                return servers;
+            }
+        });
+    }
+
+    /**
+     * Reads each node's ownership as a fraction, keyed by address. Without a
+     * keyspace, nodetool falls back to raw token ownership when effective
+     * ownership can't be worked out (keyspaces with differing replication),
+     * and so do we.
+     */
+    private static Map<String, Float> readOwnership(MBeanServerConnection c, String keyspace) throws IOException, JMException
+    {
+        Map<?, Float> ownership;
+        try
+        {
+            ownership = map(c.invoke(STORAGE_SERVICE, "effectiveOwnership", new Object[]
+            {
+                keyspace
+            }, STRING_SIGNATURE));
+        } catch (MBeanException | RuntimeMBeanException e)
+        {
+            if (keyspace != null)
+            {
+                throw e;
+            }
+            ownership = map(c.getAttribute(STORAGE_SERVICE, "Ownership"));
+        }
+        Map<String, Float> byAddress = new HashMap<>();
+        for (Map.Entry<?, Float> entry : ownership.entrySet())
+        {
+            Object key = entry.getKey();
+            byAddress.put(key instanceof InetAddress ? ((InetAddress) key).getHostAddress() : String.valueOf(key), entry.getValue());
+        }
+        return byAddress;
+    }
+
+    /**
+     * Gets a node's datacenter and rack, asking the snitch the first time.
+     */
+    private String[] location(MBeanServerConnection c, String endpoint) throws IOException, JMException
+    {
+        String[] location = locations.get(endpoint);
+        if (location == null)
+        {
+            Object[] args =
+            {
+                endpoint
+            };
+            location = new String[]
+            {
+                (String) c.invoke(ENDPOINT_SNITCH_INFO, "getDatacenter", args, STRING_SIGNATURE),
+                (String) c.invoke(ENDPOINT_SNITCH_INFO, "getRack", args, STRING_SIGNATURE)
+            };
+            locations.put(endpoint, location);
+        }
+        return location;
+    }
+
+    /**
+     * Runs an operation on the JMX connection, connecting first if needed.
+     * If the connection has broken, it is reopened and the operation retried
+     * once.
+     */
+    private synchronized <T> T withConnection(JmxOperation<T> operation) throws ConnectionException, IOException
+    {
+        for (int attempt = 1;; attempt++)
+        {
+            connect();
+            JmxTunnelSocketFactory factory = JmxTunnelSocketFactory.getInstance();
+            factory.enter(tunnel);
+            try
+            {
+                return operation.run(connection);
+            } catch (JMException | RuntimeException e)
+            {
+                throw new IOException("Problem reading from JMX on: " + server.getIp(), e);
+            } catch (IOException e)
+            {
+                logOff();
+                if (attempt >= 2)
+                {
+                    throw e;
+                }
+                logger.debug("JMX connection to: " + server.getIp() + " broke; reconnecting.", e);
+            } finally
+            {
+                factory.exit();
+            }
+        }
+    }
+
+    /**
+     * Formats servers the way nodetool status prints them, so callers of the
+     * String methods can't tell the difference.
+     */
+    static String formatStatus(List<NodetoolServer> servers)
+    {
+        StringBuilder sb = new StringBuilder();
+        String datacenter = null;
+        for (NodetoolServer node : servers)
+        {
+            if (sb.length() == 0 || !Objects.equals(node.getDatacenter(), datacenter))
+            {
+                datacenter = node.getDatacenter();
+                String header = "Datacenter: " + datacenter;
+                sb.append(header).append('\n');
+                for (int i = 0; i < header.length(); i++)
+                {
+                    sb.append('=');
+                }
+                sb.append("\nStatus=Up/Down\n|/ State=Normal/Leaving/Joining/Moving\n");
+                sb.append(String.format(Locale.ROOT, "%-4s%-16s%-12s%-8s%-18s%-38s%s\n", "--", "Address", "Load", "Tokens", "Owns (effective)", "Host ID", "Rack"));
+            }
+            String owns = Double.isNaN(node.getOwnership()) ? "?" : String.format(Locale.ROOT, "%.1f%%", node.getOwnership());
+            sb.append(String.format(Locale.ROOT, "%-4s%-16s%-12s%-8d%-18s%-38s%s\n", node.getStatusCode(), node.getIp(), formatLoad(node.getLoadBytes()),
+                    node.getTokens(), owns, node.getHostId() == null ? "?" : node.getHostId(), node.getRack()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats a load in bytes the way nodetool 4.x does (1024 based units).
+     */
+    static String formatLoad(long bytes)
+    {
+        if (bytes < 0)
+        {
+            return "?";
+        }
+        if (bytes < 1024)
+        {
+            return bytes + " bytes";
+        }
+        String[] units =
+        {
+            "KiB", "MiB", "GiB", "TiB", "PiB"
+        };
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1)
+        {
+            value /= 1024;
+            unit++;
+        }
+        return String.format(Locale.ROOT, "%.2f %s", value, units[unit]);
+    }
+
+    /**
+     * Pattern matching one metric of every table (in a keyspace). Keyspace
+     * names are word characters only, so need no quoting.
+     */
+    private static ObjectName tableMetricPattern(String type, String keyspace) throws MalformedObjectNameException
+    {
+        return new ObjectName("org.apache.cassandra.metrics:type=" + type + (keyspace == null ? "" : ",keyspace=" + keyspace)
+                + ",name=LiveSSTableCount,*");
+    }
+
+    /**
+     * Reads a metric's attribute; null if this version doesn't have the
+     * metric.
+     */
+    private static Object metric(MBeanServerConnection c, String name, String attribute) throws IOException, JMException
+    {
+        try
+        {
+            return c.getAttribute(new ObjectName(name), attribute);
+        } catch (InstanceNotFoundException | AttributeNotFoundException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a numeric metric; 0 if this version doesn't have it.
+     */
+    private static long longMetric(MBeanServerConnection c, String name, String attribute) throws IOException, JMException
+    {
+        Object value = metric(c, name, attribute);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * Index of a thread pool metric in the stats array; -1 if not one we
+     * report.
+     */
+    private static int threadPoolMetricIndex(String metric)
+    {
+        if (metric == null)
+        {
+            return -1;
+        }
+        switch (metric)
+        {
+            case "ActiveTasks":
+                return 0;
+            case "PendingTasks":
+                return 1;
+            case "CompletedTasks":
+                return 2;
+            case "CurrentlyBlockedTasks":
+                return 3;
+            case "TotalBlockedTasks":
+                return 4;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Casts an attribute that is a list; null becomes empty.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> list(Object attribute)
+    {
+        return attribute == null ? new ArrayList<T>() : new ArrayList<>((Collection<T>) attribute);
+    }
+
+    /**
+     * Casts an attribute that is a map; null becomes empty.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K, V> Map<K, V> map(Object attribute)
+    {
+        return attribute == null ? new HashMap<K, V>() : (Map<K, V>) attribute;
+    }
+
+    /**
+     * Builds an ObjectName from a constant.
+     */
+    private static ObjectName objectName(String name)
+    {
+        try
+        {
+            return new ObjectName(name);
+        } catch (MalformedObjectNameException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Something to run against the JMX connection.
+     */
+    private interface JmxOperation<T>
+    {
+
+        /**
+         * Runs the operation.
+         *
+         * @param c The JMX connection.
+         * @return The result.
+         * @throws IOException If the connection fails.
+         * @throws JMException If an MBean or attribute is missing or fails.
+         */
+        T run(MBeanServerConnection c) throws IOException, JMException;
+    }
+}
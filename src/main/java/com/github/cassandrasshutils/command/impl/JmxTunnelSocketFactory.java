@@ -0,0 +1,469 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.exceptions.JmxAddressInUseException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMISocketFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * RMI socket factory that sends JMX connections through SSH port forwards.
+ *
+ * JMX over RMI makes two connections: one to the registry at the address
+ * we give it, and then one to wherever the server's stub says the server is
+ * (often the node's own hostname, or 127.0.0.1, on the JMX port), which a
+ * tunnel knows nothing about. RMI only lets those connections be redirected
+ * through a process wide socket factory, so this factory is installed once
+ * and routes by address: while a thread is working through a tunnel (see
+ * enter), any address it connects to is routed to that tunnel's local port,
+ * and remembered so RMI's background threads (lease renewals, etc.) reach
+ * the same place. Addresses no tunnel has claimed are connected to as
+ * normal.
+ *
+ * Two nodes whose stubs give the same address (eg: both say 127.0.0.1:7199,
+ * as Cassandra's default local only JMX does) can't be told apart: RMI keeps
+ * its connections, and its objects' leases, by address for the whole
+ * process. So only one tunnel may hold an address at a time. A thread
+ * connecting to an address another tunnel holds is refused straight away
+ * with a JmxAddressInUseException, rather than silently reading from the
+ * other node, and so is a thread working through one tunnel that RMI hands a
+ * pooled socket made through another. Either way the refused tunnel records
+ * the conflict (see Tunnel.getConflict), since RMI may wrap or swallow the
+ * exception; waiting for the holder to be unregistered (awaitUnregistered)
+ * and trying again is up to the caller. RMI can also hand out a pooled
+ * socket whose tunnel has already been unregistered; that is refused the
+ * same way, and the caller can try again straight away. Unregistering a
+ * tunnel gives up its addresses and closes every socket made through it.
+ *
+ * @author Jeffrey DeYoung
+ */
+class JmxTunnelSocketFactory extends RMISocketFactory
+{
+
+    /**
+     * The installed factory; null until first needed. Guarded by the class.
+     */
+    private static JmxTunnelSocketFactory installed;
+
+    /**
+     * Factory used for anything that isn't tunnelled.
+     */
+    private final RMISocketFactory delegate;
+
+    /**
+     * Tunnel each claimed address ("host:port") is routed to.
+     */
+    private final ConcurrentMap<String, Tunnel> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Tunnel the current thread is working through; null for none.
+     */
+    private final ThreadLocal<Tunnel> current = new ThreadLocal<>();
+
+    /**
+     * Notified whenever a tunnel is unregistered, for threads waiting to
+     * claim an address.
+     */
+    private final Object released = new Object();
+
+    /**
+     * Constructor.
+     */
+    private JmxTunnelSocketFactory(RMISocketFactory delegate)
+    {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Gets the factory, installing it as RMI's socket factory the first time.
+     *
+     * @return The installed factory.
+     * @throws IOException If some other RMI socket factory is already
+     * installed; RMI only allows one.
+     */
+    static synchronized JmxTunnelSocketFactory getInstance() throws IOException
+    {
+        if (installed == null)
+        {
+            if (RMISocketFactory.getSocketFactory() != null)
+            {
+                throw new IOException("Another RMI socket factory is installed; JMX connections can't be tunnelled.");
+            }
+            JmxTunnelSocketFactory factory = new JmxTunnelSocketFactory(RMISocketFactory.getDefaultSocketFactory());
+            RMISocketFactory.setSocketFactory(factory);
+            installed = factory;
+        }
+        return installed;
+    }
+
+    /**
+     * Marks the current thread as working through a tunnel, until exit is
+     * called. Calls must be paired, in a finally block.
+     *
+     * @param tunnel Tunnel to route the thread's new connections through.
+     */
+    void enter(Tunnel tunnel)
+    {
+        current.set(tunnel);
+    }
+
+    /**
+     * Marks the current thread as no longer working through a tunnel.
+     */
+    void exit()
+    {
+        current.remove();
+    }
+
+    /**
+     * Forgets every address routed to the tunnel, once it is closed, and
+     * closes the sockets made through it.
+     *
+     * @param tunnel The closed tunnel.
+     */
+    void unregister(Tunnel tunnel)
+    {
+        Iterator<Map.Entry<String, Tunnel>> it = routes.entrySet().iterator();
+        while (it.hasNext())
+        {
+            if (it.next().getValue() == tunnel)
+            {
+                it.remove();
+            }
+        }
+        tunnel.closeSockets();//only marked closed once its addresses are free
+        synchronized (released)
+        {
+            released.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for a tunnel to be unregistered.
+     *
+     * @param tunnel Tunnel to wait for.
+     * @param timeoutMs Longest to wait, in milliseconds.
+     * @return True if the tunnel has been unregistered, false if we timed
+     * out.
+     * @throws InterruptedIOException If we are interrupted while waiting.
+     */
+    boolean awaitUnregistered(Tunnel tunnel, long timeoutMs) throws InterruptedIOException
+    {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (released)
+        {
+            while (!tunnel.isClosed())
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    return false;
+                }
+                try
+                {
+                    released.wait(remaining);
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for JMX tunnel to " + tunnel.getName() + " to close");
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Creates a client socket, through a tunnel if the address is routed to
+     * one (or the current thread is working through one).
+     *
+     * @param host Host RMI wants to connect to.
+     * @param port Port RMI wants to connect to.
+     * @return The connected socket.
+     * @throws IOException If the address is claimed by a different tunnel
+     * than the thread's (a JmxAddressInUseException), or the connection
+     * fails.
+     */
+    @Override
+    public Socket createSocket(String host, int port) throws IOException
+    {
+        String address = host + ":" + port;
+        Tunnel ours = current.get();
+        Tunnel tunnel = ours == null ? routes.get(address) : claim(address, ours);
+        if (tunnel != null)
+        {
+            TunnelSocket socket = new TunnelSocket(tunnel, address);
+            if (!tunnel.track(socket))
+            {
+                socket.close();
+                throw new IOException("JMX tunnel to " + tunnel.getName() + " is closed.");
+            }
+            return socket;
+        }
+        return delegate.createSocket(host, port);
+    }
+
+    /**
+     * Claims an address for a tunnel, unless another tunnel has it.
+     *
+     * @return The tunnel, once it has the address.
+     * @throws JmxAddressInUseException If another tunnel has the address; the
+     * conflict is recorded on our tunnel too.
+     */
+    private Tunnel claim(String address, Tunnel ours) throws JmxAddressInUseException
+    {
+        Tunnel claimed = routes.putIfAbsent(address, ours);
+        if (claimed != null && claimed != ours)
+        {
+            throw ours.conflict(address, claimed);
+        }
+        return ours;
+    }
+
+    /**
+     * Creates a server socket; never tunnelled.
+     *
+     * @param port Port to listen on.
+     * @return The server socket.
+     * @throws IOException If the port can't be listened on.
+     */
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException
+    {
+        return delegate.createServerSocket(port);
+    }
+
+    /**
+     * Socket through a tunnel that can only be used by RMI's own threads or
+     * threads working through the same tunnel.
+     */
+    private class TunnelSocket extends Socket
+    {
+
+        private final Tunnel tunnel;
+        private final String address;
+
+        TunnelSocket(Tunnel tunnel, String address) throws IOException
+        {
+            super("127.0.0.1", tunnel.getLocalPort());
+            this.tunnel = tunnel;
+            this.address = address;
+        }
+
+        /**
+         * Refuses the current thread if it is working through another
+         * tunnel, recording the conflict on that tunnel.
+         */
+        private void check() throws IOException
+        {
+            Tunnel ours = current.get();
+            if (ours != null && ours != tunnel)
+            {
+                throw ours.conflict(address, tunnel);
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            return new FilterInputStream(super.getInputStream())
+            {
+                @Override
+                public int read() throws IOException
+                {
+                    check();
+                    return super.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException
+                {
+                    check();
+                    return super.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException
+        {
+            return new FilterOutputStream(super.getOutputStream())
+            {
+                @Override
+                public void write(int b) throws IOException
+                {
+                    check();
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException
+                {
+                    check();
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void flush() throws IOException
+                {
+                    check();
+                    out.flush();
+                }
+            };
+        }
+    }
+
+    /**
+     * A local port forward to one node's JMX port.
+     */
+    static class Tunnel
+    {
+
+        private final String name;
+        private final int localPort;
+        private final List<Socket> sockets = new ArrayList<>();
+        private volatile boolean closed = false;
+        private JmxAddressInUseException conflict;
+        private Tunnel conflictHolder;
+
+        /**
+         * Constructor.
+         *
+         * @param name Name of the node, for messages.
+         * @param localPort Local port that forwards to the node's JMX port.
+         */
+        Tunnel(String name, int localPort)
+        {
+            this.name = name;
+            this.localPort = localPort;
+        }
+
+        /**
+         * Records that the tunnel was refused an address another tunnel
+         * holds. The first conflict is kept, unless its holder has since
+         * been unregistered (a stale socket RMI had pooled).
+         *
+         * @param address Address that was refused.
+         * @param holder Tunnel that holds it.
+         * @return The exception to throw.
+         */
+        synchronized JmxAddressInUseException conflict(String address, Tunnel holder)
+        {
+            JmxAddressInUseException e = new JmxAddressInUseException(name, address, holder.getName());
+            if (conflict == null || conflictHolder.isClosed())
+            {
+                conflict = e;
+                conflictHolder = holder;
+            }
+            return e;
+        }
+
+        /**
+         * The first time the tunnel was refused an address another tunnel
+         * holds; null if it hasn't been.
+         *
+         * @return The conflict, or null.
+         */
+        synchronized JmxAddressInUseException getConflict()
+        {
+            return conflict;
+        }
+
+        /**
+         * Tunnel that held the address in the first conflict; null if there
+         * hasn't been one.
+         *
+         * @return The holder, or null.
+         */
+        synchronized Tunnel getConflictHolder()
+        {
+            return conflictHolder;
+        }
+
+        /**
+         * Whether the tunnel has been unregistered.
+         *
+         * @return True once closed.
+         */
+        boolean isClosed()
+        {
+            return closed;
+        }
+
+        /**
+         * Remembers a socket made through the tunnel, so it is closed with
+         * it.
+         *
+         * @return False if the tunnel is already closed.
+         */
+        synchronized boolean track(Socket socket)
+        {
+            if (closed)
+            {
+                return false;
+            }
+            sockets.add(socket);
+            return true;
+        }
+
+        /**
+         * Closes every socket opened through the tunnel, and refuses to open
+         * more.
+         */
+        void closeSockets()
+        {
+            List<Socket> open;
+            synchronized (this)
+            {
+                closed = true;
+                open = new ArrayList<>(sockets);
+                sockets.clear();
+            }
+            for (Socket socket : open)
+            {
+                try
+                {
+                    socket.close();
+                } catch (IOException e)
+                {
+                    //closing anyway
+                }
+            }
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        int getLocalPort()
+        {
+            return localPort;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.LineHandler;
+import java.io.IOException;
+
+/**
+ * Appendable that splits whatever is appended to it into lines and hands
+ * each complete line to a LineHandler. Only the current partial line is held
+ * in memory. Handles \n, \r\n and lone \r line terminators.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class LineSplitter implements Appendable
+{
+
+    /**
+     * Handler that receives each line.
+     */
+    private final LineHandler handler;
+
+    /**
+     * Current (incomplete) line.
+     */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * True if the last character we saw was a carriage return; used to treat
+     * \r\n as a single terminator.
+     */
+    private boolean lastWasCarriageReturn = false;
+
+    /**
+     * Number of lines that have been handed to the handler.
+     */
+    private long lineCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param handler Handler that receives each line.
+     */
+    public LineSplitter(LineHandler handler)
+    {
+        if (handler == null)
+        {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+        this.handler = handler;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException
+    {
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException
+    {
+        for (int i = start; i < end; i++)
+        {
+            append(csq.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException
+    {
+        if (c == '\n')
+        {
+            if (!lastWasCarriageReturn)
+            {
+                emit();
+            }
+            lastWasCarriageReturn = false;
+        } else if (c == '\r')
+        {
+            emit();
+            lastWasCarriageReturn = true;
+        } else
+        {
+            line.append(c);
+            lastWasCarriageReturn = false;
+        }
+        return this;
+    }
+
+    /**
+     * Hands any trailing partial line (output that didn't end with a line
+     * terminator) to the handler. Call once the output has been fully read.
+     *
+     * @throws IOException If the handler throws.
+     */
+    public void finish() throws IOException
+    {
+        if (line.length() > 0)
+        {
+            emit();
+        }
+    }
+
+    /**
+     * Number of lines that have been handed to the handler.
+     *
+     * @return The number of lines handled so far.
+     */
+    public long getLineCount()
+    {
+        return lineCount;
+    }
+
+    /**
+     * Hands the current line to the handler and resets it.
+     */
+    private void emit() throws IOException
+    {
+        String s = line.toString();
+        line.setLength(0);
+        lineCount++;
+        handler.handleLine(s);
+    }
+}
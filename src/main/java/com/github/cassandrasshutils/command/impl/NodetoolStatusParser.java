@@ -0,0 +1,447 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.domain.NodetoolServer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the output of <code>nodetool status</code> into NodetoolServers.
+ *
+ * The output is walked once, character by character, without splitting it
+ * into lines or fields and without regular expressions; the only objects
+ * created per node are the NodetoolServer and its address and host ID
+ * strings (datacenter and rack names are shared between nodes). That keeps a
+ * large cluster's status cheap enough to poll often.
+ *
+ * The column layout is taken from each datacenter's header line, so both the
+ * vnode layout (Tokens, then Owns) and the single token layout (Owns, Host
+ * ID, then Token) are understood. Loads are converted to bytes whether
+ * nodetool printed them in KB/MB/GB (pre 4.0) or KiB/MiB/GiB units; both are
+ * powers of 1024.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class NodetoolStatusParser
+{
+
+    private static final int ADDRESS = 0;
+    private static final int LOAD = 1;
+    private static final int TOKENS = 2;
+    private static final int TOKEN = 3;
+    private static final int OWNS = 4;
+    private static final int HOST_ID = 5;
+    private static final int RACK = 6;
+
+    /**
+     * Most columns a header can have.
+     */
+    private static final int MAX_COLUMNS = 7;
+
+    /**
+     * Column layout used until a header line is seen: the vnode layout.
+     */
+    private static final int[] DEFAULT_COLUMNS =
+    {
+        ADDRESS, LOAD, TOKENS, OWNS, HOST_ID, RACK
+    };
+
+    /**
+     * Line that names the datacenter the following nodes are in.
+     */
+    private static final String DATACENTER_PREFIX = "Datacenter:";
+
+    /**
+     * Utility class; no instances.
+     */
+    private NodetoolStatusParser()
+    {
+    }
+
+    /**
+     * Parses the output of nodetool status.
+     *
+     * @param output Output of nodetool status (with or without a keyspace).
+     * @param clusterName Cluster name to give each server.
+     * @return Each node, in the order nodetool listed them. Lines that aren't
+     * nodes (headers, legends, notes) are skipped, so output that isn't a
+     * status at all gives an empty list.
+     */
+    public static List<NodetoolServer> parse(String output, String clusterName)
+    {
+        List<NodetoolServer> servers = new ArrayList<>();
+        List<String> names = new ArrayList<>();//datacenter and rack names, shared between nodes
+        int[] columns = new int[MAX_COLUMNS];
+        System.arraycopy(DEFAULT_COLUMNS, 0, columns, 0, DEFAULT_COLUMNS.length);
+        int columnCount = DEFAULT_COLUMNS.length;
+        String datacenter = null;
+        Cursor cursor = new Cursor(output);
+        int length = output.length();
+        int pos = 0;
+        while (pos < length)
+        {
+            int lineEnd = output.indexOf('\n', pos);
+            if (lineEnd < 0)
+            {
+                lineEnd = length;
+            }
+            cursor.reset(pos, lineEnd);
+            if (cursor.next())
+            {
+                if (output.startsWith(DATACENTER_PREFIX, cursor.start))
+                {
+                    cursor.reset(cursor.start + DATACENTER_PREFIX.length(), lineEnd);
+                    datacenter = cursor.rest() ? share(output, cursor.start, cursor.end, names) : null;
+                } else if (output.startsWith("--", cursor.start))
+                {
+                    columnCount = parseHeader(cursor, columns);
+                } else if (isStatusCode(output, cursor))
+                {
+                    NodetoolServer server = parseNode(cursor, columns, columnCount, clusterName, names);
+                    server.setDatacenter(datacenter);
+                    servers.add(server);
+                }
+            }
+            pos = lineEnd + 1;
+        }
+        return servers;
+    }
+
+    /**
+     * Parses a load as nodetool (and StorageService's LoadMap) prints it, eg:
+     * "102.5 KB", "69.08 KiB" or "14 bytes".
+     *
+     * @param load The load.
+     * @return The load in bytes, or -1 if it is unknown ("?") or isn't a
+     * load.
+     */
+    public static long parseLoad(String load)
+    {
+        Cursor cursor = new Cursor(load);
+        cursor.reset(0, load.length());
+        if (!cursor.next())
+        {
+            return -1;
+        }
+        double amount = parseNumber(load, cursor.start, cursor.end);
+        if (Double.isNaN(amount) || !cursor.next())
+        {
+            return -1;
+        }
+        return (long) (amount * unitMultiplier(load.charAt(cursor.start)));
+    }
+
+    /**
+     * Reads the column layout from a header line (the one starting with
+     * "--"), which the cursor is on.
+     *
+     * @return The number of columns.
+     */
+    private static int parseHeader(Cursor cursor, int[] columns)
+    {
+        int count = 0;
+        while (cursor.next() && count < MAX_COLUMNS)
+        {
+            int column = -1;
+            if (cursor.is("Address"))
+            {
+                column = ADDRESS;
+            } else if (cursor.is("Load"))
+            {
+                column = LOAD;
+            } else if (cursor.is("Tokens"))
+            {
+                column = TOKENS;
+            } else if (cursor.is("Token"))
+            {
+                column = TOKEN;
+            } else if (cursor.is("Owns"))
+            {
+                column = OWNS;
+            } else if (cursor.is("Host"))
+            {
+                column = HOST_ID;
+            } else if (cursor.is("Rack"))
+            {
+                column = RACK;
+            }
+            if (column >= 0)//"(effective)", "ID" and anything new are not columns of their own
+            {
+                columns[count++] = column;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * True if the cursor's token is a status code: U or D, then N, L, J or
+     * M.
+     */
+    private static boolean isStatusCode(String output, Cursor cursor)
+    {
+        if (cursor.end - cursor.start != 2)
+        {
+            return false;
+        }
+        char status = output.charAt(cursor.start);
+        return (status == 'U' || status == 'D') && NodetoolServer.State.fromCode(output.charAt(cursor.start + 1)) != null;
+    }
+
+    /**
+     * Parses a node's line; the cursor is on its status code.
+     */
+    private static NodetoolServer parseNode(Cursor cursor, int[] columns, int columnCount, String clusterName, List<String> names)
+    {
+        String s = cursor.s;
+        boolean up = s.charAt(cursor.start) == 'U';
+        NodetoolServer.State state = NodetoolServer.State.fromCode(s.charAt(cursor.start + 1));
+        String address = null;
+        long loadBytes = -1;
+        int tokens = 0;
+        double ownership = Double.NaN;
+        String hostId = null;
+        String rack = null;
+        for (int i = 0; i < columnCount; i++)
+        {
+            if (columns[i] == RACK)
+            {
+                rack = cursor.rest() ? share(s, cursor.start, cursor.end, names) : null;
+                break;
+            }
+            if (!cursor.next())
+            {
+                break;
+            }
+            switch (columns[i])
+            {
+                case ADDRESS:
+                    address = s.substring(cursor.start, cursor.end);
+                    break;
+                case LOAD:
+                    double amount = parseNumber(s, cursor.start, cursor.end);
+                    if (!Double.isNaN(amount))//"?"
+                    {
+                        if (cursor.next())
+                        {
+                            loadBytes = (long) (amount * unitMultiplier(s.charAt(cursor.start)));
+                        }
+                    }
+                    break;
+                case TOKENS:
+                    tokens = (int) parseNumber(s, cursor.start, cursor.end);
+                    break;
+                case TOKEN:
+                    tokens = 1;
+                    break;
+                case OWNS:
+                    ownership = parseNumber(s, cursor.start, cursor.end);
+                    break;
+                case HOST_ID:
+                    hostId = cursor.is("?") ? null : s.substring(cursor.start, cursor.end);
+                    break;
+                default:
+                    break;
+            }
+        }
+        NodetoolServer server = new NodetoolServer(address, clusterName);
+        server.setUp(up);
+        server.setState(state);
+        server.setLoadBytes(loadBytes);
+        server.setTokens(tokens);
+        server.setOwnership(ownership);
+        server.setHostId(hostId);
+        server.setRack(rack);
+        return server;
+    }
+
+    /**
+     * Bytes per unit, from the unit's first letter: (b)ytes, K, M, G, T, P.
+     */
+    private static double unitMultiplier(char unit)
+    {
+        switch (unit)
+        {
+            case 'K':
+                return 1024d;
+            case 'M':
+                return 1024d * 1024;
+            case 'G':
+                return 1024d * 1024 * 1024;
+            case 'T':
+                return 1024d * 1024 * 1024 * 1024;
+            case 'P':
+                return 1024d * 1024 * 1024 * 1024 * 1024;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Parses a decimal number (either . or , as the decimal point, as
+     * nodetool follows the node's locale) from the start of the range,
+     * ignoring anything after it (eg: a % sign).
+     *
+     * @return The number, or NaN if the range doesn't start with one.
+     */
+    private static double parseNumber(String s, int start, int end)
+    {
+        long whole = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean negative = false;
+        boolean digits = false;
+        boolean inFraction = false;
+        int i = start;
+        if (i < end && s.charAt(i) == '-')
+        {
+            negative = true;
+            i++;
+        }
+        for (; i < end; i++)
+        {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                digits = true;
+                if (inFraction)
+                {
+                    if (scale < 1000000000L)
+                    {
+                        fraction = fraction * 10 + (c - '0');
+                        scale *= 10;
+                    }
+                } else
+                {
+                    whole = whole * 10 + (c - '0');
+                }
+            } else if ((c == '.' || c == ',') && !inFraction)
+            {
+                inFraction = true;
+            } else
+            {
+                break;
+            }
+        }
+        if (!digits)
+        {
+            return Double.NaN;
+        }
+        double value = whole + (double) fraction / scale;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns a string for the range, reusing one we've already made if it
+     * has the same characters. There are only a handful of datacenter and
+     * rack names, so a list is fine.
+     */
+    private static String share(String s, int start, int end, List<String> names)
+    {
+        int length = end - start;
+        for (int i = 0; i < names.size(); i++)
+        {
+            String name = names.get(i);
+            if (name.length() == length && s.regionMatches(start, name, 0, length))
+            {
+                return name;
+            }
+        }
+        String name = s.substring(start, end);
+        names.add(name);
+        return name;
+    }
+
+    /**
+     * Walks the whitespace separated tokens of one line of the output.
+     */
+    private static class Cursor
+    {
+
+        final String s;
+        int pos;
+        int lineEnd;
+        int start;
+        int end;
+
+        Cursor(String s)
+        {
+            this.s = s;
+        }
+
+        /**
+         * Moves to the start of a line (or part of one).
+         */
+        void reset(int from, int lineEnd)
+        {
+            this.pos = from;
+            this.lineEnd = lineEnd;
+        }
+
+        /**
+         * Moves to the next token.
+         *
+         * @return False if the line has no more tokens.
+         */
+        boolean next()
+        {
+            while (pos < lineEnd && Character.isWhitespace(s.charAt(pos)))
+            {
+                pos++;
+            }
+            if (pos >= lineEnd)
+            {
+                return false;
+            }
+            start = pos;
+            while (pos < lineEnd && !Character.isWhitespace(s.charAt(pos)))
+            {
+                pos++;
+            }
+            end = pos;
+            return true;
+        }
+
+        /**
+         * Selects the rest of the line, trimmed.
+         *
+         * @return False if the rest of the line is blank.
+         */
+        boolean rest()
+        {
+            if (!next())
+            {
+                return false;
+            }
+            int last = lineEnd;
+            while (last > start && Character.isWhitespace(s.charAt(last - 1)))
+            {
+                last--;
+            }
+            end = last;
+            pos = lineEnd;
+            return true;
+        }
+
+        /**
+         * True if the current token is exactly the word.
+         */
+        boolean is(String word)
+        {
+            return end - start == word.length() && s.startsWith(word, start);
+        }
+    }
+}
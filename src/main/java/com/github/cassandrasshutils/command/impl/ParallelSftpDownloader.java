@@ -0,0 +1,371 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.domain.TransferProgress.Direction;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import com.github.cassandrasshutils.functions.ClusterCommandExecutor;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pulls a single large file by splitting it into fixed size chunks and
+ * pulling the chunks concurrently, each worker over its own SFTP channel. A
+ * single SFTP stream is limited by the channel window and round trip time;
+ * several streams keep the link busy.
+ *
+ * Chunks are written straight to their place in the local file with
+ * positional FileChannel writes, and hashed (MD5) as they arrive. Once every
+ * chunk is down, the remote side hashes the same byte ranges in one command
+ * and any chunk whose hashes don't match is pulled again.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ParallelSftpDownloader
+{
+
+    /**
+     * Default chunk size. Large enough that per-chunk overhead (a seek on each
+     * end and a hash line) is negligible, small enough to balance the work
+     * across channels.
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Number of times a chunk is pulled before we give up on it.
+     */
+    public static final int MAX_CHUNK_ATTEMPTS = 3;
+
+    /**
+     * Size of the buffer each worker reads into.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * DAO whose session the channels are opened on.
+     */
+    private final SSHCommandDaoImpl dao;
+
+    /**
+     * Number of chunks pulled at once.
+     */
+    private final int parallelism;
+
+    /**
+     * Size of each chunk, in bytes.
+     */
+    private final long chunkSize;
+
+    /**
+     * Constructor that uses the default chunk size.
+     *
+     * @param dao DAO whose session the channels are opened on; must be
+     * connected.
+     * @param parallelism Number of chunks pulled at once.
+     */
+    public ParallelSftpDownloader(SSHCommandDaoImpl dao, int parallelism)
+    {
+        this(dao, parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param dao DAO whose session the channels are opened on; must be
+     * connected.
+     * @param parallelism Number of chunks pulled at once.
+     * @param chunkSize Size of each chunk, in bytes.
+     */
+    public ParallelSftpDownloader(SSHCommandDaoImpl dao, int parallelism, long chunkSize)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (chunkSize < BUFFER_SIZE)
+        {
+            throw new IllegalArgumentException("Chunk size must be at least " + BUFFER_SIZE + " bytes");
+        }
+        this.dao = dao;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Pulls the remote file into the local file.
+     *
+     * @param remoteFile File path on the remote machine to pull.
+     * @param localFile Local file to write to. Overwritten if it exists.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem writing the file, or a chunk
+     * still doesn't match after MAX_CHUNK_ATTEMPTS tries.
+     */
+    public void download(String remoteFile, File localFile) throws ConnectionException, IOException
+    {
+        long start = System.currentTimeMillis();
+        long size = dao.statRemoteFile(remoteFile).getSize();
+        int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+        logger.debug("Pulling: '" + remoteFile + "' (" + size + " bytes) from: " + dao.getHost() + " in " + chunkCount
+                + " chunks, " + parallelism + " at a time.");
+        try (RandomAccessFile raf = new RandomAccessFile(localFile, "rw"))
+        {
+            raf.setLength(size);
+            FileChannel fc = raf.getChannel();
+            String[] localHashes = new String[chunkCount];
+            List<Integer> pending = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++)
+            {
+                pending.add(i);
+            }
+            for (int attempt = 1; !pending.isEmpty(); attempt++)
+            {
+                if (attempt > MAX_CHUNK_ATTEMPTS)
+                {
+                    throw new IOException("File did not arrive intact from: " + dao.getHost() + ": '" + remoteFile + "'; "
+                            + pending.size() + " chunks still don't match after " + MAX_CHUNK_ATTEMPTS + " attempts.");
+                }
+                if (attempt > 1)
+                {
+                    logger.warn(pending.size() + " chunks of '" + remoteFile + "' from: " + dao.getHost() + " did not match; pulling them again.");
+                }
+                pullChunks(remoteFile, size, fc, pending, localHashes);
+                fc.force(false);
+                pending = findMismatchedChunks(remoteFile, pending, localHashes);
+            }
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        logger.debug("Pulled and verified: '" + remoteFile + "' from: " + dao.getHost() + " in " + elapsed + "ms ("
+                + String.format("%.1f", (size / (1024.0 * 1024.0)) / (elapsed / 1000.0)) + " MB/s)");
+    }
+
+    /**
+     * Pulls the listed chunks, spread over up to parallelism workers, each of
+     * which has its own SFTP channel.
+     */
+    private void pullChunks(final String remoteFile, final long size, final FileChannel fc, List<Integer> chunks, final String[] localHashes) throws ConnectionException, IOException
+    {
+        final Queue<Integer> queue = new ConcurrentLinkedQueue<>(chunks);
+        int workerCount = Math.min(parallelism, chunks.size());
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, new ClusterCommandExecutor.NamedDaemonThreadFactory("sftp-chunk-" + dao.getHost()));
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<>(workerCount);
+            for (int i = 0; i < workerCount; i++)
+            {
+                futures.add(workers.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        return dao.withNewSftpChannel(new SSHCommandDaoImpl.SftpCallable<Void>()
+                        {
+                            @Override
+                            public Void call(ChannelSftp c) throws SftpException, IOException
+                            {
+                                byte[] buffer = new byte[BUFFER_SIZE];
+                                Integer chunk;
+                                while ((chunk = queue.poll()) != null)
+                                {
+                                    long offset = chunk * chunkSize;
+                                    long length = Math.min(chunkSize, size - offset);
+                                    localHashes[chunk] = pullChunk(c, remoteFile, fc, offset, length, buffer, dao.newProgressMonitor(Direction.PULL));
+                                }
+                                return null;
+                            }
+                        });
+                    }
+                }));
+            }
+            for (Future<Void> future : futures)
+            {
+                waitFor(future);
+            }
+        } finally
+        {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Pulls a single chunk over the channel and writes it into place,
+     * reporting it to the monitor as a transfer of its own.
+     *
+     * @return The MD5 (hex) of the bytes that were pulled.
+     */
+    private static String pullChunk(ChannelSftp c, String remoteFile, FileChannel fc, long offset, long length, byte[] buffer, SftpProgressMonitor monitor) throws SftpException, IOException
+    {
+        MessageDigest md5 = newMd5();
+        monitor.init(SftpProgressMonitor.GET, remoteFile, "bytes [" + offset + ", " + (offset + length) + ")", length);
+        try (InputStream in = c.get(remoteFile, null, offset))
+        {
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0)
+            {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0)
+                {
+                    throw new EOFException("Remote file ended early at offset " + position + "; was it truncated?");
+                }
+                md5.update(buffer, 0, read);
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, read);
+                while (bb.hasRemaining())
+                {
+                    position += fc.write(bb, position);
+                }
+                remaining -= read;
+                monitor.count(read);
+            }
+        }
+        monitor.end();
+        return toHex(md5.digest());
+    }
+
+    /**
+     * Has the remote side hash the listed chunks (parallelism at a time, to
+     * match the disk reads to what we just did) and compares them to the
+     * local hashes.
+     *
+     * @return The chunks whose hashes don't match.
+     */
+    private List<Integer> findMismatchedChunks(String remoteFile, List<Integer> chunks, String[] localHashes) throws ConnectionException, IOException
+    {
+        int groups = Math.min(parallelism, chunks.size());
+        StringBuilder script = new StringBuilder();
+        script.append("f=").append(ShellUtils.quote(remoteFile)).append("; cs=").append(chunkSize).append("; ");
+        for (int g = 0; g < groups; g++)
+        {
+            script.append("( for i in");
+            for (int i = g; i < chunks.size(); i += groups)
+            {
+                script.append(' ').append(chunks.get(i));
+            }
+            script.append("; do echo \"$i $(tail -c +$((i*cs+1)) \"$f\" | head -c $cs | md5sum | cut -c1-32)\"; done ) & ");
+        }
+        script.append("wait");
+        String response = dao.sendCommand(script.toString());
+        String[] remoteHashes = new String[localHashes.length];
+        for (String line : response.split("\n"))
+        {
+            String[] parts = line.trim().split(" ");
+            if (parts.length == 2)
+            {
+                try
+                {
+                    int chunk = Integer.parseInt(parts[0]);
+                    if (chunk >= 0 && chunk < remoteHashes.length)
+                    {
+                        remoteHashes[chunk] = parts[1];
+                    }
+                } catch (NumberFormatException e)
+                {
+                    logger.debug("Ignoring unexpected line while verifying chunks: " + line);
+                }
+            }
+        }
+        List<Integer> mismatched = new ArrayList<>();
+        for (Integer chunk : chunks)
+        {
+            if (localHashes[chunk] == null || !localHashes[chunk].equalsIgnoreCase(remoteHashes[chunk]))
+            {
+                mismatched.add(chunk);
+            }
+        }
+        return mismatched;
+    }
+
+    /**
+     * Waits for a worker, unwrapping whatever it threw.
+     */
+    private static void waitFor(Future<Void> future) throws ConnectionException, IOException
+    {
+        try
+        {
+            future.get();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ConnectionException(e);
+        } catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConnectionException)
+            {
+                throw (ConnectionException) cause;
+            } else if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Gets a new MD5 digest; every JVM is required to have one.
+     */
+    static MessageDigest newMd5()
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Lower case hex representation of a digest, as printed by md5sum.
+     */
+    static String toHex(byte[] digest)
+    {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest)
+        {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
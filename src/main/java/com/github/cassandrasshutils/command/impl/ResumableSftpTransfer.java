@@ -0,0 +1,423 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.domain.TransferProgress.Direction;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pulls or pushes a single file so that an interrupted transfer can be picked
+ * up where it left off instead of starting again from zero.
+ *
+ * The file is transferred to a ".partial" file next to the target, and
+ * progress is checkpointed to a local properties file as it goes: next to the
+ * partial file for pulls, and in a checkpoint directory for pushes, since the
+ * source may be somewhere we can't write to. On the next
+ * attempt, if the checkpoint is for the same, unchanged source, the partial
+ * file is cut back to the last checkpointed offset, the prefix is checksummed
+ * (MD5) on both ends, and the transfer carries on from there using SFTP's
+ * RESUME mode. If anything doesn't line up the transfer starts over. The
+ * partial file is only moved into place once it is complete.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ResumableSftpTransfer
+{
+
+    /**
+     * Suffix of the file a transfer is written to until it is complete.
+     */
+    public static final String PARTIAL_SUFFIX = ".partial";
+
+    /**
+     * Suffix of the local checkpoint file.
+     */
+    public static final String CHECKPOINT_SUFFIX = ".ckpt";
+
+    /**
+     * How many bytes are transferred between checkpoints.
+     */
+    public static final long CHECKPOINT_INTERVAL_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * DAO whose session the transfer happens over.
+     */
+    private final SSHCommandDaoImpl dao;
+
+    /**
+     * Local directory that push checkpoints are kept in.
+     */
+    private final File checkpointDirectory;
+
+    /**
+     * Constructor.
+     *
+     * @param dao DAO whose session the transfer happens over; must be
+     * connected.
+     * @param checkpointDirectory Local directory that push checkpoints are
+     * kept in; created if it doesn't exist.
+     */
+    public ResumableSftpTransfer(SSHCommandDaoImpl dao, File checkpointDirectory)
+    {
+        this.dao = dao;
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    /**
+     * Pulls a remote file, resuming an earlier interrupted pull of the same
+     * file if there is one.
+     *
+     * @param remoteFile File path on the remote machine to pull.
+     * @param localFile Local file to write to. Overwritten once the pull is
+     * complete.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem writing the file, or the
+     * remote file changed while we were pulling it.
+     */
+    public void pull(final String remoteFile, File localFile) throws ConnectionException, IOException
+    {
+        final File partial = new File(localFile.getPath() + PARTIAL_SUFFIX);
+        final File checkpointFile = new File(partial.getPath() + CHECKPOINT_SUFFIX);
+        SftpATTRS attrs = dao.statRemoteFile(remoteFile);
+        long size = attrs.getSize();
+        String source = dao.getHost() + ":" + remoteFile;
+        String target = localFile.getAbsolutePath();
+
+        long offset = 0;
+        TransferCheckpoint checkpoint = TransferCheckpoint.load(checkpointFile);
+        if (checkpoint != null && checkpoint.matches(source, target, size, attrs.getMTime()) && partial.isFile())
+        {
+            offset = Math.min(checkpoint.getOffset(), partial.length());
+            if (offset > 0 && !localPrefixMd5(partial, offset).equals(remotePrefixMd5(remoteFile, offset)))
+            {
+                logger.warn("Partial pull of: '" + remoteFile + "' from: " + dao.getHost() + " does not match the remote file; starting over.");
+                offset = 0;
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(partial, "rw"))
+        {
+            raf.setLength(offset);
+        }
+        logger.debug("Pulling: '" + remoteFile + "' (" + size + " bytes) from: " + dao.getHost()
+                + (offset > 0 ? "; resuming at offset: " + offset : ""));
+        checkpoint = new TransferCheckpoint(source, target, size, attrs.getMTime(), offset);
+        checkpoint.save(checkpointFile);
+        final CheckpointingMonitor monitor = new CheckpointingMonitor(checkpoint, checkpointFile, dao.newProgressMonitor(Direction.PULL));
+        final int mode = offset > 0 ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE;
+        dao.withNewSftpChannel(new SSHCommandDaoImpl.SftpCallable<Void>()
+        {
+            @Override
+            public Void call(ChannelSftp c) throws SftpException
+            {
+                c.get(remoteFile, partial.getAbsolutePath(), monitor, mode);
+                return null;
+            }
+        });
+        if (partial.length() != size)
+        {
+            throw new IOException("Pulled " + partial.length() + " bytes of: '" + remoteFile + "' from: " + dao.getHost()
+                    + " but expected " + size + "; did it change while we were pulling it?");
+        }
+        Files.move(partial.toPath(), localFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        checkpointFile.delete();
+    }
+
+    /**
+     * Pushes a local file to a remote directory, resuming an earlier
+     * interrupted push of the same file to the same host if there is one.
+     *
+     * @param localFile Local file to push.
+     * @param remotePath Directory path on the remote machine to push to.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the file, or it
+     * changed while we were pushing it.
+     */
+    public void push(File localFile, String remotePath) throws ConnectionException, IOException
+    {
+        final String localPath = localFile.getAbsolutePath();
+        final String remoteFile = remotePath + (remotePath.endsWith("/") ? "" : "/") + localFile.getName();
+        final String remotePartial = remoteFile + PARTIAL_SUFFIX;
+        File checkpointFile = pushCheckpointFile(localPath, remoteFile);
+        final long size = localFile.length();
+        String target = dao.getHost() + ":" + remoteFile;
+
+        long offset = 0;
+        TransferCheckpoint checkpoint = TransferCheckpoint.load(checkpointFile);
+        if (checkpoint != null && checkpoint.matches(localPath, target, size, localFile.lastModified()))
+        {
+            long remoteSize = remoteSizeOrMinusOne(remotePartial);
+            offset = Math.max(0, Math.min(checkpoint.getOffset(), remoteSize));
+            if (offset > 0 && !localPrefixMd5(localFile, offset).equals(remotePrefixMd5(remotePartial, offset)))
+            {
+                logger.warn("Partial push of: '" + localPath + "' to: " + dao.getHost() + " does not match the local file; starting over.");
+                offset = 0;
+            } else if (offset > 0 && remoteSize > offset)
+            {
+                dao.sendCommand("truncate -s " + offset + " " + ShellUtils.quote(remotePartial));
+            }
+        }
+        logger.debug("Pushing: '" + localPath + "' (" + size + " bytes) to: " + target
+                + (offset > 0 ? "; resuming at offset: " + offset : ""));
+        checkpoint = new TransferCheckpoint(localPath, target, size, localFile.lastModified(), offset);
+        checkpoint.save(checkpointFile);
+        final CheckpointingMonitor monitor = new CheckpointingMonitor(checkpoint, checkpointFile, dao.newProgressMonitor(Direction.PUSH));
+        final int mode = offset > 0 ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE;
+        dao.withNewSftpChannel(new SSHCommandDaoImpl.SftpCallable<Void>()
+        {
+            @Override
+            public Void call(ChannelSftp c) throws SftpException, IOException
+            {
+                c.put(localPath, remotePartial, monitor, mode);
+                long pushed = c.stat(remotePartial).getSize();
+                if (pushed != size)
+                {
+                    throw new IOException("Pushed " + pushed + " bytes of: '" + localPath + "' to: " + dao.getHost()
+                            + " but expected " + size + "; did it change while we were pushing it?");
+                }
+                try
+                {
+                    //JSch uses posix-rename when the server offers it, which
+                    //replaces the target in one step
+                    c.rename(remotePartial, remoteFile);
+                } catch (SftpException renameFailed)
+                {
+                    //plain SFTP rename won't replace an existing file
+                    try
+                    {
+                        c.rm(remoteFile);
+                    } catch (SftpException e)
+                    {
+                        if (e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE)
+                        {
+                            throw e;
+                        }
+                    }
+                    c.rename(remotePartial, remoteFile);
+                }
+                return null;
+            }
+        });
+        checkpointFile.delete();
+    }
+
+    /**
+     * Checkpoint file for a push. The same file may be pushed to many hosts,
+     * and files with the same name from different directories to the same
+     * one, so the name carries a hash of the source and target.
+     *
+     * @param localPath Absolute path of the local file being pushed.
+     * @param remoteFile Path on the remote machine being pushed to.
+     * @return The checkpoint file.
+     * @throws IOException If the checkpoint directory can't be created.
+     */
+    private File pushCheckpointFile(String localPath, String remoteFile) throws IOException
+    {
+        if (!checkpointDirectory.isDirectory() && !checkpointDirectory.mkdirs())
+        {
+            throw new IOException("Could not create checkpoint directory: " + checkpointDirectory.getAbsolutePath());
+        }
+        MessageDigest md5 = ParallelSftpDownloader.newMd5();
+        md5.update((localPath + "\n" + dao.getConnectionKey() + ":" + remoteFile).getBytes(StandardCharsets.UTF_8));
+        return new File(checkpointDirectory, new File(localPath).getName() + "." + ParallelSftpDownloader.toHex(md5.digest())
+                + PARTIAL_SUFFIX + CHECKPOINT_SUFFIX);
+    }
+
+    /**
+     * Gets the size of a remote file.
+     *
+     * @return The size, or -1 if the file does not exist.
+     */
+    private long remoteSizeOrMinusOne(final String remoteFile) throws ConnectionException, IOException
+    {
+        return dao.withNewSftpChannel(new SSHCommandDaoImpl.SftpCallable<Long>()
+        {
+            @Override
+            public Long call(ChannelSftp c) throws SftpException
+            {
+                try
+                {
+                    return c.stat(remoteFile).getSize();
+                } catch (SftpException e)
+                {
+                    if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE)
+                    {
+                        return -1L;
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * MD5 of the first length bytes of a remote file.
+     */
+    private String remotePrefixMd5(String remoteFile, long length) throws ConnectionException, IOException
+    {
+        String response = dao.sendCommand("head -c " + length + " " + ShellUtils.quote(remoteFile) + " | md5sum");
+        return response.length() >= 32 ? response.substring(0, 32) : response;
+    }
+
+    /**
+     * MD5 of the first length bytes of a local file.
+     */
+    private static String localPrefixMd5(File file, long length) throws IOException
+    {
+        MessageDigest md5 = ParallelSftpDownloader.newMd5();
+        byte[] buffer = new byte[CommandOutputReader.DEFAULT_BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file))
+        {
+            long remaining = length;
+            while (remaining > 0)
+            {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0)
+                {
+                    break;
+                }
+                md5.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return ParallelSftpDownloader.toHex(md5.digest());
+    }
+
+    /**
+     * Saves the checkpoint every CHECKPOINT_INTERVAL_BYTES as the transfer
+     * goes, and once more at the end. Passes everything on to the DAO's
+     * instrumentation as well.
+     *
+     * When resuming, JSch counts the bytes it skips straight after init();
+     * those are already in the checkpoint and weren't transferred, so that
+     * count is dropped.
+     */
+    private class CheckpointingMonitor implements SftpProgressMonitor
+    {
+
+        /**
+         * Checkpoint being kept up to date.
+         */
+        private final TransferCheckpoint checkpoint;
+
+        /**
+         * File the checkpoint is saved to.
+         */
+        private final File checkpointFile;
+
+        /**
+         * Monitor that everything is passed on to.
+         */
+        private final SftpProgressMonitor delegate;
+
+        /**
+         * Offset at the last save.
+         */
+        private long lastSaved;
+
+        /**
+         * Offset the transfer resumes from; zero once the count of the bytes
+         * JSch skipped has been dropped (or if we aren't resuming).
+         */
+        private long resumeOffset;
+
+        /**
+         * Constructor.
+         *
+         * @param checkpoint Checkpoint being kept up to date; its offset is
+         * where the transfer starts.
+         * @param checkpointFile File the checkpoint is saved to.
+         * @param delegate Monitor that everything is passed on to.
+         */
+        CheckpointingMonitor(TransferCheckpoint checkpoint, File checkpointFile, SftpProgressMonitor delegate)
+        {
+            this.checkpoint = checkpoint;
+            this.checkpointFile = checkpointFile;
+            this.delegate = delegate;
+            this.lastSaved = checkpoint.getOffset();
+            this.resumeOffset = checkpoint.getOffset();
+        }
+
+        @Override
+        public void init(int op, String src, String dest, long max)
+        {
+            delegate.init(op, src, dest, max);
+        }
+
+        @Override
+        public boolean count(long count)
+        {
+            if (resumeOffset > 0)
+            {
+                boolean skipped = count == resumeOffset;
+                resumeOffset = 0;
+                if (skipped)
+                {
+                    return true;
+                }
+            }
+            delegate.count(count);
+            checkpoint.setOffset(checkpoint.getOffset() + count);
+            if (checkpoint.getOffset() - lastSaved >= CHECKPOINT_INTERVAL_BYTES)
+            {
+                save();
+            }
+            return true;
+        }
+
+        @Override
+        public void end()
+        {
+            save();
+            delegate.end();
+        }
+
+        /**
+         * Saves the checkpoint; a failure to save only costs us some progress
+         * if we are interrupted, so it isn't allowed to fail the transfer.
+         */
+        private void save()
+        {
+            try
+            {
+                checkpoint.save(checkpointFile);
+                lastSaved = checkpoint.getOffset();
+            } catch (IOException e)
+            {
+                logger.warn("Could not save transfer checkpoint: " + checkpointFile.getAbsolutePath(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+/**
+ * The POSIX cksum checksum (CRC-32, polynomial 0x04C11DB7, followed by the
+ * length) of a fixed size window that can be rolled along a buffer a byte at
+ * a time in constant time. Because it matches the output of the cksum
+ * utility, which every POSIX system has, the remote side of a delta sync can
+ * checksum its blocks with nothing but dd and cksum.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class RollingChecksum
+{
+
+    /**
+     * CRC-32 polynomial used by cksum.
+     */
+    private static final int POLYNOMIAL = 0x04C11DB7;
+
+    /**
+     * Lookup table for feeding a byte into the CRC.
+     */
+    private static final int[] TABLE = new int[256];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            int c = i << 24;
+            for (int bit = 0; bit < 8; bit++)
+            {
+                c = (c & 0x80000000) != 0 ? (c << 1) ^ POLYNOMIAL : c << 1;
+            }
+            TABLE[i] = c;
+        }
+    }
+
+    /**
+     * Size of the window, in bytes.
+     */
+    private final int windowSize;
+
+    /**
+     * What each possible byte value contributes to the CRC when it is the
+     * first byte of the window; XOR it out to drop that byte.
+     */
+    private final int[] outTable = new int[256];
+
+    /**
+     * CRC of the current window, before the length is folded in.
+     */
+    private int crc;
+
+    /**
+     * Constructor.
+     *
+     * @param windowSize Size of the window, in bytes.
+     */
+    public RollingChecksum(int windowSize)
+    {
+        if (windowSize < 1)
+        {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        this.windowSize = windowSize;
+        //the CRC is linear, so the table can be built from the eight single bit values
+        int[] bits = new int[8];
+        for (int bit = 0; bit < 8; bit++)
+        {
+            int c = update(0, 1 << bit);
+            for (int i = 1; i < windowSize; i++)
+            {
+                c = update(c, 0);
+            }
+            bits[bit] = c;
+        }
+        for (int v = 0; v < 256; v++)
+        {
+            int c = 0;
+            for (int bit = 0; bit < 8; bit++)
+            {
+                if ((v & (1 << bit)) != 0)
+                {
+                    c ^= bits[bit];
+                }
+            }
+            outTable[v] = c;
+        }
+    }
+
+    /**
+     * Starts a new window.
+     *
+     * @param buffer Buffer holding the window.
+     * @param offset Start of the window; there must be windowSize bytes from
+     * here.
+     */
+    public void reset(byte[] buffer, int offset)
+    {
+        int c = 0;
+        for (int i = offset; i < offset + windowSize; i++)
+        {
+            c = update(c, buffer[i]);
+        }
+        crc = c;
+    }
+
+    /**
+     * Slides the window along by one byte.
+     *
+     * @param out The byte leaving the front of the window.
+     * @param in The byte joining the back of the window.
+     */
+    public void roll(byte out, byte in)
+    {
+        crc = update(crc ^ outTable[out & 0xff], in);
+    }
+
+    /**
+     * The checksum of the current window, as printed by cksum.
+     *
+     * @return The checksum, as an unsigned 32 bit value.
+     */
+    public long getValue()
+    {
+        return finish(crc, windowSize);
+    }
+
+    /**
+     * The size of the window.
+     *
+     * @return the windowSize
+     */
+    public int getWindowSize()
+    {
+        return windowSize;
+    }
+
+    /**
+     * Computes the cksum checksum of part of a buffer in one go.
+     *
+     * @param buffer Buffer to checksum.
+     * @param offset Start of the data.
+     * @param length Length of the data.
+     * @return The checksum, as an unsigned 32 bit value.
+     */
+    public static long checksum(byte[] buffer, int offset, int length)
+    {
+        int c = 0;
+        for (int i = offset; i < offset + length; i++)
+        {
+            c = update(c, buffer[i]);
+        }
+        return finish(c, length);
+    }
+
+    /**
+     * Feeds a byte into the CRC.
+     */
+    private static int update(int crc, int b)
+    {
+        return (crc << 8) ^ TABLE[((crc >>> 24) ^ b) & 0xff];
+    }
+
+    /**
+     * Folds the length into the CRC (least significant byte first, as few
+     * bytes as needed) and complements it, as cksum does.
+     */
+    private static long finish(int crc, long length)
+    {
+        int c = crc;
+        for (long n = length; n > 0; n >>>= 8)
+        {
+            c = update(c, (int) (n & 0xff));
+        }
+        return ~c & 0xffffffffL;
+    }
+}
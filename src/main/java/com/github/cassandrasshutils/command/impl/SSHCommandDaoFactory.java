@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.Server;
+
+/**
+ * Creates SSHCommandDaoImpls that all use the same username, port and
+ * credentials. The server's IP address is used as the host.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class SSHCommandDaoFactory implements RemoteCommandDaoFactory
+{
+
+    /**
+     * Username we are connecting with.
+     */
+    private final String userName;
+    /**
+     * Port that we are connecting via SSH on.
+     */
+    private final int port;
+    /**
+     * Password we are using. Null if using a PEM.
+     */
+    private final String password;
+    /**
+     * PEM (private key) file we are using to connect. Null if using a
+     * password.
+     */
+    private final String pem;
+    /**
+     * Password for the associated PEM file.
+     */
+    private final String pemPassphrase;
+
+    /**
+     * Pool that created DAOs lease their sessions from. Defaults to the
+     * shared pool.
+     */
+    private SSHSessionPool sessionPool = SSHSessionPool.getDefault();
+
+    /**
+     * Constructor to use when connecting over SSH with a username and
+     * password.
+     *
+     * @param userName Username that you are using to connect.
+     * @param port Port to connect to SSH over.
+     * @param password Password for the associated user.
+     */
+    public SSHCommandDaoFactory(String userName, int port, String password)
+    {
+        this(userName, port, password, null, null);
+        if (password == null)
+        {
+            throw new IllegalArgumentException("Password cannot be null");
+        }
+    }
+
+    /**
+     * Constructor to use when connecting over SSH with a PEM (private key)
+     * file.
+     *
+     * @param userName Username that you are using to connect.
+     * @param port Port to connect to SSH over.
+     * @param pem PEM (private key file) that you are using for authentication.
+     * @param pemPassphrase Password to the PEM file. Pass null if the PEM is
+     * not password protected.
+     */
+    public SSHCommandDaoFactory(String userName, int port, String pem, String pemPassphrase)
+    {
+        this(userName, port, null, pem, pemPassphrase);
+        if (pem == null)
+        {
+            throw new IllegalArgumentException("PEM cannot be null");
+        }
+    }
+
+    /**
+     * Shared constructor.
+     */
+    private SSHCommandDaoFactory(String userName, int port, String password, String pem, String pemPassphrase)
+    {
+        if (userName == null)
+        {
+            throw new IllegalArgumentException("Username cannot be null");
+        }
+        if (port == 0)
+        {
+            throw new IllegalArgumentException("Zero (0) is not a valid port");
+        }
+        this.userName = userName;
+        this.port = port;
+        this.password = password;
+        this.pem = pem;
+        this.pemPassphrase = pemPassphrase;
+    }
+
+    /**
+     * Creates a (not yet connected) SSHCommandDaoImpl for a server.
+     *
+     * @param server Server to create the DAO for.
+     * @return A RemoteCommandDao for the server; call connect() before using
+     * it.
+     */
+    @Override
+    public RemoteCommandDao createRemoteCommandDao(Server server)
+    {
+        SSHCommandDaoImpl dao;
+        if (pem != null)
+        {
+            dao = new SSHCommandDaoImpl(server.getIp(), userName, port, pem, pemPassphrase);
+        } else
+        {
+            dao = new SSHCommandDaoImpl(server.getIp(), userName, port, password);
+        }
+        dao.setSessionPool(sessionPool);
+        return dao;
+    }
+
+    /**
+     * Pool that created DAOs lease their sessions from. Defaults to the
+     * shared pool.
+     *
+     * @param sessionPool the sessionPool to set
+     */
+    public void setSessionPool(SSHSessionPool sessionPool)
+    {
+        if (sessionPool == null)
+        {
+            throw new IllegalArgumentException("Session pool cannot be null");
+        }
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * Pool that created DAOs lease their sessions from.
+     *
+     * @return the sessionPool
+     */
+    public SSHSessionPool getSessionPool()
+    {
+        return sessionPool;
+    }
+}
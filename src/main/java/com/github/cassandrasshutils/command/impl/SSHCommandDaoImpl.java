@@ -15,19 +15,39 @@
  */
 package com.github.cassandrasshutils.command.impl;
 
+import com.codahale.metrics.MetricRegistry;
+import com.github.cassandrasshutils.command.LineHandler;
 import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.TransferProgressListener;
+import com.github.cassandrasshutils.command.domain.DeltaSyncResult;
+import com.github.cassandrasshutils.command.domain.TransferProgress.Direction;
 import com.github.cassandrasshutils.exceptions.CannotConnectException;
 import com.github.cassandrasshutils.exceptions.ConnectionException;
 import com.jcraft.jsch.Channel;
 import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelSftp;
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +55,12 @@ import org.slf4j.LoggerFactory;
  * CommandDao implemented with SSH. Used for interacting with remote machines
  * (servers) over SSH.
  *
+ * This class is thread safe. Concurrent callers share the one SSH session;
+ * each command or transfer runs on its own channel, so several commands can
+ * run on the node at once over a single TCP connection. The number of
+ * channels open at once is capped (see setMaxConcurrentChannels); callers
+ * beyond the cap queue in arrival order until a channel frees up.
+ *
  * @author jeffrey
  */
 public class SSHCommandDaoImpl implements RemoteCommandDao
@@ -71,9 +97,80 @@ public class SSHCommandDaoImpl implements RemoteCommandDao
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     /**
-     * Current SSH session.
+     * How long to wait for a channel to close after its output has ended, so
+     * we can report the exit status.
+     */
+    private static final long EXIT_STATUS_WAIT_MS = 5000;
+
+    /**
+     * Default cap on the number of channels open at once on our session.
+     * Matches the OpenSSH default for MaxSessions; opening more than the
+     * server allows fails with "channel is not opened".
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_CHANNELS = 10;
+
+    /**
+     * Buffer size used on each side of a tar stream.
+     */
+    private static final int TAR_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Current SSH session; leased from the session pool.
+     */
+    private volatile Session session = null;
+
+    /**
+     * Caps the channels open at once on our session, the cached SFTP channel
+     * included.
+     */
+    private final ChannelLimiter channelLimiter;
+
+    /**
+     * Pool that sessions are leased from.
+     */
+    private SSHSessionPool sessionPool = SSHSessionPool.getDefault();
+
+    /**
+     * Local ports we are forwarding through the session; removed before the
+     * session goes back to the pool. Guarded by itself.
+     */
+    private final Set<Integer> forwardedPorts = new HashSet<>();
+
+    /**
+     * Listener that receives progress reports for SFTP transfers; null for
+     * none.
+     */
+    private volatile TransferProgressListener transferProgressListener = null;
+
+    /**
+     * Minimum time between progress reports for a transfer, in milliseconds.
+     */
+    private volatile long transferReportIntervalMs = InstrumentedProgressMonitor.DEFAULT_REPORT_INTERVAL_MS;
+
+    /**
+     * Local directory that checkpoints for resumable pushes are kept in.
+     */
+    private volatile File checkpointDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+    /**
+     * Registry that SFTP transfer metrics are recorded in; null for none.
+     */
+    private volatile MetricRegistry metricRegistry = null;
+
+    /**
+     * Cached SFTP channel, reused for every pull and push. It only holds a
+     * channel permit while an operation is running on it, so an idle cached
+     * channel never blocks other channels. Guarded by the channel limiter's
+     * cached channel lock, which also serializes SFTP operations, since a
+     * ChannelSftp can only do one thing at a time.
+     */
+    private ChannelSftp sftpChannel = null;
+
+    /**
+     * Session the cached SFTP channel was opened on. Guarded like
+     * sftpChannel.
      */
-    private Session session = null;
+    private Session sftpChannelSession = null;
 
     /**
      * Constructor to use when connecting to a server over SSH when using a
@@ -106,6 +203,7 @@ public class SSHCommandDaoImpl implements RemoteCommandDao
             throw new IllegalArgumentException("Password cannot be null");
         }
         this.password = password;
+        this.channelLimiter = newChannelLimiter();
     }
 
     /**
@@ -119,6 +217,17 @@ public class SSHCommandDaoImpl implements RemoteCommandDao
         return host;
     }
 
+    /**
+     * Identifies the machine and login this DAO talks to.
+     *
+     * @return userName@host:port
+     */
+    @Override
+    public String getConnectionKey()
+    {
+        return userName + "@" + host + ":" + port;
+    }
+
     /**
      * Constructor to use when connecting to a server over SSH when using a PEM
      * (private key) file.
@@ -153,61 +262,341 @@ public class SSHCommandDaoImpl implements RemoteCommandDao
         }
         this.pem = pem;
         this.pemPassphrase = pemPassphrase;
+        this.channelLimiter = newChannelLimiter();
+    }
 
+    /**
+     * Creates the limiter for the channels on our session; it closes our
+     * cached SFTP channel when that channel's slot is needed.
+     *
+     * @return A limiter with the default cap.
+     */
+    private ChannelLimiter newChannelLimiter()
+    {
+        return new ChannelLimiter(host, DEFAULT_MAX_CONCURRENT_CHANNELS, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closeSftpChannel();
+            }
+        });
     }
 
     /**
-     * Connects to a remote server via SSH.
+     * Connects to a remote server via SSH. The session is leased from the
+     * session pool, so if another DAO for the same host and credentials has
+     * already logged off, its session is reused rather than paying for a new
+     * handshake.
      *
      * @throws CannotConnectException If there is a problem connecting to the
      * server.
      */
     @Override
-    public void connect() throws CannotConnectException
+    public synchronized void connect() throws CannotConnectException
     {
         logger.debug("Attempting to log on to: " + host + " via SSH.");
+        if (session != null)
+        {//already connected; hand the old session back first so we don't leak it
+            logOff();
+        }
+        session = sessionPool.lease(getSessionKey());
+    }
+
+    /**
+     * Logs off of the remote machine. Try to call in finally blocks to ensure
+     * your connection gets properly ended. The underlying session is returned
+     * to the session pool rather than disconnected; the pool disconnects it
+     * once it has been idle for a while.
+     */
+    @Override
+    public synchronized void logOff()
+    {
+        channelLimiter.closeCachedChannel();
+        removeLocalPortForwards();
+        if (session != null)
+        {
+            sessionPool.release(getSessionKey(), session);
+            session = null;
+        }
+    }
+
+    /**
+     * Pool that sessions are leased from. Defaults to the shared pool.
+     *
+     * @param sessionPool the sessionPool to set
+     */
+    public void setSessionPool(SSHSessionPool sessionPool)
+    {
+        if (sessionPool == null)
+        {
+            throw new IllegalArgumentException("Session pool cannot be null");
+        }
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * Pool that sessions are leased from. Defaults to the shared pool.
+     *
+     * @return the sessionPool
+     */
+    public SSHSessionPool getSessionPool()
+    {
+        return sessionPool;
+    }
+
+    /**
+     * Cap on the number of channels (commands and file transfers) open at
+     * once on our session. Should not be more than the server's MaxSessions.
+     * Applies to channels opened after this call.
+     *
+     * @param maxConcurrentChannels the maxConcurrentChannels to set
+     */
+    public void setMaxConcurrentChannels(int maxConcurrentChannels)
+    {
+        if (maxConcurrentChannels < 1)
+        {
+            throw new IllegalArgumentException("Max concurrent channels must be at least 1");
+        }
+        channelLimiter.setMaxChannels(maxConcurrentChannels);
+    }
+
+    /**
+     * Cap on the number of channels (commands and file transfers) open at
+     * once on our session.
+     *
+     * @return the maxConcurrentChannels
+     */
+    public int getMaxConcurrentChannels()
+    {
+        return channelLimiter.getMaxChannels();
+    }
+
+    /**
+     * How long to wait for a free channel before giving up, in milliseconds.
+     * Zero or less means wait indefinitely.
+     *
+     * @param channelWaitTimeoutMs the channelWaitTimeoutMs to set
+     */
+    public void setChannelWaitTimeoutMs(long channelWaitTimeoutMs)
+    {
+        channelLimiter.setWaitTimeoutMs(channelWaitTimeoutMs);
+    }
+
+    /**
+     * How long to wait for a free channel before giving up, in milliseconds.
+     * Zero or less means wait indefinitely.
+     *
+     * @return the channelWaitTimeoutMs
+     */
+    public long getChannelWaitTimeoutMs()
+    {
+        return channelLimiter.getWaitTimeoutMs();
+    }
+
+    /**
+     * Listener that receives progress reports for SFTP transfers: at the
+     * start, about once a second (see setTransferReportIntervalMs) while
+     * running, and at the end.
+     *
+     * @param transferProgressListener the transferProgressListener to set;
+     * null for none.
+     */
+    public void setTransferProgressListener(TransferProgressListener transferProgressListener)
+    {
+        this.transferProgressListener = transferProgressListener;
+    }
+
+    /**
+     * Listener that receives progress reports for SFTP transfers.
+     *
+     * @return the transferProgressListener
+     */
+    public TransferProgressListener getTransferProgressListener()
+    {
+        return transferProgressListener;
+    }
+
+    /**
+     * Minimum time between progress reports for a transfer, in milliseconds.
+     * Zero reports every chunk JSch moves.
+     *
+     * @param transferReportIntervalMs the transferReportIntervalMs to set
+     */
+    public void setTransferReportIntervalMs(long transferReportIntervalMs)
+    {
+        this.transferReportIntervalMs = transferReportIntervalMs;
+    }
+
+    /**
+     * Minimum time between progress reports for a transfer, in milliseconds.
+     *
+     * @return the transferReportIntervalMs
+     */
+    public long getTransferReportIntervalMs()
+    {
+        return transferReportIntervalMs;
+    }
+
+    /**
+     * Local directory that checkpoints for resumable pushes are kept in, so
+     * that files can be pushed from directories we can't write to. Defaults to
+     * java.io.tmpdir; point it somewhere that survives a reboot if pushes need
+     * to be resumed after one.
+     *
+     * @param checkpointDirectory the checkpointDirectory to set
+     */
+    public void setCheckpointDirectory(File checkpointDirectory)
+    {
+        if (checkpointDirectory == null)
+        {
+            throw new IllegalArgumentException("Checkpoint directory cannot be null");
+        }
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    /**
+     * Local directory that checkpoints for resumable pushes are kept in.
+     *
+     * @return the checkpointDirectory
+     */
+    public File getCheckpointDirectory()
+    {
+        return checkpointDirectory;
+    }
+
+    /**
+     * Registry that SFTP transfer metrics (bytes moved, rates, time to first
+     * byte, per host and direction) are recorded in. See
+     * InstrumentedProgressMonitor for the metric names.
+     *
+     * @param metricRegistry the metricRegistry to set; null for none.
+     */
+    public void setMetricRegistry(MetricRegistry metricRegistry)
+    {
+        this.metricRegistry = metricRegistry;
+    }
+
+    /**
+     * Registry that SFTP transfer metrics are recorded in.
+     *
+     * @return the metricRegistry
+     */
+    public MetricRegistry getMetricRegistry()
+    {
+        return metricRegistry;
+    }
+
+    /**
+     * Creates a monitor for a single SFTP transfer that reports to our
+     * listener and registry.
+     *
+     * @param direction Which way the transfer is going.
+     * @return A new monitor.
+     */
+    SftpProgressMonitor newProgressMonitor(Direction direction)
+    {
+        return new InstrumentedProgressMonitor(host, direction, transferProgressListener, metricRegistry, transferReportIntervalMs);
+    }
+
+    /**
+     * Opens a local port forward through the connection: connections to the
+     * returned port on 127.0.0.1 are carried to the remote host and port, as
+     * seen from the remote machine. The forward is removed when we log off,
+     * so it never outlives our lease of the session.
+     *
+     * @param remoteHost Host to connect to, from the remote machine (eg:
+     * 127.0.0.1 for the remote machine itself).
+     * @param remotePort Port to connect to on that host.
+     * @return The local port that forwards to the remote host and port.
+     * @throws ConnectionException if there is a problem with the connection.
+     */
+    @Override
+    public int forwardLocalPort(String remoteHost, int remotePort) throws ConnectionException
+    {
+        Session s = checkConnection();
         try
         {
-            JSch jsch = new JSch();
-            session = jsch.getSession(userName, host, port);
-            session.setConfig("StrictHostKeyChecking", "no");//TODO: handle this more responsibly
-            if (pem != null)
-            {//if pem is present, use that
-                //TODO: not sure if this is right
-                if (pemPassphrase != null)
-                {
-                    jsch.addIdentity(pem, pemPassphrase);
-                    jsch.addIdentity(pem);
-                } else
-                {
-                    jsch.addIdentity(pem);
-                }
-                session.setIdentityRepository(jsch.getIdentityRepository());
-            } else
-            {//if pem not present, use the password
-                session.setPassword(password);
+            int localPort = s.setPortForwardingL("127.0.0.1", 0, remoteHost, remotePort);//0 picks a free port
+            synchronized (forwardedPorts)
+            {
+                forwardedPorts.add(localPort);
             }
-
-            session.connect();
+            logger.debug("Forwarding local port: " + localPort + " to: " + remoteHost + ":" + remotePort + " via: " + host);
+            return localPort;
         } catch (JSchException e)
         {
-            throw new CannotConnectException(e);
+            throw new ConnectionException(e);
         }
     }
 
     /**
-     * Logs off of the remote machine. Try to call in finally blocks to ensure
-     * your connection gets properly ended.
+     * Removes a local port forward opened with forwardLocalPort. Does nothing
+     * if there is no such forward.
+     *
+     * @param localPort The local port returned by forwardLocalPort.
      */
     @Override
-    public void logOff()
+    public void removeLocalPortForward(int localPort)
     {
-        if (session != null)
+        synchronized (forwardedPorts)
+        {
+            if (!forwardedPorts.remove(localPort))
+            {
+                return;
+            }
+        }
+        delPortForwarding(session, localPort);
+    }
+
+    /**
+     * Removes every local port forward we opened.
+     */
+    private void removeLocalPortForwards()
+    {
+        List<Integer> ports;
+        synchronized (forwardedPorts)
+        {
+            ports = new ArrayList<>(forwardedPorts);
+            forwardedPorts.clear();
+        }
+        for (int localPort : ports)
+        {
+            delPortForwarding(session, localPort);
+        }
+    }
+
+    /**
+     * Removes a local port forward from a session, ignoring any problems
+     * doing so (the session may already be gone, taking the forward with
+     * it).
+     */
+    private void delPortForwarding(Session s, int localPort)
+    {
+        if (s == null)
+        {
+            return;
+        }
+        try
+        {
+            s.delPortForwardingL("127.0.0.1", localPort);
+        } catch (JSchException e)
         {
-            session.disconnect();
+            logger.debug("Problem removing port forward: " + localPort + " on: " + host, e);
         }
     }
 
+    /**
+     * Key identifying this DAO's host, user, port and credentials in the
+     * session pool.
+     *
+     * @return The session key for this DAO.
+     */
+    private SSHSessionKey getSessionKey()
+    {
+        return new SSHSessionKey(host, userName, port, password, pem, pemPassphrase);
+    }
+
     /**
      * Pulls a file from the remote to the local machine.
      *
@@ -218,20 +607,17 @@ public class SSHCommandDaoImpl implements RemoteCommandDao
      * @throws IOException if there is a problem pulling or writing the file.
      */
     @Override
-    public void pullFile(String remoteFileToPull, File localFile) throws ConnectionException, IOException
+    public void pullFile(final String remoteFileToPull, final File localFile) throws ConnectionException, IOException
     {
         logger.debug("Pulling file: '" + remoteFileToPull + "' from: " + host + " to: " + localFile.getAbsolutePath());
-        checkConnection();
-        try
+        withSftpChannel(new SftpOperation()
         {
-            Channel channel = session.openChannel("sftp");
-            channel.connect();
-            ChannelSftp c = (ChannelSftp) channel;
-            c.get(remoteFileToPull, localFile + File.separator);
-        } catch (JSchException | SftpException e)
-        {
-            throw new ConnectionException(e);
-        }
+            @Override
+            public void run(ChannelSftp c) throws SftpException
+            {
+                c.get(remoteFileToPull, localFile + File.separator, newProgressMonitor(Direction.PULL));
+            }
+        });
     }
 
     /**
@@ -243,69 +629,790 @@ public class SSHCommandDaoImpl implements RemoteCommandDao
      * @throws IOException if there is a problem reading or sending the file.
      */
     @Override
-    public void pushFile(File localFile, String remotePath) throws ConnectionException, IOException
+    public void pushFile(final File localFile, final String remotePath) throws ConnectionException, IOException
     {
         logger.debug("Pushing file: '" + localFile.getAbsolutePath() + "' to: " + host + ": " + remotePath);
-        checkConnection();
-        try
-        {
-            Channel channel = session.openChannel("sftp");
-            channel.connect();
-            ChannelSftp c = (ChannelSftp) channel;
-            c.put(localFile.getAbsolutePath(), remotePath + File.separator);
-        } catch (JSchException | SftpException e)
+        withSftpChannel(new SftpOperation()
         {
-            throw new ConnectionException(e);
-        }
+            @Override
+            public void run(ChannelSftp c) throws SftpException
+            {
+                c.put(localFile.getAbsolutePath(), remotePath + File.separator, newProgressMonitor(Direction.PUSH));
+            }
+        });
     }
 
     /**
-     * Sends a command to a remote system.
+     * Pushes several files from the local machine to the same directory on
+     * the remote machine, over a single SFTP channel.
      *
-     * @param commandToSend String of a valid terminal command to send to the
-     * remote system.
-     * @return The response from the remote system as a String.
+     * @param localFiles Local files to push.
+     * @param remotePath Directory path on the remote machine to push to.
      * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading or sending a file.
      */
     @Override
-    public String sendCommand(String commandToSend) throws ConnectionException, IOException
+    public void pushFiles(final List<File> localFiles, final String remotePath) throws ConnectionException, IOException
     {
-        logger.debug("Sending command: '" + commandToSend + "' to server: " + host);
-        checkConnection();
-        StringBuilder sb = new StringBuilder();
-        try
+        logger.debug("Pushing " + localFiles.size() + " files to: " + host + ": " + remotePath);
+        withSftpChannel(new SftpOperation()
         {
-            Channel c = session.openChannel("exec");
-            ((ChannelExec) c).setCommand(commandToSend);
-            c.connect();
-            InputStream outputFromCommand = c.getInputStream();
-            int readByte = outputFromCommand.read();
-            while (readByte != 0xffffffff)
+            private int next = 0;//so a retry after reconnecting picks up where we left off
+
+            @Override
+            public void run(ChannelSftp c) throws SftpException
             {
-                sb.append((char) readByte);
-                readByte = outputFromCommand.read();
+                for (; next < localFiles.size(); next++)
+                {
+                    c.put(localFiles.get(next).getAbsolutePath(), remotePath + File.separator, newProgressMonitor(Direction.PUSH));
+                }
             }
-            c.disconnect();
-            String response = sb.toString().trim();
-            logger.debug("Received Response: " + response);
-            return response;
-        } catch (JSchException e)
+        });
+    }
+
+    /**
+     * Pulls several files from the remote machine into a local directory,
+     * over a single SFTP channel.
+     *
+     * @param remoteFilesToPull File paths on the remote machine to pull.
+     * @param localDirectory Local directory to write the files to; must
+     * already exist.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem pulling or writing a file.
+     */
+    @Override
+    public void pullFiles(final List<String> remoteFilesToPull, final File localDirectory) throws ConnectionException, IOException
+    {
+        logger.debug("Pulling " + remoteFilesToPull.size() + " files from: " + host + " to: " + localDirectory.getAbsolutePath());
+        if (!localDirectory.isDirectory())
         {
-            throw new ConnectionException(e);
+            throw new IOException("Not a directory: " + localDirectory.getAbsolutePath());
         }
+        withSftpChannel(new SftpOperation()
+        {
+            private int next = 0;//so a retry after reconnecting picks up where we left off
+
+            @Override
+            public void run(ChannelSftp c) throws SftpException
+            {
+                for (; next < remoteFilesToPull.size(); next++)
+                {
+                    c.get(remoteFilesToPull.get(next), localDirectory.getAbsolutePath(), newProgressMonitor(Direction.PULL));
+                }
+            }
+        });
+    }
+
+    /**
+     * Pulls a whole directory from the remote machine by streaming it through
+     * tar on an exec channel and unpacking it as it arrives. Much faster than
+     * SFTP for directories with many small files (such as SSTable
+     * components), since everything moves as one stream rather than a request
+     * sequence per file, and no archive is written on either end.
+     *
+     * @param remoteDirectory Directory path on the remote machine to pull.
+     * @param localDirectory Local directory to unpack into; the remote
+     * directory ends up as a subdirectory of it, by name. Created if needed.
+     * @param compress True to gzip the stream; worth it on slow links, costs
+     * CPU on both ends on fast ones.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem writing the files, or tar
+     * fails on the remote machine.
+     */
+    @Override
+    public void pullDirectory(String remoteDirectory, final File localDirectory, final boolean compress) throws ConnectionException, IOException
+    {
+        String[] parentAndName = splitRemotePath(remoteDirectory);
+        String command = "tar " + (compress ? "czf" : "cf") + " - -C " + ShellUtils.quote(parentAndName[0]) + " " + ShellUtils.quote(parentAndName[1]);
+        final int[] files = new int[1];
+        long start = System.currentTimeMillis();
+        int status = execute(command, new OutputConsumer()
+        {
+            @Override
+            public void consume(InputStream in) throws IOException
+            {
+                InputStream stream = new BufferedInputStream(in, TAR_BUFFER_SIZE);
+                if (compress)
+                {
+                    stream = new GZIPInputStream(stream, TAR_BUFFER_SIZE);
+                }
+                files[0] = TarStreams.unpack(stream, localDirectory);
+                byte[] rest = new byte[TAR_BUFFER_SIZE];
+                while (stream.read(rest) != -1)
+                {
+                    //drain the end of archive padding so the channel can close
+                }
+            }
+        });
+        if (status != 0)
+        {
+            throw new IOException("tar exited with status " + status + " pulling: '" + remoteDirectory + "' from: " + host);
+        }
+        logger.debug("Pulled " + files[0] + " files in: '" + remoteDirectory + "' from: " + host + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Pushes a whole directory to the remote machine by streaming it into tar
+     * on an exec channel, which unpacks it as it arrives. No archive is
+     * written on either end; tar's error output is kept in a remote temp file
+     * and only sent back if tar fails.
+     *
+     * @param localDirectory Local directory to push.
+     * @param remotePath Directory path on the remote machine to push to; the
+     * local directory ends up as a subdirectory of it, by name. Created if
+     * needed.
+     * @param compress True to gzip the stream.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the files, or tar
+     * fails on the remote machine.
+     */
+    @Override
+    public void pushDirectory(final File localDirectory, String remotePath, final boolean compress) throws ConnectionException, IOException
+    {
+        if (!localDirectory.isDirectory())
+        {
+            throw new IOException("Not a directory: " + localDirectory.getAbsolutePath());
+        }
+        //tar's warnings go to a temp file rather than the channel: we only read
+        //the channel once the whole archive is sent, so a chatty tar could
+        //fill the channel window and stop reading its input
+        String command = "err=$(mktemp) || exit 1; mkdir -p " + ShellUtils.quote(remotePath) + " 2>\"$err\" && tar " + (compress ? "xzf" : "xf")
+                + " - -C " + ShellUtils.quote(remotePath) + " 2>\"$err\"; s=$?; [ $s -ne 0 ] && cat \"$err\"; rm -f \"$err\"; exit $s";
+        final int[] files = new int[1];
+        final StringBuilder output = new StringBuilder();
+        long start = System.currentTimeMillis();
+        int status = execute(command, new InputProducer()
+        {
+            @Override
+            public void produce(OutputStream out) throws IOException
+            {
+                OutputStream stream = new BufferedOutputStream(out, TAR_BUFFER_SIZE);
+                if (compress)
+                {
+                    GZIPOutputStream gzip = new GZIPOutputStream(stream, TAR_BUFFER_SIZE);
+                    files[0] = TarStreams.pack(localDirectory, gzip);
+                    gzip.finish();
+                } else
+                {
+                    files[0] = TarStreams.pack(localDirectory, stream);
+                }
+                stream.flush();
+            }
+        }, new OutputConsumer()
+        {
+            @Override
+            public void consume(InputStream in) throws IOException
+            {
+                new CommandOutputReader().read(in, output);
+            }
+        });
+        if (status != 0)
+        {
+            throw new IOException("tar exited with status " + status + " pushing: '" + localDirectory.getAbsolutePath()
+                    + "' to: " + host + ": " + output.toString().trim());
+        }
+        logger.debug("Pushed " + files[0] + " files in: '" + localDirectory.getAbsolutePath() + "' to: " + host + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Brings the copy of a file on the remote machine up to date with the
+     * local file, sending only the blocks that differ. See DeltaSync.
+     *
+     * @param localFile Local file to sync.
+     * @param remotePath Directory path on the remote machine holding the
+     * copy.
+     * @return What was done, including how many bytes were sent.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading or sending the file.
+     */
+    @Override
+    public DeltaSyncResult syncFile(File localFile, String remotePath) throws ConnectionException, IOException
+    {
+        return new DeltaSync(this).sync(localFile, remotePath);
+    }
+
+    /**
+     * Splits a remote path into its parent directory and name, ignoring any
+     * trailing slashes.
+     */
+    private static String[] splitRemotePath(String remotePath)
+    {
+        String path = remotePath;
+        while (path.length() > 1 && path.endsWith("/"))
+        {
+            path = path.substring(0, path.length() - 1);
+        }
+        int slash = path.lastIndexOf('/');
+        if (slash < 0)
+        {
+            return new String[]
+            {
+                ".", path
+            };
+        }
+        return new String[]
+        {
+            slash == 0 ? "/" : path.substring(0, slash), path.substring(slash + 1)
+        };
+    }
+
+    /**
+     * Runs an operation on our cached SFTP channel, opening the channel if we
+     * don't have one yet. If the operation fails because the channel has gone
+     * away, the channel is reopened and the operation is retried once.
+     *
+     * SFTP channels aren't safe for concurrent use, so operations on the
+     * cached channel are run one at a time. Each operation takes a channel
+     * permit for as long as it runs; the permit is taken before waiting for
+     * the channel, so a queued operation never keeps an idle cached channel
+     * from being closed when another channel needs its slot.
+     *
+     * @param operation Operation to run.
+     * @throws ConnectionException if there is a problem with the connection or
+     * the operation fails.
+     */
+    private void withSftpChannel(SftpOperation operation) throws ConnectionException
+    {
+        Semaphore permits = channelLimiter.lockCachedChannel();
+        try
+        {
+            ChannelSftp c = getSftpChannel();
+            try
+            {
+                operation.run(c);
+            } catch (SftpException e)
+            {
+                if (c.isConnected())
+                {
+                    throw new ConnectionException(e);
+                }
+                logger.debug("SFTP channel to: " + host + " was lost; reopening and retrying.");
+                closeSftpChannel();
+                try
+                {
+                    operation.run(getSftpChannel());
+                } catch (SftpException retryException)
+                {
+                    throw new ConnectionException(retryException);
+                }
+            }
+        } finally
+        {
+            channelLimiter.unlockCachedChannel(permits);
+        }
+    }
+
+    /**
+     * Gets our cached SFTP channel, opening a new one if we don't have one,
+     * it has been closed, or it belongs to an old session. Must have the
+     * cached channel locked through the channel limiter.
+     *
+     * @return A connected SFTP channel.
+     * @throws ConnectionException If the channel cannot be opened.
+     */
+    private ChannelSftp getSftpChannel() throws ConnectionException
+    {
+        Session s = checkConnection();
+        if (sftpChannel != null && sftpChannel.isConnected() && sftpChannelSession == s)
+        {
+            return sftpChannel;
+        }
+        closeSftpChannel();
+        try
+        {
+            ChannelSftp c = (ChannelSftp) s.openChannel("sftp");
+            c.connect();
+            sftpChannel = c;
+            sftpChannelSession = s;
+            return c;
+        } catch (JSchException e)
+        {
+            throw new ConnectionException(e);
+        }
+    }
+
+    /**
+     * Disconnects our cached SFTP channel, if we have one. Must have the
+     * cached channel locked through the channel limiter.
+     */
+    private void closeSftpChannel()
+    {
+        if (sftpChannel != null)
+        {
+            sftpChannel.disconnect();
+            sftpChannel = null;
+            sftpChannelSession = null;
+        }
+    }
+
+    /**
+     * Pulls a large file from the remote to the local machine by splitting it
+     * into byte ranges and pulling the ranges concurrently, each over its own
+     * SFTP channel. Each range is checksummed on both ends once it arrives and
+     * is pulled again if the checksums don't match.
+     *
+     * @param remoteFileToPull File path on the remote machine to pull the file
+     * from.
+     * @param localFile Local file to write the remote file to. Overwritten if
+     * it exists.
+     * @param parallelism Number of SFTP channels to use at once. Each one
+     * counts against the max concurrent channels.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem pulling or writing the file,
+     * or it did not arrive intact.
+     */
+    @Override
+    public void pullLargeFile(String remoteFileToPull, File localFile, int parallelism) throws ConnectionException, IOException
+    {
+        new ParallelSftpDownloader(this, parallelism).download(remoteFileToPull, localFile);
+    }
+
+    /**
+     * Pulls a file from the remote to the local machine, resuming an earlier
+     * interrupted pull of the same (unchanged) file if there is one. The file
+     * is written to localFile.partial, with progress checkpointed to
+     * localFile.partial.ckpt, and moved into place once complete.
+     *
+     * @param remoteFileToPull File path on the remote machine to pull the file
+     * from.
+     * @param localFile Local file to write the remote file to. Overwritten
+     * once the pull is complete.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem pulling or writing the file.
+     */
+    @Override
+    public void pullFileResumable(String remoteFileToPull, File localFile) throws ConnectionException, IOException
+    {
+        new ResumableSftpTransfer(this, checkpointDirectory).pull(remoteFileToPull, localFile);
+    }
+
+    /**
+     * Pushes a file from the local machine to the remote machine, resuming an
+     * earlier interrupted push of the same (unchanged) file to this host if
+     * there is one. The file is written to a .partial file on the remote
+     * machine, with progress checkpointed to a file in the checkpoint
+     * directory, and renamed into place once complete.
+     *
+     * @param localFile Local file to push.
+     * @param remotePath Directory path on the remote machine to push to.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading or sending the file.
+     */
+    @Override
+    public void pushFileResumable(File localFile, String remotePath) throws ConnectionException, IOException
+    {
+        new ResumableSftpTransfer(this, checkpointDirectory).push(localFile, remotePath);
+    }
+
+    /**
+     * Gets the attributes (size, modification time, etc) of a remote file.
+     *
+     * @param remoteFile File path on the remote machine.
+     * @return The file's attributes.
+     * @throws ConnectionException if there is a problem with the connection,
+     * or the file does not exist.
+     */
+    SftpATTRS statRemoteFile(final String remoteFile) throws ConnectionException
+    {
+        final SftpATTRS[] attrs = new SftpATTRS[1];
+        withSftpChannel(new SftpOperation()
+        {
+            @Override
+            public void run(ChannelSftp c) throws SftpException
+            {
+                attrs[0] = c.stat(remoteFile);
+            }
+        });
+        return attrs[0];
+    }
+
+    /**
+     * Runs an operation on a new SFTP channel of its own (rather than the
+     * cached one), so it can run at the same time as other transfers. The
+     * channel counts against the max concurrent channels and is disconnected
+     * afterwards.
+     *
+     * @param <T> Type of the result.
+     * @param operation Operation to run.
+     * @return The result of the operation.
+     * @throws ConnectionException if there is a problem with the connection or
+     * the operation fails.
+     * @throws IOException if the operation has a local IO problem.
+     */
+    <T> T withNewSftpChannel(SftpCallable<T> operation) throws ConnectionException, IOException
+    {
+        Session s = checkConnection();
+        Semaphore permits = channelLimiter.acquire();
+        try
+        {
+            ChannelSftp c = (ChannelSftp) s.openChannel("sftp");
+            c.connect();
+            try
+            {
+                return operation.call(c);
+            } finally
+            {
+                c.disconnect();
+            }
+        } catch (JSchException | SftpException e)
+        {
+            throw new ConnectionException(e);
+        } finally
+        {
+            permits.release();
+        }
+    }
+
+    /**
+     * Something to do with a dedicated SFTP channel that produces a result.
+     *
+     * @param <T> Type of the result.
+     */
+    interface SftpCallable<T>
+    {
+
+        /**
+         * Runs the operation.
+         *
+         * @param c Connected SFTP channel.
+         * @return The result of the operation.
+         * @throws SftpException If the operation fails remotely.
+         * @throws IOException If the operation fails locally.
+         */
+        T call(ChannelSftp c) throws SftpException, IOException;
+    }
+
+    /**
+     * Something to do with an SFTP channel.
+     */
+    private interface SftpOperation
+    {
+
+        /**
+         * Runs the operation. May be called a second time (on a new channel)
+         * if the first attempt failed because the channel was lost.
+         *
+         * @param c Connected SFTP channel.
+         * @throws SftpException If the operation fails.
+         */
+        void run(ChannelSftp c) throws SftpException;
+    }
+
+    /**
+     * Sends a command to a remote system.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @return The response from the remote system as a String.
+     * @throws ConnectionException if there is a problem with the connection.
+     */
+    @Override
+    public String sendCommand(String commandToSend) throws ConnectionException, IOException
+    {
+        final StringBuilder sb = new StringBuilder();
+        execute(commandToSend, new OutputConsumer()
+        {
+            @Override
+            public void consume(InputStream in) throws IOException
+            {
+                new CommandOutputReader().read(in, sb);
+            }
+        });
+        String response = sb.toString().trim();
+        logger.debug("Received Response: " + response);
+        return response;
+    }
+
+    /**
+     * Sends a command to a remote system and streams its output, one line at
+     * a time, to a handler as it arrives.
+     *
+     * Backpressure: output is only read off of the channel while the handler
+     * is not running. If the handler falls behind, the channel's (bounded)
+     * pipe fills up and JSch stops reading from the socket, which in turn
+     * throttles the remote command via TCP flow control. Note that this stalls
+     * every channel on this session, not just this one.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @param handler Handler that receives each line of output.
+     * @return The exit status of the remote command, or -1 if the remote
+     * system did not report one.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the output or the
+     * handler throws.
+     */
+    @Override
+    public int sendCommand(String commandToSend, LineHandler handler) throws ConnectionException, IOException
+    {
+        final LineSplitter splitter = new LineSplitter(handler);
+        int exitStatus = execute(commandToSend, new OutputConsumer()
+        {
+            @Override
+            public void consume(InputStream in) throws IOException
+            {
+                new CommandOutputReader().read(in, splitter);
+                splitter.finish();
+            }
+        });
+        logger.debug("Streamed " + splitter.getLineCount() + " lines; exit status: " + exitStatus);
+        return exitStatus;
+    }
+
+    /**
+     * Sends a command to a remote system and copies its raw output to the
+     * passed in stream as it arrives. The stream is flushed but not closed.
+     * See sendCommand(String, LineHandler) for notes on backpressure.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @param sink Stream to write the output of the command to.
+     * @return The exit status of the remote command, or -1 if the remote
+     * system did not report one.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the output or writing
+     * to the sink.
+     */
+    @Override
+    public int sendCommand(String commandToSend, final OutputStream sink) throws ConnectionException, IOException
+    {
+        if (sink == null)
+        {
+            throw new IllegalArgumentException("Sink cannot be null");
+        }
+        final long[] copied = new long[1];
+        int exitStatus = execute(commandToSend, new OutputConsumer()
+        {
+            @Override
+            public void consume(InputStream in) throws IOException
+            {
+                copied[0] = new CommandOutputReader().copy(in, sink);
+            }
+        });
+        logger.debug("Streamed " + copied[0] + " bytes; exit status: " + exitStatus);
+        return exitStatus;
+    }
+
+    /**
+     * Sends a command to a remote system and copies its raw output to the
+     * passed in channel as it arrives. The channel is not closed.
+     *
+     * @param commandToSend String of a valid terminal command to send to the
+     * remote system.
+     * @param sink Channel to write the output of the command to.
+     * @return The exit status of the remote command, or -1 if the remote
+     * system did not report one.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the output or writing
+     * to the sink.
+     */
+    @Override
+    public int sendCommand(String commandToSend, WritableByteChannel sink) throws ConnectionException, IOException
+    {
+        if (sink == null)
+        {
+            throw new IllegalArgumentException("Sink cannot be null");
+        }
+        return sendCommand(commandToSend, Channels.newOutputStream(sink));
+    }
+
+    /**
+     * Runs a (possibly multi-line) shell script on the remote system with
+     * <code>sh</code>, in a single round trip. The script is sent as the
+     * shell's input, so it needs no quoting and doesn't depend on the login
+     * shell.
+     *
+     * @param script Script to run.
+     * @return The output of the script, trimmed.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the output.
+     */
+    @Override
+    public String sendScript(String script) throws ConnectionException, IOException
+    {
+        return sendCommandWithInput("sh -s", new ByteArrayInputStream(script.getBytes("UTF-8")));
+    }
+
+    /**
+     * Sends a command to the remote system with the given data as its input,
+     * which is closed once the data has been sent. The command should write
+     * little or no output until it has read all of its input.
+     *
+     * @param commandToSend Command to run.
+     * @param input Data to feed to the command; read to the end but not
+     * closed.
+     * @return The output of the command, trimmed.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if there is a problem reading the input or the
+     * output.
+     */
+    String sendCommandWithInput(String commandToSend, final InputStream input) throws ConnectionException, IOException
+    {
+        final StringBuilder output = new StringBuilder();
+        execute(commandToSend, new InputProducer()
+        {
+            @Override
+            public void produce(OutputStream out) throws IOException
+            {
+                new CommandOutputReader().copy(input, out);
+            }
+        }, new OutputConsumer()
+        {
+            @Override
+            public void consume(InputStream in) throws IOException
+            {
+                new CommandOutputReader().read(in, output);
+            }
+        });
+        return output.toString().trim();
+    }
+
+    /**
+     * Runs a command on an exec channel and hands the channel's output stream
+     * to the consumer. The channel is always disconnected afterwards.
+     *
+     * @param commandToSend Command to run.
+     * @param consumer Consumer that reads the output of the command.
+     * @return The exit status of the remote command, or -1 if the remote
+     * system did not report one.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if the consumer throws.
+     */
+    private int execute(String commandToSend, OutputConsumer consumer) throws ConnectionException, IOException
+    {
+        return execute(commandToSend, null, consumer);
+    }
+
+    /**
+     * Runs a command on an exec channel, has the producer write the command's
+     * input (which is then closed, so the command sees EOF), and hands the
+     * channel's output stream to the consumer. The channel is always
+     * disconnected afterwards.
+     *
+     * The producer runs to completion before the consumer starts, so it
+     * should only be used with commands that write little or no output while
+     * reading their input; output isn't read until then.
+     *
+     * @param commandToSend Command to run.
+     * @param producer Producer that writes the input of the command; null for
+     * none.
+     * @param consumer Consumer that reads the output of the command.
+     * @return The exit status of the remote command, or -1 if the remote
+     * system did not report one.
+     * @throws ConnectionException if there is a problem with the connection.
+     * @throws IOException if the producer or consumer throws.
+     */
+    private int execute(String commandToSend, InputProducer producer, OutputConsumer consumer) throws ConnectionException, IOException
+    {
+        logger.debug("Sending command: '" + commandToSend + "' to server: " + host);
+        Session s = checkConnection();
+        Semaphore permits = channelLimiter.acquire();
+        try
+        {
+            Channel c = s.openChannel("exec");
+            ((ChannelExec) c).setCommand(commandToSend);
+            InputStream outputFromCommand = c.getInputStream();//must be requested before connecting
+            OutputStream inputToCommand = producer == null ? null : c.getOutputStream();
+            c.connect();
+            try
+            {
+                if (producer != null)
+                {
+                    try
+                    {
+                        producer.produce(inputToCommand);
+                    } finally
+                    {
+                        inputToCommand.close();//sends EOF
+                    }
+                }
+                consumer.consume(outputFromCommand);
+                return waitForExitStatus(c);
+            } finally
+            {
+                c.disconnect();
+            }
+        } catch (JSchException e)
+        {
+            throw new ConnectionException(e);
+        } finally
+        {
+            permits.release();
+        }
+    }
+
+    /**
+     * Waits (briefly) for the channel to close so we can get the exit status
+     * of the command. The output stream hitting EOF and the channel closing
+     * are two different messages, so the close may lag slightly behind.
+     *
+     * @param c Channel whose output has been fully read.
+     * @return The exit status, or -1 if it isn't available.
+     */
+    private int waitForExitStatus(Channel c) throws IOException
+    {
+        long deadline = System.currentTimeMillis() + EXIT_STATUS_WAIT_MS;
+        while (!c.isClosed() && System.currentTimeMillis() < deadline)
+        {
+            try
+            {
+                Thread.sleep(5);
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the exit status.");
+            }
+        }
+        return c.getExitStatus();
+    }
+
+    /**
+     * Writes the input of an exec channel.
+     */
+    private interface InputProducer
+    {
+
+        /**
+         * Writes the input of the command.
+         *
+         * @param out Input of the command. Closed by the caller.
+         * @throws IOException If there is a problem producing or writing the
+         * input.
+         */
+        void produce(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads the output of an exec channel.
+     */
+    private interface OutputConsumer
+    {
+
+        /**
+         * Reads the output of the command.
+         *
+         * @param in Output of the command.
+         * @throws IOException If there is a problem reading or handling the
+         * output.
+         */
+        void consume(InputStream in) throws IOException;
     }
 
     /**
      * Checks to see if we currently have a valid connection.
      *
+     * @return The current session. Callers should use this rather than
+     * re-reading the field, which another thread may change.
      * @throws ConnectionException If we are not connected.
      */
-    private void checkConnection() throws ConnectionException
+    private Session checkConnection() throws ConnectionException
     {
-        if (session == null || !session.isConnected())
+        Session s = session;
+        if (s == null || !s.isConnected())
         {
             throw new ConnectionException("Not connected to server. Call connect first.");
         }
+        return s;
     }
 
 }
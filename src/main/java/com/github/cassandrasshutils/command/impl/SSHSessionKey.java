@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import java.util.Objects;
+
+/**
+ * Identifies a pooled SSH session: the host, user, port and credentials it was
+ * opened with. Two keys are only equal if all of these match, so a session is
+ * never handed to a caller that authenticated differently.
+ *
+ * @author Jeffrey DeYoung
+ */
+public final class SSHSessionKey
+{
+
+    /**
+     * Host we are connecting to.
+     */
+    private final String host;
+    /**
+     * Username we are connecting with.
+     */
+    private final String userName;
+    /**
+     * Port that we are connecting via SSH on.
+     */
+    private final int port;
+    /**
+     * Password we are using. Null if using a PEM.
+     */
+    private final String password;
+    /**
+     * PEM (private key) file we are using to connect. Null if using a
+     * password.
+     */
+    private final String pem;
+    /**
+     * Password for the associated PEM file. Optional.
+     */
+    private final String pemPassphrase;
+
+    /**
+     * Constructor.
+     *
+     * @param host Host (ip or DNS) that you are trying to connect to.
+     * @param userName Username that you are using to connect.
+     * @param port Port to connect to SSH over.
+     * @param password Password for the associated user; null if using a PEM.
+     * @param pem PEM (private key file) that you are using for authentication;
+     * null if using a password.
+     * @param pemPassphrase Password to the PEM file. Null if the PEM is not
+     * password protected.
+     */
+    public SSHSessionKey(String host, String userName, int port, String password, String pem, String pemPassphrase)
+    {
+        this.host = host;
+        this.userName = userName;
+        this.port = port;
+        this.password = password;
+        this.pem = pem;
+        this.pemPassphrase = pemPassphrase;
+    }
+
+    /**
+     * Host we are connecting to.
+     *
+     * @return the host
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * Username we are connecting with.
+     *
+     * @return the userName
+     */
+    public String getUserName()
+    {
+        return userName;
+    }
+
+    /**
+     * Port that we are connecting via SSH on.
+     *
+     * @return the port
+     */
+    public int getPort()
+    {
+        return port;
+    }
+
+    /**
+     * Password we are using. Null if using a PEM.
+     *
+     * @return the password
+     */
+    public String getPassword()
+    {
+        return password;
+    }
+
+    /**
+     * PEM (private key) file we are using to connect. Null if using a
+     * password.
+     *
+     * @return the pem
+     */
+    public String getPem()
+    {
+        return pem;
+    }
+
+    /**
+     * Password for the associated PEM file. Optional.
+     *
+     * @return the pemPassphrase
+     */
+    public String getPemPassphrase()
+    {
+        return pemPassphrase;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(host, userName, port, password, pem, pemPassphrase);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass())
+        {
+            return false;
+        }
+        final SSHSessionKey other = (SSHSessionKey) obj;
+        return port == other.port
+                && Objects.equals(host, other.host)
+                && Objects.equals(userName, other.userName)
+                && Objects.equals(password, other.password)
+                && Objects.equals(pem, other.pem)
+                && Objects.equals(pemPassphrase, other.pemPassphrase);
+    }
+
+    /**
+     * Simple toString(). Used for logging; deliberately leaves the credentials
+     * out.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return userName + "@" + host + ":" + port;
+    }
+}
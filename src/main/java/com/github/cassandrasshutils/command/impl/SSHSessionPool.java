@@ -0,0 +1,731 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.exceptions.CannotConnectException;
+import com.github.cassandrasshutils.functions.ClusterCommandExecutor;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of authenticated SSH sessions, keyed by host, user, port and
+ * credentials. Leasing a session from the pool skips the TCP connect, key
+ * exchange and authentication when an idle session for the same key is
+ * available.
+ *
+ * Sessions are handed out exclusively: a leased session is not given to
+ * anyone else until it is released. Idle sessions are health checked before
+ * being handed out and are disconnected once they have been idle for longer
+ * than the max idle time.
+ *
+ * The total number of sessions (leased and idle) to any one host can be
+ * capped with setMaxSessionsPerHost; callers then wait (up to the lease
+ * timeout) for a free slot when the cap is hit. There is no cap by default:
+ * a DAO that is dropped without logOff() keeps its lease forever, so a cap
+ * would eventually lock everyone else out of that host.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class SSHSessionPool
+{
+
+    /**
+     * Default maximum number of sessions (leased and idle) per host; zero, for
+     * no cap.
+     */
+    public static final int DEFAULT_MAX_SESSIONS_PER_HOST = 0;
+
+    /**
+     * Default time a session may sit idle in the pool before it is
+     * disconnected.
+     */
+    public static final long DEFAULT_MAX_IDLE_MS = 5 * 60 * 1000;
+
+    /**
+     * Default time to wait for a free slot when a host is at its session cap.
+     */
+    public static final long DEFAULT_LEASE_TIMEOUT_MS = 60 * 1000;
+
+    /**
+     * Shared pool used by SSHCommandDaoImpl unless told otherwise.
+     */
+    private static final SSHSessionPool DEFAULT_POOL = new SSHSessionPool();
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Idle sessions by key; most recently released first. Guarded by this.
+     */
+    private final Map<SSHSessionKey, Deque<IdleSession>> idleSessions = new HashMap<>();
+
+    /**
+     * Number of open sessions (leased, idle, or being connected) by host.
+     * Guarded by this.
+     */
+    private final Map<String, Integer> openSessionsPerHost = new HashMap<>();
+
+    /**
+     * Maximum number of sessions (leased and idle) per host; zero or less for
+     * no cap.
+     */
+    private volatile int maxSessionsPerHost = DEFAULT_MAX_SESSIONS_PER_HOST;
+
+    /**
+     * Time a session may sit idle in the pool before it is disconnected.
+     */
+    private volatile long maxIdleMs = DEFAULT_MAX_IDLE_MS;
+
+    /**
+     * Time to wait for a free slot when a host is at its session cap.
+     */
+    private volatile long leaseTimeoutMs = DEFAULT_LEASE_TIMEOUT_MS;
+
+    /**
+     * Background evictor; started the first time a session is released.
+     * Guarded by this.
+     */
+    private ScheduledExecutorService evictor = null;
+
+    /**
+     * True once the pool has been closed. Guarded by this.
+     */
+    private boolean closed = false;
+
+    /**
+     * Number of leases satisfied by an idle session.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Number of leases that had to open a new session.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Number of idle sessions that failed their health check.
+     */
+    private final AtomicLong failedHealthChecks = new AtomicLong();
+
+    /**
+     * Number of idle sessions disconnected for being idle too long (or to
+     * make room for another key on the same host).
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Number of leases that had to wait for a free slot.
+     */
+    private final AtomicLong waits = new AtomicLong();
+
+    /**
+     * Gets the shared pool.
+     *
+     * @return The pool used by SSHCommandDaoImpl unless told otherwise.
+     */
+    public static SSHSessionPool getDefault()
+    {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Leases a session for the key. Reuses a healthy idle session if one is
+     * available, otherwise opens a new one (waiting for a free slot if the
+     * host is capped and at its cap). The session must be handed back with
+     * release() or invalidate() when the caller is done with it.
+     *
+     * @param key Host, user, port and credentials to lease a session for.
+     * @return A connected session.
+     * @throws CannotConnectException If a new session cannot be opened, or we
+     * time out waiting for a free slot.
+     */
+    public Session lease(SSHSessionKey key) throws CannotConnectException
+    {
+        long deadline = System.currentTimeMillis() + leaseTimeoutMs;
+        boolean waited = false;
+        synchronized (this)
+        {
+            while (true)
+            {
+                if (closed)
+                {
+                    throw new CannotConnectException("Session pool has been closed.");
+                }
+                Session idle = takeHealthyIdleSession(key);
+                if (idle != null)
+                {
+                    hits.incrementAndGet();
+                    logger.debug("Reusing pooled SSH session for: " + key);
+                    return idle;
+                }
+                if (hasFreeSlot(key.getHost()) || evictIdleForOtherKey(key))
+                {
+                    incrementOpenCount(key.getHost(), 1);//reserve our slot before the (slow) handshake
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    throw new CannotConnectException("Timed out waiting for a free SSH session to: " + key
+                            + "; " + maxSessionsPerHost + " sessions are already open.");
+                }
+                if (!waited)
+                {
+                    waits.incrementAndGet();
+                    waited = true;
+                }
+                try
+                {
+                    wait(remaining);
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new CannotConnectException(e);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        try
+        {
+            return openSession(key);
+        } catch (CannotConnectException | RuntimeException e)
+        {
+            synchronized (this)
+            {
+                incrementOpenCount(key.getHost(), -1);
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Hands a leased session back to the pool so it can be reused. Sessions
+     * that are no longer connected are dropped.
+     *
+     * @param key Key the session was leased with.
+     * @param session Session to release.
+     */
+    public void release(SSHSessionKey key, Session session)
+    {
+        if (session == null)
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            if (closed || !isConnected(session))
+            {
+                incrementOpenCount(key.getHost(), -1);
+                notifyAll();
+                disconnectQuietly(session);
+                return;
+            }
+            Deque<IdleSession> idle = idleSessions.get(key);
+            if (idle == null)
+            {
+                idle = new ArrayDeque<>();
+                idleSessions.put(key, idle);
+            }
+            idle.addFirst(new IdleSession(session, System.currentTimeMillis()));
+            startEvictor();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Hands a leased session back to the pool, but disconnects it rather than
+     * pooling it. Use if the session is known to be broken.
+     *
+     * @param key Key the session was leased with.
+     * @param session Session to discard.
+     */
+    public void invalidate(SSHSessionKey key, Session session)
+    {
+        if (session == null)
+        {
+            return;
+        }
+        disconnectQuietly(session);
+        synchronized (this)
+        {
+            incrementOpenCount(key.getHost(), -1);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Disconnects every idle session that has been idle for longer than the
+     * max idle time. Called periodically by the pool itself; public so callers
+     * can force a sweep.
+     *
+     * @return The number of sessions evicted.
+     */
+    public synchronized int evictIdle()
+    {
+        long cutoff = System.currentTimeMillis() - maxIdleMs;
+        int evicted = 0;
+        Iterator<Map.Entry<SSHSessionKey, Deque<IdleSession>>> entries = idleSessions.entrySet().iterator();
+        while (entries.hasNext())
+        {
+            Map.Entry<SSHSessionKey, Deque<IdleSession>> entry = entries.next();
+            Iterator<IdleSession> it = entry.getValue().iterator();
+            while (it.hasNext())
+            {
+                IdleSession idle = it.next();
+                if (idle.idleSince < cutoff || !isConnected(idle.session))
+                {
+                    it.remove();
+                    disconnectQuietly(idle.session);
+                    incrementOpenCount(entry.getKey().getHost(), -1);
+                    evicted++;
+                }
+            }
+            if (entry.getValue().isEmpty())
+            {
+                entries.remove();
+            }
+        }
+        if (evicted > 0)
+        {
+            evictions.addAndGet(evicted);
+            logger.debug("Evicted " + evicted + " idle SSH sessions.");
+            notifyAll();
+        }
+        return evicted;
+    }
+
+    /**
+     * Disconnects all idle sessions and stops the pool from handing out any
+     * more. Sessions that are currently leased are disconnected as they are
+     * released.
+     */
+    public synchronized void close()
+    {
+        closed = true;
+        for (Map.Entry<SSHSessionKey, Deque<IdleSession>> entry : idleSessions.entrySet())
+        {
+            for (IdleSession idle : entry.getValue())
+            {
+                disconnectQuietly(idle.session);
+                incrementOpenCount(entry.getKey().getHost(), -1);
+            }
+        }
+        idleSessions.clear();
+        if (evictor != null)
+        {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Maximum number of sessions (leased and idle) per host; zero or less for
+     * no cap. Only set a cap if every DAO using this pool is reliably logged
+     * off, since leases aren't given back otherwise.
+     *
+     * @param maxSessionsPerHost the maxSessionsPerHost to set
+     */
+    public void setMaxSessionsPerHost(int maxSessionsPerHost)
+    {
+        this.maxSessionsPerHost = maxSessionsPerHost;
+    }
+
+    /**
+     * Maximum number of sessions (leased and idle) per host; zero or less for
+     * no cap.
+     *
+     * @return the maxSessionsPerHost
+     */
+    public int getMaxSessionsPerHost()
+    {
+        return maxSessionsPerHost;
+    }
+
+    /**
+     * Time a session may sit idle in the pool before it is disconnected.
+     *
+     * @param maxIdleMs the maxIdleMs to set
+     */
+    public void setMaxIdleMs(long maxIdleMs)
+    {
+        if (maxIdleMs < 0)
+        {
+            throw new IllegalArgumentException("Max idle time cannot be negative");
+        }
+        this.maxIdleMs = maxIdleMs;
+    }
+
+    /**
+     * Time a session may sit idle in the pool before it is disconnected.
+     *
+     * @return the maxIdleMs
+     */
+    public long getMaxIdleMs()
+    {
+        return maxIdleMs;
+    }
+
+    /**
+     * Time to wait for a free slot when a host is at its session cap.
+     *
+     * @param leaseTimeoutMs the leaseTimeoutMs to set
+     */
+    public void setLeaseTimeoutMs(long leaseTimeoutMs)
+    {
+        this.leaseTimeoutMs = leaseTimeoutMs;
+    }
+
+    /**
+     * Time to wait for a free slot when a host is at its session cap.
+     *
+     * @return the leaseTimeoutMs
+     */
+    public long getLeaseTimeoutMs()
+    {
+        return leaseTimeoutMs;
+    }
+
+    /**
+     * Number of leases satisfied by an idle session.
+     *
+     * @return the hits
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Number of leases that had to open a new session.
+     *
+     * @return the misses
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Number of idle sessions that failed their health check when leased.
+     *
+     * @return the failedHealthChecks
+     */
+    public long getFailedHealthChecks()
+    {
+        return failedHealthChecks.get();
+    }
+
+    /**
+     * Number of idle sessions disconnected by the pool.
+     *
+     * @return the evictions
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Number of leases that had to wait for a free slot.
+     *
+     * @return the waits
+     */
+    public long getWaits()
+    {
+        return waits.get();
+    }
+
+    /**
+     * Number of open sessions (leased or idle) to a host.
+     *
+     * @param host Host to get the count for.
+     * @return The number of open sessions to that host.
+     */
+    public synchronized int getOpenSessionCount(String host)
+    {
+        return getOpenCount(host);
+    }
+
+    /**
+     * Number of idle sessions currently in the pool.
+     *
+     * @return The number of idle sessions.
+     */
+    public synchronized int getIdleSessionCount()
+    {
+        int count = 0;
+        for (Deque<IdleSession> idle : idleSessions.values())
+        {
+            count += idle.size();
+        }
+        return count;
+    }
+
+    /**
+     * Simple toString(). Used for logging the pool metrics.
+     *
+     * @return A String representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "SSHSessionPool{" + "hits=" + getHits() + ", misses=" + getMisses() + ", failedHealthChecks=" + getFailedHealthChecks()
+                + ", evictions=" + getEvictions() + ", waits=" + getWaits() + ", idle=" + getIdleSessionCount() + '}';
+    }
+
+    /**
+     * Takes the most recently used idle session for the key that passes its
+     * health check, discarding any that fail. Must hold the lock.
+     *
+     * @param key Key to find a session for.
+     * @return A healthy session, or null if there isn't one.
+     */
+    private Session takeHealthyIdleSession(SSHSessionKey key)
+    {
+        Deque<IdleSession> idle = idleSessions.get(key);
+        if (idle == null)
+        {
+            return null;
+        }
+        IdleSession candidate;
+        while ((candidate = idle.pollFirst()) != null)
+        {
+            if (isHealthy(candidate.session))
+            {
+                return candidate.session;
+            }
+            failedHealthChecks.incrementAndGet();
+            logger.debug("Discarding unhealthy pooled SSH session for: " + key);
+            disconnectQuietly(candidate.session);
+            incrementOpenCount(key.getHost(), -1);
+        }
+        idleSessions.remove(key);
+        return null;
+    }
+
+    /**
+     * Whether another session may be opened to a host. Must hold the lock.
+     *
+     * @param host Host to check.
+     * @return True if the host isn't capped or is under its cap.
+     */
+    private boolean hasFreeSlot(String host)
+    {
+        int max = maxSessionsPerHost;
+        return max <= 0 || getOpenCount(host) < max;
+    }
+
+    /**
+     * Disconnects the longest idle session on the same host that belongs to
+     * a different key, freeing up a slot. Must hold the lock.
+     *
+     * @param key Key that needs a slot.
+     * @return True if a session was evicted.
+     */
+    private boolean evictIdleForOtherKey(SSHSessionKey key)
+    {
+        for (Map.Entry<SSHSessionKey, Deque<IdleSession>> entry : idleSessions.entrySet())
+        {
+            if (!entry.getKey().equals(key) && entry.getKey().getHost().equals(key.getHost()) && !entry.getValue().isEmpty())
+            {
+                IdleSession oldest = entry.getValue().pollLast();
+                if (entry.getValue().isEmpty())
+                {
+                    idleSessions.remove(entry.getKey());
+                }
+                disconnectQuietly(oldest.session);
+                incrementOpenCount(key.getHost(), -1);
+                evictions.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Health check for an idle session: it must still be connected, and a
+     * keep alive must go out without error.
+     *
+     * @param session Session to check.
+     * @return True if the session looks usable.
+     */
+    protected boolean isHealthy(Session session)
+    {
+        if (!isConnected(session))
+        {
+            return false;
+        }
+        try
+        {
+            session.sendKeepAliveMsg();
+            return true;
+        } catch (Exception e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Whether a session is still connected.
+     *
+     * @param session Session to check.
+     * @return True if the session is connected.
+     */
+    protected boolean isConnected(Session session)
+    {
+        return session.isConnected();
+    }
+
+    /**
+     * Opens and authenticates a new session. Called without the lock held.
+     *
+     * @param key Host, user, port and credentials to connect with.
+     * @return A connected session.
+     * @throws CannotConnectException If there is a problem connecting.
+     */
+    protected Session openSession(SSHSessionKey key) throws CannotConnectException
+    {
+        logger.debug("Opening new SSH session for: " + key);
+        try
+        {
+            JSch jsch = new JSch();
+            Session session = jsch.getSession(key.getUserName(), key.getHost(), key.getPort());
+            session.setConfig("StrictHostKeyChecking", "no");//TODO: handle this more responsibly
+            if (key.getPem() != null)
+            {//if pem is present, use that
+                //TODO: not sure if this is right
+                if (key.getPemPassphrase() != null)
+                {
+                    jsch.addIdentity(key.getPem(), key.getPemPassphrase());
+                    jsch.addIdentity(key.getPem());
+                } else
+                {
+                    jsch.addIdentity(key.getPem());
+                }
+                session.setIdentityRepository(jsch.getIdentityRepository());
+            } else
+            {//if pem not present, use the password
+                session.setPassword(key.getPassword());
+            }
+            session.setDaemonThread(true);//idle pooled sessions shouldn't keep the JVM alive
+            session.connect();
+            return session;
+        } catch (JSchException e)
+        {
+            throw new CannotConnectException(e);
+        }
+    }
+
+    /**
+     * Starts the background evictor if it isn't already running. Must hold
+     * the lock.
+     */
+    private void startEvictor()
+    {
+        if (evictor != null)
+        {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(new ClusterCommandExecutor.NamedDaemonThreadFactory("ssh-session-pool-evictor"));
+        long period = Math.max(1000, maxIdleMs / 2);
+        evictor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    evictIdle();
+                } catch (RuntimeException e)
+                {
+                    logger.warn("Problem evicting idle SSH sessions.", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Number of open sessions to a host. Must hold the lock.
+     */
+    private int getOpenCount(String host)
+    {
+        Integer count = openSessionsPerHost.get(host);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Adjusts the number of open sessions to a host. Must hold the lock.
+     */
+    private void incrementOpenCount(String host, int delta)
+    {
+        int count = getOpenCount(host) + delta;
+        if (count <= 0)
+        {
+            openSessionsPerHost.remove(host);
+        } else
+        {
+            openSessionsPerHost.put(host, count);
+        }
+    }
+
+    /**
+     * Disconnects a session, ignoring any problems doing so.
+     *
+     * @param session Session to disconnect.
+     */
+    protected void disconnectQuietly(Session session)
+    {
+        try
+        {
+            session.disconnect();
+        } catch (RuntimeException e)
+        {
+            //nothing useful to do; the session is being thrown away anyway
+        }
+    }
+
+    /**
+     * An idle session and when it became idle.
+     */
+    private static class IdleSession
+    {
+
+        private final Session session;
+        private final long idleSince;
+
+        IdleSession(Session session, long idleSince)
+        {
+            this.session = session;
+            this.idleSince = idleSince;
+        }
+    }
+}
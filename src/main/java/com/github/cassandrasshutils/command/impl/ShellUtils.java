@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+/**
+ * Helpers for building shell command lines to send to remote systems.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ShellUtils
+{
+
+    /**
+     * Static helpers only.
+     */
+    private ShellUtils()
+    {
+    }
+
+    /**
+     * Quotes a string so a POSIX shell treats it as a single literal word,
+     * whatever characters it contains.
+     *
+     * @param s String to quote (typically a path).
+     * @return The string wrapped in single quotes, with any embedded single
+     * quotes escaped.
+     */
+    public static String quote(String s)
+    {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Quotes a string only if it needs it: plain names (letters, digits and
+     * @ % + = : , . / _ -) are returned as they are, so commands stay readable.
+     *
+     * @param s String to quote (typically a service or unit name).
+     * @return The string, quoted if it has to be.
+     */
+    public static String quoteIfNeeded(String s)
+    {
+        return s.matches("[A-Za-z0-9@%+=:,./_-]+") ? s : quote(s);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.ServiceManager;
+
+/**
+ * Controls Cassandra with a sysvinit script through <code>service</code>. The
+ * status command goes by the LSB exit code of <code>service ... status</code>
+ * (0 running, 3 stopped, 1 or 2 dead with a pid or lock file left behind),
+ * falling back to the init script's messages for a pidfile we can't read or
+ * a permissions problem, and prints the state word.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class SysVServiceManager implements ServiceManager
+{
+
+    /**
+     * Default name of the Cassandra service.
+     */
+    public static final String DEFAULT_SERVICE = "cassandra";
+
+    /**
+     * Response message that indicates Cassandra is running.
+     */
+    public static final String EXPECTED_RUNNING_MESSAGE = "* Cassandra is running";
+
+    /**
+     * Response message that indicates that something has gone wrong with
+     * Cassandra and it is not running, and probably cannot be started.
+     */
+    public static final String CASSANDRA_CRASHED_MESSAGE = "* could not access pidfile for Cassandra";
+
+    /**
+     * Response message substring that indicates that there is a permissions
+     * problem controlling Cassandra.
+     */
+    public static final String CASSANDRA_PERMISSIONS_PROBLEM_MESSAGE = "Permission denied";
+
+    /**
+     * Name of the service we control, shell quoted if need be.
+     */
+    private final String service;
+
+    /**
+     * Constructor that controls the default service.
+     */
+    public SysVServiceManager()
+    {
+        this(DEFAULT_SERVICE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param service Name of the service to control.
+     */
+    public SysVServiceManager(String service)
+    {
+        if (service == null || service.isEmpty())
+        {
+            throw new IllegalArgumentException("Service cannot be null or empty");
+        }
+        this.service = ShellUtils.quoteIfNeeded(service);
+    }
+
+    /**
+     * Short name of this service manager, for logging.
+     *
+     * @return The name.
+     */
+    @Override
+    public String getName()
+    {
+        return "sysv";
+    }
+
+    /**
+     * Command line command to start Cassandra.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getStartCommand()
+    {
+        return "service " + service + " start";
+    }
+
+    /**
+     * Command line command to stop Cassandra.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getStopCommand()
+    {
+        return "service " + service + " stop";
+    }
+
+    /**
+     * Command line command to restart Cassandra.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getRestartCommand()
+    {
+        return "service " + service + " restart";
+    }
+
+    /**
+     * Command line command that prints the service's state as one word.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getStatusCommand()
+    {
+        //messages are matched anywhere in the output: LSB's log_success_msg
+        //indents them, so they needn't start the line
+        return "out=$(service " + service + " status 2>&1); rc=$?; case \"$rc:$out\" in "
+                + "0:*) echo running ;; "
+                + "*" + ShellUtils.quote(CASSANDRA_PERMISSIONS_PROBLEM_MESSAGE) + "*) echo denied ;; "
+                + "3:*) echo stopped ;; "
+                + "1:*|2:*|*" + ShellUtils.quote(CASSANDRA_CRASHED_MESSAGE.substring(2)) + "*) echo crashed ;; "
+                + "*) echo stopped ;; esac";
+    }
+}
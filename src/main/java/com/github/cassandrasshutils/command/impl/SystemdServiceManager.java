@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.ServiceManager;
+
+/**
+ * Controls Cassandra with systemd. Status comes from the exit codes of
+ * <code>systemctl is-active</code> and <code>is-failed</code>, so there is no
+ * free text to interpret; a unit systemd considers failed is reported as
+ * crashed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class SystemdServiceManager implements ServiceManager
+{
+
+    /**
+     * Default name of the Cassandra unit.
+     */
+    public static final String DEFAULT_UNIT = "cassandra";
+
+    /**
+     * Name of the unit we control, shell quoted if need be.
+     */
+    private final String unit;
+
+    /**
+     * Constructor that controls the default unit.
+     */
+    public SystemdServiceManager()
+    {
+        this(DEFAULT_UNIT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param unit Name of the unit to control.
+     */
+    public SystemdServiceManager(String unit)
+    {
+        if (unit == null || unit.isEmpty())
+        {
+            throw new IllegalArgumentException("Unit cannot be null or empty");
+        }
+        this.unit = ShellUtils.quoteIfNeeded(unit);
+    }
+
+    /**
+     * Short name of this service manager, for logging.
+     *
+     * @return The name.
+     */
+    @Override
+    public String getName()
+    {
+        return "systemd";
+    }
+
+    /**
+     * Command line command to start Cassandra.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getStartCommand()
+    {
+        return "systemctl start " + unit;
+    }
+
+    /**
+     * Command line command to stop Cassandra.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getStopCommand()
+    {
+        return "systemctl stop " + unit;
+    }
+
+    /**
+     * Command line command to restart Cassandra.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getRestartCommand()
+    {
+        return "systemctl restart " + unit;
+    }
+
+    /**
+     * Command line command that prints the service's state as one word.
+     *
+     * @return The command.
+     */
+    @Override
+    public String getStatusCommand()
+    {
+        return "if systemctl is-active --quiet " + unit + " 2>/dev/null; then echo running; "
+                + "elif systemctl is-failed --quiet " + unit + " 2>/dev/null; then echo crashed; else echo stopped; fi";
+    }
+}
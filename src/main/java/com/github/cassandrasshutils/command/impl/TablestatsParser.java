@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.domain.TableStats;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the output of <code>nodetool tablestats</code> (or
+ * <code>cfstats</code>, its older name) into TableStats. Only the per table
+ * sections are read; keyspace totals are left for the caller to work out.
+ * Values nodetool couldn't work out (NaN) are left at their defaults.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TablestatsParser
+{
+
+    /**
+     * Starts a keyspace's section.
+     */
+    private static final String KEYSPACE_PREFIX = "Keyspace";
+
+    /**
+     * Utility class; no instances.
+     */
+    private TablestatsParser()
+    {
+    }
+
+    /**
+     * Parses the output of nodetool tablestats.
+     *
+     * @param output Output of nodetool tablestats.
+     * @return Each table's stats, in the order nodetool listed them.
+     */
+    public static List<TableStats> parse(String output)
+    {
+        List<TableStats> tables = new ArrayList<>();
+        String keyspace = null;
+        TableStats current = null;
+        for (String line : output.split("\n"))
+        {
+            int colon = line.indexOf(':');
+            if (colon < 0)
+            {
+                continue;//separators and blank lines
+            }
+            String key = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (key.equals(KEYSPACE_PREFIX))
+            {
+                keyspace = value;
+                current = null;
+                continue;
+            }
+            if (key.equals("Table") || key.equals("Column Family") || key.equals("Table (index)"))
+            {
+                current = new TableStats(keyspace, value);
+                tables.add(current);
+                continue;
+            }
+            if (current == null)
+            {
+                continue;//keyspace totals
+            }
+            try
+            {
+                apply(current, key, value);
+            } catch (NumberFormatException e)
+            {
+                //NaN, or a value format we don't know; leave the default
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Sets the stat a line is for, if it's one we keep.
+     */
+    private static void apply(TableStats stats, String key, String value)
+    {
+        switch (key)
+        {
+            case "SSTable count":
+                stats.setSSTableCount(Integer.parseInt(value));
+                break;
+            case "Space used (live)":
+                stats.setLiveDiskSpaceUsed(Long.parseLong(value));
+                break;
+            case "Number of partitions (estimate)":
+            case "Number of keys (estimate)":
+                stats.setPartitionCount(Long.parseLong(value));
+                break;
+            case "Local read count":
+                stats.setReadCount(Long.parseLong(value));
+                break;
+            case "Local read latency":
+                stats.setReadLatencyMs(parseMs(value));
+                break;
+            case "Local write count":
+                stats.setWriteCount(Long.parseLong(value));
+                break;
+            case "Local write latency":
+                stats.setWriteLatencyMs(parseMs(value));
+                break;
+            case "Compacted partition minimum bytes":
+                stats.setMinPartitionBytes(Long.parseLong(value));
+                break;
+            case "Compacted partition maximum bytes":
+                stats.setMaxPartitionBytes(Long.parseLong(value));
+                break;
+            case "Compacted partition mean bytes":
+                stats.setMeanPartitionBytes(Long.parseLong(value));
+                break;
+            case "Average tombstones per slice (last five minutes)":
+                stats.setMeanTombstonesPerSlice(Double.parseDouble(value));
+                break;
+            case "Maximum tombstones per slice (last five minutes)":
+                stats.setMaxTombstonesPerSlice(Long.parseLong(value));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Parses a latency such as "0.123 ms"; NaN stays NaN.
+     */
+    private static double parseMs(String value)
+    {
+        int space = value.indexOf(' ');
+        return Double.parseDouble(space < 0 ? value : value.substring(0, space));
+    }
+}
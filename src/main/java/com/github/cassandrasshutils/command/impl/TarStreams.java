@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Packs directories into, and unpacks them from, tar streams as the bytes go
+ * by, so a whole directory can be moved over a single exec channel with no
+ * archive written to disk on either end.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TarStreams
+{
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TarStreams.class);
+
+    /**
+     * Static helpers only.
+     */
+    private TarStreams()
+    {
+    }
+
+    /**
+     * Unpacks a tar stream into a directory. Regular files, directories and
+     * hard links (which tar uses for a file it has already sent under another
+     * name, as in a snapshot next to its live data) are unpacked; anything
+     * else, including symlinks, is skipped. Entries that would land outside
+     * the directory are rejected.
+     *
+     * @param in Tar stream; read to the end of the archive but not closed.
+     * @param localDirectory Directory to unpack into; created if needed.
+     * @return The number of files unpacked.
+     * @throws IOException If there is a problem reading the stream or writing
+     * the files, or an entry tries to escape the directory.
+     */
+    public static int unpack(InputStream in, File localDirectory) throws IOException
+    {
+        if (!localDirectory.isDirectory() && !localDirectory.mkdirs())
+        {
+            throw new IOException("Could not create directory: " + localDirectory.getAbsolutePath());
+        }
+        String root = localDirectory.getCanonicalPath() + File.separator;
+        TarArchiveInputStream tar = new TarArchiveInputStream(in);
+        byte[] buffer = new byte[CommandOutputReader.DEFAULT_BUFFER_SIZE];
+        int files = 0;
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextTarEntry()) != null)
+        {
+            File target = resolve(root, entry.getName());
+            if (entry.isDirectory())
+            {
+                if (!target.isDirectory() && !target.mkdirs())
+                {
+                    throw new IOException("Could not create directory: " + target.getAbsolutePath());
+                }
+            } else if (entry.isLink())
+            {
+                File existing = resolve(root, entry.getLinkName());
+                Files.copy(existing.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                files++;
+            } else if (entry.isFile())
+            {
+                target.getParentFile().mkdirs();
+                try (OutputStream out = new FileOutputStream(target))
+                {
+                    int read;
+                    while ((read = tar.read(buffer)) != -1)
+                    {
+                        out.write(buffer, 0, read);
+                    }
+                }
+                target.setLastModified(entry.getModTime().getTime());
+                if ((entry.getMode() & 0100) != 0)
+                {
+                    target.setExecutable(true);
+                }
+                files++;
+            } else
+            {
+                logger.warn("Skipping unsupported tar entry: " + entry.getName());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Packs a directory (and the directory itself, by name) into a tar
+     * stream.
+     *
+     * @param localDirectory Directory to pack.
+     * @param out Stream to write the tar to; finished but not closed.
+     * @return The number of files packed.
+     * @throws IOException If there is a problem reading the files or writing
+     * the stream.
+     */
+    public static int pack(File localDirectory, OutputStream out) throws IOException
+    {
+        if (!localDirectory.isDirectory())
+        {
+            throw new IOException("Not a directory: " + localDirectory.getAbsolutePath());
+        }
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(out);
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        byte[] buffer = new byte[CommandOutputReader.DEFAULT_BUFFER_SIZE];
+        int files = pack(tar, localDirectory, localDirectory.getName(), buffer);
+        tar.finish();
+        tar.flush();
+        return files;
+    }
+
+    /**
+     * Packs a file or directory (recursively) under the given entry name.
+     */
+    private static int pack(TarArchiveOutputStream tar, File file, String name, byte[] buffer) throws IOException
+    {
+        if (Files.isSymbolicLink(file.toPath()))
+        {
+            logger.warn("Skipping symlink: " + file.getAbsolutePath());
+            return 0;
+        }
+        TarArchiveEntry entry = new TarArchiveEntry(file, name);
+        tar.putArchiveEntry(entry);
+        if (file.isDirectory())
+        {
+            tar.closeArchiveEntry();
+            int files = 0;
+            File[] children = file.listFiles();
+            if (children == null)
+            {
+                throw new IOException("Could not list directory: " + file.getAbsolutePath());
+            }
+            for (File child : children)
+            {
+                files += pack(tar, child, name + "/" + child.getName(), buffer);
+            }
+            return files;
+        }
+        try (InputStream in = new FileInputStream(file))
+        {
+            long remaining = entry.getSize();//never write more than the header promised, even if the file grows
+            int read;
+            while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1)
+            {
+                tar.write(buffer, 0, read);
+                remaining -= read;
+            }
+            if (remaining > 0)
+            {
+                throw new IOException("File shrank while we were packing it: " + file.getAbsolutePath());
+            }
+        }
+        tar.closeArchiveEntry();
+        return 1;
+    }
+
+    /**
+     * Resolves an entry name against the root directory, refusing names that
+     * would escape it (absolute paths, "..", etc).
+     */
+    private static File resolve(String root, String name) throws IOException
+    {
+        File target = new File(root, name);
+        String path = target.getCanonicalPath();
+        if (!path.startsWith(root) && !(path + File.separator).equals(root))
+        {
+            throw new IOException("Refusing to unpack outside of: " + root + ": " + name);
+        }
+        return target;
+    }
+}
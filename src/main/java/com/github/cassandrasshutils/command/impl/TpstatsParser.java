@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import com.github.cassandrasshutils.command.domain.ThreadPoolStats;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parses the thread pool section of <code>nodetool tpstats</code>. Everything
+ * after the pool section (dropped messages, latencies) is ignored.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TpstatsParser
+{
+
+    /**
+     * Header line that starts the pool section.
+     */
+    private static final String POOL_HEADER = "Pool Name";
+
+    /**
+     * Utility class; no instances.
+     */
+    private TpstatsParser()
+    {
+    }
+
+    /**
+     * Parses the output of nodetool tpstats.
+     *
+     * @param output Output of nodetool tpstats.
+     * @return Each pool's stats, keyed by pool name, in the order nodetool
+     * listed them.
+     */
+    public static Map<String, ThreadPoolStats> parse(String output)
+    {
+        Map<String, ThreadPoolStats> pools = new LinkedHashMap<>();
+        boolean inPools = false;
+        for (String line : output.split("\n"))
+        {
+            line = line.trim();
+            if (!inPools)
+            {
+                inPools = line.startsWith(POOL_HEADER);
+                continue;
+            }
+            if (line.isEmpty())
+            {
+                break;//end of the pool section
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 6)
+            {
+                continue;
+            }
+            try
+            {
+                ThreadPoolStats pool = new ThreadPoolStats(fields[0], parseCount(fields[1]), parseCount(fields[2]),
+                        parseCount(fields[3]), parseCount(fields[4]), parseCount(fields[5]));
+                pools.put(pool.getPoolName(), pool);
+            } catch (NumberFormatException e)
+            {
+                //not a pool line
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * Sums the active and pending tasks of the named pools; pools that
+     * aren't present count as zero.
+     *
+     * @param pools Parsed tpstats.
+     * @param poolNames Pools to sum.
+     * @return Active plus pending tasks across the pools.
+     */
+    public static long outstanding(Map<String, ThreadPoolStats> pools, String... poolNames)
+    {
+        long total = 0;
+        for (String name : poolNames)
+        {
+            ThreadPoolStats pool = pools.get(name);
+            if (pool != null)
+            {
+                total += pool.getActive() + pool.getPending();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Parses a count; nodetool prints "n/a" for counts some pools don't
+     * track.
+     */
+    private static long parseCount(String field)
+    {
+        return field.equals("n/a") ? 0 : Long.parseLong(field);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of a resumable transfer, persisted to a small properties file next
+ * to the partial file. Records what is being transferred (so we never resume
+ * against a source that has since changed) and how many bytes have been
+ * transferred so far.
+ *
+ * @author Jeffrey DeYoung
+ */
+class TransferCheckpoint
+{
+
+    /**
+     * Property key for the source of the transfer.
+     */
+    private static final String SOURCE = "source";
+
+    /**
+     * Property key for the target of the transfer.
+     */
+    private static final String TARGET = "target";
+
+    /**
+     * Property key for the size of the source.
+     */
+    private static final String SOURCE_SIZE = "sourceSize";
+
+    /**
+     * Property key for the last modified time of the source.
+     */
+    private static final String SOURCE_MODIFIED = "sourceModified";
+
+    /**
+     * Property key for the number of bytes transferred so far.
+     */
+    private static final String OFFSET = "offset";
+
+    /**
+     * Source of the transfer, as host:path or a local path.
+     */
+    private final String source;
+
+    /**
+     * Target of the transfer, as host:path or a local path.
+     */
+    private final String target;
+
+    /**
+     * Size of the source when the transfer started.
+     */
+    private final long sourceSize;
+
+    /**
+     * Last modified time of the source when the transfer started.
+     */
+    private final long sourceModified;
+
+    /**
+     * Number of bytes transferred so far.
+     */
+    private volatile long offset;
+
+    /**
+     * Constructor.
+     *
+     * @param source Source of the transfer.
+     * @param target Target of the transfer.
+     * @param sourceSize Size of the source when the transfer started.
+     * @param sourceModified Last modified time of the source when the
+     * transfer started.
+     * @param offset Number of bytes transferred so far.
+     */
+    TransferCheckpoint(String source, String target, long sourceSize, long sourceModified, long offset)
+    {
+        this.source = source;
+        this.target = target;
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.offset = offset;
+    }
+
+    /**
+     * Loads a checkpoint.
+     *
+     * @param file Checkpoint file.
+     * @return The checkpoint, or null if the file does not exist or can't be
+     * read.
+     */
+    static TransferCheckpoint load(File file)
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file))
+        {
+            props.load(in);
+            return new TransferCheckpoint(props.getProperty(SOURCE), props.getProperty(TARGET),
+                    Long.parseLong(props.getProperty(SOURCE_SIZE)), Long.parseLong(props.getProperty(SOURCE_MODIFIED)),
+                    Long.parseLong(props.getProperty(OFFSET)));
+        } catch (IOException | RuntimeException e)
+        {//a half written or hand edited checkpoint; just start over
+            return null;
+        }
+    }
+
+    /**
+     * Saves this checkpoint. The file is written in full and then moved into
+     * place, so a crash mid-save leaves the previous checkpoint intact.
+     *
+     * @param file Checkpoint file.
+     * @throws IOException If the checkpoint can't be written.
+     */
+    synchronized void save(File file) throws IOException
+    {
+        Properties props = new Properties();
+        props.setProperty(SOURCE, source);
+        props.setProperty(TARGET, target);
+        props.setProperty(SOURCE_SIZE, Long.toString(sourceSize));
+        props.setProperty(SOURCE_MODIFIED, Long.toString(sourceModified));
+        props.setProperty(OFFSET, Long.toString(offset));
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp))
+        {
+            props.store(out, "Resumable transfer checkpoint");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Checks whether this checkpoint is for the same transfer, from an
+     * unchanged source.
+     *
+     * @param source Source of the transfer.
+     * @param target Target of the transfer.
+     * @param sourceSize Current size of the source.
+     * @param sourceModified Current last modified time of the source.
+     * @return True if the transfer can be resumed from this checkpoint.
+     */
+    boolean matches(String source, String target, long sourceSize, long sourceModified)
+    {
+        return this.source.equals(source) && this.target.equals(target)
+                && this.sourceSize == sourceSize && this.sourceModified == sourceModified;
+    }
+
+    /**
+     * Number of bytes transferred so far.
+     *
+     * @return the offset
+     */
+    long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * Number of bytes transferred so far.
+     *
+     * @param offset the offset to set
+     */
+    void setOffset(long offset)
+    {
+        this.offset = offset;
+    }
+}
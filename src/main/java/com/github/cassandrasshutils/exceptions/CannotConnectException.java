@@ -29,4 +29,9 @@ public class CannotConnectException extends ConnectionException
         super(cause);
     }
 
+    public CannotConnectException(String message)
+    {
+        super(message);
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Exception that indicates that a node's JMX stub gives the same address as
+ * another node's that is still connected, so the two can't be read at the
+ * same time (see JmxCassandraCommandDaoImpl).
+ *
+ * @author Jeffrey DeYoung
+ */
+public class JmxAddressInUseException extends IOException
+{
+
+    /**
+     * Hostname of the node we were trying to read.
+     */
+    private final String hostName;
+
+    /**
+     * Address ("host:port") both nodes' stubs give.
+     */
+    private final String address;
+
+    /**
+     * Hostname of the node that is connected at that address.
+     */
+    private final String holderHostName;
+
+    /**
+     * Constructor.
+     *
+     * @param hostName Host Name of the node we were trying to read. NOT an
+     * error message.
+     * @param address Address ("host:port") both nodes' stubs give.
+     * @param holderHostName Host Name of the node that is connected at that
+     * address.
+     */
+    public JmxAddressInUseException(String hostName, String address, String holderHostName)
+    {
+        super("JMX on " + hostName + " is at " + address + ", which is in use by " + holderHostName
+                + "; set java.rmi.server.hostname on the nodes so they can be read at the same time.");
+        this.hostName = hostName;
+        this.address = address;
+        this.holderHostName = holderHostName;
+    }
+
+    /**
+     * Hostname of the node we were trying to read.
+     *
+     * @return the hostName
+     */
+    public String getHostName()
+    {
+        return hostName;
+    }
+
+    /**
+     * Address ("host:port") both nodes' stubs give.
+     *
+     * @return the address
+     */
+    public String getAddress()
+    {
+        return address;
+    }
+
+    /**
+     * Hostname of the node that is connected at that address.
+     *
+     * @return the holderHostName
+     */
+    public String getHolderHostName()
+    {
+        return holderHostName;
+    }
+
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.DrainResult;
+import com.github.cassandrasshutils.command.domain.HostResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts or stops Cassandra on a whole cluster at once, rather than one
+ * already connected node at a time.
+ *
+ * Starting is staged: the seed nodes are started first (so the rest have
+ * someone to gossip with), then the remaining nodes one datacenter/rack at a
+ * time, with up to parallelism nodes in a stage starting at once. A stage
+ * only starts once the one before it has finished. If no seed starts, the
+ * rest are not attempted. Stopping has no ordering to respect, so nodes are
+ * stopped up to parallelism at a time across the whole cluster, optionally
+ * draining each one first (see DrainFunction).
+ *
+ * Servers are grouped using their datacenter and rack fields; servers without
+ * them are grouped together.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class CassandraClusterFunction
+{
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Factory used to create a DAO for each server.
+     */
+    private final RemoteCommandDaoFactory daoFactory;
+
+    /**
+     * Most nodes started at once within a stage, or stopped at once.
+     */
+    private final int parallelism;
+
+    /**
+     * Poller used to wait for each node to start serving clients.
+     */
+    private ReadinessPoller startPoller = new ReadinessPoller(CassandraCommandFunction.DEFAULT_START_DEADLINE_MS);
+
+    /**
+     * Poller used to wait for each node to stop.
+     */
+    private ReadinessPoller stopPoller = new ReadinessPoller(CassandraCommandFunction.DEFAULT_STOP_DEADLINE_MS);
+
+    /**
+     * Poller used to wait for each node to drain, when draining.
+     */
+    private ReadinessPoller drainPoller = new ReadinessPoller(DrainFunction.DEFAULT_DRAIN_DEADLINE_MS);
+
+    /**
+     * Constructor that uses the default parallelism.
+     *
+     * @param daoFactory Factory used to create a DAO for each server.
+     */
+    public CassandraClusterFunction(RemoteCommandDaoFactory daoFactory)
+    {
+        this(daoFactory, ClusterCommandExecutor.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param daoFactory Factory used to create a DAO for each server.
+     * @param parallelism Most nodes started at once within a stage, or
+     * stopped at once; each one holds an SSH session and a thread while it
+     * runs.
+     */
+    public CassandraClusterFunction(RemoteCommandDaoFactory daoFactory, int parallelism)
+    {
+        if (daoFactory == null)
+        {
+            throw new IllegalArgumentException("DAO factory cannot be null");
+        }
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.daoFactory = daoFactory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Starts Cassandra on every server: seeds first, then each
+     * datacenter/rack in turn.
+     *
+     * @param servers Servers to start.
+     * @return Each server's outcome (true if it started serving), in
+     * completion order. Servers that were not attempted because no seed
+     * started are absent.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public Map<Server, HostResult<Boolean>> startCluster(Collection<Server> servers) throws InterruptedException
+    {
+        Map<Server, HostResult<Boolean>> results = new LinkedHashMap<>();
+        List<List<Server>> stages = planStartStages(servers);
+        ServerTask<Boolean> start = new ServerTask<Boolean>()
+        {
+            @Override
+            public Boolean execute(RemoteCommandDao command) throws Exception
+            {
+                return CassandraCommandFunction.startCassandra(command, startPoller);
+            }
+        };
+        ClusterCommandExecutor executor = new ClusterCommandExecutor(daoFactory, parallelism, 0);
+        boolean seedsStaged = !stages.isEmpty() && stages.get(0).get(0).isSeed();
+        for (int i = 0; i < stages.size(); i++)
+        {
+            List<Server> stage = stages.get(i);
+            logger.info("Starting " + stage.size() + " node(s)" + (seedsStaged && i == 0 ? " (seeds)" : "") + "; stage " + (i + 1) + " of " + stages.size());
+            Map<Server, HostResult<Boolean>> stageResults = executor.execute(stage, start, null);
+            results.putAll(stageResults);
+            if (seedsStaged && i == 0 && !anyStarted(stageResults))
+            {
+                logger.warn("No seed node started; not starting the remaining nodes.");
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops Cassandra on every server, up to parallelism at a time.
+     *
+     * @param servers Servers to stop.
+     * @param drain True to drain each node before stopping it, so nothing
+     * needs to be replayed from the commit log on the next start.
+     * @return Each server's outcome (true if it stopped), in completion
+     * order.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public Map<Server, HostResult<Boolean>> stopCluster(Collection<Server> servers, boolean drain) throws InterruptedException
+    {
+        if (drain)
+        {
+            Map<Server, HostResult<Boolean>> results = new LinkedHashMap<>();
+            for (HostResult<DrainResult> result : drainAndStopCluster(servers).values())
+            {
+                Boolean stopped = result.isSuccess() ? result.getResult().isStopped() : null;
+                results.put(result.getServer(), new HostResult<>(result.getServer(), stopped, result.getError(), result.isTimedOut(), result.getElapsedMs()));
+            }
+            return results;
+        }
+        return stopAll(servers, new ServerTask<Boolean>()
+        {
+            @Override
+            public Boolean execute(RemoteCommandDao command) throws Exception
+            {
+                return CassandraCommandFunction.stopCassandra(command, stopPoller);
+            }
+        });
+    }
+
+    /**
+     * Drains and then stops Cassandra on every server, up to parallelism at
+     * a time.
+     *
+     * @param servers Servers to stop.
+     * @return Each server's drain result, in completion order.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public Map<Server, HostResult<DrainResult>> drainAndStopCluster(Collection<Server> servers) throws InterruptedException
+    {
+        final DrainFunction drainFunction = new DrainFunction();
+        drainFunction.setDrainPoller(drainPoller);
+        drainFunction.setStopPoller(stopPoller);
+        return stopAll(servers, new ServerTask<DrainResult>()
+        {
+            @Override
+            public DrainResult execute(RemoteCommandDao command) throws Exception
+            {
+                return drainFunction.drainAndStop(command);
+            }
+        });
+    }
+
+    /**
+     * Runs a stop task on every server, up to parallelism at a time.
+     */
+    private <T> Map<Server, HostResult<T>> stopAll(Collection<Server> servers, ServerTask<T> task) throws InterruptedException
+    {
+        if (servers.isEmpty())
+        {
+            return new LinkedHashMap<>();
+        }
+        logger.info("Stopping " + servers.size() + " node(s)");
+        ClusterCommandExecutor executor = new ClusterCommandExecutor(daoFactory, parallelism, 0);
+        return executor.execute(new ArrayList<>(servers), task, null);
+    }
+
+    /**
+     * Splits servers into the stages they are started in: all the seeds
+     * (if any), then one stage per datacenter/rack, in the order each is
+     * first seen.
+     *
+     * @param servers Servers to start.
+     * @return The stages, in the order to start them.
+     */
+    static List<List<Server>> planStartStages(Collection<Server> servers)
+    {
+        List<Server> seeds = new ArrayList<>();
+        Map<String, List<Server>> racks = new LinkedHashMap<>();
+        for (Server server : servers)
+        {
+            if (server.isSeed())
+            {
+                seeds.add(server);
+                continue;
+            }
+            String key = server.getDatacenter() + "/" + server.getRack();
+            List<Server> rack = racks.get(key);
+            if (rack == null)
+            {
+                rack = new ArrayList<>();
+                racks.put(key, rack);
+            }
+            rack.add(server);
+        }
+        List<List<Server>> stages = new ArrayList<>();
+        if (!seeds.isEmpty())
+        {
+            stages.add(seeds);
+        }
+        stages.addAll(racks.values());
+        return stages;
+    }
+
+    /**
+     * True if at least one server started.
+     */
+    private static boolean anyStarted(Map<Server, HostResult<Boolean>> results)
+    {
+        for (HostResult<Boolean> result : results.values())
+        {
+            if (result.isSuccess() && result.getResult())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Most nodes started at once within a stage, or stopped at once.
+     *
+     * @return the parallelism
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Poller used to wait for each node to start serving clients.
+     *
+     * @return the startPoller
+     */
+    public ReadinessPoller getStartPoller()
+    {
+        return startPoller;
+    }
+
+    /**
+     * Poller used to wait for each node to start serving clients.
+     *
+     * @param startPoller the startPoller to set
+     */
+    public void setStartPoller(ReadinessPoller startPoller)
+    {
+        if (startPoller == null)
+        {
+            throw new IllegalArgumentException("Poller cannot be null");
+        }
+        this.startPoller = startPoller;
+    }
+
+    /**
+     * Poller used to wait for each node to drain, when draining.
+     *
+     * @return the drainPoller
+     */
+    public ReadinessPoller getDrainPoller()
+    {
+        return drainPoller;
+    }
+
+    /**
+     * Poller used to wait for each node to drain, when draining.
+     *
+     * @param drainPoller the drainPoller to set
+     */
+    public void setDrainPoller(ReadinessPoller drainPoller)
+    {
+        if (drainPoller == null)
+        {
+            throw new IllegalArgumentException("Poller cannot be null");
+        }
+        this.drainPoller = drainPoller;
+    }
+
+    /**
+     * Poller used to wait for each node to stop.
+     *
+     * @return the stopPoller
+     */
+    public ReadinessPoller getStopPoller()
+    {
+        return stopPoller;
+    }
+
+    /**
+     * Poller used to wait for each node to stop.
+     *
+     * @param stopPoller the stopPoller to set
+     */
+    public void setStopPoller(ReadinessPoller stopPoller)
+    {
+        if (stopPoller == null)
+        {
+            throw new IllegalArgumentException("Poller cannot be null");
+        }
+        this.stopPoller = stopPoller;
+    }
+}
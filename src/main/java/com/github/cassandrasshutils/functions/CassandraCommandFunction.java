@@ -16,13 +16,20 @@
 package com.github.cassandrasshutils.functions;
 
 import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.ServiceManager;
+import com.github.cassandrasshutils.command.domain.DrainResult;
+import com.github.cassandrasshutils.command.domain.ServiceAction;
+import com.github.cassandrasshutils.command.domain.ServiceControlResult;
+import com.github.cassandrasshutils.command.domain.ServiceState;
 import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
 import com.github.cassandrasshutils.exceptions.CassandraPermissionsException;
 import com.github.cassandrasshutils.exceptions.ConnectionException;
 import java.io.IOException;
 
 /**
- * Object for interacting with the Cassandra service on a node.
+ * Object for interacting with the Cassandra service on a node. The commands
+ * used depend on the node's service manager (systemd, sysvinit, ...), which
+ * ServiceManagerResolver works out once per host.
  *
  * @author jeffrey
  */
@@ -30,70 +37,63 @@ public class CassandraCommandFunction
 {
 
     /**
-     * Command line command to start Cassandra.
+     * Default time to wait for Cassandra to start serving clients after a
+     * start or restart.
      */
-    private static final String CASSANDRA_START_COMMAND = "service cassandra start";
+    public static final long DEFAULT_START_DEADLINE_MS = 3 * 60 * 1000;
 
     /**
-     * Command line command to stop Cassandra.
+     * Default time to wait for Cassandra to stop.
      */
-    private static final String CASSANDRA_STOP_COMMAND = "service cassandra stop";
+    public static final long DEFAULT_STOP_DEADLINE_MS = 60 * 1000;
 
     /**
-     * Command line command to restart Cassandra.
-     */
-    private static final String CASSANDRA_RESTART_COMMAND = "service cassandra restart";
-
-    /**
-     * Command line command to get the service status of Cassandra.
-     */
-    private static final String CASSANDRA_STATUS_COMMAND = "service cassandra status";
-
-    /**
-     * Response message that indicates Cassandra is running.
-     */
-    private static final String EXPECTED_RUNNING_MESSAGE = "* Cassandra is running";
-
-    /**
-     * Response message that indicates that something has gone wrong with
-     * Cassandra and it is not running, and probably cannot be started.
-     */
-    private static final String CASSANDRA_CRASHED_MESSAGE = "* could not access pidfile for Cassandra";
-
-    /**
-     * Response message substring that indicates that there is a permissions
-     * problem controlling Cassandra.
+     * Starts an Cassandra service using the specified RemoteCommandDao, and
+     * waits (up to DEFAULT_START_DEADLINE_MS) for it to start serving
+     * clients.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server you wish to start the Cassandra instance on.
+     * @throws ConnectionException If we can't connect or there is an connection
+     * problem to the server.
+     * @throws IOException If there is an IO issue talking to the server.
+     * @throws CassandraCrashedException If Cassandra has crashed (probably
+     * unrecoverable) during startup.
+     * @return True if Cassandra was started; false if it failed to start.
      */
-    private static final String CASSANDRA_PERMISSIONS_PROBLEM_MESSAGE = "Permission denied";
+    public static boolean startCassandra(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        return startCassandra(command, new ReadinessPoller(DEFAULT_START_DEADLINE_MS));
+    }
 
     /**
-     * Starts an Cassandra service using the specified RemoteCommandDao.
+     * Starts an Cassandra service using the specified RemoteCommandDao, and
+     * polls until it is serving clients (the service is running, the native
+     * port is listening, and nodetool statusbinary says so) or the poller
+     * gives up.
      *
      * @param command RemoteCommandDao that is <b>already connected</b> to the
      * server you wish to start the Cassandra instance on.
+     * @param poller Poller that decides how often and how long to check.
      * @throws ConnectionException If we can't connect or there is an connection
      * problem to the server.
      * @throws IOException If there is an IO issue talking to the server.
      * @throws CassandraCrashedException If Cassandra has crashed (probably
      * unrecoverable) during startup.
-     * @return True if Cassandra was started; false if it failed to start.
+     * @return True if Cassandra was started; false if it did not start serving
+     * before the poller gave up.
      */
-    public static boolean startCassandra(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
+    public static boolean startCassandra(RemoteCommandDao command, ReadinessPoller poller) throws ConnectionException, IOException, CassandraCrashedException
     {
-        if (isCassandraRunning(command))
+        ServiceStatusCache statusCache = ServiceStatusCache.getDefault();
+        if (statusCache.isRunning(command))
         {
             return true;// don't try to start cassandra again if it's already running; will just slow us down
         }
         //cassandra is not currently running
-        command.sendCommand(CASSANDRA_START_COMMAND);//make the call to start cassandra
-        try
-        {
-            Thread.sleep(35000);//Sleep to let cassandra finish starting up
-        } catch (InterruptedException e)
-        {
-            throw new RuntimeException(e);
-        }
-        return isCassandraRunning(command);//check to see if we succeeded
+        statusCache.invalidate(command);
+        command.sendCommand(serviceManager(command).getStartCommand());//make the call to start cassandra
+        return recordStatus(command, poller.await(command, CassandraReadinessChecks.serving()), true);//wait for it to come up
     }
 
     /**
@@ -111,20 +111,53 @@ public class CassandraCommandFunction
      */
     public static boolean stopCassandra(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
     {
-        if (!isCassandraRunning(command))
+        return stopCassandra(command, new ReadinessPoller(DEFAULT_STOP_DEADLINE_MS));
+    }
+
+    /**
+     * Stops an Cassandra service using the specified RemoteCommandDao, and
+     * polls until the service reports it has stopped or the poller gives up.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server you wish to stop the Cassandra instance on.
+     * @param poller Poller that decides how often and how long to check.
+     * @throws ConnectionException If we can't connect or there is an connection
+     * problem to the server.
+     * @throws IOException If there is an IO issue talking to the server.
+     * @throws CassandraCrashedException If Cassandra has crashed (probably
+     * unrecoverable) during startup.
+     * @return True if Cassandra was stopped; false if it failed to stop
+     * before the poller gave up.
+     */
+    public static boolean stopCassandra(RemoteCommandDao command, ReadinessPoller poller) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        ServiceStatusCache statusCache = ServiceStatusCache.getDefault();
+        if (!statusCache.isRunning(command))
         {
             return true;// don't try to stop cassandra; it is already stopped
         }
         //cassandra is currently running
-        command.sendCommand(CASSANDRA_STOP_COMMAND);//make the call to stop cassandra
-        try
-        {
-            Thread.sleep(1000);//Sleep to let cassandra finish stopping
-        } catch (InterruptedException e)
-        {
-            throw new RuntimeException(e);
-        }
-        return !isCassandraRunning(command);//check to see if we succeeded
+        statusCache.invalidate(command);
+        command.sendCommand(serviceManager(command).getStopCommand());//make the call to stop cassandra
+        return recordStatus(command, poller.await(command, CassandraReadinessChecks.serviceStopped()), false);//wait for it to go down
+    }
+
+    /**
+     * Stops an Cassandra service gracefully: runs nodetool drain (following
+     * the flush progress until it finishes), then stops the service, so the
+     * next start doesn't have to replay the commit log.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server you wish to stop the Cassandra instance on.
+     * @throws ConnectionException If we can't connect or there is an connection
+     * problem to the server.
+     * @throws IOException If there is an IO issue talking to the server.
+     * @throws CassandraCrashedException If Cassandra has crashed.
+     * @return How the drain and stop went, and how long each took.
+     */
+    public static DrainResult drainAndStopCassandra(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        return new DrainFunction().drainAndStop(command);
     }
 
     /**
@@ -141,20 +174,112 @@ public class CassandraCommandFunction
      */
     public static boolean restartCassandra(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
     {
-        command.sendCommand(CASSANDRA_RESTART_COMMAND);//make the call to restart cassandra
-        try
+        return restartCassandra(command, new ReadinessPoller(DEFAULT_START_DEADLINE_MS));
+    }
+
+    /**
+     * Restarts an Cassandra service using the specified RemoteCommandDao, and
+     * polls until it is serving clients again or the poller gives up.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server you wish to restart the Cassandra instance on.
+     * @param poller Poller that decides how often and how long to check.
+     * @throws ConnectionException If we can't connect or there is an connection
+     * problem to the server.
+     * @throws IOException If there is an IO issue talking to the server.
+     * @throws CassandraCrashedException If Cassandra has crashed (probably
+     * unrecoverable) during startup.
+     * @return True if Cassandra was started; false if it did not start serving
+     * before the poller gave up.
+     */
+    public static boolean restartCassandra(RemoteCommandDao command, ReadinessPoller poller) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        ServiceStatusCache.getDefault().invalidate(command);
+        command.sendCommand(serviceManager(command).getRestartCommand());//make the call to restart cassandra
+        return recordStatus(command, poller.await(command, CassandraReadinessChecks.serving()), true);//wait for it to come back up
+    }
+
+    /**
+     * Starts, stops or restarts Cassandra in a single round trip, waiting up
+     * to the default deadline for the action (DEFAULT_STOP_DEADLINE_MS for a
+     * stop, DEFAULT_START_DEADLINE_MS otherwise).
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server you wish to act on.
+     * @param action Action to take.
+     * @return What the service's state was, whether we acted, and whether it
+     * reached the wanted state.
+     * @throws ConnectionException If there is an connection problem to the
+     * server.
+     * @throws IOException If there is an IO issue talking to the server.
+     * @throws CassandraCrashedException If Cassandra has crashed, before or
+     * after the action.
+     */
+    public static ServiceControlResult controlCassandra(RemoteCommandDao command, ServiceAction action) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        long deadlineMs = action.isLeavesRunning() ? DEFAULT_START_DEADLINE_MS : DEFAULT_STOP_DEADLINE_MS;
+        return controlCassandra(command, action, deadlineMs, CassandraReadinessChecks.DEFAULT_NATIVE_PORT);
+    }
+
+    /**
+     * Starts, stops or restarts Cassandra in a single round trip. One script
+     * is sent to the node; it checks the status, acts (a start when already
+     * running, or a stop when already stopped, is skipped), then waits on the
+     * node itself, backing off between checks, until Cassandra is serving
+     * clients (or has stopped) or the deadline passes. The separate status,
+     * action and readiness commands the other methods send would each cost
+     * an exec channel and a remote shell.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server you wish to act on.
+     * @param action Action to take.
+     * @param deadlineMs How long the node waits for the wanted state, in
+     * milliseconds (rounded up to whole seconds).
+     * @param nativePort Port the native transport listens on.
+     * @return What the service's state was, whether we acted, and whether it
+     * reached the wanted state.
+     * @throws ConnectionException If there is an connection problem to the
+     * server.
+     * @throws IOException If there is an IO issue talking to the server.
+     * @throws CassandraCrashedException If Cassandra has crashed, before or
+     * after the action.
+     */
+    public static ServiceControlResult controlCassandra(RemoteCommandDao command, ServiceAction action, long deadlineMs, int nativePort) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        ServiceStatusCache.getDefault().invalidate(command);
+        long start = System.currentTimeMillis();
+        ServiceControlResult result = ServiceControlScript.parse(command.getHost(), action,
+                command.sendScript(ServiceControlScript.build(serviceManager(command), action, deadlineMs, nativePort)), System.currentTimeMillis() - start);
+        recordStatus(command, result.isReached(), action.isLeavesRunning());
+        return result;
+    }
+
+    /**
+     * Records the outcome of a start/stop/restart in the default status
+     * cache: if we saw the service reach the state we wanted, the cache can
+     * have it; otherwise the state is unknown and the cache is invalidated.
+     *
+     * @param command RemoteCommandDao the action was done on.
+     * @param reached True if the service reached the wanted state.
+     * @param running True if the wanted state is running.
+     * @return reached, for chaining.
+     */
+    private static boolean recordStatus(RemoteCommandDao command, boolean reached, boolean running)
+    {
+        if (reached)
         {
-            Thread.sleep(30000);//Sleep to let cassandra finish starting up
-        } catch (InterruptedException e)
+            ServiceStatusCache.getDefault().put(command, running);
+        } else
         {
-            throw new RuntimeException(e);
+            ServiceStatusCache.getDefault().invalidate(command);
         }
-        return isCassandraRunning(command);//check to see if we succeeded
+        return reached;
     }
 
     /**
      * Checks to see if the Cassandra service is running using the
-     * RemoteCommandDao.
+     * RemoteCommandDao. Always asks the server; use ServiceStatusCache to
+     * reuse a recent answer.
      *
      * @param command RemoteCommandDao that is <b>already connected</b> to the
      * server you wish to start the Cassandra instance on.
@@ -169,20 +294,47 @@ public class CassandraCommandFunction
      */
     public static boolean isCassandraRunning(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
     {
-        String statusResponse = command.sendCommand(CASSANDRA_STATUS_COMMAND);
-        if (statusResponse.equals(EXPECTED_RUNNING_MESSAGE))
+        switch (getServiceState(command))
         {
-            return true;
+            case RUNNING:
+                return true;
+            case CRASHED:
+                throw new CassandraCrashedException(command.getHost());
+            case DENIED:
+                throw new CassandraPermissionsException(command.getHost());
+            default:
+                return false;
         }
-        if (statusResponse.equals(CASSANDRA_CRASHED_MESSAGE))
-        {
-            throw new CassandraCrashedException(command.getHost());
-        } else if (statusResponse.contains(CASSANDRA_PERMISSIONS_PROBLEM_MESSAGE))
-        {
-            throw new CassandraPermissionsException(command.getHost());
-        } else
+    }
+
+    /**
+     * Gets the state of the Cassandra service using the RemoteCommandDao.
+     * Always asks the server.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server to check.
+     * @return The service's state.
+     * @throws ConnectionException If we can't connect or there is an connection
+     * problem to the server.
+     * @throws IOException If there is an IO issue talking to the server, or
+     * the status command printed something unexpected.
+     */
+    public static ServiceState getServiceState(RemoteCommandDao command) throws ConnectionException, IOException
+    {
+        String statusResponse = command.sendCommand(serviceManager(command).getStatusCommand());
+        ServiceState state = ServiceState.fromWord(statusResponse);
+        if (state == null)
         {
-            return false;
+            throw new IOException("Unexpected service status from: " + command.getHost() + "; " + statusResponse);
         }
+        return state;
+    }
+
+    /**
+     * Gets the service manager for the host from the default resolver.
+     */
+    private static ServiceManager serviceManager(RemoteCommandDao command) throws ConnectionException, IOException
+    {
+        return ServiceManagerResolver.getDefault().resolve(command);
     }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.IOException;
+
+/**
+ * The ReadinessChecks we use to decide a Cassandra node has really started
+ * (or stopped). The service script saying Cassandra is running only means
+ * the JVM is up; the node isn't any use to clients until the native
+ * transport is listening, which can be many seconds later.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class CassandraReadinessChecks
+{
+
+    /**
+     * Default port for the native transport (CQL clients).
+     */
+    public static final int DEFAULT_NATIVE_PORT = 9042;
+
+    /**
+     * Command line command to check whether the native transport is running.
+     */
+    static final String STATUS_BINARY_COMMAND = "nodetool statusbinary";
+
+    /**
+     * Static helpers only.
+     */
+    private CassandraReadinessChecks()
+    {
+    }
+
+    /**
+     * Passes when the service script reports Cassandra is running.
+     *
+     * @return The check.
+     */
+    public static ReadinessCheck serviceRunning()
+    {
+        return new ReadinessCheck()
+        {
+            @Override
+            public boolean isReady(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
+            {
+                return CassandraCommandFunction.isCassandraRunning(command);
+            }
+        };
+    }
+
+    /**
+     * Passes when the service script reports Cassandra is not running.
+     *
+     * @return The check.
+     */
+    public static ReadinessCheck serviceStopped()
+    {
+        return new ReadinessCheck()
+        {
+            @Override
+            public boolean isReady(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
+            {
+                return !CassandraCommandFunction.isCassandraRunning(command);
+            }
+        };
+    }
+
+    /**
+     * Passes when something on the node is listening on the port. Checked on
+     * the node itself, so a firewall between us and the node doesn't matter,
+     * by looking for a socket in the LISTEN (0A) state in /proc/net/tcp[6];
+     * that needs no tools (ss, netstat, nc) that may not be installed.
+     *
+     * @param port Port to check.
+     * @return The check.
+     */
+    public static ReadinessCheck portListening(final int port)
+    {
+        return new ReadinessCheck()
+        {
+            @Override
+            public boolean isReady(RemoteCommandDao command) throws ConnectionException, IOException
+            {
+                String response = command.sendCommand(portListeningTest(port) + " && echo LISTENING || echo CLOSED");
+                return response.equals("LISTENING");
+            }
+        };
+    }
+
+    /**
+     * Shell test that succeeds if something is listening on the port; see
+     * portListening().
+     *
+     * @param port Port to check.
+     * @return The shell test.
+     */
+    static String portListeningTest(int port)
+    {
+        return "cat /proc/net/tcp /proc/net/tcp6 2>/dev/null | grep -qi ':" + String.format("%04X", port) + " [0-9a-f]*:[0-9a-f]* 0A'";
+    }
+
+    /**
+     * Passes when nodetool reports the native transport is running.
+     *
+     * @return The check.
+     */
+    public static ReadinessCheck binaryRunning()
+    {
+        return new ReadinessCheck()
+        {
+            @Override
+            public boolean isReady(RemoteCommandDao command) throws ConnectionException, IOException
+            {
+                for (String line : command.sendCommand(STATUS_BINARY_COMMAND).split("\n"))
+                {
+                    if (line.trim().equals("running"))
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Passes when every one of the checks passes. Checks are made in order
+     * and stop at the first one that fails, so put the cheapest first.
+     *
+     * @param checks Checks to combine.
+     * @return The check.
+     */
+    public static ReadinessCheck allOf(final ReadinessCheck... checks)
+    {
+        return new ReadinessCheck()
+        {
+            @Override
+            public boolean isReady(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
+            {
+                for (ReadinessCheck check : checks)
+                {
+                    if (!check.isReady(command))
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Passes when Cassandra is running and serving CQL clients on the
+     * default native port.
+     *
+     * @return The check.
+     */
+    public static ReadinessCheck serving()
+    {
+        return serving(DEFAULT_NATIVE_PORT);
+    }
+
+    /**
+     * Passes when Cassandra is running and serving CQL clients: the service
+     * is up, the native port is listening and nodetool agrees.
+     *
+     * @param nativePort Port the native transport listens on.
+     * @return The check.
+     */
+    public static ReadinessCheck serving(int nativePort)
+    {
+        return allOf(serviceRunning(), portListening(nativePort), binaryRunning());
+    }
+}
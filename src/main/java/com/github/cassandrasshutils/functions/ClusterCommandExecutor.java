@@ -0,0 +1,375 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.HostResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the same command (or task) on many servers at once, with a cap on how
+ * many servers are worked on at a time and a timeout per server. Results are
+ * handed to a listener as each server finishes, and returned together once
+ * every server is done.
+ *
+ * A server's timeout starts when work on that server starts, not when the
+ * operation is submitted, so servers waiting for a free slot don't time out.
+ * A server that runs past its timeout is reported as timed out and its
+ * worker thread is interrupted, which aborts any blocking channel read.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ClusterCommandExecutor
+{
+
+    /**
+     * Default number of servers worked on at once.
+     */
+    public static final int DEFAULT_PARALLELISM = 16;
+
+    /**
+     * Default per server timeout.
+     */
+    public static final long DEFAULT_TIMEOUT_MS = 5 * 60 * 1000;
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Factory used to create a DAO for each server.
+     */
+    private final RemoteCommandDaoFactory daoFactory;
+
+    /**
+     * Maximum number of servers worked on at once.
+     */
+    private final int parallelism;
+
+    /**
+     * Per server timeout, in milliseconds. Zero or less means no timeout.
+     */
+    private final long timeoutMs;
+
+    /**
+     * Constructor that uses the default parallelism and timeout.
+     *
+     * @param daoFactory Factory used to create a DAO for each server.
+     */
+    public ClusterCommandExecutor(RemoteCommandDaoFactory daoFactory)
+    {
+        this(daoFactory, DEFAULT_PARALLELISM, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param daoFactory Factory used to create a DAO for each server.
+     * @param parallelism Maximum number of servers worked on at once.
+     * @param timeoutMs Per server timeout, in milliseconds. Zero or less means
+     * no timeout.
+     */
+    public ClusterCommandExecutor(RemoteCommandDaoFactory daoFactory, int parallelism, long timeoutMs)
+    {
+        if (daoFactory == null)
+        {
+            throw new IllegalArgumentException("DAO factory cannot be null");
+        }
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.daoFactory = daoFactory;
+        this.parallelism = parallelism;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Sends a command to every server.
+     *
+     * @param servers Servers to send the command to.
+     * @param commandToSend String of a valid terminal command to send.
+     * @return Each server's response (or failure), in completion order.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public Map<Server, HostResult<String>> sendCommand(List<Server> servers, String commandToSend) throws InterruptedException
+    {
+        return sendCommand(servers, commandToSend, null);
+    }
+
+    /**
+     * Sends a command to every server, handing each server's response to the
+     * listener as soon as it arrives.
+     *
+     * @param servers Servers to send the command to.
+     * @param commandToSend String of a valid terminal command to send.
+     * @param listener Listener that receives each result as it completes.
+     * Optional.
+     * @return Each server's response (or failure), in completion order.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public Map<Server, HostResult<String>> sendCommand(List<Server> servers, final String commandToSend, HostResultListener<String> listener) throws InterruptedException
+    {
+        return execute(servers, new ServerTask<String>()
+        {
+            @Override
+            public String execute(RemoteCommandDao command) throws Exception
+            {
+                return command.sendCommand(commandToSend);
+            }
+        }, listener);
+    }
+
+    /**
+     * Runs a task against every server. Each server gets its own DAO, which
+     * is connected before and logged off after the task runs.
+     *
+     * @param <T> Type of the result.
+     * @param servers Servers to run the task against.
+     * @param task Task to run.
+     * @param listener Listener that receives each result as it completes.
+     * Optional.
+     * @return Each server's result (or failure), in completion order.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public <T> Map<Server, HostResult<T>> execute(List<Server> servers, ServerTask<T> task, HostResultListener<T> listener) throws InterruptedException
+    {
+        Map<Server, HostResult<T>> results = new LinkedHashMap<>();
+        if (servers.isEmpty())
+        {
+            return results;
+        }
+        logger.debug("Running task on " + servers.size() + " servers; parallelism: " + parallelism + "; timeout: " + timeoutMs + "ms");
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, servers.size()), new NamedDaemonThreadFactory("cluster-command-worker"));
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("cluster-command-watchdog"));
+        BlockingQueue<HostResult<T>> completed = new LinkedBlockingQueue<>();
+        List<HostTask<T>> tasks = new ArrayList<>(servers.size());
+        try
+        {
+            for (Server server : servers)
+            {
+                HostTask<T> hostTask = new HostTask<>(server, task, watchdog, completed);
+                tasks.add(hostTask);
+                workers.execute(hostTask);
+            }
+            for (int i = 0; i < servers.size(); i++)
+            {
+                HostResult<T> result = completed.take();
+                results.put(result.getServer(), result);
+                if (!result.isSuccess())
+                {
+                    logger.warn("Task failed on: " + result.getServer().getIp() + (result.isTimedOut() ? " (timed out)" : ""), result.getError());
+                }
+                if (listener != null)
+                {
+                    listener.onResult(result);
+                }
+            }
+            return results;
+        } finally
+        {
+            for (HostTask<T> hostTask : tasks)
+            {
+                hostTask.cancel(true);//no-op for anything that already finished
+            }
+            workers.shutdownNow();
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Maximum number of servers worked on at once.
+     *
+     * @return the parallelism
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Per server timeout, in milliseconds.
+     *
+     * @return the timeoutMs
+     */
+    public long getTimeoutMs()
+    {
+        return timeoutMs;
+    }
+
+    /**
+     * Runs the task against one server and reports the outcome to the
+     * completion queue exactly once.
+     */
+    private class HostTask<T> extends FutureTask<T>
+    {
+
+        private final Server server;
+        private final ScheduledExecutorService watchdog;
+        private final BlockingQueue<HostResult<T>> completed;
+        private volatile long startTime = 0;
+        private volatile boolean timedOut = false;
+
+        HostTask(Server server, ServerTask<T> task, ScheduledExecutorService watchdog, BlockingQueue<HostResult<T>> completed)
+        {
+            super(new TaskRunner<>(server, task));
+            this.server = server;
+            this.watchdog = watchdog;
+            this.completed = completed;
+        }
+
+        @Override
+        public void run()
+        {
+            startTime = System.currentTimeMillis();
+            if (timeoutMs > 0 && !isDone())
+            {
+                watchdog.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (!isDone())
+                        {
+                            timedOut = true;
+                            cancel(true);
+                        }
+                    }
+                }, timeoutMs, TimeUnit.MILLISECONDS);
+            }
+            super.run();
+        }
+
+        @Override
+        protected void done()
+        {
+            long elapsed = startTime == 0 ? 0 : System.currentTimeMillis() - startTime;
+            HostResult<T> result;
+            try
+            {
+                result = new HostResult<>(server, get(), null, false, elapsed);
+            } catch (CancellationException e)
+            {
+                Throwable error = timedOut ? new TimeoutException("Timed out after " + timeoutMs + "ms on: " + server.getIp()) : e;
+                result = new HostResult<>(server, null, error, timedOut, elapsed);
+            } catch (ExecutionException e)
+            {
+                result = new HostResult<>(server, null, e.getCause(), false, elapsed);
+            } catch (InterruptedException e)
+            {//can't happen; get() doesn't block once we're done
+                Thread.currentThread().interrupt();
+                result = new HostResult<>(server, null, e, false, elapsed);
+            }
+            completed.add(result);
+        }
+    }
+
+    /**
+     * Connects to the server, runs the task and logs off.
+     */
+    private class TaskRunner<T> implements Callable<T>
+    {
+
+        private final Server server;
+        private final ServerTask<T> task;
+
+        TaskRunner(Server server, ServerTask<T> task)
+        {
+            this.server = server;
+            this.task = task;
+        }
+
+        @Override
+        public T call() throws Exception
+        {
+            RemoteCommandDao command = daoFactory.createRemoteCommandDao(server);
+            command.connect();
+            try
+            {
+                return task.execute(command);
+            } finally
+            {
+                command.logOff();
+            }
+        }
+    }
+
+    /**
+     * Thread factory that creates named daemon threads, so that background
+     * work never keeps the JVM up. Threads are named prefix-1, prefix-2...
+     */
+    public static class NamedDaemonThreadFactory implements ThreadFactory
+    {
+
+        /**
+         * Prefix for thread names.
+         */
+        private final String prefix;
+
+        /**
+         * Number of threads created so far.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * Constructor.
+         *
+         * @param prefix Prefix for thread names.
+         */
+        public NamedDaemonThreadFactory(String prefix)
+        {
+            this.prefix = prefix;
+        }
+
+        /**
+         * Creates a named daemon thread.
+         *
+         * @param r Runnable for the thread to run.
+         * @return The new thread.
+         */
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
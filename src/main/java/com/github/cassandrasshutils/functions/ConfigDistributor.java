@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.domain.ConfigPushResult;
+import com.github.cassandrasshutils.command.domain.ConfigPushResult.Outcome;
+import com.github.cassandrasshutils.command.domain.HostResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.impl.ShellUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes a config file to many servers, skipping the servers that already
+ * have the same content. Every server's copy is hashed (sha256sum) in
+ * parallel and compared against the local file's digest; the file is only
+ * pushed where they differ, and is verified afterwards. A no-op rollout costs
+ * one small command per server rather than a transfer.
+ *
+ * The digest last seen on each (host, path) is cached, so a rollout can also
+ * report servers whose copy changed behind our back since the last one. The
+ * cache can be saved to and loaded from a properties file to carry it across
+ * runs.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ConfigDistributor
+{
+
+    /**
+     * What the hash command prints when the file does not exist.
+     */
+    private static final String MISSING = "MISSING";
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Executor that runs the per server work in parallel.
+     */
+    private final ClusterCommandExecutor executor;
+
+    /**
+     * Last digest seen on each host:path.
+     */
+    private final ConcurrentMap<String, String> digestCache = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param executor Executor that runs the per server work in parallel.
+     */
+    public ConfigDistributor(ClusterCommandExecutor executor)
+    {
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Pushes a config file to every server that doesn't already have the same
+     * content.
+     *
+     * @param servers Servers to push to.
+     * @param localFile Local config file.
+     * @param remotePath Directory path on the servers to push to.
+     * @return What happened on each server (or why it failed), in completion
+     * order.
+     * @throws IOException If the local file can't be read.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public Map<Server, HostResult<ConfigPushResult>> distribute(List<Server> servers, File localFile, String remotePath) throws IOException, InterruptedException
+    {
+        return distribute(servers, localFile, remotePath, null);
+    }
+
+    /**
+     * Pushes a config file to every server that doesn't already have the same
+     * content, handing each server's result to the listener as it completes.
+     *
+     * @param servers Servers to push to.
+     * @param localFile Local config file.
+     * @param remotePath Directory path on the servers to push to.
+     * @param listener Listener that receives each result as it completes.
+     * Optional.
+     * @return What happened on each server (or why it failed), in completion
+     * order.
+     * @throws IOException If the local file can't be read.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public Map<Server, HostResult<ConfigPushResult>> distribute(List<Server> servers, final File localFile, final String remotePath, HostResultListener<ConfigPushResult> listener) throws IOException, InterruptedException
+    {
+        if (!localFile.isFile())
+        {
+            throw new IOException("Not a file: " + localFile.getAbsolutePath());
+        }
+        final String localDigest = sha256(localFile);
+        final String remoteFile = remotePath + (remotePath.endsWith("/") ? "" : "/") + localFile.getName();
+        Map<Server, HostResult<ConfigPushResult>> results = executor.execute(servers, new ServerTask<ConfigPushResult>()
+        {
+            @Override
+            public ConfigPushResult execute(RemoteCommandDao command) throws Exception
+            {
+                return distribute(command, localFile, remotePath, remoteFile, localDigest);
+            }
+        }, listener);
+        int unchanged = 0, created = 0, updated = 0, drifted = 0, failed = 0;
+        for (HostResult<ConfigPushResult> result : results.values())
+        {
+            if (!result.isSuccess())
+            {
+                failed++;
+                continue;
+            }
+            switch (result.getResult().getOutcome())
+            {
+                case UNCHANGED:
+                    unchanged++;
+                    break;
+                case CREATED:
+                    created++;
+                    break;
+                default:
+                    updated++;
+            }
+            if (result.getResult().isDrifted())
+            {
+                drifted++;
+            }
+        }
+        logger.info("Distributed: '" + localFile.getName() + "' to " + servers.size() + " servers: " + unchanged + " unchanged, "
+                + updated + " updated, " + created + " created, " + failed + " failed; " + drifted + " had drifted since the last rollout.");
+        return results;
+    }
+
+    /**
+     * Checks and, if needed, pushes the file on one server.
+     */
+    private ConfigPushResult distribute(RemoteCommandDao command, File localFile, String remotePath, String remoteFile, String localDigest) throws Exception
+    {
+        String key = command.getHost() + ":" + remoteFile;
+        String remoteDigest = remoteDigest(command, remoteFile);
+        String cached = digestCache.get(key);
+        boolean drifted = cached != null && !cached.equals(remoteDigest);
+        if (drifted)
+        {
+            logger.warn("'" + remoteFile + "' on: " + command.getHost() + " has changed since we last saw it.");
+        }
+        if (localDigest.equals(remoteDigest))
+        {
+            digestCache.put(key, remoteDigest);
+            return new ConfigPushResult(Outcome.UNCHANGED, remoteDigest, remoteDigest, drifted);
+        }
+        command.pushFile(localFile, remotePath);
+        String pushedDigest = remoteDigest(command, remoteFile);
+        if (!localDigest.equals(pushedDigest))
+        {
+            digestCache.remove(key);
+            throw new IOException("Pushed: '" + remoteFile + "' to: " + command.getHost() + " but its digest is: " + pushedDigest + " rather than: " + localDigest);
+        }
+        digestCache.put(key, pushedDigest);
+        return new ConfigPushResult(remoteDigest == null ? Outcome.CREATED : Outcome.UPDATED, remoteDigest, pushedDigest, drifted);
+    }
+
+    /**
+     * Gets the SHA-256 of a file on the server.
+     *
+     * @return The digest, or null if the file does not exist.
+     */
+    private static String remoteDigest(RemoteCommandDao command, String remoteFile) throws Exception
+    {
+        String quoted = ShellUtils.quote(remoteFile);
+        String response = command.sendCommand("if [ -f " + quoted + " ]; then sha256sum < " + quoted + " | cut -c1-64; else echo " + MISSING + "; fi");
+        if (MISSING.equals(response))
+        {
+            return null;
+        }
+        if (response == null || !response.matches("[0-9a-f]{64}"))
+        {
+            throw new IOException("Could not hash: '" + remoteFile + "' on: " + command.getHost() + ": " + response);
+        }
+        return response;
+    }
+
+    /**
+     * Last digest seen for a file on a host.
+     *
+     * @param host Host the file is on.
+     * @param remoteFile Path of the file on the host.
+     * @return The digest, or null if we haven't seen the file there.
+     */
+    public String getCachedDigest(String host, String remoteFile)
+    {
+        return digestCache.get(host + ":" + remoteFile);
+    }
+
+    /**
+     * Forgets everything we've seen.
+     */
+    public void clearCache()
+    {
+        digestCache.clear();
+    }
+
+    /**
+     * Loads previously saved digests, replacing what's in the cache for any
+     * host:path in the file.
+     *
+     * @param file Properties file written by saveCache.
+     * @throws IOException If the file can't be read.
+     */
+    public void loadCache(File file) throws IOException
+    {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file))
+        {
+            props.load(in);
+        }
+        for (String key : props.stringPropertyNames())
+        {
+            digestCache.put(key, props.getProperty(key));
+        }
+    }
+
+    /**
+     * Saves the cache to a properties file.
+     *
+     * @param file File to write.
+     * @throws IOException If the file can't be written.
+     */
+    public void saveCache(File file) throws IOException
+    {
+        Properties props = new Properties();
+        props.putAll(digestCache);
+        try (OutputStream out = new FileOutputStream(file))
+        {
+            props.store(out, "Config digests by host:path");
+        }
+    }
+
+    /**
+     * SHA-256 (hex) of a local file.
+     *
+     * @param file File to hash.
+     * @return The digest, as printed by sha256sum.
+     * @throws IOException If the file can't be read.
+     */
+    public static String sha256(File file) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e)
+        {//every JVM is required to have it
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[32 * 1024];
+        try (InputStream in = new FileInputStream(file))
+        {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
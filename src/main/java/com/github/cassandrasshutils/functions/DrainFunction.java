@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.domain.DrainResult;
+import com.github.cassandrasshutils.command.impl.ShellUtils;
+import com.github.cassandrasshutils.command.impl.TpstatsParser;
+import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.IOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops Cassandra gracefully: runs <code>nodetool drain</code> so memtables
+ * are flushed and the node stops accepting writes, then stops the service.
+ * The next start then has (almost) nothing to replay from the commit log.
+ *
+ * Drain runs in the background on the node so that, while it runs, we can
+ * poll <code>nodetool tpstats</code> and follow the flush pools' outstanding
+ * tasks. If the drain fails or runs past its deadline the service is stopped
+ * anyway; the result says so.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class DrainFunction
+{
+
+    /**
+     * Default time to wait for a drain to finish.
+     */
+    public static final long DEFAULT_DRAIN_DEADLINE_MS = 10 * 60 * 1000;
+
+    /**
+     * Thread pools that do flush work; their outstanding tasks are how far
+     * the drain has to go. FlushWriter is the pre 2.1 name.
+     */
+    static final String[] FLUSH_POOLS =
+    {
+        "MemtableFlushWriter", "MemtablePostFlush", "MemtableReclaimMemory", "FlushWriter"
+    };
+
+    /**
+     * Prefix of the line that carries drain's exit code, once it has one.
+     */
+    static final String RC_MARKER = "CSU_DRAIN_RC=";
+
+    /**
+     * Prefix of the working directory the background drain writes to.
+     */
+    static final String WORK_DIR_PREFIX = "/tmp/csu-drain.";
+
+    /**
+     * Starts drain in the background, writing its output and exit code to a
+     * fresh directory, and prints the directory.
+     */
+    static final String START_DRAIN_COMMAND = "d=$(mktemp -d " + WORK_DIR_PREFIX + "XXXXXX) || exit 1; "
+            + "nohup sh -c 'nodetool drain > \"$0/out\" 2>&1; echo $? > \"$0/rc\"' \"$d\" > /dev/null 2>&1 < /dev/null & echo \"$d\"";
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Poller used to wait for the drain to finish.
+     */
+    private ReadinessPoller drainPoller = new ReadinessPoller(DEFAULT_DRAIN_DEADLINE_MS);
+
+    /**
+     * Poller used to wait for the service to stop after draining.
+     */
+    private ReadinessPoller stopPoller = new ReadinessPoller(CassandraCommandFunction.DEFAULT_STOP_DEADLINE_MS);
+
+    /**
+     * Drains the node, then stops the Cassandra service.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server you wish to stop the Cassandra instance on.
+     * @return How the drain and stop went, and how long each took.
+     * @throws ConnectionException If there is an connection problem to the
+     * server.
+     * @throws IOException If there is an IO issue talking to the server.
+     * @throws CassandraCrashedException If Cassandra has crashed.
+     */
+    public DrainResult drainAndStop(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        String host = command.getHost();
+        if (!ServiceStatusCache.getDefault().isRunning(command))
+        {
+            return new DrainResult(host, false, 0, 0, true, 0, null);// nothing to drain
+        }
+        long drainStart = System.currentTimeMillis();
+        String workDir = command.sendCommand(START_DRAIN_COMMAND).trim();
+        if (!workDir.startsWith(WORK_DIR_PREFIX) || workDir.contains("\n"))
+        {
+            throw new IOException("Could not start nodetool drain on: " + host + "; " + workDir);
+        }
+        logger.info("Draining: " + host);
+        DrainCheck check = new DrainCheck(workDir);
+        String drainError = null;
+        boolean finished;
+        try
+        {
+            finished = drainPoller.await(command, check);
+            if (!finished)
+            {
+                drainError = "Drain did not finish within " + drainPoller.getDeadlineMs() + "ms";
+            } else if (!check.exitCode.equals("0"))
+            {
+                drainError = "Drain exited with " + check.exitCode + ": " + command.sendCommand("cat " + ShellUtils.quote(workDir + "/out")).trim();
+            }
+        } finally
+        {
+            command.sendCommand("rm -rf " + ShellUtils.quote(workDir));
+        }
+        long drainMs = System.currentTimeMillis() - drainStart;
+        if (drainError == null)
+        {
+            logger.info("Drained: " + host + " in " + drainMs + "ms; peak outstanding flushes: " + check.peakOutstanding);
+        } else
+        {
+            logger.warn("Drain failed on: " + host + "; stopping anyway. " + drainError);
+        }
+        long stopStart = System.currentTimeMillis();
+        boolean stopped = CassandraCommandFunction.stopCassandra(command, stopPoller);
+        return new DrainResult(host, drainError == null, drainMs, check.peakOutstanding, stopped, System.currentTimeMillis() - stopStart, drainError);
+    }
+
+    /**
+     * Poller used to wait for the drain to finish.
+     *
+     * @return the drainPoller
+     */
+    public ReadinessPoller getDrainPoller()
+    {
+        return drainPoller;
+    }
+
+    /**
+     * Poller used to wait for the drain to finish.
+     *
+     * @param drainPoller the drainPoller to set
+     */
+    public void setDrainPoller(ReadinessPoller drainPoller)
+    {
+        if (drainPoller == null)
+        {
+            throw new IllegalArgumentException("Poller cannot be null");
+        }
+        this.drainPoller = drainPoller;
+    }
+
+    /**
+     * Poller used to wait for the service to stop after draining.
+     *
+     * @return the stopPoller
+     */
+    public ReadinessPoller getStopPoller()
+    {
+        return stopPoller;
+    }
+
+    /**
+     * Poller used to wait for the service to stop after draining.
+     *
+     * @param stopPoller the stopPoller to set
+     */
+    public void setStopPoller(ReadinessPoller stopPoller)
+    {
+        if (stopPoller == null)
+        {
+            throw new IllegalArgumentException("Poller cannot be null");
+        }
+        this.stopPoller = stopPoller;
+    }
+
+    /**
+     * Passes once the background drain has exited. Each check also reads
+     * tpstats and keeps track of the flush work outstanding.
+     */
+    private class DrainCheck implements ReadinessCheck
+    {
+
+        private final String pollCommand;
+        private String exitCode;
+        private long peakOutstanding = 0;
+
+        DrainCheck(String workDir)
+        {
+            this.pollCommand = "nodetool tpstats 2>/dev/null; echo " + RC_MARKER + "$(cat " + ShellUtils.quote(workDir + "/rc") + " 2>/dev/null)";
+        }
+
+        @Override
+        public boolean isReady(RemoteCommandDao command) throws ConnectionException, IOException
+        {
+            String output = command.sendCommand(pollCommand);
+            int marker = output.lastIndexOf(RC_MARKER);
+            if (marker < 0)
+            {
+                throw new IOException("Unexpected response polling drain on: " + command.getHost() + "; " + output);
+            }
+            long outstanding = TpstatsParser.outstanding(TpstatsParser.parse(output.substring(0, marker)), FLUSH_POOLS);
+            peakOutstanding = Math.max(peakOutstanding, outstanding);
+            exitCode = output.substring(marker + RC_MARKER.length()).trim();
+            logger.debug("Draining: " + command.getHost() + "; outstanding flushes: " + outstanding + (exitCode.isEmpty() ? "" : "; drain exited with: " + exitCode));
+            return !exitCode.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.domain.HostResult;
+
+/**
+ * Receives per-server results of a cluster wide operation as they complete.
+ *
+ * @param <T> Type of the result.
+ * @author Jeffrey DeYoung
+ */
+public interface HostResultListener<T>
+{
+
+    /**
+     * Called once per server, in completion order, on the thread that started
+     * the cluster wide operation.
+     *
+     * @param result The result (or failure) for one server.
+     */
+    public void onResult(HostResult<T> result);
+}
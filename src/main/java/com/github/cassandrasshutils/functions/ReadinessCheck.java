@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.IOException;
+
+/**
+ * A single condition on a node that a ReadinessPoller waits for, such as
+ * "Cassandra is serving CQL clients" or "Cassandra has stopped".
+ *
+ * @author Jeffrey DeYoung
+ */
+public interface ReadinessCheck
+{
+
+    /**
+     * Checks the condition once.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * node to check.
+     * @return True if the condition holds.
+     * @throws ConnectionException If there is a connection problem to the
+     * node.
+     * @throws IOException If there is an IO issue talking to the node.
+     * @throws CassandraCrashedException If Cassandra has crashed, so the
+     * condition will never hold; stops the polling.
+     */
+    public boolean isReady(RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException;
+}
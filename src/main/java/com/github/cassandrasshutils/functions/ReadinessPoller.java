@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls a node until a ReadinessCheck passes or a deadline passes, backing off
+ * exponentially (with jitter, so a cluster's worth of pollers don't hit their
+ * nodes in lockstep) between attempts. A node that is ready quickly is
+ * noticed within a fraction of a second; a slow one is given until the
+ * deadline rather than being written off after a fixed sleep.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ReadinessPoller
+{
+
+    /**
+     * Default delay before the second check.
+     */
+    public static final long DEFAULT_INITIAL_DELAY_MS = 500;
+
+    /**
+     * Default longest delay between checks.
+     */
+    public static final long DEFAULT_MAX_DELAY_MS = 5000;
+
+    /**
+     * Default factor the delay grows by after each check.
+     */
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+
+    /**
+     * Default jitter; each delay is randomly varied by up to this fraction
+     * either way.
+     */
+    public static final double DEFAULT_JITTER = 0.25;
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * How long to keep polling before giving up, in milliseconds.
+     */
+    private final long deadlineMs;
+
+    /**
+     * Delay before the second check, in milliseconds.
+     */
+    private long initialDelayMs = DEFAULT_INITIAL_DELAY_MS;
+
+    /**
+     * Longest delay between checks, in milliseconds.
+     */
+    private long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+
+    /**
+     * Factor the delay grows by after each check.
+     */
+    private double multiplier = DEFAULT_MULTIPLIER;
+
+    /**
+     * Fraction each delay is randomly varied by, either way.
+     */
+    private double jitter = DEFAULT_JITTER;
+
+    /**
+     * Constructor.
+     *
+     * @param deadlineMs How long to keep polling before giving up, in
+     * milliseconds.
+     */
+    public ReadinessPoller(long deadlineMs)
+    {
+        if (deadlineMs < 0)
+        {
+            throw new IllegalArgumentException("Deadline cannot be negative");
+        }
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Checks the node until the check passes or the deadline passes. The
+     * check is always made at least once, and once more at the deadline.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * node to check.
+     * @param check Condition to wait for.
+     * @return True if the check passed; false if the deadline passed first.
+     * @throws ConnectionException If there is a connection problem to the
+     * node.
+     * @throws IOException If there is an IO issue talking to the node, or we
+     * are interrupted while waiting (InterruptedIOException; the interrupt
+     * flag is set again).
+     * @throws CassandraCrashedException If the check reports that Cassandra
+     * has crashed.
+     */
+    public boolean await(RemoteCommandDao command, ReadinessCheck check) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        long start = System.currentTimeMillis();
+        long deadline = start + deadlineMs;
+        double delay = initialDelayMs;
+        for (int attempt = 1;; attempt++)
+        {
+            if (check.isReady(command))
+            {
+                logger.debug("Ready on: " + command.getHost() + " after " + attempt + " checks, " + (System.currentTimeMillis() - start) + "ms");
+                return true;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+            {
+                logger.debug("Not ready on: " + command.getHost() + " after " + attempt + " checks, " + (System.currentTimeMillis() - start) + "ms; giving up.");
+                return false;
+            }
+            double jittered = delay * (1 - jitter + 2 * jitter * ThreadLocalRandom.current().nextDouble());
+            sleep(Math.min(remaining, Math.max(1, (long) jittered)));
+            delay = Math.min(maxDelayMs, delay * multiplier);
+        }
+    }
+
+    /**
+     * Sleeps, turning an interrupt into an InterruptedIOException.
+     */
+    private static void sleep(long ms) throws InterruptedIOException
+    {
+        try
+        {
+            Thread.sleep(ms);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for readiness.");
+        }
+    }
+
+    /**
+     * How long to keep polling before giving up, in milliseconds.
+     *
+     * @return the deadlineMs
+     */
+    public long getDeadlineMs()
+    {
+        return deadlineMs;
+    }
+
+    /**
+     * Delay before the second check, in milliseconds.
+     *
+     * @return the initialDelayMs
+     */
+    public long getInitialDelayMs()
+    {
+        return initialDelayMs;
+    }
+
+    /**
+     * Delay before the second check, in milliseconds.
+     *
+     * @param initialDelayMs the initialDelayMs to set
+     */
+    public void setInitialDelayMs(long initialDelayMs)
+    {
+        if (initialDelayMs < 1)
+        {
+            throw new IllegalArgumentException("Initial delay must be at least 1ms");
+        }
+        this.initialDelayMs = initialDelayMs;
+    }
+
+    /**
+     * Longest delay between checks, in milliseconds.
+     *
+     * @return the maxDelayMs
+     */
+    public long getMaxDelayMs()
+    {
+        return maxDelayMs;
+    }
+
+    /**
+     * Longest delay between checks, in milliseconds.
+     *
+     * @param maxDelayMs the maxDelayMs to set
+     */
+    public void setMaxDelayMs(long maxDelayMs)
+    {
+        if (maxDelayMs < 1)
+        {
+            throw new IllegalArgumentException("Max delay must be at least 1ms");
+        }
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Factor the delay grows by after each check.
+     *
+     * @return the multiplier
+     */
+    public double getMultiplier()
+    {
+        return multiplier;
+    }
+
+    /**
+     * Factor the delay grows by after each check.
+     *
+     * @param multiplier the multiplier to set; 1 for a fixed delay.
+     */
+    public void setMultiplier(double multiplier)
+    {
+        if (multiplier < 1)
+        {
+            throw new IllegalArgumentException("Multiplier must be at least 1");
+        }
+        this.multiplier = multiplier;
+    }
+
+    /**
+     * Fraction each delay is randomly varied by, either way.
+     *
+     * @return the jitter
+     */
+    public double getJitter()
+    {
+        return jitter;
+    }
+
+    /**
+     * Fraction each delay is randomly varied by, either way.
+     *
+     * @param jitter the jitter to set; 0 (none) to 1.
+     */
+    public void setJitter(double jitter)
+    {
+        if (jitter < 0 || jitter > 1)
+        {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        }
+        this.jitter = jitter;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Progress of a subrange repair, persisted to a small properties file so an
+ * interrupted repair can pick up where it left off. Records what is being
+ * repaired (so we never resume someone else's plan) and every subrange that
+ * has been repaired so far. Subranges are recorded by their tokens, so if the
+ * ring changes between runs only the subranges that still exist are skipped.
+ *
+ * @author Jeffrey DeYoung
+ */
+class RepairProgress
+{
+
+    /**
+     * Property key for the keyspace being repaired.
+     */
+    private static final String KEYSPACE = "keyspace";
+
+    /**
+     * Property key for the tables being repaired.
+     */
+    private static final String TABLES = "tables";
+
+    /**
+     * Property key for the number of subranges each range was split into.
+     */
+    private static final String SUBRANGES_PER_RANGE = "subrangesPerRange";
+
+    /**
+     * Property key prefix for a repaired subrange.
+     */
+    private static final String DONE_PREFIX = "done.";
+
+    /**
+     * Keyspace being repaired.
+     */
+    private final String keyspace;
+
+    /**
+     * Tables being repaired, as passed to nodetool; empty for all of them.
+     */
+    private final String tables;
+
+    /**
+     * Number of subranges each range was split into.
+     */
+    private final int subrangesPerRange;
+
+    /**
+     * Subranges repaired so far.
+     */
+    private final Set<String> done;
+
+    /**
+     * Constructor.
+     *
+     * @param keyspace Keyspace being repaired.
+     * @param tables Tables being repaired; empty for all of them.
+     * @param subrangesPerRange Number of subranges each range was split into.
+     */
+    RepairProgress(String keyspace, String tables, int subrangesPerRange)
+    {
+        this(keyspace, tables, subrangesPerRange, new HashSet<String>());
+    }
+
+    /**
+     * Constructor.
+     */
+    private RepairProgress(String keyspace, String tables, int subrangesPerRange, Set<String> done)
+    {
+        this.keyspace = keyspace;
+        this.tables = tables;
+        this.subrangesPerRange = subrangesPerRange;
+        this.done = done;
+    }
+
+    /**
+     * Loads progress. A file that exists but can't be read is an error rather
+     * than a fresh start: starting over would overwrite it with the next
+     * save, and it may hold days of repairs.
+     *
+     * @param file Progress file.
+     * @return The progress, or null if the file does not exist.
+     * @throws IOException If the file exists but can't be read, or isn't a
+     * complete progress file.
+     */
+    static RepairProgress load(File file) throws IOException
+    {
+        if (!file.isFile())
+        {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file))
+        {
+            props.load(in);
+            Set<String> done = new HashSet<>();
+            for (String key : props.stringPropertyNames())
+            {
+                if (key.startsWith(DONE_PREFIX))
+                {
+                    done.add(key.substring(DONE_PREFIX.length()));
+                }
+            }
+            String keyspace = props.getProperty(KEYSPACE);
+            String tables = props.getProperty(TABLES);
+            String subrangesPerRange = props.getProperty(SUBRANGES_PER_RANGE);
+            if (keyspace == null || tables == null || subrangesPerRange == null)
+            {
+                throw new IOException("missing " + KEYSPACE + ", " + TABLES + " or " + SUBRANGES_PER_RANGE);
+            }
+            return new RepairProgress(keyspace, tables, Integer.parseInt(subrangesPerRange), done);
+        } catch (IOException | RuntimeException e)
+        {
+            throw new IOException("Can't read repair progress file: " + file.getAbsolutePath() + " (" + e.getMessage()
+                    + "); fix or remove it to start over.", e);
+        }
+    }
+
+    /**
+     * Saves this progress. The file is written in full and then moved into
+     * place, so a crash mid-save leaves the previous progress intact.
+     *
+     * @param file Progress file.
+     * @throws IOException If the progress can't be written.
+     */
+    synchronized void save(File file) throws IOException
+    {
+        Properties props = new Properties();
+        props.setProperty(KEYSPACE, keyspace);
+        props.setProperty(TABLES, tables);
+        props.setProperty(SUBRANGES_PER_RANGE, Integer.toString(subrangesPerRange));
+        for (String range : done)
+        {
+            props.setProperty(DONE_PREFIX + range, "true");
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp))
+        {
+            props.store(out, "Subrange repair progress");
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Checks whether this progress is for the same repair.
+     *
+     * @param keyspace Keyspace being repaired.
+     * @param tables Tables being repaired; empty for all of them.
+     * @param subrangesPerRange Number of subranges each range is split into.
+     * @return True if the repair can be resumed from this progress.
+     */
+    boolean matches(String keyspace, String tables, int subrangesPerRange)
+    {
+        return this.keyspace.equals(keyspace) && this.tables.equals(tables) && this.subrangesPerRange == subrangesPerRange;
+    }
+
+    /**
+     * Checks whether a subrange has been repaired.
+     *
+     * @param range Subrange to check.
+     * @return True if it has been repaired.
+     */
+    synchronized boolean isDone(TokenRange range)
+    {
+        return done.contains(key(range));
+    }
+
+    /**
+     * Records a subrange as repaired.
+     *
+     * @param range Subrange that was repaired.
+     */
+    synchronized void markDone(TokenRange range)
+    {
+        done.add(key(range));
+    }
+
+    /**
+     * Key a subrange is recorded under.
+     */
+    private static String key(TokenRange range)
+    {
+        return range.getStart() + "_" + range.getEnd();
+    }
+}
@@ -0,0 +1,824 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.LineHandler;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.RepairResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import com.github.cassandrasshutils.command.impl.CassandraCommandDaoImpl;
+import com.github.cassandrasshutils.command.impl.ShellUtils;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Repairs a keyspace a token subrange at a time, with
+ * <code>nodetool repair -st ... -et ...</code>, running as many subranges at
+ * once as the cluster allows.
+ *
+ * The ring is read with nodetool describering, so each range comes with the
+ * nodes that hold its replicas, and each range can be split further into
+ * equal subranges. A subrange repair works every one of its replicas, so a
+ * subrange is only started when every replica has fewer than
+ * maxJobsPerNode repairs running on it; with the default of one, repairs that
+ * run at the same time never share a replica. Within that limit, and the
+ * overall parallelism, the pending subranges are started greedily, in an
+ * order that interleaves the ranges, so a busy replica set doesn't hold up
+ * the rest of the ring. Each subrange is coordinated by one of its replicas,
+ * a different one on each retry.
+ *
+ * Progress can be kept in a file; run the repair again with the same file and
+ * subranges that were already repaired are skipped. Once every subrange has
+ * been repaired the file is deleted, so the next run starts over.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class RepairScheduler
+{
+
+    /**
+     * Default number of subranges each range is split into.
+     */
+    public static final int DEFAULT_SUBRANGES_PER_RANGE = 1;
+
+    /**
+     * Default options passed to nodetool repair. Subrange repairs must be full
+     * repairs; incremental repair of a subrange isn't supported.
+     */
+    public static final String DEFAULT_REPAIR_OPTIONS = "-full";
+
+    /**
+     * Default number of times a subrange is tried before it's given up on.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Default minimum time between saves of the progress file.
+     */
+    public static final long DEFAULT_SAVE_INTERVAL_MS = 10 * 1000;
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Factory used to create a DAO for each server.
+     */
+    private final RemoteCommandDaoFactory daoFactory;
+
+    /**
+     * Most subranges repaired at once across the cluster.
+     */
+    private final int parallelism;
+
+    /**
+     * Most subrange repairs any one node takes part in at once.
+     */
+    private final int maxJobsPerNode;
+
+    /**
+     * Number of subranges each range is split into.
+     */
+    private int subrangesPerRange = DEFAULT_SUBRANGES_PER_RANGE;
+
+    /**
+     * Options passed to nodetool repair, ahead of the subrange.
+     */
+    private String repairOptions = DEFAULT_REPAIR_OPTIONS;
+
+    /**
+     * Number of times a subrange is tried before it's given up on.
+     */
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * Number of subranges that can be given up on before the whole repair is
+     * halted.
+     */
+    private int maxFailures = Integer.MAX_VALUE;
+
+    /**
+     * Minimum time between saves of the progress file, in milliseconds.
+     */
+    private long saveIntervalMs = DEFAULT_SAVE_INTERVAL_MS;
+
+    /**
+     * Partitioner of the cluster; null to work it out from the tokens.
+     */
+    private Partitioner partitioner = null;
+
+    /**
+     * Constructor that repairs on up to the default number of nodes at once,
+     * with one repair per node.
+     *
+     * @param daoFactory Factory used to create a DAO for each server.
+     */
+    public RepairScheduler(RemoteCommandDaoFactory daoFactory)
+    {
+        this(daoFactory, ClusterCommandExecutor.DEFAULT_PARALLELISM, 1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param daoFactory Factory used to create a DAO for each server.
+     * @param parallelism Most subranges repaired at once across the cluster.
+     * @param maxJobsPerNode Most subrange repairs any one node takes part in
+     * at once. One means repairs running at the same time never share a
+     * replica.
+     */
+    public RepairScheduler(RemoteCommandDaoFactory daoFactory, int parallelism, int maxJobsPerNode)
+    {
+        if (daoFactory == null)
+        {
+            throw new IllegalArgumentException("DAO factory cannot be null");
+        }
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (maxJobsPerNode < 1)
+        {
+            throw new IllegalArgumentException("Max jobs per node must be at least 1");
+        }
+        this.daoFactory = daoFactory;
+        this.parallelism = parallelism;
+        this.maxJobsPerNode = maxJobsPerNode;
+    }
+
+    /**
+     * Repairs a keyspace, subrange by subrange.
+     *
+     * @param servers Servers in the cluster. The ring is read from the first
+     * one that answers; replicas that aren't in the list are reached by their
+     * address.
+     * @param keyspace Keyspace to repair.
+     * @param progressFile File progress is kept in, so the repair can be
+     * resumed; null to not keep progress. Deleted once every subrange has been
+     * repaired.
+     * @param tables Tables to repair; none for the whole keyspace.
+     * @return What was repaired, and what couldn't be.
+     * @throws ConnectionException If no server could be reached to read the
+     * ring.
+     * @throws IOException If the ring can't be read, or the progress file
+     * exists but can't be read (nothing is repaired, so it isn't
+     * overwritten), or can't be written.
+     * @throws InterruptedException If we are interrupted while waiting;
+     * outstanding repairs are abandoned (they carry on on the nodes) and
+     * progress so far is saved.
+     * @throws IllegalArgumentException If the progress file is for a
+     * different repair (keyspace, tables or subranges per range); nothing is
+     * repaired and the file is left alone.
+     */
+    public RepairResult repair(List<Server> servers, String keyspace, File progressFile, String... tables) throws ConnectionException, IOException, InterruptedException
+    {
+        if (servers == null || servers.isEmpty())
+        {
+            throw new IllegalArgumentException("Servers cannot be null or empty");
+        }
+        if (keyspace == null || keyspace.isEmpty())
+        {
+            throw new IllegalArgumentException("Keyspace cannot be null or empty");
+        }
+        long start = System.currentTimeMillis();
+        StringBuilder tableList = new StringBuilder();
+        for (String table : tables)
+        {
+            tableList.append(' ').append(ShellUtils.quoteIfNeeded(table));
+        }
+        List<TokenRange> ranges = readRing(servers, keyspace);
+        Partitioner ringPartitioner = partitioner != null ? partitioner : Partitioner.detect(ranges);
+        List<TokenRange> subranges = interleave(ranges, subrangesPerRange, ringPartitioner);
+
+        RepairProgress progress = progressFile == null ? null : RepairProgress.load(progressFile);
+        if (progress != null && !progress.matches(keyspace, tableList.toString(), subrangesPerRange))
+        {
+            throw new IllegalArgumentException("Progress file: " + progressFile.getAbsolutePath() + " is for a different repair (keyspace, tables"
+                    + " or subranges per range); finish that repair or use another file");
+        }
+        if (progress == null)
+        {
+            progress = new RepairProgress(keyspace, tableList.toString(), subrangesPerRange);
+        }
+        Map<String, Server> serversByIp = new HashMap<>();
+        for (Server server : servers)
+        {
+            serversByIp.put(server.getIp(), server);
+        }
+        LinkedList<Job> pending = new LinkedList<>();
+        for (TokenRange subrange : subranges)
+        {
+            if (!progress.isDone(subrange))
+            {
+                pending.add(new Job(subrange));
+            }
+        }
+        int previouslyRepaired = subranges.size() - pending.size();
+        logger.info("Repairing " + keyspace + ": " + subranges.size() + " subranges (" + previouslyRepaired + " already repaired); parallelism: "
+                + parallelism + "; max jobs per node: " + maxJobsPerNode);
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, new ClusterCommandExecutor.NamedDaemonThreadFactory("repair-worker"));
+        CompletionService<Job> completion = new ExecutorCompletionService<>(workers);
+        Map<String, Integer> running = new HashMap<>();
+        Map<TokenRange, String> failures = new LinkedHashMap<>();
+        String target = ShellUtils.quoteIfNeeded(keyspace) + tableList;
+        int inFlight = 0;
+        int repaired = 0;
+        boolean halted = false;
+        boolean unsaved = false;
+        long lastSave = System.currentTimeMillis();
+        try
+        {
+            while (true)
+            {
+                if (!halted)
+                {
+                    inFlight += startJobs(pending, running, completion, parallelism - inFlight, target, serversByIp, servers.get(0).getClusterName());
+                }
+                if (inFlight == 0)
+                {
+                    break;
+                }
+                Job job;
+                try
+                {
+                    job = completion.take().get();
+                } catch (ExecutionException e)
+                {//jobs catch everything short of an Error
+                    throw new IllegalStateException("Repair worker died", e.getCause());
+                }
+                inFlight--;
+                for (String endpoint : job.range.getEndpoints())
+                {
+                    running.put(endpoint, running.get(endpoint) - 1);
+                }
+                if (job.lastError == null)
+                {
+                    progress.markDone(job.range);
+                    repaired++;
+                    unsaved = true;
+                    logger.debug("Repaired: " + job.range + " (" + (previouslyRepaired + repaired) + "/" + subranges.size() + ")");
+                } else if (job.attempts < maxAttempts)
+                {
+                    logger.warn("Repair of: " + job.range + " failed (attempt " + job.attempts + " of " + maxAttempts + "); will retry: " + job.lastError);
+                    pending.addLast(job);
+                } else
+                {
+                    logger.error("Repair of: " + job.range + " failed " + job.attempts + " times; giving up: " + job.lastError);
+                    failures.put(job.range, job.lastError);
+                    if (!halted && failures.size() >= maxFailures)
+                    {
+                        logger.error(failures.size() + " subranges have failed; halting the repair of " + keyspace);
+                        halted = true;
+                    }
+                }
+                if (unsaved && progressFile != null && System.currentTimeMillis() - lastSave >= saveIntervalMs)
+                {
+                    progress.save(progressFile);
+                    lastSave = System.currentTimeMillis();
+                    unsaved = false;
+                }
+            }
+        } finally
+        {
+            workers.shutdownNow();
+            if (unsaved && progressFile != null)
+            {
+                try
+                {
+                    progress.save(progressFile);
+                } catch (IOException e)
+                {
+                    logger.error("Could not save repair progress to: " + progressFile, e);
+                }
+            }
+        }
+        RepairResult result = new RepairResult(keyspace, subranges.size(), previouslyRepaired, repaired, failures, halted, System.currentTimeMillis() - start);
+        if (progressFile != null && result.isComplete() && progressFile.exists() && !progressFile.delete())
+        {//left in place, the next run would skip every subrange
+            logger.error("Could not delete the progress file of a finished repair: " + progressFile + "; delete it before repairing " + keyspace + " again");
+        }
+        logger.info("Repair finished: " + result);
+        return result;
+    }
+
+    /**
+     * Starts as many pending jobs as there are free slots for, skipping any
+     * with a replica that's already at its limit.
+     *
+     * @return The number of jobs started.
+     */
+    private int startJobs(List<Job> pending, Map<String, Integer> running, CompletionService<Job> completion, int slots,
+            String target, Map<String, Server> serversByIp, String clusterName)
+    {
+        int started = 0;
+        Iterator<Job> it = pending.iterator();
+        while (started < slots && it.hasNext())
+        {
+            Job job = it.next();
+            if (!canStart(job, running))
+            {
+                continue;
+            }
+            it.remove();
+            for (String endpoint : job.range.getEndpoints())
+            {
+                Integer count = running.get(endpoint);
+                running.put(endpoint, count == null ? 1 : count + 1);
+            }
+            List<String> endpoints = job.range.getEndpoints();
+            String coordinator = endpoints.get(job.attempts % endpoints.size());
+            Server server = serversByIp.get(coordinator);
+            completion.submit(new RepairTask(job, server != null ? server : new Server(coordinator, clusterName), repairCommand(job.range, target)));
+            started++;
+        }
+        return started;
+    }
+
+    /**
+     * True if none of the job's replicas are at their limit.
+     */
+    private boolean canStart(Job job, Map<String, Integer> running)
+    {
+        for (String endpoint : job.range.getEndpoints())
+        {
+            Integer count = running.get(endpoint);
+            if (count != null && count >= maxJobsPerNode)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the ring from the first server that answers.
+     */
+    private List<TokenRange> readRing(List<Server> servers, String keyspace) throws ConnectionException, IOException
+    {
+        Exception lastError = null;
+        for (Server server : servers)
+        {
+            RemoteCommandDao command = daoFactory.createRemoteCommandDao(server);
+            try
+            {
+                command.connect();
+                try
+                {
+                    List<TokenRange> ranges = new CassandraCommandDaoImpl(server, command).getTokenRanges(keyspace);
+                    for (TokenRange range : ranges)
+                    {
+                        if (range.getEndpoints().isEmpty())
+                        {
+                            throw new IOException("Range: " + range + " has no replicas");
+                        }
+                    }
+                    return ranges;
+                } finally
+                {
+                    command.logOff();
+                }
+            } catch (ConnectionException | IOException e)
+            {
+                logger.warn("Could not read the ring for: " + keyspace + " from: " + server.getIp(), e);
+                lastError = e;
+            }
+        }
+        if (lastError instanceof ConnectionException)
+        {
+            throw (ConnectionException) lastError;
+        }
+        throw (IOException) lastError;
+    }
+
+    /**
+     * Splits every range into subranges, and orders them so neighbouring
+     * subranges come from different ranges: the first subrange of every
+     * range, then the second, and so on. Subranges of the same range share
+     * replicas, so this keeps the greedy scan from stalling on one replica
+     * set.
+     *
+     * @param ranges Ranges of the ring.
+     * @param parts Number of subranges per range.
+     * @param partitioner Partitioner of the ring.
+     * @return Every subrange.
+     */
+    static List<TokenRange> interleave(List<TokenRange> ranges, int parts, Partitioner partitioner)
+    {
+        List<List<TokenRange>> split = new ArrayList<>(ranges.size());
+        int total = 0;
+        for (TokenRange range : ranges)
+        {
+            List<TokenRange> subranges = split(range, parts, partitioner);
+            split.add(subranges);
+            total += subranges.size();
+        }
+        List<TokenRange> interleaved = new ArrayList<>(total);
+        for (int i = 0; i < parts; i++)
+        {
+            for (List<TokenRange> subranges : split)
+            {
+                if (i < subranges.size())
+                {
+                    interleaved.add(subranges.get(i));
+                }
+            }
+        }
+        return interleaved;
+    }
+
+    /**
+     * Splits a range into (up to) the given number of equal subranges,
+     * wrapping around the end of the ring where the range does. A range whose
+     * start and end are the same covers the whole ring.
+     *
+     * @param range Range to split.
+     * @param parts Number of subranges; fewer if the range has fewer tokens.
+     * @param partitioner Partitioner of the ring.
+     * @return The subranges, in ring order, each with the range's replicas.
+     */
+    static List<TokenRange> split(TokenRange range, int parts, Partitioner partitioner)
+    {
+        BigInteger size = range.getEnd().subtract(range.getStart()).mod(partitioner.ringSize);
+        if (size.signum() == 0)
+        {
+            size = partitioner.ringSize;
+        }
+        if (size.compareTo(BigInteger.valueOf(parts)) < 0)
+        {
+            parts = size.intValue();
+        }
+        List<TokenRange> subranges = new ArrayList<>(parts);
+        BigInteger previous = range.getStart();
+        for (int i = 1; i <= parts; i++)
+        {
+            BigInteger next = i == parts ? range.getEnd()
+                    : partitioner.normalize(range.getStart().add(size.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(parts))));
+            subranges.add(new TokenRange(previous, next, range.getEndpoints()));
+            previous = next;
+        }
+        return subranges;
+    }
+
+    /**
+     * Builds the nodetool command that repairs a subrange.
+     *
+     * @param range Subrange to repair.
+     * @param target Keyspace, and any tables, to repair; already quoted.
+     * @return The command.
+     */
+    String repairCommand(TokenRange range, String target)
+    {
+        return "nodetool repair " + (repairOptions.isEmpty() ? "" : repairOptions + " ")
+                + "-st " + range.getStart() + " -et " + range.getEnd() + " " + target;
+    }
+
+    /**
+     * Checks a line of nodetool repair output for a failure; older versions
+     * exit zero even when a session fails.
+     */
+    static boolean isFailureLine(String line)
+    {
+        String lower = line.toLowerCase(Locale.ROOT);
+        return lower.startsWith("error") || lower.contains("finished with error")
+                || (lower.contains("repair session") && lower.contains("failed"));
+    }
+
+    /**
+     * Number of subranges each range is split into.
+     *
+     * @return the subrangesPerRange
+     */
+    public int getSubrangesPerRange()
+    {
+        return subrangesPerRange;
+    }
+
+    /**
+     * Number of subranges each range is split into. More, smaller subranges
+     * mean each repair streams less when replicas disagree, and less is redone
+     * when one fails.
+     *
+     * @param subrangesPerRange the subrangesPerRange to set
+     */
+    public void setSubrangesPerRange(int subrangesPerRange)
+    {
+        if (subrangesPerRange < 1)
+        {
+            throw new IllegalArgumentException("Subranges per range must be at least 1");
+        }
+        this.subrangesPerRange = subrangesPerRange;
+    }
+
+    /**
+     * Options passed to nodetool repair, ahead of the subrange.
+     *
+     * @return the repairOptions
+     */
+    public String getRepairOptions()
+    {
+        return repairOptions;
+    }
+
+    /**
+     * Options passed to nodetool repair, ahead of the subrange (eg: "-full
+     * -dcpar"). Pass an empty string for none, for versions before 2.2 that
+     * don't know -full.
+     *
+     * @param repairOptions the repairOptions to set
+     */
+    public void setRepairOptions(String repairOptions)
+    {
+        if (repairOptions == null)
+        {
+            throw new IllegalArgumentException("Repair options cannot be null");
+        }
+        this.repairOptions = repairOptions;
+    }
+
+    /**
+     * Number of times a subrange is tried before it's given up on.
+     *
+     * @return the maxAttempts
+     */
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * Number of times a subrange is tried before it's given up on.
+     *
+     * @param maxAttempts the maxAttempts to set
+     */
+    public void setMaxAttempts(int maxAttempts)
+    {
+        if (maxAttempts < 1)
+        {
+            throw new IllegalArgumentException("Max attempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Number of subranges that can be given up on before the whole repair is
+     * halted.
+     *
+     * @return the maxFailures
+     */
+    public int getMaxFailures()
+    {
+        return maxFailures;
+    }
+
+    /**
+     * Number of subranges that can be given up on before the whole repair is
+     * halted; repairs already running are let finish. Unlimited by default.
+     * Useful to stop early when a node is down and everything it replicates
+     * would fail.
+     *
+     * @param maxFailures the maxFailures to set
+     */
+    public void setMaxFailures(int maxFailures)
+    {
+        if (maxFailures < 1)
+        {
+            throw new IllegalArgumentException("Max failures must be at least 1");
+        }
+        this.maxFailures = maxFailures;
+    }
+
+    /**
+     * Minimum time between saves of the progress file, in milliseconds.
+     *
+     * @return the saveIntervalMs
+     */
+    public long getSaveIntervalMs()
+    {
+        return saveIntervalMs;
+    }
+
+    /**
+     * Minimum time between saves of the progress file, in milliseconds.
+     * Progress is always saved when the repair ends; a crash loses at most
+     * this much progress, and those subranges are simply repaired again.
+     *
+     * @param saveIntervalMs the saveIntervalMs to set
+     */
+    public void setSaveIntervalMs(long saveIntervalMs)
+    {
+        this.saveIntervalMs = saveIntervalMs;
+    }
+
+    /**
+     * Partitioner of the cluster; null to work it out from the tokens.
+     *
+     * @return the partitioner
+     */
+    public Partitioner getPartitioner()
+    {
+        return partitioner;
+    }
+
+    /**
+     * Partitioner of the cluster; null (the default) to work it out from the
+     * tokens.
+     *
+     * @param partitioner the partitioner to set
+     */
+    public void setPartitioner(Partitioner partitioner)
+    {
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * The partitioners with numeric tokens, and the size of their rings.
+     */
+    public enum Partitioner
+    {
+
+        /**
+         * Murmur3Partitioner; tokens are longs.
+         */
+        MURMUR3(BigInteger.ONE.shiftLeft(63).negate(), BigInteger.ONE.shiftLeft(64)),
+        /**
+         * RandomPartitioner; tokens run from 0 to 2^127.
+         */
+        RANDOM(BigInteger.ZERO, BigInteger.ONE.shiftLeft(127));
+
+        /**
+         * Smallest token.
+         */
+        private final BigInteger minimum;
+
+        /**
+         * Number of tokens in the ring.
+         */
+        private final BigInteger ringSize;
+
+        /**
+         * Constructor.
+         *
+         * @param minimum Smallest token.
+         * @param ringSize Number of tokens in the ring.
+         */
+        private Partitioner(BigInteger minimum, BigInteger ringSize)
+        {
+            this.minimum = minimum;
+            this.ringSize = ringSize;
+        }
+
+        /**
+         * Wraps a token that's run past the end of the ring back round to the
+         * start.
+         *
+         * @param token Token to wrap.
+         * @return The token, within the ring.
+         */
+        BigInteger normalize(BigInteger token)
+        {
+            return token.subtract(minimum).mod(ringSize).add(minimum);
+        }
+
+        /**
+         * Works out the partitioner from a ring's tokens: only Murmur3 has
+         * negative tokens, and only Random has tokens too big for a long. A
+         * ring with neither is assumed to be Murmur3, the default.
+         *
+         * @param ranges Ranges of the ring.
+         * @return The partitioner.
+         */
+        static Partitioner detect(List<TokenRange> ranges)
+        {
+            BigInteger maxLong = BigInteger.valueOf(Long.MAX_VALUE);
+            for (TokenRange range : ranges)
+            {
+                for (BigInteger token : new BigInteger[]
+                {
+                    range.getStart(), range.getEnd()
+                })
+                {
+                    if (token.signum() < 0)
+                    {
+                        return MURMUR3;
+                    }
+                    if (token.compareTo(maxLong) > 0)
+                    {
+                        return RANDOM;
+                    }
+                }
+            }
+            return MURMUR3;
+        }
+    }
+
+    /**
+     * A subrange waiting to be, or being, repaired.
+     */
+    private static class Job
+    {
+
+        private final TokenRange range;
+        private int attempts = 0;
+        private String lastError = null;
+
+        Job(TokenRange range)
+        {
+            this.range = range;
+        }
+    }
+
+    /**
+     * Runs one attempt at repairing a subrange, on its coordinator. Never
+     * throws; the outcome is left in the job.
+     */
+    private class RepairTask implements Callable<Job>
+    {
+
+        private final Job job;
+        private final Server coordinator;
+        private final String repairCommand;
+
+        RepairTask(Job job, Server coordinator, String repairCommand)
+        {
+            this.job = job;
+            this.coordinator = coordinator;
+            this.repairCommand = repairCommand;
+        }
+
+        @Override
+        public Job call()
+        {
+            job.attempts++;
+            job.lastError = null;
+            try
+            {
+                RemoteCommandDao command = daoFactory.createRemoteCommandDao(coordinator);
+                command.connect();
+                try
+                {
+                    final StringBuilder failure = new StringBuilder();
+                    int exitStatus = command.sendCommand(repairCommand, new LineHandler()
+                    {
+                        @Override
+                        public void handleLine(String line) throws IOException
+                        {
+                            if (failure.length() == 0 && isFailureLine(line))
+                            {
+                                failure.append(line.trim());
+                            }
+                        }
+                    });
+                    if (exitStatus != 0)
+                    {
+                        job.lastError = coordinator.getIp() + ": nodetool repair exited with " + exitStatus + (failure.length() > 0 ? ": " + failure : "");
+                    } else if (failure.length() > 0)
+                    {
+                        job.lastError = coordinator.getIp() + ": " + failure;
+                    }
+                } finally
+                {
+                    command.logOff();
+                }
+            } catch (Exception e)
+            {
+                job.lastError = coordinator.getIp() + ": " + e;
+            }
+            return job;
+        }
+    }
+}
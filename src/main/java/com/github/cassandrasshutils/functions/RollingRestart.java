@@ -0,0 +1,568 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.impl.CassandraCommandDaoImpl;
+import com.github.cassandrasshutils.command.impl.NodetoolStatusParser;
+import com.github.cassandrasshutils.command.domain.HostResult;
+import com.github.cassandrasshutils.command.domain.NodetoolServer;
+import com.github.cassandrasshutils.command.domain.RollingRestartResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Restarts Cassandra across a cluster one node (or one batch of nodes) at a
+ * time. After each batch is restarted we wait until every node in the cluster
+ * is back to UN (up and normal) in <code>nodetool status</code> as seen from a
+ * peer that wasn't restarted, so gossip agrees the node is back before the
+ * next one goes down. The first node that fails to restart or come back halts
+ * the whole thing; the cluster is left with at most one batch down.
+ *
+ * By default nodes are restarted one at a time, in the order given. With a
+ * batch size greater than one and the keyspaces to protect set, the ring of
+ * each keyspace is read (nodetool describering) and nodes are only batched
+ * with nodes they share no range with, so a batch only ever takes down one
+ * replica of any range. Racks aren't relied on: SimpleStrategy ignores them,
+ * and NetworkTopologyStrategy only spreads replicas over racks when there are
+ * enough of them. Nodes that hold no range of those keyspaces are restarted
+ * on their own, as is everything if the ring can't be read.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class RollingRestart
+{
+
+    /**
+     * Default time to wait for a restarted node to show as UN from a peer.
+     */
+    public static final long DEFAULT_UP_DEADLINE_MS = 5 * 60 * 1000;
+
+    /**
+     * Status/state a node shows in nodetool status when it is up and normal.
+     */
+    static final String UP_NORMAL = "UN";
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Factory used to create a DAO for each server.
+     */
+    private final RemoteCommandDaoFactory daoFactory;
+
+    /**
+     * Most nodes restarted at once. Nodes are only batched with others they
+     * share no range with.
+     */
+    private int maxBatchSize = 1;
+
+    /**
+     * Keyspaces whose replicas batches must not overlap; nothing is batched
+     * while this is empty.
+     */
+    private List<String> keyspaces = new ArrayList<>();
+
+    /**
+     * Poller used to wait for a restarted node to serve clients again.
+     */
+    private ReadinessPoller restartPoller = new ReadinessPoller(CassandraCommandFunction.DEFAULT_START_DEADLINE_MS);
+
+    /**
+     * Poller used to wait for every node to show as UN from a peer.
+     */
+    private ReadinessPoller upPoller = new ReadinessPoller(DEFAULT_UP_DEADLINE_MS);
+
+    /**
+     * Constructor.
+     *
+     * @param daoFactory Factory used to create a DAO for each server.
+     */
+    public RollingRestart(RemoteCommandDaoFactory daoFactory)
+    {
+        if (daoFactory == null)
+        {
+            throw new IllegalArgumentException("DAO factory cannot be null");
+        }
+        this.daoFactory = daoFactory;
+    }
+
+    /**
+     * Restarts every server in the cluster. Every server must be UN before we
+     * start; if not, nothing is restarted.
+     *
+     * @param servers Every server in the cluster, in the order to restart
+     * them.
+     * @return The outcome for each node that was attempted, and whether the
+     * restart halted.
+     * @throws InterruptedException If we are interrupted; the node(s) being
+     * restarted at the time may not have come back yet.
+     */
+    public RollingRestartResult restart(List<Server> servers) throws InterruptedException
+    {
+        if (servers == null || servers.isEmpty())
+        {
+            throw new IllegalArgumentException("Servers cannot be null or empty");
+        }
+        long start = System.currentTimeMillis();
+        Map<Server, HostResult<Long>> results = new LinkedHashMap<>();
+        Map<String, NodetoolServer> status;
+        try
+        {
+            status = readStatus(servers, new HashSet<Server>());
+        } catch (ConnectionException | IOException e)
+        {
+            logger.warn("Could not read the cluster status; not restarting anything.", e);
+            return new RollingRestartResult(results, true, "Could not read the cluster status: " + e.getMessage(), System.currentTimeMillis() - start);
+        }
+        Server down = firstNotUp(servers, status);
+        if (down != null)
+        {
+            String reason = down.getIp() + " is not " + UP_NORMAL + "; not restarting anything.";
+            logger.warn(reason);
+            return new RollingRestartResult(results, true, reason, System.currentTimeMillis() - start);
+        }
+        List<TokenRange> ranges = new ArrayList<>();
+        if (maxBatchSize > 1 && keyspaces.isEmpty())
+        {
+            logger.warn("Batch size is " + maxBatchSize + " but no keyspaces are set; restarting one node at a time.");
+        } else if (maxBatchSize > 1)
+        {
+            try
+            {
+                ranges = readRanges(servers);
+            } catch (ConnectionException | IOException e)
+            {
+                logger.warn("Could not read the ring; restarting one node at a time.", e);
+            }
+        }
+        List<List<Server>> batches = planBatches(servers, ranges, maxBatchSize);
+        logger.info("Rolling restart of " + servers.size() + " nodes in " + batches.size() + " batches.");
+        for (List<Server> batch : batches)
+        {
+            String failure = restartBatch(batch, servers, results);
+            if (failure != null)
+            {
+                logger.warn("Halting rolling restart: " + failure);
+                return new RollingRestartResult(results, true, failure, System.currentTimeMillis() - start);
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        logger.info("Rolling restart of " + servers.size() + " nodes finished in " + elapsed + "ms.");
+        return new RollingRestartResult(results, false, null, elapsed);
+    }
+
+    /**
+     * Restarts one batch and waits for the cluster to be all UN again.
+     *
+     * @return Why the batch failed; null if it succeeded.
+     */
+    private String restartBatch(final List<Server> batch, List<Server> servers, Map<Server, HostResult<Long>> results) throws InterruptedException
+    {
+        long batchStart = System.currentTimeMillis();
+        logger.info("Restarting: " + ips(batch));
+        ClusterCommandExecutor executor = new ClusterCommandExecutor(daoFactory, batch.size(), 0);
+        Map<Server, HostResult<Boolean>> restarted = executor.execute(batch, new ServerTask<Boolean>()
+        {
+            @Override
+            public Boolean execute(RemoteCommandDao command) throws Exception
+            {
+                return CassandraCommandFunction.restartCassandra(command, restartPoller);
+            }
+        }, null);
+        String failure = null;
+        for (HostResult<Boolean> result : restarted.values())
+        {
+            if (!result.isSuccess())
+            {
+                failure = result.getServer().getIp() + " failed to restart: " + result.getError();
+                results.put(result.getServer(), new HostResult<Long>(result.getServer(), null, result.getError(), result.isTimedOut(), result.getElapsedMs()));
+            } else if (!result.getResult())
+            {
+                failure = result.getServer().getIp() + " did not start serving within " + restartPoller.getDeadlineMs() + "ms";
+                results.put(result.getServer(), new HostResult<Long>(result.getServer(), null, new TimeoutException(failure), true, result.getElapsedMs()));
+            } else
+            {
+                results.put(result.getServer(), new HostResult<>(result.getServer(), result.getElapsedMs(), null, false, result.getElapsedMs()));
+            }
+        }
+        if (failure != null)
+        {
+            return failure;
+        }
+        Throwable error;
+        boolean up = false;
+        try
+        {
+            up = waitForUp(servers, new HashSet<>(batch));
+            error = up ? null : new TimeoutException("Not every node was " + UP_NORMAL + " within " + upPoller.getDeadlineMs() + "ms of restarting " + ips(batch));
+        } catch (ConnectionException | IOException | CassandraCrashedException e)
+        {
+            if (Thread.currentThread().isInterrupted())
+            {
+                throw new InterruptedException("Interrupted while waiting for " + ips(batch) + " to come back.");
+            }
+            error = e;
+        }
+        long elapsed = System.currentTimeMillis() - batchStart;
+        for (Server server : batch)
+        {
+            results.put(server, new HostResult<>(server, up ? elapsed : null, error, error instanceof TimeoutException, elapsed));
+        }
+        if (!up)
+        {
+            return error.getMessage();
+        }
+        logger.info("Restarted: " + ips(batch) + " in " + elapsed + "ms");
+        return null;
+    }
+
+    /**
+     * Polls a peer outside the batch until every server shows as UN.
+     */
+    private boolean waitForUp(final List<Server> servers, Set<Server> batch) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        RemoteCommandDao peer = connectPeer(servers, batch);
+        try
+        {
+            return upPoller.await(peer, new ReadinessCheck()
+            {
+                @Override
+                public boolean isReady(RemoteCommandDao command) throws ConnectionException, IOException
+                {
+                    return firstNotUp(servers, parseStatus(command.sendCommand(CassandraCommandDaoImpl.NODETOOL_STATUS_COMMAND))) == null;
+                }
+            });
+        } finally
+        {
+            peer.logOff();
+        }
+    }
+
+    /**
+     * Reads nodetool status from a peer outside the excluded set.
+     */
+    private Map<String, NodetoolServer> readStatus(List<Server> servers, Set<Server> exclude) throws ConnectionException, IOException
+    {
+        RemoteCommandDao peer = connectPeer(servers, exclude);
+        try
+        {
+            return parseStatus(peer.sendCommand(CassandraCommandDaoImpl.NODETOOL_STATUS_COMMAND));
+        } finally
+        {
+            peer.logOff();
+        }
+    }
+
+    /**
+     * Reads the ranges of every keyspace, and their replicas, from a peer.
+     */
+    private List<TokenRange> readRanges(List<Server> servers) throws ConnectionException, IOException
+    {
+        RemoteCommandDao peer = connectPeer(servers, new HashSet<Server>());
+        try
+        {
+            Server peerServer = servers.get(0);
+            for (Server server : servers)
+            {
+                if (server.getIp().equals(peer.getHost()))
+                {
+                    peerServer = server;
+                }
+            }
+            CassandraCommandDaoImpl cassandra = new CassandraCommandDaoImpl(peerServer, peer);
+            List<TokenRange> ranges = new ArrayList<>();
+            for (String keyspace : keyspaces)
+            {
+                ranges.addAll(cassandra.getTokenRanges(keyspace));
+            }
+            return ranges;
+        } finally
+        {
+            peer.logOff();
+        }
+    }
+
+    /**
+     * Connects to the first server outside the excluded set that will let
+     * us. If every server is excluded (a one node cluster), the first server
+     * is used.
+     */
+    private RemoteCommandDao connectPeer(List<Server> servers, Set<Server> exclude) throws ConnectionException
+    {
+        ConnectionException last = null;
+        for (Server server : servers)
+        {
+            if (exclude.contains(server) && exclude.size() < servers.size())
+            {
+                continue;
+            }
+            RemoteCommandDao peer = daoFactory.createRemoteCommandDao(server);
+            try
+            {
+                peer.connect();
+                return peer;
+            } catch (ConnectionException e)
+            {
+                logger.debug("Could not connect to peer: " + server.getIp(), e);
+                last = e;
+            }
+        }
+        throw last;
+    }
+
+    /**
+     * Splits the servers into batches to restart together. With a batch size
+     * of one, or no ranges, each server is its own batch, in order. Otherwise
+     * each server, in order, joins the first batch that has room and holds no
+     * server it shares a range with, or starts a new one. Servers that hold
+     * no range are never batched.
+     *
+     * @param servers Servers in the order to restart them.
+     * @param ranges Ranges of every keyspace to protect, with their replicas.
+     * @param maxBatchSize Most servers in one batch.
+     * @return The batches, in the order to restart them.
+     */
+    static List<List<Server>> planBatches(List<Server> servers, List<TokenRange> ranges, int maxBatchSize)
+    {
+        Map<String, Set<String>> sharesRangeWith = new HashMap<>();
+        for (TokenRange range : ranges)
+        {
+            for (String endpoint : range.getEndpoints())
+            {
+                Set<String> peers = sharesRangeWith.get(endpoint);
+                if (peers == null)
+                {
+                    peers = new HashSet<>();
+                    sharesRangeWith.put(endpoint, peers);
+                }
+                peers.addAll(range.getEndpoints());
+            }
+        }
+        List<List<Server>> batches = new ArrayList<>();
+        List<List<Server>> open = new ArrayList<>();
+        for (Server server : servers)
+        {
+            Set<String> peers = sharesRangeWith.get(server.getIp());
+            List<Server> batch = null;
+            if (maxBatchSize > 1 && peers != null)
+            {
+                for (List<Server> candidate : open)
+                {
+                    if (candidate.size() < maxBatchSize && !sharesRange(candidate, peers))
+                    {
+                        batch = candidate;
+                        break;
+                    }
+                }
+            }
+            if (batch == null)
+            {
+                batch = new ArrayList<>();
+                batches.add(batch);
+                if (maxBatchSize > 1 && peers != null)
+                {
+                    open.add(batch);
+                }
+            }
+            batch.add(server);
+        }
+        return batches;
+    }
+
+    /**
+     * Whether any server in a batch is in the set of a server's range
+     * peers.
+     */
+    private static boolean sharesRange(List<Server> batch, Set<String> peers)
+    {
+        for (Server server : batch)
+        {
+            if (peers.contains(server.getIp()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the output of nodetool status.
+     *
+     * @param output Output of nodetool status.
+     * @return Each node's status, keyed by address.
+     */
+    static Map<String, NodetoolServer> parseStatus(String output)
+    {
+        Map<String, NodetoolServer> nodes = new HashMap<>();
+        for (NodetoolServer node : NodetoolStatusParser.parse(output, null))
+        {
+            nodes.put(node.getIp(), node);
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the first server that isn't UN in the status, or null if they
+     * all are.
+     */
+    static Server firstNotUp(Collection<Server> servers, Map<String, NodetoolServer> status)
+    {
+        for (Server server : servers)
+        {
+            NodetoolServer node = status.get(server.getIp());
+            if (node == null || !node.isUpAndNormal())
+            {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Comma separated IPs, for logging.
+     */
+    private static String ips(List<Server> servers)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Server server : servers)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(server.getIp());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Most nodes restarted at once. Nodes are only batched with others they
+     * share no range with.
+     *
+     * @return the maxBatchSize
+     */
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    /**
+     * Most nodes restarted at once. Nodes are only batched with others they
+     * share no range with in any of the keyspaces; see setKeyspaces.
+     *
+     * @param maxBatchSize the maxBatchSize to set
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        if (maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Keyspaces whose replicas batches must not overlap.
+     *
+     * @return the keyspaces
+     */
+    public List<String> getKeyspaces()
+    {
+        return keyspaces;
+    }
+
+    /**
+     * Keyspaces whose replicas batches must not overlap. Include every
+     * keyspace that must stay available during the restart; until this is
+     * set every node is restarted on its own.
+     *
+     * @param keyspaces the keyspaces to set
+     */
+    public void setKeyspaces(List<String> keyspaces)
+    {
+        if (keyspaces == null)
+        {
+            throw new IllegalArgumentException("Keyspaces cannot be null");
+        }
+        this.keyspaces = new ArrayList<>(keyspaces);
+    }
+
+    /**
+     * Poller used to wait for a restarted node to serve clients again.
+     *
+     * @return the restartPoller
+     */
+    public ReadinessPoller getRestartPoller()
+    {
+        return restartPoller;
+    }
+
+    /**
+     * Poller used to wait for a restarted node to serve clients again.
+     *
+     * @param restartPoller the restartPoller to set
+     */
+    public void setRestartPoller(ReadinessPoller restartPoller)
+    {
+        if (restartPoller == null)
+        {
+            throw new IllegalArgumentException("Poller cannot be null");
+        }
+        this.restartPoller = restartPoller;
+    }
+
+    /**
+     * Poller used to wait for every node to show as UN from a peer.
+     *
+     * @return the upPoller
+     */
+    public ReadinessPoller getUpPoller()
+    {
+        return upPoller;
+    }
+
+    /**
+     * Poller used to wait for every node to show as UN from a peer.
+     *
+     * @param upPoller the upPoller to set
+     */
+    public void setUpPoller(ReadinessPoller upPoller)
+    {
+        if (upPoller == null)
+        {
+            throw new IllegalArgumentException("Poller cannot be null");
+        }
+        this.upPoller = upPoller;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+
+/**
+ * Something to run against a single server as part of a cluster wide
+ * operation.
+ *
+ * @param <T> Type of the result.
+ * @author Jeffrey DeYoung
+ */
+public interface ServerTask<T>
+{
+
+    /**
+     * Runs the task against one server.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server to run against.
+     * @return The result for this server.
+     * @throws Exception If the task fails on this server; reported in that
+     * server's HostResult.
+     */
+    public T execute(RemoteCommandDao command) throws Exception;
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.ServiceManager;
+import com.github.cassandrasshutils.command.domain.ServiceAction;
+import com.github.cassandrasshutils.command.domain.ServiceControlResult;
+import com.github.cassandrasshutils.command.domain.ServiceState;
+import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
+import com.github.cassandrasshutils.exceptions.CassandraPermissionsException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the script that does a whole start/stop/restart on the node (check
+ * the status, act, then poll locally until the service is serving or
+ * stopped) and parses the <code>CSU_RESULT key=value</code> lines it prints.
+ *
+ * @author Jeffrey DeYoung
+ */
+class ServiceControlScript
+{
+
+    /**
+     * Prefix of the lines the script reports its results on.
+     */
+    static final String RESULT_MARKER = "CSU_RESULT ";
+
+    /**
+     * Longest the script sleeps between checks, in seconds.
+     */
+    private static final int MAX_DELAY_SECONDS = 5;
+
+    /**
+     * Static helpers only.
+     */
+    private ServiceControlScript()
+    {
+    }
+
+    /**
+     * Builds the script.
+     *
+     * @param manager Service manager that controls Cassandra on the node.
+     * @param action Action to take.
+     * @param deadlineMs How long the script waits for the service to reach
+     * the wanted state. Rounded up to whole seconds.
+     * @param nativePort Port the native transport listens on; only checked
+     * when the service should end up running.
+     * @return The script.
+     */
+    static String build(ServiceManager manager, ServiceAction action, long deadlineMs, int nativePort)
+    {
+        StringBuilder sb = new StringBuilder();
+        //the script itself arrives on stdin (sh -s), so nothing it runs may
+        //read stdin or it would eat the rest of the script
+        sb.append("status() { ").append(manager.getStatusCommand()).append("; } < /dev/null\n");
+        sb.append("st=$(status)\n");
+        sb.append("case \"$st\" in\n");
+        sb.append("  running) was=1 ;;\n");
+        sb.append("  crashed|denied) echo \"").append(RESULT_MARKER).append("error=$st\"; exit 0 ;;\n");
+        sb.append("  *) was=0 ;;\n");
+        sb.append("esac\n");
+        sb.append("echo \"").append(RESULT_MARKER).append("was_running=$was\"\n");
+        sb.append("acted=0\n");
+        switch (action)
+        {
+            case START:
+                sb.append("if [ $was = 0 ]; then ").append(manager.getStartCommand()).append(" > /dev/null 2>&1 < /dev/null; acted=1; fi\n");
+                break;
+            case STOP:
+                sb.append("if [ $was = 1 ]; then ").append(manager.getStopCommand()).append(" > /dev/null 2>&1 < /dev/null; acted=1; fi\n");
+                break;
+            case RESTART:
+                sb.append(manager.getRestartCommand()).append(" > /dev/null 2>&1 < /dev/null; acted=1\n");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown action: " + action);
+        }
+        sb.append("echo \"").append(RESULT_MARKER).append("acted=$acted\"\n");
+        //ready() fails (and flags it) if the service has crashed
+        sb.append("ready() {\n");
+        sb.append("  case \"$(status)\" in\n");
+        sb.append("    crashed) crashed=1; return 1 ;;\n");
+        sb.append("    running) up=1 ;;\n");
+        sb.append("    *) up=0 ;;\n");
+        sb.append("  esac\n");
+        if (action.isLeavesRunning())
+        {
+            sb.append("  [ $up = 1 ] || return 1\n");
+            sb.append("  ").append(CassandraReadinessChecks.portListeningTest(nativePort)).append(" || return 1\n");
+            sb.append("  ").append(CassandraReadinessChecks.STATUS_BINARY_COMMAND).append(" 2>/dev/null | grep -q '^ *running *$'\n");
+        } else
+        {
+            sb.append("  [ $up = 0 ]\n");
+        }
+        sb.append("} < /dev/null\n");
+        sb.append("crashed=0; reached=0; delay=1; end=$(( $(date +%s) + ").append((deadlineMs + 999) / 1000).append(" ))\n");
+        sb.append("while :; do\n");
+        sb.append("  if ready; then reached=1; break; fi\n");
+        sb.append("  [ $crashed = 1 ] && break\n");
+        sb.append("  [ $(date +%s) -ge $end ] && break\n");
+        sb.append("  sleep $delay\n");
+        sb.append("  delay=$((delay * 2)); [ $delay -gt ").append(MAX_DELAY_SECONDS).append(" ] && delay=").append(MAX_DELAY_SECONDS).append("\n");
+        sb.append("done\n");
+        sb.append("[ $crashed = 1 ] && echo \"").append(RESULT_MARKER).append("error=crashed\"\n");
+        sb.append("echo \"").append(RESULT_MARKER).append("reached=$reached\"\n");
+        sb.append("echo \"").append(RESULT_MARKER).append("status=$(status)\"\n");
+        return sb.toString();
+    }
+
+    /**
+     * Parses the script's output.
+     *
+     * @param host Host the script ran on.
+     * @param action Action the script took.
+     * @param output Output of the script.
+     * @param elapsedMs How long the round trip took, in milliseconds.
+     * @return The result.
+     * @throws IOException If the output isn't what the script prints.
+     * @throws CassandraCrashedException If the service had crashed, before
+     * or after the action.
+     */
+    static ServiceControlResult parse(String host, ServiceAction action, String output, long elapsedMs) throws IOException, CassandraCrashedException
+    {
+        Map<String, String> values = new HashMap<>();
+        for (String line : output.split("\n"))
+        {
+            if (!line.startsWith(RESULT_MARKER))
+            {
+                continue;
+            }
+            int eq = line.indexOf('=');
+            if (eq > 0)
+            {
+                values.put(line.substring(RESULT_MARKER.length(), eq), line.substring(eq + 1));
+            }
+        }
+        String error = values.get("error");
+        if ("crashed".equals(error))
+        {
+            throw new CassandraCrashedException(host);
+        } else if ("denied".equals(error))
+        {
+            throw new CassandraPermissionsException(host);
+        }
+        if (!values.containsKey("was_running") || !values.containsKey("acted") || !values.containsKey("reached"))
+        {
+            throw new IOException("Unexpected response from the service control script on: " + host + "; " + output);
+        }
+        return new ServiceControlResult(host, action, values.get("was_running").equals("1"), values.get("acted").equals("1"),
+                values.get("reached").equals("1"), ServiceState.fromWord(values.containsKey("status") ? values.get("status") : ""), elapsedMs);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.ServiceManager;
+import com.github.cassandrasshutils.command.impl.SysVServiceManager;
+import com.github.cassandrasshutils.command.impl.SystemdServiceManager;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Works out which ServiceManager controls Cassandra on each host. Hosts
+ * booted with systemd (<code>/run/systemd/system</code> exists and
+ * <code>systemctl</code> is on the path) get a SystemdServiceManager;
+ * everything else gets a SysVServiceManager. Each host is detected once and
+ * the answer cached. Hosts that need something else (eg: a
+ * CustomServiceManager) can be registered up front, or an override set for
+ * every host. Hosts are told apart by the DAO's connection key, not just
+ * their address, so DAOs reaching different machines through one IP (on
+ * different ports) each get their own answer.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ServiceManagerResolver
+{
+
+    /**
+     * Command that prints "systemd" if the host is running systemd.
+     */
+    static final String DETECT_COMMAND = "if [ -d /run/systemd/system ] && command -v systemctl > /dev/null 2>&1; then echo systemd; else echo sysv; fi";
+
+    /**
+     * Shared resolver used by CassandraCommandFunction.
+     */
+    private static final ServiceManagerResolver DEFAULT_RESOLVER = new ServiceManagerResolver();
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Service manager for each host we have detected or been told about,
+     * keyed by connection key.
+     */
+    private final ConcurrentMap<String, ServiceManager> managers = new ConcurrentHashMap<>();
+
+    /**
+     * Service manager used for every host, skipping detection; null to
+     * detect.
+     */
+    private volatile ServiceManager override = null;
+
+    /**
+     * Gets the shared resolver.
+     *
+     * @return The resolver used by CassandraCommandFunction.
+     */
+    public static ServiceManagerResolver getDefault()
+    {
+        return DEFAULT_RESOLVER;
+    }
+
+    /**
+     * Gets the service manager for the host, detecting it if we don't know
+     * it yet.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server; only used if the host has to be detected.
+     * @return The service manager for the host.
+     * @throws ConnectionException If there is an connection problem to the
+     * server.
+     * @throws IOException If there is an IO issue talking to the server.
+     */
+    public ServiceManager resolve(RemoteCommandDao command) throws ConnectionException, IOException
+    {
+        ServiceManager forced = override;
+        if (forced != null)
+        {
+            return forced;
+        }
+        String key = command.getConnectionKey();
+        ServiceManager manager = managers.get(key);
+        if (manager != null)
+        {
+            return manager;
+        }
+        String detected = command.sendCommand(DETECT_COMMAND).trim();
+        manager = detected.equals("systemd") ? new SystemdServiceManager() : new SysVServiceManager();
+        logger.debug("Detected service manager: " + manager.getName() + " on: " + key);
+        ServiceManager existing = managers.putIfAbsent(key, manager);
+        return existing == null ? manager : existing;
+    }
+
+    /**
+     * Sets the service manager for a host, so it isn't detected.
+     *
+     * @param command RemoteCommandDao for the host the manager is for; it
+     * doesn't need to be connected.
+     * @param manager Service manager for the host.
+     */
+    public void register(RemoteCommandDao command, ServiceManager manager)
+    {
+        if (manager == null)
+        {
+            throw new IllegalArgumentException("Service manager cannot be null");
+        }
+        managers.put(command.getConnectionKey(), manager);
+    }
+
+    /**
+     * Forgets the host's service manager, so it is detected again next time
+     * (eg: after the host is rebuilt).
+     *
+     * @param command RemoteCommandDao for the host to forget.
+     */
+    public void invalidate(RemoteCommandDao command)
+    {
+        managers.remove(command.getConnectionKey());
+    }
+
+    /**
+     * Service manager used for every host, skipping detection; null to
+     * detect.
+     *
+     * @return the override
+     */
+    public ServiceManager getOverride()
+    {
+        return override;
+    }
+
+    /**
+     * Service manager used for every host, skipping detection; null to
+     * detect.
+     *
+     * @param override the override to set
+     */
+    public void setOverride(ServiceManager override)
+    {
+        this.override = override;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Caches whether the Cassandra service is running on each host, so callers
+ * that ask often (monitoring, start/stop pre-checks) don't each pay for an
+ * exec channel round trip. A status is reused for up to the TTL after it was
+ * read. Callers that ask about a host while its status is being read wait for
+ * that read rather than starting their own, so a host is never checked more
+ * than once at a time. Hosts are told apart by the DAO's connection key, not
+ * just their address, so DAOs reaching different machines through one IP
+ * (on different ports) don't share a status.
+ *
+ * Anything that changes the service's state should invalidate the host; the
+ * start/stop/restart functions in CassandraCommandFunction do this with the
+ * default cache. Failed checks are not cached.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ServiceStatusCache
+{
+
+    /**
+     * Default time a status is reused for.
+     */
+    public static final long DEFAULT_TTL_MS = 2000;
+
+    /**
+     * Shared cache used by CassandraCommandFunction.
+     */
+    private static final ServiceStatusCache DEFAULT_CACHE = new ServiceStatusCache(DEFAULT_TTL_MS);
+
+    /**
+     * Latest (or in flight) status check for each host, keyed by connection
+     * key.
+     */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Time a status is reused for, in milliseconds.
+     */
+    private volatile long ttlMs;
+
+    /**
+     * Constructor.
+     *
+     * @param ttlMs Time a status is reused for, in milliseconds. Zero means
+     * statuses are never reused, but concurrent callers still share a check.
+     */
+    public ServiceStatusCache(long ttlMs)
+    {
+        setTtlMs(ttlMs);
+    }
+
+    /**
+     * Gets the shared cache.
+     *
+     * @return The cache used by CassandraCommandFunction.
+     */
+    public static ServiceStatusCache getDefault()
+    {
+        return DEFAULT_CACHE;
+    }
+
+    /**
+     * Checks whether the Cassandra service is running on the host, reusing a
+     * recent status if there is one.
+     *
+     * @param command RemoteCommandDao that is <b>already connected</b> to the
+     * server to check; only used if the host has to be checked.
+     * @return True if Cassandra is running; false if it is not.
+     * @throws ConnectionException If there is an connection problem to the
+     * server.
+     * @throws IOException If there is an IO issue talking to the server, or
+     * we are interrupted while waiting for another caller's check.
+     * @throws CassandraCrashedException if Cassandra is neither running nor
+     * stopped normally.
+     */
+    public boolean isRunning(final RemoteCommandDao command) throws ConnectionException, IOException, CassandraCrashedException
+    {
+        String host = command.getConnectionKey();
+        while (true)
+        {
+            Entry current = entries.get(host);
+            if (current != null && current.isFresh(System.currentTimeMillis(), ttlMs))
+            {
+                return current.await();
+            }
+            Entry mine = new Entry(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call() throws Exception
+                {
+                    return CassandraCommandFunction.isCassandraRunning(command);
+                }
+            });
+            boolean installed = current == null ? entries.putIfAbsent(host, mine) == null : entries.replace(host, current, mine);
+            if (!installed)
+            {
+                continue;//someone else got there first; use theirs
+            }
+            mine.check.run();
+            try
+            {
+                return mine.await();
+            } catch (ConnectionException | IOException | CassandraCrashedException | RuntimeException e)
+            {
+                entries.remove(host, mine);//don't cache failures
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Records a status we learned some other way (eg: we just watched the
+     * service come up), so the next caller doesn't have to check.
+     *
+     * @param command RemoteCommandDao for the host the status is for.
+     * @param running True if Cassandra is running.
+     */
+    public void put(RemoteCommandDao command, final boolean running)
+    {
+        Entry known = new Entry(new Callable<Boolean>()
+        {
+            @Override
+            public Boolean call()
+            {
+                return running;
+            }
+        });
+        known.check.run();
+        entries.put(command.getConnectionKey(), known);
+    }
+
+    /**
+     * Forgets the host's status, so the next caller checks it again. Callers
+     * already waiting on an in flight check still get its answer.
+     *
+     * @param command RemoteCommandDao for the host to forget.
+     */
+    public void invalidate(RemoteCommandDao command)
+    {
+        entries.remove(command.getConnectionKey());
+    }
+
+    /**
+     * Forgets every host's status.
+     */
+    public void invalidateAll()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Time a status is reused for, in milliseconds.
+     *
+     * @return the ttlMs
+     */
+    public long getTtlMs()
+    {
+        return ttlMs;
+    }
+
+    /**
+     * Time a status is reused for, in milliseconds.
+     *
+     * @param ttlMs the ttlMs to set
+     */
+    public void setTtlMs(long ttlMs)
+    {
+        if (ttlMs < 0)
+        {
+            throw new IllegalArgumentException("TTL cannot be negative");
+        }
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * One status check and when it finished.
+     */
+    private static class Entry
+    {
+
+        private final FutureTask<Boolean> check;
+        private volatile long completedAt = 0;
+
+        Entry(Callable<Boolean> callable)
+        {
+            this.check = new FutureTask<Boolean>(callable)
+            {
+                @Override
+                protected void done()
+                {
+                    completedAt = System.currentTimeMillis();
+                }
+            };
+        }
+
+        /**
+         * In flight checks are always fresh; finished ones are fresh for the
+         * TTL.
+         */
+        boolean isFresh(long now, long ttlMs)
+        {
+            return !check.isDone() || now - completedAt < ttlMs;
+        }
+
+        /**
+         * Waits for the check, rethrowing whatever it failed with.
+         */
+        boolean await() throws ConnectionException, IOException, CassandraCrashedException
+        {
+            try
+            {
+                return check.get();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a service status check.");
+            } catch (ExecutionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof ConnectionException)
+                {
+                    throw (ConnectionException) cause;
+                } else if (cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                } else if (cause instanceof CassandraCrashedException)
+                {
+                    throw (CassandraCrashedException) cause;
+                } else if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException("Service status check failed.", cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.CassandraCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.ClusterTableStats;
+import com.github.cassandrasshutils.command.domain.HostResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TableStats;
+import com.github.cassandrasshutils.command.impl.CassandraCommandDaoImpl;
+import com.github.cassandrasshutils.command.impl.JmxCassandraCommandDaoImpl;
+import com.github.cassandrasshutils.exceptions.JmxAddressInUseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects table statistics from every node in a cluster at once and merges
+ * them into cluster wide figures per table (see ClusterTableStats).
+ *
+ * Nodes are read in parallel, either with nodetool tablestats or, if JMX is
+ * turned on, straight from the table metrics MBeans (which also gives
+ * partition size histograms, and so cluster wide partition size
+ * percentiles). Each node's stats are merged in as soon as they arrive. A
+ * node that can't be read is recorded as a failure and the figures cover the
+ * rest.
+ *
+ * Over JMX, nodes whose JMX stubs give the same address (Cassandra's default
+ * local only JMX) can only be read one at a time (see
+ * JmxCassandraCommandDaoImpl). Once two nodes are found to share a stub
+ * address, the nodes still to be read are read with nodetool instead, so the
+ * partition size percentiles only cover the nodes read over JMX.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TableStatsCollector
+{
+
+    /**
+     * Default per node timeout; tablestats on a node with many tables is
+     * slow.
+     */
+    public static final long DEFAULT_TIMEOUT_MS = 2 * 60 * 1000;
+
+    /**
+     * Logger for this class.
+     */
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * Factory used to create a DAO for each server.
+     */
+    private final RemoteCommandDaoFactory daoFactory;
+
+    /**
+     * Most nodes read at once.
+     */
+    private final int parallelism;
+
+    /**
+     * Per node timeout, in milliseconds.
+     */
+    private final long timeoutMs;
+
+    /**
+     * True to read stats over JMX rather than with nodetool.
+     */
+    private boolean useJmx = false;
+
+    /**
+     * JMX port on the nodes, when using JMX.
+     */
+    private int jmxPort = JmxCassandraCommandDaoImpl.DEFAULT_JMX_PORT;
+
+    /**
+     * Constructor that uses the default parallelism and timeout.
+     *
+     * @param daoFactory Factory used to create a DAO for each server.
+     */
+    public TableStatsCollector(RemoteCommandDaoFactory daoFactory)
+    {
+        this(daoFactory, ClusterCommandExecutor.DEFAULT_PARALLELISM, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param daoFactory Factory used to create a DAO for each server.
+     * @param parallelism Most nodes read at once.
+     * @param timeoutMs Per node timeout, in milliseconds. Zero or less means
+     * no timeout.
+     */
+    public TableStatsCollector(RemoteCommandDaoFactory daoFactory, int parallelism, long timeoutMs)
+    {
+        if (daoFactory == null)
+        {
+            throw new IllegalArgumentException("DAO factory cannot be null");
+        }
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.daoFactory = daoFactory;
+        this.parallelism = parallelism;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Collects stats for every table from every server.
+     *
+     * @param servers Servers to collect from.
+     * @return The merged stats, plus any servers that couldn't be read.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public ClusterTableStats collect(List<Server> servers) throws InterruptedException
+    {
+        return collect(servers, null);
+    }
+
+    /**
+     * Collects stats for every table in a keyspace from every server.
+     *
+     * @param servers Servers to collect from.
+     * @param keyspace Keyspace to collect; null for every keyspace.
+     * @return The merged stats, plus any servers that couldn't be read.
+     * @throws InterruptedException If we are interrupted while waiting; any
+     * outstanding work is cancelled.
+     */
+    public ClusterTableStats collect(List<Server> servers, final String keyspace) throws InterruptedException
+    {
+        if (servers == null || servers.isEmpty())
+        {
+            throw new IllegalArgumentException("Servers cannot be null or empty");
+        }
+        final Map<String, Server> byIp = new HashMap<>();
+        for (Server server : servers)
+        {
+            byIp.put(server.getIp(), server);
+        }
+        final ClusterTableStats stats = new ClusterTableStats();
+        final AtomicBoolean stubsShared = new AtomicBoolean(false);
+        long start = System.currentTimeMillis();
+        new ClusterCommandExecutor(daoFactory, parallelism, timeoutMs).execute(servers, new ServerTask<List<TableStats>>()
+        {
+            @Override
+            public List<TableStats> execute(RemoteCommandDao command) throws Exception
+            {
+                return readTableStats(byIp.get(command.getHost()), command, keyspace, stubsShared);
+            }
+        }, new HostResultListener<List<TableStats>>()
+        {
+            @Override
+            public void onResult(HostResult<List<TableStats>> result)
+            {//called on this thread, so the stats are only ever touched by one thread
+                if (result.isSuccess())
+                {
+                    stats.add(result.getServer(), result.getResult());
+                } else
+                {
+                    stats.addFailure(result.getServer(), result.getError());
+                }
+            }
+        });
+        logger.info("Collected table stats from " + stats.getNodes().size() + " of " + servers.size() + " nodes in "
+                + (System.currentTimeMillis() - start) + "ms.");
+        return stats;
+    }
+
+    /**
+     * Reads one node's table stats, over JMX or with nodetool. Falls back to
+     * nodetool once nodes are found to share a JMX stub address.
+     */
+    private List<TableStats> readTableStats(Server server, RemoteCommandDao command, String keyspace, AtomicBoolean stubsShared) throws Exception
+    {
+        if (useJmx && !stubsShared.get())
+        {
+            JmxCassandraCommandDaoImpl jmx = new JmxCassandraCommandDaoImpl(server, command, jmxPort);
+            try
+            {
+                return keyspace == null ? jmx.getTableStats() : jmx.getTableStats(keyspace);
+            } catch (JmxAddressInUseException e)
+            {
+                if (!stubsShared.getAndSet(true))
+                {
+                    logger.warn("JMX on " + e.getHostName() + " and " + e.getHolderHostName() + " share the address: " + e.getAddress()
+                            + "; reading the remaining nodes with nodetool. Set java.rmi.server.hostname on the nodes to read them all over JMX.");
+                }
+            } finally
+            {
+                jmx.logOff();
+            }
+        }
+        CassandraCommandDao cassandra = new CassandraCommandDaoImpl(server, command);
+        return keyspace == null ? cassandra.getTableStats() : cassandra.getTableStats(keyspace);
+    }
+
+    /**
+     * True to read stats over JMX rather than with nodetool.
+     *
+     * @return the useJmx
+     */
+    public boolean isUseJmx()
+    {
+        return useJmx;
+    }
+
+    /**
+     * True to read stats over JMX rather than with nodetool. JMX is much
+     * faster and gives partition size percentiles, but needs the JMX port
+     * reachable from the node itself, and only reads nodes in parallel if
+     * they set java.rmi.server.hostname; otherwise most nodes end up read
+     * with nodetool.
+     *
+     * @param useJmx the useJmx to set
+     */
+    public void setUseJmx(boolean useJmx)
+    {
+        this.useJmx = useJmx;
+    }
+
+    /**
+     * JMX port on the nodes, when using JMX.
+     *
+     * @return the jmxPort
+     */
+    public int getJmxPort()
+    {
+        return jmxPort;
+    }
+
+    /**
+     * JMX port on the nodes, when using JMX.
+     *
+     * @param jmxPort the jmxPort to set
+     */
+    public void setJmxPort(int jmxPort)
+    {
+        if (jmxPort <= 0)
+        {
+            throw new IllegalArgumentException("JMX port must be positive");
+        }
+        this.jmxPort = jmxPort;
+    }
+}
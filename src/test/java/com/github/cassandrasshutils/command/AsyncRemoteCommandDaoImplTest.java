@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.impl.AsyncRemoteCommandDaoImpl;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for AsyncRemoteCommandDaoImpl. Wraps a fake DAO, so no docker box is
+ * needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class AsyncRemoteCommandDaoImplTest
+{
+
+    private ListeningExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Test of sendCommand method, of class AsyncRemoteCommandDaoImpl. The
+     * future completes with the command's output, and callbacks hear about
+     * it.
+     */
+    @Test
+    public void testSendCommandCompletes() throws Exception
+    {
+        System.out.println("sendCommandCompletes");
+        AsyncRemoteCommandDao instance = new AsyncRemoteCommandDaoImpl(new FakeRemoteCommandDao("10.0.0.1", new FakeRemoteCommandDao.Answer()
+        {
+            @Override
+            public String answer(String host, String command)
+            {
+                return host + ": " + command;
+            }
+        }), executor);
+        assertEquals("10.0.0.1", instance.getHost());
+        instance.connect().get(10, TimeUnit.SECONDS);
+        final List<String> heard = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch called = new CountDownLatch(1);
+        ListenableFuture<String> future = instance.sendCommand("hostname");
+        Futures.addCallback(future, new FutureCallback<String>()
+        {
+            @Override
+            public void onSuccess(String result)
+            {
+                heard.add(result);
+                called.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                called.countDown();
+            }
+        });
+        assertEquals("10.0.0.1: hostname", future.get(10, TimeUnit.SECONDS));
+        assertTrue(called.await(10, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("10.0.0.1: hostname"), heard);
+
+        final List<String> lines = new ArrayList<>();
+        int exitStatus = instance.sendCommand("cat", new LineHandler()
+        {
+            @Override
+            public void handleLine(String line)
+            {
+                lines.add(line);
+            }
+        }).get(10, TimeUnit.SECONDS);
+        assertEquals(0, exitStatus);
+        assertEquals(Collections.singletonList("10.0.0.1: cat"), lines);
+    }
+
+    /**
+     * Test of sendCommand method, of class AsyncRemoteCommandDaoImpl. A
+     * failing command fails the future with the original exception.
+     */
+    @Test
+    public void testSendCommandFailure() throws Exception
+    {
+        System.out.println("sendCommandFailure");
+        AsyncRemoteCommandDao instance = new AsyncRemoteCommandDaoImpl(new FakeRemoteCommandDao("10.0.0.1", new FakeRemoteCommandDao.Answer()
+        {
+            @Override
+            public String answer(String host, String command) throws IOException
+            {
+                throw new IOException("Channel closed");
+            }
+        }), executor);
+        try
+        {
+            instance.sendCommand("hostname").get(10, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals("Channel closed", e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Test of sendCommand method, of class AsyncRemoteCommandDaoImpl.
+     * Cancelling a running command interrupts the thread running it.
+     */
+    @Test
+    public void testSendCommandCancel() throws Exception
+    {
+        System.out.println("sendCommandCancel");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        AsyncRemoteCommandDao instance = new AsyncRemoteCommandDaoImpl(new FakeRemoteCommandDao("10.0.0.1", new FakeRemoteCommandDao.Answer()
+        {
+            @Override
+            public String answer(String host, String command) throws Exception
+            {
+                started.countDown();
+                try
+                {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e)
+                {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return "too late";
+            }
+        }), executor);
+        ListenableFuture<String> future = instance.sendCommand("sleep 60");
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertTrue("Worker should be interrupted", interrupted.await(10, TimeUnit.SECONDS));
+        try
+        {
+            future.get();
+            fail("Expected a CancellationException");
+        } catch (CancellationException e)
+        {
+            //expected
+        }
+    }
+}
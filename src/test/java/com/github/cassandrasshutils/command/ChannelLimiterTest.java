@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.impl.ChannelLimiter;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ChannelLimiter. Channels are just counters, so no docker box is
+ * needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ChannelLimiterTest
+{
+
+    /**
+     * Test of acquire and lockCachedChannel, of class ChannelLimiter, from
+     * many threads at once: however new channels and uses of the cached
+     * channel interleave, no more than the cap are ever open.
+     */
+    @Test
+    public void testCapHoldsUnderContention() throws Exception
+    {
+        System.out.println("capHoldsUnderContention");
+        final FakeChannels channels = new FakeChannels();
+        final ChannelLimiter instance = new ChannelLimiter("10.0.0.1", 2, channels);
+        final CountDownLatch go = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++)
+            {
+                final Random random = new Random(t);
+                futures.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        go.await();
+                        for (int i = 0; i < 2000; i++)
+                        {
+                            if (random.nextBoolean())
+                            {
+                                Semaphore permits = instance.lockCachedChannel();
+                                try
+                                {
+                                    channels.useCached();
+                                } finally
+                                {
+                                    instance.unlockCachedChannel(permits);
+                                }
+                            } else
+                            {
+                                Semaphore permits = instance.acquire();
+                                try
+                                {
+                                    channels.useNew();
+                                } finally
+                                {
+                                    permits.release();
+                                }
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            go.countDown();
+            for (Future<Void> future : futures)
+            {
+                future.get();
+            }
+        } finally
+        {
+            executor.shutdownNow();
+        }
+        assertTrue("At most 2 channels should be open, saw " + channels.maxOpen.get(), channels.maxOpen.get() <= 2);
+    }
+
+    /**
+     * Test of acquire, of class ChannelLimiter. Taking the last slot closes
+     * the idle cached channel, but not one that is being used.
+     */
+    @Test
+    public void testLastSlotClosesIdleCachedChannel() throws Exception
+    {
+        System.out.println("lastSlotClosesIdleCachedChannel");
+        FakeChannels channels = new FakeChannels();
+        ChannelLimiter instance = new ChannelLimiter("10.0.0.1", 1, channels);
+        Semaphore permits = instance.lockCachedChannel();
+        channels.useCached();
+        instance.unlockCachedChannel(permits);
+        assertTrue(channels.cachedOpen);
+
+        permits = instance.acquire();
+        assertFalse(channels.cachedOpen);
+        permits.release();
+
+        instance.setMaxChannels(2);
+        Semaphore cachedPermits = instance.lockCachedChannel();
+        channels.useCached();
+        permits = instance.acquire();//this thread is using the cached channel
+        assertTrue(channels.cachedOpen);
+        permits.release();
+        instance.unlockCachedChannel(cachedPermits);
+    }
+
+    /**
+     * Test of acquire, of class ChannelLimiter. A caller gives up once the
+     * wait timeout passes.
+     */
+    @Test
+    public void testWaitTimeout() throws Exception
+    {
+        System.out.println("waitTimeout");
+        ChannelLimiter instance = new ChannelLimiter("10.0.0.1", 1, new FakeChannels());
+        instance.setWaitTimeoutMs(100);
+        Semaphore permits = instance.acquire();
+        try
+        {
+            instance.acquire();
+            fail("Expected a ConnectionException");
+        } catch (ConnectionException e)
+        {
+            assertTrue(e.getMessage().contains("10.0.0.1"));
+        } finally
+        {
+            permits.release();
+        }
+        instance.acquire().release();
+    }
+
+    /**
+     * Counts the channels open at once. The cached channel stays open between
+     * uses until the limiter closes it.
+     */
+    private static class FakeChannels implements Runnable
+    {
+
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicInteger maxOpen = new AtomicInteger();
+        private volatile boolean cachedOpen = false;
+
+        void useCached()
+        {
+            if (!cachedOpen)
+            {
+                cachedOpen = true;
+                opened();
+            }
+            Thread.yield();
+        }
+
+        void useNew()
+        {
+            opened();
+            Thread.yield();
+            open.decrementAndGet();
+        }
+
+        @Override
+        public void run()
+        {
+            if (cachedOpen)
+            {
+                cachedOpen = false;
+                open.decrementAndGet();
+            }
+        }
+
+        private void opened()
+        {
+            int now = open.incrementAndGet();
+            int max;
+            while (now > (max = maxOpen.get()) && !maxOpen.compareAndSet(max, now))
+            {
+                //retry
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.ClusterTableStats;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TableStats;
+import com.github.cassandrasshutils.command.domain.TableSummary;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ClusterTableStats.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ClusterTableStatsTest
+{
+
+    /**
+     * Test of add method, of class ClusterTableStats. Sums, maximums and
+     * weighted means across nodes.
+     */
+    @Test
+    public void testAdd()
+    {
+        System.out.println("add");
+        ClusterTableStats instance = new ClusterTableStats();
+        instance.add(new Server("10.0.0.1", "test"), Arrays.asList(stats("ks", "t", 4, 1000, 100, 10, 1.0, 300), stats("ks", "u", 1, 10, 1, 0, Double.NaN, 50)));
+        instance.add(new Server("10.0.0.2", "test"), Arrays.asList(stats("ks", "t", 6, 3000, 300, 30, 3.0, 100)));
+        instance.addFailure(new Server("10.0.0.3", "test"), new Exception("boom"));
+
+        assertEquals(2, instance.getNodes().size());
+        assertEquals(1, instance.getFailures().size());
+        assertEquals(Arrays.asList("t", "u"), new ArrayList<>(instance.getTableNames("ks")));
+        TableSummary t = instance.getTable("ks", "t");
+        assertEquals(2, t.getNodes());
+        assertEquals(10, t.getSSTableCount());
+        assertEquals(6, t.getMaxSSTableCount());
+        assertEquals(4000, t.getLiveDiskSpaceUsed());
+        assertEquals(3000, t.getMaxLiveDiskSpaceUsed());
+        assertEquals(400, t.getPartitionCount());
+        assertEquals(40, t.getReadCount());
+        assertEquals((1.0 * 10 + 3.0 * 30) / 40, t.getReadLatencyMs(), 0.0001);
+        assertEquals(900, t.getMaxPartitionBytes());
+        assertEquals(50, t.getMinPartitionBytes());
+        assertEquals(Math.round((300.0 * 100 + 100.0 * 300) / 400), t.getMeanPartitionBytes());
+        assertEquals(-1, t.getP99PartitionBytes());
+        TableSummary u = instance.getTable("ks", "u");
+        assertEquals(1, u.getNodes());
+        assertTrue(Double.isNaN(u.getReadLatencyMs()));
+        assertNull(instance.getTable("ks", "missing"));
+        assertTrue(instance.getTables("nope").isEmpty());
+    }
+
+    /**
+     * Test of add method, of class ClusterTableStats. Partition size
+     * histograms are merged bucket by bucket, so percentiles are over every
+     * node's partitions.
+     */
+    @Test
+    public void testHistogramMerge()
+    {
+        System.out.println("histogramMerge");
+        ClusterTableStats instance = new ClusterTableStats();
+        //offsets start 1, 2, 3, 4, 5, 6, 7, 8, 10, 12...
+        TableStats first = stats("ks", "t", 1, 1, 100, 0, Double.NaN, 10);
+        first.setPartitionSizeHistogram(new long[]
+        {
+            0, 90, 0, 0, 0, 0, 0, 0, 0, 0, 0
+        });
+        TableStats second = stats("ks", "t", 1, 1, 100, 0, Double.NaN, 12);
+        second.setPartitionSizeHistogram(new long[]
+        {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 10, 0
+        });
+        instance.add(new Server("10.0.0.1", "test"), Arrays.asList(first));
+        instance.add(new Server("10.0.0.2", "test"), Arrays.asList(second));
+        TableSummary t = instance.getTable("ks", "t");
+        assertEquals(2, t.getP50PartitionBytes());
+        assertEquals(12, t.getP95PartitionBytes());
+        assertEquals(12, t.getP99PartitionBytes());
+        assertEquals("Nodes' own histograms must not change", 90, first.getPartitionSizeHistogram()[1]);
+    }
+
+    /**
+     * Test of percentile method, of class ClusterTableStats.
+     */
+    @Test
+    public void testPercentile()
+    {
+        System.out.println("percentile");
+        assertEquals(-1, ClusterTableStats.percentile(null, 0.5));
+        assertEquals(-1, ClusterTableStats.percentile(new long[5], 0.5));
+        assertEquals(1, ClusterTableStats.percentile(new long[]
+        {
+            5, 0, 0
+        }, 0.99));
+        assertEquals("Overflow gives the largest offset", 2, ClusterTableStats.percentile(new long[]
+        {
+            0, 0, 5
+        }, 0.5));
+    }
+
+    /**
+     * Test of add method, of class ClusterTableStats, with more tables than
+     * the arrays start with.
+     */
+    @Test
+    public void testManyTables()
+    {
+        System.out.println("manyTables");
+        ClusterTableStats instance = new ClusterTableStats();
+        List<TableStats> tables = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+        {
+            tables.add(stats("ks" + (i % 5), "t" + i, 1, i, 1, 1, 1.0, 10));
+        }
+        for (int node = 0; node < 3; node++)
+        {
+            instance.add(new Server("10.0.0." + node, "test"), tables);
+        }
+        assertEquals(5, instance.getKeyspaces().size());
+        assertEquals(500, instance.getTables().size());
+        assertEquals(3 * 499, instance.getTable("ks4", "t499").getLiveDiskSpaceUsed());
+    }
+
+    private static TableStats stats(String keyspace, String table, int sstables, long disk, long partitions, long reads, double readLatency, long meanPartition)
+    {
+        TableStats stats = new TableStats(keyspace, table);
+        stats.setSSTableCount(sstables);
+        stats.setLiveDiskSpaceUsed(disk);
+        stats.setPartitionCount(partitions);
+        stats.setReadCount(reads);
+        stats.setReadLatencyMs(readLatency);
+        stats.setMinPartitionBytes(meanPartition / 2);
+        stats.setMaxPartitionBytes(meanPartition * 3);
+        stats.setMeanPartitionBytes(meanPartition);
+        return stats;
+    }
+}
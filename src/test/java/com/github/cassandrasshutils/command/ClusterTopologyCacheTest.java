@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.ClusterTopology;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.impl.ClusterTopologyCache;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ClusterTopologyCache. Uses fake DAOs that answer nodetool status,
+ * so no docker box is needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ClusterTopologyCacheTest
+{
+
+    /**
+     * Test of refresh method, of class ClusterTopologyCache. Builds a
+     * snapshot, rotates the node it reads from, and only bumps the version
+     * when the topology changes.
+     */
+    @Test
+    public void testRefresh() throws Exception
+    {
+        System.out.println("refresh");
+        FakeCluster cluster = new FakeCluster();
+        ClusterTopologyCache instance = new ClusterTopologyCache(cluster, Arrays.asList(new Server("10.0.0.1", "test")));
+        assertNull(instance.getTopology());
+
+        ClusterTopology first = instance.refresh();
+        assertSame(first, instance.getTopology());
+        assertEquals(1, first.getVersion());
+        assertEquals(4, first.getServers().size());
+        assertEquals(Arrays.asList("dc1", "dc2"), new ArrayList<>(first.getDatacenters()));
+        assertEquals(3, first.getUpServers("dc1").size());
+        assertTrue(first.getUpServers("dc2").isEmpty());
+        assertFalse(first.isUp("10.1.0.1"));
+        assertEquals("test", first.getServer("10.0.0.2").getClusterName());
+        assertEquals(Collections.singletonList("10.0.0.1"), cluster.sources);
+
+        Set<String> sources = new HashSet<>();
+        for (int i = 0; i < 3; i++)
+        {
+            sources.add(instance.refresh().getSource());
+        }
+        assertEquals("Should rotate through the up nodes", 3, sources.size());
+        assertEquals(1, instance.getTopology().getVersion());
+
+        cluster.dc2State = "UN";
+        ClusterTopology changed = instance.refresh();
+        assertEquals(2, changed.getVersion());
+        assertTrue(changed.isUp("10.1.0.1"));
+        assertFalse("Old snapshots must not change", first.isUp("10.1.0.1"));
+    }
+
+    /**
+     * Test of refresh method, of class ClusterTopologyCache. Unreachable
+     * nodes are skipped, and if none can be reached the last snapshot is
+     * kept.
+     */
+    @Test
+    public void testRefreshFailover() throws Exception
+    {
+        System.out.println("refreshFailover");
+        FakeCluster cluster = new FakeCluster();
+        ClusterTopologyCache instance = new ClusterTopologyCache(cluster, Arrays.asList(new Server("10.0.0.1", "test")));
+        ClusterTopology first = instance.refresh();
+        cluster.unreachable.add("10.0.0.1");
+        cluster.unreachable.add("10.0.0.2");
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals("10.0.0.3", instance.refresh().getSource());
+        }
+        cluster.unreachable.add("10.0.0.3");
+        try
+        {
+            instance.refresh();
+            fail("Expected a ConnectionException");
+        } catch (ConnectionException e)
+        {
+            //expected
+        }
+        assertEquals(first.getVersion(), instance.getTopology().getVersion());
+        assertEquals(4, instance.getTopology().getServers().size());
+    }
+
+    /**
+     * Test of refresh method, of class ClusterTopologyCache. If none of the
+     * addresses nodetool reports can be reached (eg: they are private
+     * addresses), the contact points are tried after a couple of up nodes,
+     * and then first, so later refreshes don't wait on the up nodes again.
+     */
+    @Test
+    public void testRefreshFallsBackToContactPoints() throws Exception
+    {
+        System.out.println("refreshFallsBackToContactPoints");
+        FakeCluster cluster = new FakeCluster();
+        ClusterTopologyCache instance = new ClusterTopologyCache(cluster, Arrays.asList(new Server("52.0.0.1", "test")));
+        cluster.unreachable.addAll(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+        assertEquals("52.0.0.1", instance.refresh().getSource());
+        assertEquals(1, cluster.attempts.size());
+        assertEquals("52.0.0.1", instance.refresh().getSource());
+        assertEquals(2 + ClusterTopologyCache.UP_NODES_BEFORE_CONTACT_POINTS, cluster.attempts.size());
+        for (int i = 0; i < 3; i++)
+        {
+            cluster.attempts.clear();
+            assertEquals("52.0.0.1", instance.refresh().getSource());
+            assertEquals(Collections.singletonList("52.0.0.1"), cluster.attempts);
+        }
+        assertEquals(1, instance.getTopology().getVersion());
+    }
+
+    /**
+     * Test of start method, of class ClusterTopologyCache.
+     */
+    @Test
+    public void testStart() throws Exception
+    {
+        System.out.println("start");
+        FakeCluster cluster = new FakeCluster();
+        ClusterTopologyCache instance = new ClusterTopologyCache(cluster, Arrays.asList(new Server("10.0.0.1", "test")));
+        instance.start(20);
+        try
+        {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cluster.sources.size() < 3 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            assertTrue(cluster.sources.size() >= 3);
+            assertNotNull(instance.getTopology());
+        } finally
+        {
+            instance.stop();
+        }
+    }
+
+    /**
+     * A fake four node cluster; three nodes in dc1, and a down node in dc2.
+     * Each DAO answers nodetool status and remembers which node was asked;
+     * every node we try to reach is remembered as well.
+     */
+    private static class FakeCluster implements RemoteCommandDaoFactory, FakeRemoteCommandDao.Answer
+    {
+
+        final List<String> sources = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> attempts = Collections.synchronizedList(new ArrayList<String>());
+        final Set<String> unreachable = Collections.synchronizedSet(new HashSet<String>());
+        volatile String dc2State = "DN";
+
+        String status()
+        {
+            return "Datacenter: dc1\n"
+                    + "===============\n"
+                    + "--  Address   Load       Tokens  Owns (effective)  Host ID                               Rack\n"
+                    + "UN  10.0.0.1  1 GB       256     33.3%             00000000-0000-0000-0000-000000000001  r1\n"
+                    + "UN  10.0.0.2  1 GB       256     33.3%             00000000-0000-0000-0000-000000000002  r2\n"
+                    + "UN  10.0.0.3  1 GB       256     33.3%             00000000-0000-0000-0000-000000000003  r3\n"
+                    + "Datacenter: dc2\n"
+                    + "===============\n"
+                    + "--  Address   Load       Tokens  Owns (effective)  Host ID                               Rack\n"
+                    + dc2State + "  10.1.0.1  1 GB       256     100.0%            00000000-0000-0000-0000-000000000004  r1\n";
+        }
+
+        @Override
+        public String answer(String host, String command)
+        {
+            sources.add(host);
+            return status();
+        }
+
+        @Override
+        public RemoteCommandDao createRemoteCommandDao(Server server)
+        {
+            attempts.add(server.getIp());
+            return new FakeRemoteCommandDao(server.getIp(), this, unreachable);
+        }
+    }
+}
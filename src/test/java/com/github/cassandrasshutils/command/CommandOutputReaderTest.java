@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.impl.CommandOutputReader;
+import com.github.cassandrasshutils.command.impl.LineSplitter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Ignore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CommandOutputReader. Doesn't need a docker box; the reader only
+ * deals with InputStreams.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class CommandOutputReaderTest
+{
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Test of readFully method, of class CommandOutputReader, with plain ascii
+     * output.
+     */
+    @Test
+    public void testReadFullyAscii() throws Exception
+    {
+        System.out.println("readFullyAscii");
+        String expected = "Datacenter: datacenter1\n=======================\nUN  127.0.0.1  105.12 KB  256  100.0%  rack1\n";
+        String result = new CommandOutputReader().readFully(new ByteArrayInputStream(expected.getBytes(UTF8)));
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Test of readFully method, of class CommandOutputReader. Uses a tiny
+     * buffer and a stream that only returns a few bytes per read so multi-byte
+     * characters get split across reads.
+     */
+    @Test
+    public void testReadFullyMultiByteSplitAcrossReads() throws Exception
+    {
+        System.out.println("readFullyMultiByteSplitAcrossReads");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+        {
+            sb.append("ключ-").append(i).append(" 値 😀 ü\n");
+        }
+        String expected = sb.toString();
+        InputStream in = new TrickleInputStream(expected.getBytes(UTF8), 3);
+        String result = new CommandOutputReader(UTF8, 16).readFully(in);
+        assertEquals(expected, result);
+    }
+
+    /**
+     * Test of readFully method, of class CommandOutputReader, on empty output.
+     */
+    @Test
+    public void testReadFullyEmpty() throws Exception
+    {
+        System.out.println("readFullyEmpty");
+        assertEquals("", new CommandOutputReader().readFully(new ByteArrayInputStream(new byte[0])));
+    }
+
+    /**
+     * Test that a single reader can be reused for multiple commands.
+     */
+    @Test
+    public void testReaderReuse() throws Exception
+    {
+        System.out.println("readerReuse");
+        CommandOutputReader reader = new CommandOutputReader(UTF8, 16);
+        assertEquals("first ü", reader.readFully(new ByteArrayInputStream("first ü".getBytes(UTF8))));
+        assertEquals("second 値", reader.readFully(new ByteArrayInputStream("second 値".getBytes(UTF8))));
+    }
+
+    /**
+     * Test of read method, of class CommandOutputReader, feeding a
+     * LineSplitter. Mixes line terminators and leaves a trailing partial line.
+     */
+    @Test
+    public void testReadIntoLineSplitter() throws Exception
+    {
+        System.out.println("readIntoLineSplitter");
+        final List<String> lines = new ArrayList<>();
+        LineSplitter splitter = new LineSplitter(new LineHandler()
+        {
+            @Override
+            public void handleLine(String line)
+            {
+                lines.add(line);
+            }
+        });
+        String output = "first\nsecond ü\r\n\nfourth\rfifth";
+        new CommandOutputReader(UTF8, 16).read(new TrickleInputStream(output.getBytes(UTF8), 2), splitter);
+        splitter.finish();
+        assertEquals(Arrays.asList("first", "second ü", "", "fourth", "fifth"), lines);
+        assertEquals(5, splitter.getLineCount());
+    }
+
+    /**
+     * Benchmark of the block read path against the old byte at a time read
+     * path on multi-megabyte output (roughly the size of a nodetool cfstats on
+     * a large cluster or a system.log). Prints the throughput of both; only
+     * asserts that the output is identical. Ignored in normal builds since it
+     * takes a while and checks nothing the other tests don't; remove the
+     * annotation to run it by hand.
+     */
+    @Ignore("Benchmark; run by hand")
+    @Test
+    public void testThroughputBenchmark() throws Exception
+    {
+        System.out.println("throughputBenchmark");
+        byte[] output = buildOutput(16 * 1024 * 1024);
+        //warm up both paths
+        for (int i = 0; i < 3; i++)
+        {
+            readByteAtATime(new ByteArrayInputStream(output));
+            new CommandOutputReader().readFully(new ByteArrayInputStream(output));
+        }
+        long start = System.nanoTime();
+        String legacy = readByteAtATime(new ByteArrayInputStream(output));
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        String buffered = new CommandOutputReader().readFully(new ByteArrayInputStream(output));
+        long bufferedNanos = System.nanoTime() - start;
+
+        assertEquals(legacy, buffered);//ascii only output, so the old path decodes it correctly too
+        System.out.println(String.format("byte at a time: %.1f MB/s; buffered: %.1f MB/s (%d bytes)",
+                megabytesPerSecond(output.length, legacyNanos), megabytesPerSecond(output.length, bufferedNanos), output.length));
+    }
+
+    /**
+     * Builds fake nodetool-ish output of roughly the requested size.
+     */
+    private static byte[] buildOutput(int size)
+    {
+        StringBuilder sb = new StringBuilder(size + 128);
+        int i = 0;
+        while (sb.length() < size)
+        {
+            sb.append("UN  10.0.").append(i % 255).append('.').append(i % 253)
+                    .append("  245.61 GB  256  0.8%  3d1e2a9c-4b7f-4e1d-9a52-").append(100000000000L + i).append("  rack1\n");
+            i++;
+        }
+        return sb.toString().getBytes(UTF8);
+    }
+
+    /**
+     * The read loop sendCommand used before the buffered reader.
+     */
+    private static String readByteAtATime(InputStream in) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        int readByte = in.read();
+        while (readByte != -1)
+        {
+            sb.append((char) readByte);
+            readByte = in.read();
+        }
+        return sb.toString();
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos)
+    {
+        return (bytes / (1024.0 * 1024.0)) / (nanos / 1000000000.0);
+    }
+
+    /**
+     * InputStream that never returns more than a few bytes per read, like a
+     * slow network connection.
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream
+    {
+
+        private final int maxPerRead;
+
+        TrickleInputStream(byte[] buf, int maxPerRead)
+        {
+            super(buf);
+            this.maxPerRead = maxPerRead;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len)
+        {
+            return super.read(b, off, Math.min(len, maxPerRead));
+        }
+    }
+}
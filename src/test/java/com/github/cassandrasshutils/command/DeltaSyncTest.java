@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.impl.DeltaSync;
+import com.github.cassandrasshutils.command.impl.DeltaSync.BlockSignature;
+import com.github.cassandrasshutils.command.impl.DeltaSync.Op;
+import com.github.cassandrasshutils.command.impl.RollingChecksum;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for DeltaSync's block matching and RollingChecksum. Doesn't need a
+ * docker box; the "remote" copy is checksummed locally, the same way the
+ * remote side does it.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class DeltaSyncTest
+{
+
+    private static final int BLOCK_SIZE = 2048;
+
+    /**
+     * Test of roll method, of class RollingChecksum. Rolling the window along
+     * must give the same checksum as computing it from scratch at each
+     * position.
+     */
+    @Test
+    public void testRollingChecksumMatchesDirect() throws Exception
+    {
+        System.out.println("rollingChecksumMatchesDirect");
+        byte[] data = randomBytes(10000, 1);
+        RollingChecksum rolling = new RollingChecksum(1000);
+        rolling.reset(data, 0);
+        for (int pos = 0; pos + 1000 < data.length; pos++)
+        {
+            assertEquals(RollingChecksum.checksum(data, pos, 1000), rolling.getValue());
+            rolling.roll(data[pos], data[pos + 1000]);
+        }
+        //known value from the cksum utility
+        assertEquals(3015617425L, RollingChecksum.checksum("hello\n".getBytes("UTF-8"), 0, 6));
+    }
+
+    /**
+     * Test of diff method, of class DeltaSync. Data inserted near the front
+     * shifts everything after it; the blocks must still be found.
+     */
+    @Test
+    public void testDiffFindsShiftedBlocks() throws Exception
+    {
+        System.out.println("diffFindsShiftedBlocks");
+        byte[] remote = randomBytes(BLOCK_SIZE * 50 + 100, 2);
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        edited.write(remote, 0, 5000);
+        edited.write("inserted line\n".getBytes("UTF-8"));
+        edited.write(remote, 5000, remote.length - 5000);
+        byte[] local = edited.toByteArray();
+
+        List<Op> ops = DeltaSync.diff(local, BLOCK_SIZE, signatures(remote));
+        assertArrayEquals(local, apply(remote, local, ops));
+        assertTrue("Sent " + literalBytes(ops) + " bytes", literalBytes(ops) < BLOCK_SIZE * 3);
+    }
+
+    /**
+     * Test of diff method, of class DeltaSync. Identical files should be all
+     * copies (apart from the short tail), and unrelated ones all literal.
+     */
+    @Test
+    public void testDiffIdenticalAndUnrelated() throws Exception
+    {
+        System.out.println("diffIdenticalAndUnrelated");
+        byte[] remote = randomBytes(BLOCK_SIZE * 10, 3);
+        List<Op> ops = DeltaSync.diff(remote, BLOCK_SIZE, signatures(remote));
+        assertEquals(1, ops.size());
+        assertTrue(ops.get(0).isCopy());
+        assertEquals(10, ops.get(0).getLength());
+
+        byte[] unrelated = randomBytes(BLOCK_SIZE * 10, 4);
+        ops = DeltaSync.diff(unrelated, BLOCK_SIZE, signatures(remote));
+        assertEquals(unrelated.length, literalBytes(ops));
+        assertArrayEquals(unrelated, apply(remote, unrelated, ops));
+    }
+
+    private static byte[] randomBytes(int length, long seed)
+    {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static List<BlockSignature> signatures(byte[] remote) throws Exception
+    {
+        List<BlockSignature> blocks = new ArrayList<>();
+        for (int i = 0; (i + 1) * BLOCK_SIZE <= remote.length; i++)
+        {
+            byte[] md5 = MessageDigest.getInstance("MD5").digest(Arrays.copyOfRange(remote, i * BLOCK_SIZE, (i + 1) * BLOCK_SIZE));
+            blocks.add(new BlockSignature(i, RollingChecksum.checksum(remote, i * BLOCK_SIZE, BLOCK_SIZE), String.format("%032x", new BigInteger(1, md5))));
+        }
+        return blocks;
+    }
+
+    private static byte[] apply(byte[] remote, byte[] local, List<Op> ops)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Op op : ops)
+        {
+            if (op.isCopy())
+            {
+                out.write(remote, (int) op.getStart() * BLOCK_SIZE, (int) op.getLength() * BLOCK_SIZE);
+            } else
+            {
+                out.write(local, (int) op.getStart(), (int) op.getLength());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static long literalBytes(List<Op> ops)
+    {
+        long total = 0;
+        for (Op op : ops)
+        {
+            if (!op.isCopy())
+            {
+                total += op.getLength();
+            }
+        }
+        return total;
+    }
+}
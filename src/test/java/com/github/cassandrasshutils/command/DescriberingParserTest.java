@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import com.github.cassandrasshutils.command.impl.DescriberingParser;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for DescriberingParser.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class DescriberingParserTest
+{
+
+    /**
+     * Sample output of nodetool describering from a 3.x node, trimmed to
+     * three ranges; the last one wraps.
+     */
+    static final String DESCRIBERING = "Schema Version:1176b7ac-8993-395d-85fd-41b89ef49fbb\n"
+            + "TokenRange: \n"
+            + "\tTokenRange(start_token:-9094911432279245313, end_token:-3074457345618258603, endpoints:[10.0.0.2, 10.0.0.3], "
+            + "rpc_endpoints:[10.0.1.2, 10.0.1.3], endpoint_details:[EndpointDetails(host:10.0.0.2, datacenter:dc1, rack:r1), "
+            + "EndpointDetails(host:10.0.0.3, datacenter:dc1, rack:r1)])\n"
+            + "\tTokenRange(start_token:-3074457345618258603, end_token:3074457345618258602, endpoints:[10.0.0.3, 10.0.0.1], "
+            + "rpc_endpoints:[10.0.1.3, 10.0.1.1], endpoint_details:[EndpointDetails(host:10.0.0.3, datacenter:dc1, rack:r1), "
+            + "EndpointDetails(host:10.0.0.1, datacenter:dc1, rack:r1)])\n"
+            + "\tTokenRange(start_token:3074457345618258602, end_token:-9094911432279245313, endpoints:[10.0.0.1, 10.0.0.2], "
+            + "rpc_endpoints:[10.0.1.1, 10.0.1.2], endpoint_details:[EndpointDetails(host:10.0.0.1, datacenter:dc1, rack:r1), "
+            + "EndpointDetails(host:10.0.0.2, datacenter:dc1, rack:r1)])\n";
+
+    /**
+     * Test of parse method, of class DescriberingParser.
+     */
+    @Test
+    public void testParse()
+    {
+        System.out.println("parse");
+        List<TokenRange> ranges = DescriberingParser.parse(DESCRIBERING);
+        assertEquals(3, ranges.size());
+        TokenRange first = ranges.get(0);
+        assertEquals(new BigInteger("-9094911432279245313"), first.getStart());
+        assertEquals(new BigInteger("-3074457345618258603"), first.getEnd());
+        assertEquals(Arrays.asList("10.0.0.2", "10.0.0.3"), first.getEndpoints());
+        assertFalse(first.isWrapping());
+        TokenRange last = ranges.get(2);
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), last.getEndpoints());
+        assertTrue(last.isWrapping());
+    }
+
+    /**
+     * Test of parse method, of class DescriberingParser, with output that
+     * isn't a ring.
+     */
+    @Test
+    public void testParseNotARing()
+    {
+        System.out.println("parseNotARing");
+        assertTrue(DescriberingParser.parse("nodetool: Keyspace nope does not exist\n").isEmpty());
+        assertTrue(DescriberingParser.parse("").isEmpty());
+    }
+
+    /**
+     * Test of parse method, of class DescriberingParser, with an order
+     * preserving partitioner's tokens.
+     */
+    @Test(expected = NumberFormatException.class)
+    public void testParseNonNumericTokens()
+    {
+        System.out.println("parseNonNumericTokens");
+        DescriberingParser.parse("TokenRange(start_token:6b6579, end_token:6b657a, endpoints:[10.0.0.1])");
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.DeltaSyncResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.exceptions.CannotConnectException;
+import com.github.cassandrasshutils.exceptions.ConnectionException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fake RemoteCommandDao for tests that don't need a docker box. Every command
+ * is answered by an Answer, given the host and the command; everything else
+ * does nothing. Tests that need more (file pushes, port forwards, exit
+ * statuses) override the methods they care about.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class FakeRemoteCommandDao implements RemoteCommandDao
+{
+
+    /**
+     * Answers the commands sent to a fake DAO.
+     */
+    public interface Answer
+    {
+
+        /**
+         * Answers a command.
+         *
+         * @param host Host the command was sent to.
+         * @param command The command.
+         * @return The command's output.
+         * @throws Exception To fail the command; anything other than an
+         * IOException or ConnectionException is wrapped in an IOException.
+         */
+        public String answer(String host, String command) throws Exception;
+    }
+
+    /**
+     * Answer for tests that never send a command.
+     */
+    public static final Answer NO_COMMANDS = new Answer()
+    {
+        @Override
+        public String answer(String host, String command)
+        {
+            throw new IllegalArgumentException("Unexpected command: " + command);
+        }
+    };
+
+    /**
+     * Host this DAO pretends to be connected to.
+     */
+    private final String host;
+
+    /**
+     * Answers the commands sent to this DAO.
+     */
+    private final Answer answer;
+
+    /**
+     * Hosts that can't be connected to; checked on every connect.
+     */
+    private final Collection<String> unreachable;
+
+    /**
+     * Constructor.
+     *
+     * @param host Host this DAO pretends to be connected to.
+     * @param answer Answers the commands sent to this DAO.
+     */
+    public FakeRemoteCommandDao(String host, Answer answer)
+    {
+        this(host, answer, Collections.<String>emptySet());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param host Host this DAO pretends to be connected to.
+     * @param answer Answers the commands sent to this DAO.
+     * @param unreachable Hosts that can't be connected to; checked on every
+     * connect, so it can change as the test runs.
+     */
+    public FakeRemoteCommandDao(String host, Answer answer, Collection<String> unreachable)
+    {
+        this.host = host;
+        this.answer = answer;
+        this.unreachable = unreachable;
+    }
+
+    /**
+     * Factory that creates a fake DAO for each server, all sharing an answer.
+     *
+     * @param answer Answers the commands sent to every DAO.
+     * @return The factory.
+     */
+    public static RemoteCommandDaoFactory factory(Answer answer)
+    {
+        return factory(answer, Collections.<String>emptySet());
+    }
+
+    /**
+     * Factory that creates a fake DAO for each server, all sharing an answer.
+     *
+     * @param answer Answers the commands sent to every DAO.
+     * @param unreachable Hosts that can't be connected to.
+     * @return The factory.
+     */
+    public static RemoteCommandDaoFactory factory(final Answer answer, final Collection<String> unreachable)
+    {
+        return new RemoteCommandDaoFactory()
+        {
+            @Override
+            public RemoteCommandDao createRemoteCommandDao(Server server)
+            {
+                return new FakeRemoteCommandDao(server.getIp(), answer, unreachable);
+            }
+        };
+    }
+
+    @Override
+    public String getHost()
+    {
+        return host;
+    }
+
+    @Override
+    public String getConnectionKey()
+    {
+        return host;
+    }
+
+    @Override
+    public void connect() throws CannotConnectException
+    {
+        if (unreachable.contains(host))
+        {
+            throw new CannotConnectException("unreachable: " + host);
+        }
+    }
+
+    @Override
+    public void logOff()
+    {
+    }
+
+    @Override
+    public String sendCommand(String commandToSend) throws ConnectionException, IOException
+    {
+        try
+        {
+            return answer.answer(host, commandToSend);
+        } catch (IOException | ConnectionException | RuntimeException e)
+        {
+            throw e;
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (Exception e)
+        {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Hands each line of the answer to the handler; always exits zero.
+     */
+    @Override
+    public int sendCommand(String commandToSend, LineHandler handler) throws ConnectionException, IOException
+    {
+        for (String line : sendCommand(commandToSend).split("\n", -1))
+        {
+            handler.handleLine(line);
+        }
+        return 0;
+    }
+
+    @Override
+    public int sendCommand(String commandToSend, OutputStream sink) throws ConnectionException, IOException
+    {
+        sink.write(sendCommand(commandToSend).getBytes(StandardCharsets.UTF_8));
+        return 0;
+    }
+
+    @Override
+    public int sendCommand(String commandToSend, WritableByteChannel sink) throws ConnectionException, IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(sendCommand(commandToSend).getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining())
+        {
+            sink.write(buffer);
+        }
+        return 0;
+    }
+
+    @Override
+    public String sendScript(String script) throws ConnectionException, IOException
+    {
+        return sendCommand(script);
+    }
+
+    @Override
+    public void pushFile(File localFile, String remotePath) throws ConnectionException, IOException
+    {
+    }
+
+    @Override
+    public void pullFile(String remoteFileToPull, File localFile) throws ConnectionException, IOException
+    {
+    }
+
+    @Override
+    public void pushFiles(List<File> localFiles, String remotePath) throws ConnectionException, IOException
+    {
+    }
+
+    @Override
+    public void pullFiles(List<String> remoteFilesToPull, File localDirectory) throws ConnectionException, IOException
+    {
+    }
+
+    @Override
+    public void pullLargeFile(String remoteFileToPull, File localFile, int parallelism) throws ConnectionException, IOException
+    {
+    }
+
+    @Override
+    public void pullFileResumable(String remoteFileToPull, File localFile) throws ConnectionException, IOException
+    {
+    }
+
+    @Override
+    public void pushFileResumable(File localFile, String remotePath) throws ConnectionException, IOException
+    {
+    }
+
+    @Override
+    public void pullDirectory(String remoteDirectory, File localDirectory, boolean compress) throws ConnectionException, IOException
+    {
+    }
+
+    @Override
+    public void pushDirectory(File localDirectory, String remotePath, boolean compress) throws ConnectionException, IOException
+    {
+    }
+
+    @Override
+    public DeltaSyncResult syncFile(File localFile, String remotePath) throws ConnectionException, IOException
+    {
+        return null;
+    }
+
+    @Override
+    public int forwardLocalPort(String remoteHost, int remotePort) throws ConnectionException
+    {
+        return remotePort;
+    }
+
+    @Override
+    public void removeLocalPortForward(int localPort)
+    {
+    }
+}
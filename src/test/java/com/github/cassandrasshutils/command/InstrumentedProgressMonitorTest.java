@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.cassandrasshutils.command.domain.TransferProgress;
+import com.github.cassandrasshutils.command.domain.TransferProgress.Direction;
+import com.github.cassandrasshutils.command.impl.InstrumentedProgressMonitor;
+import com.jcraft.jsch.SftpProgressMonitor;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for InstrumentedProgressMonitor. Drives the monitor the way JSch does,
+ * so no docker box is needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class InstrumentedProgressMonitorTest
+{
+
+    /**
+     * Test of a whole transfer, of class InstrumentedProgressMonitor. The
+     * listener should hear the start and the end, and the metrics should
+     * account for every byte.
+     */
+    @Test
+    public void testTransferIsReportedAndRecorded() throws Exception
+    {
+        System.out.println("transferIsReportedAndRecorded");
+        final List<TransferProgress> reports = new ArrayList<>();
+        MetricRegistry metrics = new MetricRegistry();
+        InstrumentedProgressMonitor instance = new InstrumentedProgressMonitor("10.0.0.1", Direction.PULL, new TransferProgressListener()
+        {
+            @Override
+            public void onProgress(TransferProgress progress)
+            {
+                reports.add(progress);
+            }
+        }, metrics, 0);
+        instance.init(SftpProgressMonitor.GET, "/var/lib/cassandra/data/ks/t/Data.db", "/tmp/Data.db", 3000);
+        Thread.sleep(5);
+        instance.count(1000);
+        instance.count(2000);
+        instance.end();
+
+        TransferProgress first = reports.get(0);
+        assertEquals(0, first.getBytesTransferred());
+        assertEquals(-1, first.getTimeToFirstByteMs());
+        assertFalse(first.isDone());
+        TransferProgress last = reports.get(reports.size() - 1);
+        assertTrue(last.isDone());
+        assertEquals(3000, last.getBytesTransferred());
+        assertEquals(100.0, last.getPercentComplete(), 0.001);
+        assertTrue(last.getTimeToFirstByteMs() >= 5);
+        assertEquals(4, reports.size());//start, two counts (no throttling at interval 0), end
+
+        assertEquals(3000, metrics.meter("sftp.10_0_0_1.pull.bytes").getCount());
+        assertEquals(3000, metrics.meter("sftp.10_0_0_1.bytes").getCount());
+        assertEquals(1, metrics.timer("sftp.10_0_0_1.pull.transfers").getCount());
+        assertEquals(1, metrics.histogram("sftp.10_0_0_1.pull.time-to-first-byte").getCount());
+    }
+
+    /**
+     * Test of a transfer without a listener or registry, of class
+     * InstrumentedProgressMonitor. Must not blow up.
+     */
+    @Test
+    public void testNoListenerOrRegistry() throws Exception
+    {
+        System.out.println("noListenerOrRegistry");
+        InstrumentedProgressMonitor instance = new InstrumentedProgressMonitor("10.0.0.1", Direction.PUSH, null, null, 1000);
+        instance.init(SftpProgressMonitor.PUT, "a", "b", SftpProgressMonitor.UNKNOWN_SIZE);
+        instance.count(10);
+        instance.end();
+        assertEquals(10, instance.getBytesTransferred());
+    }
+}
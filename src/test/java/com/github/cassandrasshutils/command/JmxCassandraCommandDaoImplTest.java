@@ -0,0 +1,585 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.NodetoolServer;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TableStats;
+import com.github.cassandrasshutils.command.domain.ThreadPoolStats;
+import com.github.cassandrasshutils.command.impl.JmxCassandraCommandDaoImpl;
+import com.github.cassandrasshutils.command.impl.NodetoolStatusParser;
+import com.github.cassandrasshutils.exceptions.JmxAddressInUseException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXServiceURL;
+import javax.management.remote.rmi.RMIConnectorServer;
+import javax.management.remote.rmi.RMIJRMPServerImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for JmxCassandraCommandDaoImpl. Runs a local JMX server with fake
+ * Cassandra MBeans, and a fake SSH DAO whose "port forward" is just the JMX
+ * port itself, so no docker box is needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class JmxCassandraCommandDaoImplTest
+{
+
+    private Registry registry;
+    private JMXConnectorServer jmxServer;
+    private int jmxPort;
+    private final List<Integer> forwards = Collections.synchronizedList(new ArrayList<Integer>());
+
+    @Before
+    public void setUp() throws Exception
+    {
+        try (ServerSocket s = new ServerSocket(0))
+        {
+            jmxPort = s.getLocalPort();
+        }
+        registry = LocateRegistry.createRegistry(jmxPort);
+        MBeanServer mbeans = MBeanServerFactory.newMBeanServer();
+        mbeans.registerMBean(new StandardMBean(new FakeStorageService(), StorageServiceMBean.class), new ObjectName("org.apache.cassandra.db:type=StorageService"));
+        mbeans.registerMBean(new StandardMBean(new FakeSnitchInfo(), EndpointSnitchInfoMBean.class), new ObjectName("org.apache.cassandra.db:type=EndpointSnitchInfo"));
+        registerPool(mbeans, "MutationStage", 2, 17, 451002, 0, 3);
+        registerPool(mbeans, "MemtableFlushWriter", 1, 3, 112, 1, 0);
+        registerTable(mbeans, "ks", "events");
+        //bound straight into the local registry, so RMI has no connection to
+        //the stub's address pooled before a test connects
+        RMIJRMPServerImpl server = new RMIJRMPServerImpl(jmxPort, null, null, null);
+        jmxServer = new RMIConnectorServer(new JMXServiceURL("service:jmx:rmi://127.0.0.1:" + jmxPort), null, server, mbeans);
+        jmxServer.start();
+        registry.rebind("jmxrmi", server.toStub());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        jmxServer.stop();
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+
+    /**
+     * Test of getNodetoolServers method, of class JmxCassandraCommandDaoImpl.
+     * The cluster has keyspaces with different replication, so ownership
+     * falls back to raw ownership like nodetool does.
+     */
+    @Test
+    public void testGetNodetoolServers() throws Exception
+    {
+        System.out.println("getNodetoolServers");
+        JmxCassandraCommandDaoImpl instance = new JmxCassandraCommandDaoImpl(new Server("10.9.9.1", "test"), fakeDao("10.9.9.1"), jmxPort);
+        try
+        {
+            List<NodetoolServer> servers = instance.getNodetoolServers();
+            assertEquals(3, servers.size());
+            NodetoolServer first = servers.get(0);
+            assertEquals("10.0.0.1", first.getIp());
+            assertEquals("test", first.getClusterName());
+            assertEquals("dc1", first.getDatacenter());
+            assertEquals("rack1", first.getRack());
+            assertTrue(first.isUpAndNormal());
+            assertEquals(2, first.getTokens());
+            assertEquals((long) (102.5 * 1024), first.getLoadBytes());
+            assertEquals(50.0, first.getOwnership(), 0.001);
+            assertEquals("host-1", first.getHostId());
+            NodetoolServer down = servers.get(1);
+            assertEquals("10.0.0.2", down.getIp());
+            assertFalse(down.isUp());
+            assertEquals(-1, down.getLoadBytes());
+            NodetoolServer joining = servers.get(2);
+            assertEquals("dc2", joining.getDatacenter());
+            assertEquals(NodetoolServer.State.JOINING, joining.getState());
+            assertEquals(0, joining.getTokens());
+            assertTrue(Double.isNaN(joining.getOwnership()));
+            assertEquals(1, forwards.size());
+        } finally
+        {
+            instance.logOff();
+        }
+        assertTrue("Port forward should be removed", forwards.isEmpty());
+    }
+
+    /**
+     * Test of getNodetoolStatus method, of class JmxCassandraCommandDaoImpl.
+     * The status should read back the same as what it was built from.
+     */
+    @Test
+    public void testGetNodetoolStatus() throws Exception
+    {
+        System.out.println("getNodetoolStatus");
+        JmxCassandraCommandDaoImpl instance = new JmxCassandraCommandDaoImpl(new Server("10.9.9.1", "test"), fakeDao("10.9.9.1"), jmxPort);
+        try
+        {
+            String status = instance.getNodetoolStatus("ks");
+            System.out.println(status);
+            List<NodetoolServer> parsed = NodetoolStatusParser.parse(status, "test");
+            List<NodetoolServer> servers = instance.getNodetoolServers("ks");
+            assertEquals(servers.size(), parsed.size());
+            for (int i = 0; i < servers.size(); i++)
+            {
+                assertEquals(servers.get(i).getIp(), parsed.get(i).getIp());
+                assertEquals(servers.get(i).getStatusCode(), parsed.get(i).getStatusCode());
+                assertEquals(servers.get(i).getDatacenter(), parsed.get(i).getDatacenter());
+                assertEquals(servers.get(i).getRack(), parsed.get(i).getRack());
+                assertEquals(servers.get(i).getTokens(), parsed.get(i).getTokens());
+                assertEquals(servers.get(i).getOwnership(), parsed.get(i).getOwnership(), 0.05);
+            }
+            assertEquals(100.0, servers.get(0).getOwnership(), 0.001);
+            assertEquals("Still one tunnel", 1, forwards.size());
+        } finally
+        {
+            instance.logOff();
+        }
+    }
+
+    /**
+     * Test of getThreadPoolStats method, of class JmxCassandraCommandDaoImpl.
+     */
+    @Test
+    public void testGetThreadPoolStats() throws Exception
+    {
+        System.out.println("getThreadPoolStats");
+        JmxCassandraCommandDaoImpl instance = new JmxCassandraCommandDaoImpl(new Server("10.9.9.1", "test"), fakeDao("10.9.9.1"), jmxPort);
+        try
+        {
+            Map<String, ThreadPoolStats> pools = instance.getThreadPoolStats();
+            assertEquals(2, pools.size());
+            ThreadPoolStats mutation = pools.get("MutationStage");
+            assertEquals(2, mutation.getActive());
+            assertEquals(17, mutation.getPending());
+            assertEquals(451002, mutation.getCompleted());
+            assertEquals(3, mutation.getAllTimeBlocked());
+            assertEquals(1, pools.get("MemtableFlushWriter").getBlocked());
+        } finally
+        {
+            instance.logOff();
+        }
+    }
+
+    /**
+     * Test of getTableStats method, of class JmxCassandraCommandDaoImpl.
+     */
+    @Test
+    public void testGetTableStats() throws Exception
+    {
+        System.out.println("getTableStats");
+        JmxCassandraCommandDaoImpl instance = new JmxCassandraCommandDaoImpl(new Server("10.9.9.1", "test"), fakeDao("10.9.9.1"), jmxPort);
+        try
+        {
+            List<TableStats> tables = instance.getTableStats();
+            assertEquals(1, tables.size());
+            TableStats events = tables.get(0);
+            assertEquals("ks", events.getKeyspace());
+            assertEquals("events", events.getTable());
+            assertEquals(4, events.getSSTableCount());
+            assertEquals(1048576, events.getLiveDiskSpaceUsed());
+            assertEquals(120, events.getPartitionCount());
+            assertEquals(4768, events.getMaxPartitionBytes());
+            assertEquals(30, events.getReadCount());
+            assertEquals(0.2, events.getReadLatencyMs(), 0.0001);
+            assertEquals(0, events.getWriteCount());
+            assertTrue(Double.isNaN(events.getWriteLatencyMs()));
+            assertEquals(2.5, events.getMeanTombstonesPerSlice(), 0.0001);
+            assertEquals(12, events.getMaxTombstonesPerSlice());
+            assertArrayEquals(new long[]
+            {
+                0, 5, 7, 0
+            }, events.getPartitionSizeHistogram());
+            assertEquals(1, instance.getTableStats("ks").size());
+            assertTrue(instance.getTableStats("other").isEmpty());
+        } finally
+        {
+            instance.logOff();
+        }
+    }
+
+    /**
+     * Test of connect method, of class JmxCassandraCommandDaoImpl. Two nodes
+     * whose stubs give the same address (as with Cassandra's default local
+     * only JMX) take turns: by default the second is refused while the first
+     * is connected, and with a stub wait it waits for the first to log off.
+     */
+    @Test
+    public void testNodesSharingStubAddress() throws Exception
+    {
+        System.out.println("nodesSharingStubAddress");
+        //counted down each time the second node's tunnel is closed
+        final CountDownLatch secondRefused = new CountDownLatch(2);
+        JmxCassandraCommandDaoImpl first = new JmxCassandraCommandDaoImpl(new Server("10.9.9.1", "test"), fakeDao("10.9.9.1", new CountDownLatch(0)), jmxPort);
+        final JmxCassandraCommandDaoImpl second = new JmxCassandraCommandDaoImpl(new Server("10.9.9.2", "test"), fakeDao("10.9.9.2", secondRefused), jmxPort);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            first.connect();
+            try
+            {
+                second.getTableStats();
+                fail("Expected a JmxAddressInUseException");
+            } catch (JmxAddressInUseException e)
+            {
+                assertEquals("10.9.9.2", e.getHostName());
+                assertEquals("10.9.9.1", e.getHolderHostName());
+            }
+            assertEquals(1, secondRefused.getCount());
+
+            second.setStubWaitMs(30000);
+            Future<List<TableStats>> waiting = executor.submit(new Callable<List<TableStats>>()
+            {
+                @Override
+                public List<TableStats> call() throws Exception
+                {
+                    return second.getTableStats();
+                }
+            });
+            assertTrue("Second node should have been refused", secondRefused.await(10, TimeUnit.SECONDS));
+            assertFalse("Should wait for the first node to log off", waiting.isDone());
+            assertEquals(1, first.getTableStats().size());
+            first.logOff();
+            assertEquals(1, waiting.get(10, TimeUnit.SECONDS).size());
+        } finally
+        {
+            executor.shutdownNow();
+            first.logOff();
+            second.logOff();
+        }
+    }
+
+    /**
+     * Fake SSH DAO; the "forward" for the JMX port is the port itself.
+     */
+    private RemoteCommandDao fakeDao(String host)
+    {
+        return fakeDao(host, new CountDownLatch(0));
+    }
+
+    /**
+     * Fake SSH DAO that counts down a latch whenever a forward is removed.
+     */
+    private RemoteCommandDao fakeDao(String host, final CountDownLatch forwardRemoved)
+    {
+        return new FakeRemoteCommandDao(host, FakeRemoteCommandDao.NO_COMMANDS)
+        {
+            @Override
+            public int forwardLocalPort(String remoteHost, int remotePort)
+            {
+                forwards.add(remotePort);
+                return remotePort;
+            }
+
+            @Override
+            public void removeLocalPortForward(int localPort)
+            {
+                forwards.remove((Integer) localPort);
+                forwardRemoved.countDown();
+            }
+        };
+    }
+
+    private static void registerPool(MBeanServer mbeans, String pool, long active, long pending, long completed, long blocked, long allTimeBlocked) throws Exception
+    {
+        String prefix = "org.apache.cassandra.metrics:type=ThreadPools,path=request,scope=" + pool + ",name=";
+        mbeans.registerMBean(new StandardMBean(new FakeGauge(active), GaugeMBean.class), new ObjectName(prefix + "ActiveTasks"));
+        mbeans.registerMBean(new StandardMBean(new FakeGauge(pending), GaugeMBean.class), new ObjectName(prefix + "PendingTasks"));
+        mbeans.registerMBean(new StandardMBean(new FakeGauge(completed), GaugeMBean.class), new ObjectName(prefix + "CompletedTasks"));
+        mbeans.registerMBean(new StandardMBean(new FakeCounter(blocked), CounterMBean.class), new ObjectName(prefix + "CurrentlyBlockedTasks"));
+        mbeans.registerMBean(new StandardMBean(new FakeCounter(allTimeBlocked), CounterMBean.class), new ObjectName(prefix + "TotalBlockedTasks"));
+    }
+
+    private static void registerTable(MBeanServer mbeans, String keyspace, String table) throws Exception
+    {
+        String prefix = "org.apache.cassandra.metrics:type=Table,keyspace=" + keyspace + ",scope=" + table + ",name=";
+        mbeans.registerMBean(new StandardMBean(new FakeGauge(4), GaugeMBean.class), new ObjectName(prefix + "LiveSSTableCount"));
+        mbeans.registerMBean(new StandardMBean(new FakeCounter(1048576), CounterMBean.class), new ObjectName(prefix + "LiveDiskSpaceUsed"));
+        mbeans.registerMBean(new StandardMBean(new FakeGauge(120), GaugeMBean.class), new ObjectName(prefix + "EstimatedPartitionCount"));
+        mbeans.registerMBean(new StandardMBean(new FakeGauge(61), GaugeMBean.class), new ObjectName(prefix + "MinPartitionSize"));
+        mbeans.registerMBean(new StandardMBean(new FakeGauge(4768), GaugeMBean.class), new ObjectName(prefix + "MaxPartitionSize"));
+        mbeans.registerMBean(new StandardMBean(new FakeGauge(900), GaugeMBean.class), new ObjectName(prefix + "MeanPartitionSize"));
+        mbeans.registerMBean(new StandardMBean(new FakeCounter(30), CounterMBean.class), new ObjectName(prefix + "ReadLatency"));
+        mbeans.registerMBean(new StandardMBean(new FakeCounter(6000), CounterMBean.class), new ObjectName(prefix + "ReadTotalLatency"));
+        mbeans.registerMBean(new StandardMBean(new FakeHistogram(2.5, 12), HistogramMBean.class), new ObjectName(prefix + "TombstoneScannedHistogram"));
+        mbeans.registerMBean(new StandardMBean(new FakeGauge(new long[]
+        {
+            0, 5, 7, 0
+        }), GaugeMBean.class), new ObjectName(prefix + "EstimatedPartitionSizeHistogram"));
+    }
+
+    /**
+     * The parts of Cassandra's StorageServiceMBean we use.
+     */
+    public interface StorageServiceMBean
+    {
+
+        List<String> getLiveNodes();
+
+        List<String> getUnreachableNodes();
+
+        List<String> getJoiningNodes();
+
+        List<String> getLeavingNodes();
+
+        List<String> getMovingNodes();
+
+        Map<String, String> getLoadMap();
+
+        Map<String, String> getTokenToEndpointMap();
+
+        Map<String, String> getEndpointToHostId();
+
+        Map<InetAddress, Float> getOwnership();
+
+        Map<InetAddress, Float> effectiveOwnership(String keyspace);
+    }
+
+    /**
+     * The parts of Cassandra's EndpointSnitchInfoMBean we use.
+     */
+    public interface EndpointSnitchInfoMBean
+    {
+
+        String getDatacenter(String host);
+
+        String getRack(String host);
+    }
+
+    /**
+     * A metrics gauge.
+     */
+    public interface GaugeMBean
+    {
+
+        Object getValue();
+    }
+
+    /**
+     * A metrics counter.
+     */
+    public interface CounterMBean
+    {
+
+        long getCount();
+    }
+
+    /**
+     * A metrics histogram.
+     */
+    public interface HistogramMBean
+    {
+
+        double getMean();
+
+        long getMax();
+    }
+
+    private static class FakeStorageService implements StorageServiceMBean
+    {
+
+        @Override
+        public List<String> getLiveNodes()
+        {
+            return Arrays.asList("10.0.0.1", "10.1.0.1");
+        }
+
+        @Override
+        public List<String> getUnreachableNodes()
+        {
+            return Arrays.asList("10.0.0.2");
+        }
+
+        @Override
+        public List<String> getJoiningNodes()
+        {
+            return Arrays.asList("10.1.0.1");
+        }
+
+        @Override
+        public List<String> getLeavingNodes()
+        {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<String> getMovingNodes()
+        {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public Map<String, String> getLoadMap()
+        {
+            Map<String, String> loads = new HashMap<>();
+            loads.put("10.0.0.1", "102.5 KB");
+            loads.put("10.1.0.1", "14 bytes");
+            return loads;
+        }
+
+        @Override
+        public Map<String, String> getTokenToEndpointMap()
+        {
+            Map<String, String> tokens = new LinkedHashMap<>();
+            tokens.put("-100", "10.0.0.1");
+            tokens.put("0", "10.0.0.2");
+            tokens.put("100", "10.0.0.1");
+            tokens.put("200", "10.0.0.2");
+            return tokens;
+        }
+
+        @Override
+        public Map<String, String> getEndpointToHostId()
+        {
+            Map<String, String> ids = new HashMap<>();
+            ids.put("10.0.0.1", "host-1");
+            ids.put("10.0.0.2", "host-2");
+            return ids;
+        }
+
+        @Override
+        public Map<InetAddress, Float> getOwnership()
+        {
+            return ownership(0.5f);
+        }
+
+        @Override
+        public Map<InetAddress, Float> effectiveOwnership(String keyspace)
+        {
+            if (keyspace == null)
+            {
+                throw new IllegalStateException("Non-system keyspaces don't have the same replication settings");
+            }
+            return ownership(1f);
+        }
+
+        private static Map<InetAddress, Float> ownership(float each)
+        {
+            try
+            {
+                Map<InetAddress, Float> ownership = new HashMap<>();
+                ownership.put(InetAddress.getByName("10.0.0.1"), each);
+                ownership.put(InetAddress.getByName("10.0.0.2"), each);
+                return ownership;
+            } catch (Exception e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class FakeSnitchInfo implements EndpointSnitchInfoMBean
+    {
+
+        @Override
+        public String getDatacenter(String host)
+        {
+            return host.startsWith("10.0.") ? "dc1" : "dc2";
+        }
+
+        @Override
+        public String getRack(String host)
+        {
+            return host.startsWith("10.0.0.2") ? "rack2" : "rack1";
+        }
+    }
+
+    private static class FakeGauge implements GaugeMBean
+    {
+
+        private final Object value;
+
+        FakeGauge(long value)
+        {
+            this.value = value < Integer.MAX_VALUE ? (Object) (int) value : (Object) value;
+        }
+
+        FakeGauge(Object value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public Object getValue()
+        {
+            return value;
+        }
+    }
+
+    private static class FakeCounter implements CounterMBean
+    {
+
+        private final long count;
+
+        FakeCounter(long count)
+        {
+            this.count = count;
+        }
+
+        @Override
+        public long getCount()
+        {
+            return count;
+        }
+    }
+
+    private static class FakeHistogram implements HistogramMBean
+    {
+
+        private final double mean;
+        private final long max;
+
+        FakeHistogram(double mean, long max)
+        {
+            this.mean = mean;
+            this.max = max;
+        }
+
+        @Override
+        public double getMean()
+        {
+            return mean;
+        }
+
+        @Override
+        public long getMax()
+        {
+            return max;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.NodetoolServer;
+import com.github.cassandrasshutils.command.impl.NodetoolStatusParser;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for NodetoolStatusParser.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class NodetoolStatusParserTest
+{
+
+    /**
+     * Sample output of nodetool status from a two datacenter 3.x cluster,
+     * with one node down and one joining.
+     */
+    private static final String STATUS = "Datacenter: dc1\n"
+            + "===============\n"
+            + "Status=Up/Down\n"
+            + "|/ State=Normal/Leaving/Joining/Moving\n"
+            + "--  Address    Load       Tokens       Owns (effective)  Host ID                               Rack\n"
+            + "UN  10.0.0.1   102.5 KB   256          33.3%             8d3e5a5e-1c7e-4b6e-9c2a-2a0b0e4f6f11  rack1\n"
+            + "DN  10.0.0.2   1.2 GB     256          33.3%             0c4e0d2f-5b8a-4f0c-8e45-6f7d9a2b1c22  rack2\n"
+            + "UJ  10.0.0.3   14 bytes   256          ?                 5a1b2c3d-4e5f-4a6b-8c7d-9e0f1a2b3c33  rack1\n"
+            + "Datacenter: dc2\n"
+            + "===============\n"
+            + "Status=Up/Down\n"
+            + "|/ State=Normal/Leaving/Joining/Moving\n"
+            + "--  Address    Load       Tokens       Owns (effective)  Host ID                               Rack\n"
+            + "UL  10.1.0.1   3,5 TB     16           66.7%             e2f3a4b5-c6d7-4e8f-9a0b-1c2d3e4f5a44  rack1\n"
+            + "\n"
+            + "Note: Non-system keyspaces don't have the same replication settings, effective ownership information is meaningless\n";
+
+    /**
+     * Test of parse method, of class NodetoolStatusParser.
+     */
+    @Test
+    public void testParse()
+    {
+        System.out.println("parse");
+        List<NodetoolServer> servers = NodetoolStatusParser.parse(STATUS, "test");
+        assertEquals(4, servers.size());
+        NodetoolServer first = servers.get(0);
+        assertEquals("10.0.0.1", first.getIp());
+        assertEquals("test", first.getClusterName());
+        assertEquals("dc1", first.getDatacenter());
+        assertEquals("rack1", first.getRack());
+        assertTrue(first.isUpAndNormal());
+        assertEquals("UN", first.getStatusCode());
+        assertEquals((long) (102.5 * 1024), first.getLoadBytes());
+        assertEquals(256, first.getTokens());
+        assertEquals(33.3, first.getOwnership(), 0.0001);
+        assertEquals("8d3e5a5e-1c7e-4b6e-9c2a-2a0b0e4f6f11", first.getHostId());
+
+        NodetoolServer down = servers.get(1);
+        assertFalse(down.isUp());
+        assertEquals(NodetoolServer.State.NORMAL, down.getState());
+        assertEquals((long) (1.2 * 1024 * 1024 * 1024), down.getLoadBytes());
+        assertEquals("rack2", down.getRack());
+
+        NodetoolServer joining = servers.get(2);
+        assertEquals(NodetoolServer.State.JOINING, joining.getState());
+        assertFalse(joining.isUpAndNormal());
+        assertEquals(14, joining.getLoadBytes());
+        assertTrue(Double.isNaN(joining.getOwnership()));
+        assertSame("Rack names should be shared", first.getRack(), joining.getRack());
+
+        NodetoolServer leaving = servers.get(3);
+        assertEquals("dc2", leaving.getDatacenter());
+        assertEquals("UL", leaving.getStatusCode());
+        assertEquals((long) (3.5 * 1024 * 1024 * 1024 * 1024), leaving.getLoadBytes());
+        assertEquals(16, leaving.getTokens());
+        assertEquals(66.7, leaving.getOwnership(), 0.0001);
+    }
+
+    /**
+     * Test of parse method, of class NodetoolStatusParser. 4.x prints loads
+     * in KiB/MiB/GiB and may not know a down node's load.
+     */
+    @Test
+    public void testParse4x()
+    {
+        System.out.println("parse4x");
+        String status = "Datacenter: datacenter1\r\n"
+                + "=======================\r\n"
+                + "Status=Up/Down\r\n"
+                + "|/ State=Normal/Leaving/Joining/Moving\r\n"
+                + "--  Address     Load        Tokens  Owns (effective)  Host ID                               Rack \r\n"
+                + "UN  172.17.0.2  69.08 KiB   16      100.0%            6ab49d0e-5a50-4d0b-8e5e-3d1ab0b1c2d3  rack 1 \r\n"
+                + "DN  172.17.0.3  ?           16      0.0%              ?                                     rack 1\r\n";
+        List<NodetoolServer> servers = NodetoolStatusParser.parse(status, "test");
+        assertEquals(2, servers.size());
+        assertEquals((long) (69.08 * 1024), servers.get(0).getLoadBytes());
+        assertEquals("rack 1", servers.get(0).getRack());
+        assertEquals(100.0, servers.get(0).getOwnership(), 0.0001);
+        assertEquals(-1, servers.get(1).getLoadBytes());
+        assertEquals(16, servers.get(1).getTokens());
+        assertNull(servers.get(1).getHostId());
+        assertSame(servers.get(0).getRack(), servers.get(1).getRack());
+    }
+
+    /**
+     * Test of parse method, of class NodetoolStatusParser, with a single
+     * token (non vnode) cluster, where the token is its own column after the
+     * host ID.
+     */
+    @Test
+    public void testParseSingleToken()
+    {
+        System.out.println("parseSingleToken");
+        String status = "Datacenter: dc1\n"
+                + "===============\n"
+                + "--  Address   Load       Owns (effective)  Host ID                               Token                                    Rack\n"
+                + "UN  10.0.0.1  1.5 MB     50.0%             8d3e5a5e-1c7e-4b6e-9c2a-2a0b0e4f6f11  -9223372036854775808                     r1\n"
+                + "UM  10.0.0.2  2 MB       50.0%             0c4e0d2f-5b8a-4f0c-8e45-6f7d9a2b1c22  0                                        r1\n";
+        List<NodetoolServer> servers = NodetoolStatusParser.parse(status, "test");
+        assertEquals(2, servers.size());
+        assertEquals(1, servers.get(0).getTokens());
+        assertEquals((long) (1.5 * 1024 * 1024), servers.get(0).getLoadBytes());
+        assertEquals(50.0, servers.get(0).getOwnership(), 0.0001);
+        assertEquals("0c4e0d2f-5b8a-4f0c-8e45-6f7d9a2b1c22", servers.get(1).getHostId());
+        assertEquals(NodetoolServer.State.MOVING, servers.get(1).getState());
+        assertEquals("r1", servers.get(1).getRack());
+    }
+
+    /**
+     * Test of parse method, of class NodetoolStatusParser, with output that
+     * isn't a status (nodetool couldn't connect).
+     */
+    @Test
+    public void testParseNotAStatus()
+    {
+        System.out.println("parseNotAStatus");
+        assertTrue(NodetoolStatusParser.parse("nodetool: Failed to connect to '127.0.0.1:7199' - ConnectException: 'Connection refused'.", "test").isEmpty());
+        assertTrue(NodetoolStatusParser.parse("", "test").isEmpty());
+    }
+
+    /**
+     * Test of parse method, of class NodetoolStatusParser, with a large
+     * cluster. Prints the time per parse; the assertion is loose so a slow
+     * build box doesn't fail it.
+     */
+    @Test
+    public void testParseLargeCluster()
+    {
+        System.out.println("parseLargeCluster");
+        StringBuilder sb = new StringBuilder();
+        for (int dc = 0; dc < 4; dc++)
+        {
+            sb.append("Datacenter: dc").append(dc).append("\n===============\nStatus=Up/Down\n|/ State=Normal/Leaving/Joining/Moving\n");
+            sb.append("--  Address      Load       Tokens       Owns (effective)  Host ID                               Rack\n");
+            for (int i = 0; i < 250; i++)
+            {
+                sb.append("UN  10.").append(dc).append('.').append(i / 250).append('.').append(i % 250)
+                        .append("   ").append(100 + i).append(".12 GiB   256          0.3%              8d3e5a5e-1c7e-4b6e-9c2a-2a0b0e4f")
+                        .append(String.format("%04d", i)).append("  rack").append(i % 3).append('\n');
+            }
+        }
+        String status = sb.toString();
+        for (int i = 0; i < 2000; i++)//warm up
+        {
+            NodetoolStatusParser.parse(status, "test");
+        }
+        int runs = 1000;
+        long start = System.nanoTime();
+        List<NodetoolServer> servers = null;
+        for (int i = 0; i < runs; i++)
+        {
+            servers = NodetoolStatusParser.parse(status, "test");
+        }
+        double micros = (System.nanoTime() - start) / 1000.0 / runs;
+        System.out.println("Parsed 1000 nodes in " + micros + " microseconds.");
+        assertEquals(1000, servers.size());
+        assertEquals("dc3", servers.get(999).getDatacenter());
+        assertEquals("rack0", servers.get(999).getRack());
+        assertTrue("Took " + micros + " microseconds", micros < 50000);
+    }
+}
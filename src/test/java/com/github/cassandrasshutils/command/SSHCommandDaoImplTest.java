@@ -5,10 +5,25 @@
  */
 package com.github.cassandrasshutils.command;
 
+import com.github.cassandrasshutils.command.domain.DeltaSyncResult;
+import com.github.cassandrasshutils.command.domain.TransferProgress;
+import com.github.cassandrasshutils.command.impl.ParallelSftpDownloader;
+import com.github.cassandrasshutils.command.impl.ResumableSftpTransfer;
 import com.github.cassandrasshutils.command.impl.SSHCommandDaoImpl;
+import com.github.cassandrasshutils.command.impl.SSHSessionPool;
 import com.github.cassandradockertesthelper.DockerHelper;
 import com.github.cassandrasshutils.exceptions.ConnectionException;
 import java.io.File;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -97,6 +112,38 @@ public class SSHCommandDaoImplTest
         }
     }
 
+    /**
+     * Test of connect method, of class SSHCommandDaoImpl. Makes sure a second
+     * DAO for the same host reuses the session the first one logged off of.
+     */
+    @org.junit.Test
+    public void testConnectReusesPooledSession() throws Exception
+    {
+        System.out.println("connectReusesPooledSession");
+        String id = DockerHelper.spinUpDockerBox("cassandra2.1.0", new File("./src/test/resources/docker/cassandra2.1.0"));
+        SSHSessionPool pool = new SSHSessionPool();
+        try
+        {
+            String ip = DockerHelper.getDockerIp(id);
+            SSHCommandDaoImpl first = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            first.setSessionPool(pool);
+            first.connect();
+            first.logOff();
+            assertEquals(1, pool.getMisses());
+            SSHCommandDaoImpl second = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            second.setSessionPool(pool);
+            second.connect();
+            assertEquals("this is a test", second.sendCommand("echo this is a test"));
+            second.logOff();
+            assertEquals(1, pool.getHits());
+            assertEquals(1, pool.getOpenSessionCount(ip));
+        } finally
+        {
+            pool.close();
+            DockerHelper.spinDownDockerBox(id);
+        }
+    }
+
     /**
      * Test of pullFile method, of class SSHCommandDaoImpl.
      */
@@ -128,6 +175,283 @@ public class SSHCommandDaoImplTest
         }
     }
 
+    /**
+     * Test of pushFiles and pullFiles methods, of class SSHCommandDaoImpl.
+     * Both batches go over the DAO's one cached SFTP channel.
+     */
+    @org.junit.Test
+    public void testPushAndPullFiles() throws Exception
+    {
+        System.out.println("pushAndPullFiles");
+        File localFile = new File("./src/test/resources/testfiles/testfile.txt");
+        File copy = new File("./src/test/resources/testfiles/testfile2.txt");
+        File pullDir = new File("./src/test/resources/testfiles/pulled");
+        FileUtils.copyFile(localFile, copy);
+        pullDir.mkdirs();
+        String id = DockerHelper.spinUpDockerBox("cassandra2.1.0", new File("./src/test/resources/docker/cassandra2.1.0"));
+        try
+        {
+            String ip = DockerHelper.getDockerIp(id);
+            SSHCommandDaoImpl instance = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            instance.connect();
+            instance.pushFiles(Arrays.asList(localFile, copy), "/tmp");
+            instance.pullFiles(Arrays.asList("/tmp/testfile.txt", "/tmp/testfile2.txt"), pullDir);
+            assertEquals(FileUtils.readFileToString(localFile), FileUtils.readFileToString(new File(pullDir, "testfile.txt")));
+            assertEquals(FileUtils.readFileToString(localFile), FileUtils.readFileToString(new File(pullDir, "testfile2.txt")));
+            instance.logOff();
+        } finally
+        {
+            DockerHelper.spinDownDockerBox(id);
+            copy.delete();
+            FileUtils.deleteDirectory(pullDir);
+        }
+    }
+
+    /**
+     * With a single channel allowed, the idle cached SFTP channel must not
+     * hold on to it: commands and dedicated SFTP channels after a pull still
+     * get through.
+     */
+    @org.junit.Test
+    public void testSftpWithOneChannel() throws Exception
+    {
+        System.out.println("sftpWithOneChannel");
+        File localFile = new File("./src/test/resources/testfiles/testfile.txt");
+        File pulled = new File("./src/test/resources/testfiles/onechannel.txt");
+        String id = DockerHelper.spinUpDockerBox("cassandra2.1.0", new File("./src/test/resources/docker/cassandra2.1.0"));
+        try
+        {
+            String ip = DockerHelper.getDockerIp(id);
+            SSHCommandDaoImpl instance = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            instance.setMaxConcurrentChannels(1);
+            instance.setChannelWaitTimeoutMs(10000);//fail rather than hang
+            instance.connect();
+            instance.pushFile(localFile, "/tmp");
+            instance.pullFile("/tmp/testfile.txt", pulled);
+            assertEquals(FileUtils.readFileToString(localFile), instance.sendCommand("cat /tmp/testfile.txt"));
+            pulled.delete();
+            instance.pullFileResumable("/tmp/testfile.txt", pulled);
+            assertEquals(FileUtils.readFileToString(localFile), FileUtils.readFileToString(pulled));
+            instance.pullFile("/tmp/testfile.txt", pulled);
+            instance.logOff();
+        } finally
+        {
+            DockerHelper.spinDownDockerBox(id);
+            pulled.delete();
+        }
+    }
+
+    /**
+     * Test of ParallelSftpDownloader; uses a small chunk size so a modest file
+     * is pulled over several channels at once.
+     */
+    @org.junit.Test
+    public void testPullLargeFile() throws Exception
+    {
+        System.out.println("pullLargeFile");
+        File localFile = new File("./src/test/resources/testfiles/large.bin");
+        String id = DockerHelper.spinUpDockerBox("cassandra2.1.0", new File("./src/test/resources/docker/cassandra2.1.0"));
+        try
+        {
+            String ip = DockerHelper.getDockerIp(id);
+            SSHCommandDaoImpl instance = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            instance.connect();
+            instance.sendCommand("head -c 5000000 /dev/urandom > /tmp/large.bin");
+            new ParallelSftpDownloader(instance, 4, 512 * 1024).download("/tmp/large.bin", localFile);
+            assertEquals(5000000, localFile.length());
+            String remoteMd5 = instance.sendCommand("md5sum /tmp/large.bin").substring(0, 32);
+            byte[] localMd5 = MessageDigest.getInstance("MD5").digest(FileUtils.readFileToByteArray(localFile));
+            assertEquals(remoteMd5, String.format("%032x", new BigInteger(1, localMd5)));
+            instance.logOff();
+        } finally
+        {
+            DockerHelper.spinDownDockerBox(id);
+            localFile.delete();
+        }
+    }
+
+    /**
+     * Test of pushFileResumable and pullFileResumable methods, of class
+     * SSHCommandDaoImpl. A stale partial file with no checkpoint must not be
+     * resumed from.
+     */
+    @org.junit.Test
+    public void testResumableTransfers() throws Exception
+    {
+        System.out.println("resumableTransfers");
+        File localFile = new File("./src/test/resources/testfiles/testfile.txt");
+        File pulled = new File("./src/test/resources/testfiles/resumed.txt");
+        File stalePartial = new File(pulled.getPath() + ".partial");
+        FileUtils.writeStringToFile(stalePartial, "garbage");
+        String id = DockerHelper.spinUpDockerBox("cassandra2.1.0", new File("./src/test/resources/docker/cassandra2.1.0"));
+        try
+        {
+            String ip = DockerHelper.getDockerIp(id);
+            SSHCommandDaoImpl instance = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            instance.connect();
+            instance.pushFileResumable(localFile, "/tmp");
+            assertEquals(FileUtils.readFileToString(localFile), instance.sendCommand("cat /tmp/testfile.txt"));
+            assertEquals("", instance.sendCommand("ls /tmp/testfile.txt.partial 2>/dev/null"));
+            instance.pullFileResumable("/tmp/testfile.txt", pulled);
+            assertEquals(FileUtils.readFileToString(localFile), FileUtils.readFileToString(pulled));
+            assertFalse(stalePartial.exists());
+            instance.logOff();
+        } finally
+        {
+            DockerHelper.spinDownDockerBox(id);
+            pulled.delete();
+            stalePartial.delete();
+        }
+    }
+
+    /**
+     * Test of pullFileResumable, of class SSHCommandDaoImpl, when a pull is
+     * cut off part way: the retry must pick up from the last checkpoint and
+     * only report the bytes it actually moved.
+     */
+    @org.junit.Test
+    public void testResumeInterruptedPull() throws Exception
+    {
+        System.out.println("resumeInterruptedPull");
+        final long size = 12L * 1024 * 1024;
+        File pulled = new File("./src/test/resources/testfiles/interrupted.bin");
+        File partial = new File(pulled.getPath() + ResumableSftpTransfer.PARTIAL_SUFFIX);
+        File checkpoint = new File(partial.getPath() + ResumableSftpTransfer.CHECKPOINT_SUFFIX);
+        String id = DockerHelper.spinUpDockerBox("cassandra2.1.0", new File("./src/test/resources/docker/cassandra2.1.0"));
+        try
+        {
+            String ip = DockerHelper.getDockerIp(id);
+            SSHCommandDaoImpl instance = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            final SSHCommandDaoImpl killer = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            instance.connect();
+            killer.connect();
+            instance.sendCommand("head -c " + size + " /dev/urandom > /tmp/interrupted.bin");
+            final AtomicReference<Boolean> armed = new AtomicReference<>(true);
+            final AtomicReference<TransferProgress> last = new AtomicReference<>();
+            instance.setTransferReportIntervalMs(0);
+            instance.setTransferProgressListener(new TransferProgressListener()
+            {
+                @Override
+                public void onProgress(TransferProgress progress)
+                {
+                    last.set(progress);
+                    if (progress.getBytesTransferred() > ResumableSftpTransfer.CHECKPOINT_INTERVAL_BYTES + 1024 * 1024
+                            && armed.getAndSet(false))
+                    {
+                        try
+                        {
+                            killer.sendCommand("pkill -f '[s]ftp-server'");
+                        } catch (Exception e)
+                        {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            });
+            try
+            {
+                instance.pullFileResumable("/tmp/interrupted.bin", pulled);
+                fail("Pull should have been cut off");
+            } catch (Exception expected)
+            {
+                //expected
+            }
+            assertTrue(partial.isFile());
+            assertTrue(checkpoint.isFile());
+            assertTrue(partial.length() >= ResumableSftpTransfer.CHECKPOINT_INTERVAL_BYTES);
+
+            instance.pullFileResumable("/tmp/interrupted.bin", pulled);
+            assertEquals(size, pulled.length());
+            String remoteMd5 = instance.sendCommand("md5sum /tmp/interrupted.bin").substring(0, 32);
+            byte[] localMd5 = MessageDigest.getInstance("MD5").digest(FileUtils.readFileToByteArray(pulled));
+            assertEquals(remoteMd5, String.format("%032x", new BigInteger(1, localMd5)));
+            assertTrue(last.get().isDone());
+            assertTrue(last.get().getBytesTransferred() <= size - ResumableSftpTransfer.CHECKPOINT_INTERVAL_BYTES);
+            assertFalse(partial.exists());
+            assertFalse(checkpoint.exists());
+            killer.logOff();
+            instance.logOff();
+        } finally
+        {
+            DockerHelper.spinDownDockerBox(id);
+            pulled.delete();
+            partial.delete();
+            checkpoint.delete();
+        }
+    }
+
+    /**
+     * Test of pushDirectory and pullDirectory methods, of class
+     * SSHCommandDaoImpl, with and without compression.
+     */
+    @org.junit.Test
+    public void testPushAndPullDirectory() throws Exception
+    {
+        System.out.println("pushAndPullDirectory");
+        File localDir = new File("./src/test/resources/testfiles");
+        File pullDir = new File("./target/pulleddir");
+        String id = DockerHelper.spinUpDockerBox("cassandra2.1.0", new File("./src/test/resources/docker/cassandra2.1.0"));
+        try
+        {
+            String ip = DockerHelper.getDockerIp(id);
+            SSHCommandDaoImpl instance = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            instance.connect();
+            instance.pushDirectory(localDir, "/tmp/pushed", true);
+            assertEquals(FileUtils.readFileToString(new File(localDir, "testfile.txt")), instance.sendCommand("cat /tmp/pushed/testfiles/testfile.txt"));
+            instance.pullDirectory("/tmp/pushed/testfiles/", pullDir, false);
+            assertEquals(FileUtils.readFileToString(new File(localDir, "testfile.txt")), FileUtils.readFileToString(new File(pullDir, "testfiles/testfile.txt")));
+            FileUtils.deleteDirectory(pullDir);
+            instance.pullDirectory("/tmp/pushed/testfiles", pullDir, true);
+            assertEquals(FileUtils.readFileToString(new File(localDir, "testfile.txt")), FileUtils.readFileToString(new File(pullDir, "testfiles/testfile.txt")));
+            instance.logOff();
+        } finally
+        {
+            DockerHelper.spinDownDockerBox(id);
+            FileUtils.deleteDirectory(pullDir);
+        }
+    }
+
+    /**
+     * Test of syncFile method, of class SSHCommandDaoImpl. The first sync has
+     * nothing to diff against, a repeat sync has nothing to send, and a small
+     * edit should only send a little.
+     */
+    @org.junit.Test
+    public void testSyncFile() throws Exception
+    {
+        System.out.println("syncFile");
+        File localFile = new File("./target/synced.bin");
+        localFile.getParentFile().mkdirs();
+        byte[] data = new byte[500000];
+        new java.util.Random(7).nextBytes(data);
+        FileUtils.writeByteArrayToFile(localFile, data);
+        String id = DockerHelper.spinUpDockerBox("cassandra2.1.0", new File("./src/test/resources/docker/cassandra2.1.0"));
+        try
+        {
+            String ip = DockerHelper.getDockerIp(id);
+            SSHCommandDaoImpl instance = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            instance.connect();
+            DeltaSyncResult result = instance.syncFile(localFile, "/tmp");
+            assertTrue(result.isFullPush());
+            result = instance.syncFile(localFile, "/tmp");
+            assertTrue(result.isUpToDate());
+            instance.sendCommand("chown nobody:nogroup /tmp/synced.bin");
+            data[250000] ^= 1;
+            FileUtils.writeByteArrayToFile(localFile, data);
+            result = instance.syncFile(localFile, "/tmp");
+            assertFalse(result.isFullPush());
+            assertTrue("Sent " + result.getSentBytes() + " bytes", result.getSentBytes() < 20000);
+            byte[] localMd5 = MessageDigest.getInstance("MD5").digest(data);
+            assertEquals(String.format("%032x", new BigInteger(1, localMd5)), instance.sendCommand("md5sum /tmp/synced.bin").substring(0, 32));
+            assertEquals("nobody:nogroup", instance.sendCommand("stat -c %U:%G /tmp/synced.bin").trim());
+            instance.logOff();
+        } finally
+        {
+            DockerHelper.spinDownDockerBox(id);
+            localFile.delete();
+        }
+    }
+
     /**
      * Test of pushFile method, of class SSHCommandDaoImpl.
      */
@@ -222,6 +546,48 @@ public class SSHCommandDaoImplTest
         }
     }
 
+    /**
+     * Test of sendCommand method, of class SSHCommandDaoImpl. Runs more
+     * commands at once than there are channels available on one DAO, so some
+     * of them have to queue.
+     */
+    @org.junit.Test
+    public void testSendCommandConcurrently() throws Exception
+    {
+        System.out.println("sendCommandConcurrently");
+        String id = DockerHelper.spinUpDockerBox("cassandra2.1.0", new File("./src/test/resources/docker/cassandra2.1.0"));
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try
+        {
+            String ip = DockerHelper.getDockerIp(id);
+            final SSHCommandDaoImpl instance = new SSHCommandDaoImpl(ip, "root", 22, "./src/test/resources/docker/insecure_key", null);
+            instance.setMaxConcurrentChannels(3);
+            instance.connect();
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 6; i++)
+            {
+                final String expected = "command " + i;
+                results.add(executor.submit(new Callable<String>()
+                {
+                    @Override
+                    public String call() throws Exception
+                    {
+                        return instance.sendCommand("sleep 1; echo " + expected);
+                    }
+                }));
+            }
+            for (int i = 0; i < 6; i++)
+            {
+                assertEquals("command " + i, results.get(i).get());
+            }
+            instance.logOff();
+        } finally
+        {
+            executor.shutdownNow();
+            DockerHelper.spinDownDockerBox(id);
+        }
+    }
+
     /**
      * Test of sendCommand method, of class SSHCommandDaoImpl.
      */
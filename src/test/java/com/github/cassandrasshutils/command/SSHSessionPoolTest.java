@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.impl.SSHSessionKey;
+import com.github.cassandrasshutils.command.impl.SSHSessionPool;
+import com.github.cassandrasshutils.exceptions.CannotConnectException;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for SSHSessionPool. Sessions are never actually connected; the pool
+ * is told which ones are connected and healthy, so no docker box is needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class SSHSessionPoolTest
+{
+
+    private static final SSHSessionKey KEY = new SSHSessionKey("10.0.0.1", "root", 22, "pass", null, null);
+    private static final SSHSessionKey OTHER_KEY = new SSHSessionKey("10.0.0.1", "cassandra", 22, "pass", null, null);
+
+    private FakeSessionPool pool;
+
+    @Before
+    public void setUp()
+    {
+        pool = new FakeSessionPool();
+    }
+
+    @After
+    public void tearDown()
+    {
+        pool.close();
+    }
+
+    /**
+     * Test of lease and release, of class SSHSessionPool. A released session
+     * is handed to the next lease for the same key, but not for another key.
+     */
+    @Test
+    public void testLeaseReusesReleasedSession() throws Exception
+    {
+        System.out.println("leaseReusesReleasedSession");
+        Session first = pool.lease(KEY);
+        pool.release(KEY, first);
+        assertEquals(1, pool.getIdleSessionCount());
+
+        assertSame(first, pool.lease(KEY));
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+
+        Session other = pool.lease(OTHER_KEY);
+        assertNotSame(first, other);
+        assertEquals(2, pool.getMisses());
+        assertEquals(2, pool.getOpenSessionCount("10.0.0.1"));
+    }
+
+    /**
+     * Test of lease, of class SSHSessionPool. With no cap (the default), any
+     * number of sessions can be leased to a host without waiting.
+     */
+    @Test
+    public void testNoCapByDefault() throws Exception
+    {
+        System.out.println("noCapByDefault");
+        assertEquals(0, pool.getMaxSessionsPerHost());
+        pool.setLeaseTimeoutMs(100);
+        for (int i = 0; i < 10; i++)
+        {
+            pool.lease(KEY);//never released, as a DAO that is never logged off
+        }
+        assertEquals(10, pool.getOpenSessionCount("10.0.0.1"));
+        assertEquals(0, pool.getWaits());
+    }
+
+    /**
+     * Test of lease, of class SSHSessionPool. With a cap, a lease waits for a
+     * released session, and gives up once the lease timeout passes.
+     */
+    @Test
+    public void testCapWaitsForRelease() throws Exception
+    {
+        System.out.println("capWaitsForRelease");
+        pool.setMaxSessionsPerHost(1);
+        pool.setLeaseTimeoutMs(100);
+        final Session first = pool.lease(KEY);
+        try
+        {
+            pool.lease(KEY);
+            fail("Expected a CannotConnectException");
+        } catch (CannotConnectException e)
+        {
+            assertTrue(e.getMessage().contains("10.0.0.1"));
+        }
+        assertEquals(1, pool.getWaits());
+
+        pool.setLeaseTimeoutMs(30000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<Session> waiter = executor.submit(new Callable<Session>()
+            {
+                @Override
+                public Session call() throws Exception
+                {
+                    return pool.lease(KEY);
+                }
+            });
+            long deadline = System.currentTimeMillis() + 10000;
+            while (pool.getWaits() < 2 && System.currentTimeMillis() < deadline)
+            {
+                Thread.yield();
+            }
+            assertEquals("Second lease should be waiting", 2, pool.getWaits());
+            assertFalse(waiter.isDone());
+            pool.release(KEY, first);
+            assertSame(first, waiter.get(10, TimeUnit.SECONDS));
+            assertEquals(1, pool.getOpenSessionCount("10.0.0.1"));
+        } finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of lease, of class SSHSessionPool. At the cap, an idle session for
+     * another key on the same host is disconnected to make room.
+     */
+    @Test
+    public void testCapEvictsIdleSessionForOtherKey() throws Exception
+    {
+        System.out.println("capEvictsIdleSessionForOtherKey");
+        pool.setMaxSessionsPerHost(1);
+        pool.setLeaseTimeoutMs(100);
+        Session first = pool.lease(KEY);
+        pool.release(KEY, first);
+
+        Session other = pool.lease(OTHER_KEY);
+        assertNotSame(first, other);
+        assertTrue(pool.disconnected.contains(first));
+        assertEquals(1, pool.getEvictions());
+        assertEquals(0, pool.getIdleSessionCount());
+        assertEquals(1, pool.getOpenSessionCount("10.0.0.1"));
+    }
+
+    /**
+     * Test of lease, of class SSHSessionPool. An idle session that fails its
+     * health check is disconnected and a new one opened in its place.
+     */
+    @Test
+    public void testUnhealthyIdleSessionIsReplaced() throws Exception
+    {
+        System.out.println("unhealthyIdleSessionIsReplaced");
+        Session first = pool.lease(KEY);
+        pool.release(KEY, first);
+        pool.unhealthy.add(first);
+
+        Session second = pool.lease(KEY);
+        assertNotSame(first, second);
+        assertTrue(pool.disconnected.contains(first));
+        assertEquals(1, pool.getFailedHealthChecks());
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getOpenSessionCount("10.0.0.1"));
+    }
+
+    /**
+     * Test of release, of class SSHSessionPool. A session that is no longer
+     * connected is dropped rather than pooled.
+     */
+    @Test
+    public void testReleaseDropsDisconnectedSession() throws Exception
+    {
+        System.out.println("releaseDropsDisconnectedSession");
+        Session first = pool.lease(KEY);
+        pool.connected.remove(first);
+        pool.release(KEY, first);
+        assertEquals(0, pool.getIdleSessionCount());
+        assertEquals(0, pool.getOpenSessionCount("10.0.0.1"));
+        assertNotSame(first, pool.lease(KEY));
+    }
+
+    /**
+     * Test of evictIdle, of class SSHSessionPool. Sessions idle for longer
+     * than the max idle time, or that have dropped, are disconnected.
+     */
+    @Test
+    public void testEvictIdle() throws Exception
+    {
+        System.out.println("evictIdle");
+        Session dropped = pool.lease(KEY);
+        Session fresh = pool.lease(KEY);
+        pool.release(KEY, dropped);
+        pool.release(KEY, fresh);
+        pool.connected.remove(dropped);
+        assertEquals(1, pool.evictIdle());
+        assertTrue(pool.disconnected.contains(dropped));
+        assertFalse(pool.disconnected.contains(fresh));
+        assertEquals(1, pool.getIdleSessionCount());
+
+        pool.setMaxIdleMs(0);
+        long releasedAt = System.currentTimeMillis();
+        while (System.currentTimeMillis() <= releasedAt)
+        {
+            Thread.yield();
+        }
+        assertEquals(1, pool.evictIdle());
+        assertTrue(pool.disconnected.contains(fresh));
+        assertEquals(0, pool.getIdleSessionCount());
+        assertEquals(0, pool.getOpenSessionCount("10.0.0.1"));
+        assertEquals(2, pool.getEvictions());
+    }
+
+    /**
+     * Pool whose sessions are never connected; it tracks which of them count
+     * as connected and healthy instead.
+     */
+    private static class FakeSessionPool extends SSHSessionPool
+    {
+
+        private final Set<Session> connected = Collections.synchronizedSet(new HashSet<Session>());
+        private final Set<Session> unhealthy = Collections.synchronizedSet(new HashSet<Session>());
+        private final List<Session> disconnected = Collections.synchronizedList(new ArrayList<Session>());
+
+        @Override
+        protected Session openSession(SSHSessionKey key) throws CannotConnectException
+        {
+            try
+            {
+                Session session = new JSch().getSession(key.getUserName(), key.getHost(), key.getPort());
+                connected.add(session);
+                return session;
+            } catch (JSchException e)
+            {
+                throw new CannotConnectException(e);
+            }
+        }
+
+        @Override
+        protected boolean isConnected(Session session)
+        {
+            return connected.contains(session);
+        }
+
+        @Override
+        protected boolean isHealthy(Session session)
+        {
+            return isConnected(session) && !unhealthy.contains(session);
+        }
+
+        @Override
+        protected void disconnectQuietly(Session session)
+        {
+            connected.remove(session);
+            disconnected.add(session);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.TableStats;
+import com.github.cassandrasshutils.command.impl.TablestatsParser;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for TablestatsParser.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TablestatsParserTest
+{
+
+    /**
+     * Sample output of nodetool tablestats from a 3.x node, trimmed to two
+     * tables.
+     */
+    static final String TABLESTATS = "Total number of tables: 2\n"
+            + "----------------\n"
+            + "Keyspace : ks\n"
+            + "\tRead Count: 30\n"
+            + "\tRead Latency: 0.2 ms\n"
+            + "\tWrite Count: 40\n"
+            + "\tWrite Latency: 0.05 ms\n"
+            + "\tPending Flushes: 0\n"
+            + "\t\tTable: events\n"
+            + "\t\tSSTable count: 4\n"
+            + "\t\tSpace used (live): 1048576\n"
+            + "\t\tSpace used (total): 1048576\n"
+            + "\t\tNumber of partitions (estimate): 120\n"
+            + "\t\tLocal read count: 30\n"
+            + "\t\tLocal read latency: 0.200 ms\n"
+            + "\t\tLocal write count: 40\n"
+            + "\t\tLocal write latency: 0.050 ms\n"
+            + "\t\tCompacted partition minimum bytes: 61\n"
+            + "\t\tCompacted partition maximum bytes: 4768\n"
+            + "\t\tCompacted partition mean bytes: 900\n"
+            + "\t\tAverage tombstones per slice (last five minutes): 2.5\n"
+            + "\t\tMaximum tombstones per slice (last five minutes): 12\n"
+            + "\n"
+            + "\t\tTable: empty\n"
+            + "\t\tSSTable count: 0\n"
+            + "\t\tSpace used (live): 0\n"
+            + "\t\tNumber of partitions (estimate): 0\n"
+            + "\t\tLocal read count: 0\n"
+            + "\t\tLocal read latency: NaN ms\n"
+            + "\t\tLocal write count: 0\n"
+            + "\t\tLocal write latency: NaN ms\n"
+            + "\t\tCompacted partition minimum bytes: 0\n"
+            + "\t\tCompacted partition maximum bytes: 0\n"
+            + "\t\tCompacted partition mean bytes: 0\n"
+            + "\t\tAverage tombstones per slice (last five minutes): NaN\n"
+            + "\t\tMaximum tombstones per slice (last five minutes): 0\n"
+            + "\n"
+            + "----------------\n";
+
+    /**
+     * Test of parse method, of class TablestatsParser.
+     */
+    @Test
+    public void testParse()
+    {
+        System.out.println("parse");
+        List<TableStats> tables = TablestatsParser.parse(TABLESTATS);
+        assertEquals(2, tables.size());
+        TableStats events = tables.get(0);
+        assertEquals("ks", events.getKeyspace());
+        assertEquals("events", events.getTable());
+        assertEquals(4, events.getSSTableCount());
+        assertEquals(1048576, events.getLiveDiskSpaceUsed());
+        assertEquals(120, events.getPartitionCount());
+        assertEquals(30, events.getReadCount());
+        assertEquals(0.2, events.getReadLatencyMs(), 0.0001);
+        assertEquals(40, events.getWriteCount());
+        assertEquals(0.05, events.getWriteLatencyMs(), 0.0001);
+        assertEquals(61, events.getMinPartitionBytes());
+        assertEquals(4768, events.getMaxPartitionBytes());
+        assertEquals(900, events.getMeanPartitionBytes());
+        assertEquals(2.5, events.getMeanTombstonesPerSlice(), 0.0001);
+        assertEquals(12, events.getMaxTombstonesPerSlice());
+        assertNull(events.getPartitionSizeHistogram());
+        TableStats empty = tables.get(1);
+        assertTrue(Double.isNaN(empty.getReadLatencyMs()));
+        assertTrue(Double.isNaN(empty.getMeanTombstonesPerSlice()));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.impl.TarStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for TarStreams. Doesn't need a docker box; packs and unpacks in
+ * memory.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TarStreamsTest
+{
+
+    private File workDir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        workDir = Files.createTempDirectory("tarstreams").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    /**
+     * Test of pack and unpack methods, of class TarStreams. A directory with
+     * nested, empty and long named entries should come back the same.
+     */
+    @Test
+    public void testPackAndUnpack() throws Exception
+    {
+        System.out.println("packAndUnpack");
+        File source = new File(workDir, "keyspace1");
+        File table = new File(source, "table1-5a1c395e");
+        table.mkdirs();
+        new File(source, "empty").mkdirs();
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 20; i++)
+        {
+            longName.append("component");
+        }
+        FileUtils.writeStringToFile(new File(table, "keyspace1-table1-ka-1-Data.db"), "some data");
+        FileUtils.writeStringToFile(new File(table, longName + ".db"), "long");
+        FileUtils.writeStringToFile(new File(table, "empty.db"), "");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, TarStreams.pack(source, out));
+        File dest = new File(workDir, "dest");
+        assertEquals(3, TarStreams.unpack(new ByteArrayInputStream(out.toByteArray()), dest));
+
+        File unpacked = new File(dest, "keyspace1/table1-5a1c395e");
+        assertEquals("some data", FileUtils.readFileToString(new File(unpacked, "keyspace1-table1-ka-1-Data.db")));
+        assertEquals("long", FileUtils.readFileToString(new File(unpacked, longName + ".db")));
+        assertEquals(0, new File(unpacked, "empty.db").length());
+        assertTrue(new File(dest, "keyspace1/empty").isDirectory());
+    }
+
+    /**
+     * Test of unpack method, of class TarStreams. An entry that climbs out of
+     * the target directory must be rejected.
+     */
+    @Test
+    public void testUnpackRejectsPathTraversal() throws Exception
+    {
+        System.out.println("unpackRejectsPathTraversal");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TarArchiveOutputStream tar = new TarArchiveOutputStream(out);
+        byte[] data = "gotcha".getBytes("UTF-8");
+        TarArchiveEntry entry = new TarArchiveEntry("../escaped.txt");
+        entry.setSize(data.length);
+        tar.putArchiveEntry(entry);
+        tar.write(data);
+        tar.closeArchiveEntry();
+        tar.close();
+        try
+        {
+            TarStreams.unpack(new ByteArrayInputStream(out.toByteArray()), new File(workDir, "dest"));
+            fail("Expected the entry to be rejected");
+        } catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("escaped.txt"));
+        }
+        assertFalse(new File(workDir, "escaped.txt").exists());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.command;
+
+import com.github.cassandrasshutils.command.domain.ThreadPoolStats;
+import com.github.cassandrasshutils.command.impl.TpstatsParser;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for TpstatsParser.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TpstatsParserTest
+{
+
+    /**
+     * Sample output of nodetool tpstats from a 3.x node.
+     */
+    private static final String TPSTATS = "Pool Name                         Active   Pending      Completed   Blocked  All time blocked\n"
+            + "ReadStage                              0         0          18306         0                 0\n"
+            + "MutationStage                          2        17         451002         0                 0\n"
+            + "MemtableFlushWriter                    1         3            112         0                 0\n"
+            + "MemtablePostFlush                      1         4            130         0                 0\n"
+            + "Native-Transport-Requests              0         0         901223         0                12\n"
+            + "CounterMutationStage                   0         0              0         0                 0\n"
+            + "\n"
+            + "Message type           Dropped\n"
+            + "READ                         0\n"
+            + "MUTATION                     5\n";
+
+    /**
+     * Test of parse method, of class TpstatsParser.
+     */
+    @Test
+    public void testParse()
+    {
+        System.out.println("parse");
+        Map<String, ThreadPoolStats> pools = TpstatsParser.parse(TPSTATS);
+        assertEquals(6, pools.size());
+        ThreadPoolStats mutation = pools.get("MutationStage");
+        assertEquals(2, mutation.getActive());
+        assertEquals(17, mutation.getPending());
+        assertEquals(451002, mutation.getCompleted());
+        assertEquals(12, pools.get("Native-Transport-Requests").getAllTimeBlocked());
+        assertNull(pools.get("READ"));
+    }
+
+    /**
+     * Test of outstanding method, of class TpstatsParser.
+     */
+    @Test
+    public void testOutstanding()
+    {
+        System.out.println("outstanding");
+        Map<String, ThreadPoolStats> pools = TpstatsParser.parse(TPSTATS);
+        assertEquals(9, TpstatsParser.outstanding(pools, "MemtableFlushWriter", "MemtablePostFlush", "FlushWriter"));
+        assertEquals(0, TpstatsParser.outstanding(TpstatsParser.parse("nodetool: Failed to connect\n")));
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.HostResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CassandraClusterFunction. Uses fake DAOs that keep track of which
+ * nodes are running.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class CassandraClusterFunctionTest
+{
+
+    /**
+     * The fake nodes reuse the same IPs, so clear any statuses a previous
+     * test left in the shared cache.
+     */
+    @Before
+    public void setUp()
+    {
+        ServiceStatusCache.getDefault().invalidateAll();
+    }
+
+    /**
+     * Test of startCluster method, of class CassandraClusterFunction. Seeds
+     * should all be started before any other node, and racks one at a time.
+     */
+    @Test
+    public void testStartCluster() throws Exception
+    {
+        System.out.println("startCluster");
+        FakeCluster cluster = new FakeCluster();
+        List<Server> servers = buildServers();
+        CassandraClusterFunction instance = buildInstance(cluster);
+        Map<Server, HostResult<Boolean>> results = instance.startCluster(servers);
+        assertEquals(servers.size(), results.size());
+        for (HostResult<Boolean> result : results.values())
+        {
+            assertTrue(result.isSuccess());
+            assertTrue(result.getResult());
+        }
+        List<String> log = cluster.log;
+        assertEquals(servers.size(), log.size());
+        assertEquals(new HashSet<>(log.subList(0, 2)), set("start 10.0.0.0", "start 10.0.0.3"));
+        assertEquals(new HashSet<>(log.subList(2, 4)), set("start 10.0.0.1", "start 10.0.0.4"));
+        assertEquals(new HashSet<>(log.subList(4, 6)), set("start 10.0.0.2", "start 10.0.0.5"));
+    }
+
+    /**
+     * Test of startCluster method, of class CassandraClusterFunction. If no
+     * seed comes up, nothing else is attempted.
+     */
+    @Test
+    public void testStartClusterNoSeeds() throws Exception
+    {
+        System.out.println("startClusterNoSeeds");
+        FakeCluster cluster = new FakeCluster();
+        cluster.broken.add("10.0.0.0");
+        cluster.broken.add("10.0.0.3");
+        Map<Server, HostResult<Boolean>> results = buildInstance(cluster).startCluster(buildServers());
+        assertEquals(2, results.size());
+        assertFalse(results.get(new Server("10.0.0.0", "test")).getResult());
+        assertEquals(2, cluster.log.size());
+    }
+
+    /**
+     * Test of stopCluster method, of class CassandraClusterFunction. Every
+     * node is drained, then stopped.
+     */
+    @Test
+    public void testStopClusterWithDrain() throws Exception
+    {
+        System.out.println("stopClusterWithDrain");
+        FakeCluster cluster = new FakeCluster();
+        List<Server> servers = buildServers();
+        for (Server server : servers)
+        {
+            cluster.running.add(server.getIp());
+        }
+        Map<Server, HostResult<Boolean>> results = buildInstance(cluster).stopCluster(servers, true);
+        assertEquals(servers.size(), results.size());
+        for (HostResult<Boolean> result : results.values())
+        {
+            assertTrue(result.isSuccess());
+            assertTrue(result.getResult());
+            String ip = result.getServer().getIp();
+            assertTrue(cluster.log.indexOf("drain " + ip) >= 0);
+            assertTrue(cluster.log.indexOf("drain " + ip) < cluster.log.indexOf("stop " + ip));
+        }
+        assertTrue(cluster.running.isEmpty());
+    }
+
+    /**
+     * Test of stopCluster method, of class CassandraClusterFunction. No more
+     * than parallelism nodes are stopped at once.
+     */
+    @Test
+    public void testStopClusterBoundedParallelism() throws Exception
+    {
+        System.out.println("stopClusterBoundedParallelism");
+        FakeCluster cluster = new FakeCluster();
+        List<Server> servers = buildServers();
+        for (Server server : servers)
+        {
+            cluster.running.add(server.getIp());
+        }
+        Map<Server, HostResult<Boolean>> results = buildInstance(cluster, 2).stopCluster(servers, false);
+        assertEquals(servers.size(), results.size());
+        assertTrue(cluster.running.isEmpty());
+        assertTrue(cluster.maxStopping.get() <= 2);
+    }
+
+    private static CassandraClusterFunction buildInstance(FakeCluster cluster)
+    {
+        return buildInstance(cluster, 4);
+    }
+
+    private static CassandraClusterFunction buildInstance(FakeCluster cluster, int parallelism)
+    {
+        CassandraClusterFunction instance = new CassandraClusterFunction(cluster, parallelism);
+        instance.setStartPoller(fastPoller());
+        instance.setStopPoller(fastPoller());
+        instance.setDrainPoller(fastPoller());
+        return instance;
+    }
+
+    private static ReadinessPoller fastPoller()
+    {
+        ReadinessPoller poller = new ReadinessPoller(100);
+        poller.setInitialDelayMs(1);
+        poller.setMaxDelayMs(10);
+        return poller;
+    }
+
+    /**
+     * Six servers over three racks; the first in each of two racks is a
+     * seed.
+     */
+    private static List<Server> buildServers()
+    {
+        List<Server> servers = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+        {
+            Server server = new Server("10.0.0." + i, "test");
+            server.setDatacenter("dc1");
+            server.setRack("rack" + (i % 3));
+            server.setSeed(i == 0 || i == 3);
+            servers.add(server);
+        }
+        return servers;
+    }
+
+    private static Set<String> set(String... values)
+    {
+        Set<String> set = new HashSet<>();
+        Collections.addAll(set, values);
+        return set;
+    }
+
+    /**
+     * Fake DAOs over a shared set of running nodes. Broken nodes never
+     * start.
+     */
+    private static class FakeCluster implements RemoteCommandDaoFactory, FakeRemoteCommandDao.Answer
+    {
+
+        final Set<String> running = Collections.synchronizedSet(new HashSet<String>());
+        final Set<String> broken = new HashSet<>();
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger stopping = new AtomicInteger();
+        final AtomicInteger maxStopping = new AtomicInteger();
+
+        @Override
+        public String answer(String ip, String command) throws Exception
+        {
+            if (command.contains("service cassandra status"))
+            {
+                return running.contains(ip) ? "running" : "stopped";
+            } else if (command.equals(ServiceManagerResolver.DETECT_COMMAND))
+            {
+                return "sysv";
+            } else if (command.equals("service cassandra start"))
+            {
+                log.add("start " + ip);
+                if (!broken.contains(ip))
+                {
+                    running.add(ip);
+                }
+                return "";
+            } else if (command.equals("service cassandra stop"))
+            {
+                log.add("stop " + ip);
+                int now = stopping.incrementAndGet();
+                int max;
+                while (now > (max = maxStopping.get()) && !maxStopping.compareAndSet(max, now))
+                {
+                    //retry
+                }
+                Thread.sleep(20);
+                stopping.decrementAndGet();
+                running.remove(ip);
+                return "";
+            } else if (command.startsWith("d=$(mktemp"))
+            {
+                log.add("drain " + ip);
+                return "/tmp/csu-drain.abc123\n";
+            } else if (command.contains("CSU_DRAIN_RC="))
+            {
+                return "CSU_DRAIN_RC=0\n";
+            } else if (command.startsWith("rm -rf"))
+            {
+                return "";
+            } else if (command.equals("nodetool statusbinary"))
+            {
+                return running.contains(ip) ? "running" : "not running";
+            } else if (command.contains("/proc/net/tcp"))
+            {
+                return running.contains(ip) ? "LISTENING" : "CLOSED";
+            }
+            throw new IllegalArgumentException("Unexpected command: " + command);
+        }
+
+        @Override
+        public RemoteCommandDao createRemoteCommandDao(Server server)
+        {
+            return new FakeRemoteCommandDao(server.getIp(), this);
+        }
+    }
+}
@@ -16,6 +16,8 @@
 package com.github.cassandrasshutils.functions;
 
 import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.domain.ServiceAction;
+import com.github.cassandrasshutils.command.domain.ServiceControlResult;
 import com.github.cassandrasshutils.command.impl.SSHCommandDaoImpl;
 import com.github.cassandradockertesthelper.AbstractCassandraDockerParameterizedTest;
 import com.github.cassandradockertesthelper.DockerHelper;
@@ -110,6 +112,31 @@ public class CassandraCommandFunctionTest extends AbstractCassandraDockerParamet
         assertEquals(expResult, result);
     }
 
+    /**
+     * Test of controlCassandra method, of class CassandraCommandFunction.
+     */
+    @Test
+    public void testControlCassandra() throws Exception, CassandraCrashedException
+    {
+        System.out.println("controlCassandra version: " + super.getCassandraVersion());
+        ServiceControlResult result = CassandraCommandFunction.controlCassandra(commandDao, ServiceAction.START);
+        Assert.assertFalse(result.isWasRunning());
+        Assert.assertTrue(result.isActed());
+        Assert.assertTrue(result.isReached());
+        //run it again; already running, so nothing to do
+        result = CassandraCommandFunction.controlCassandra(commandDao, ServiceAction.START);
+        Assert.assertTrue(result.isWasRunning());
+        Assert.assertFalse(result.isActed());
+        Assert.assertTrue(result.isReached());
+        result = CassandraCommandFunction.controlCassandra(commandDao, ServiceAction.RESTART);
+        Assert.assertTrue(result.isActed());
+        Assert.assertTrue(result.isReached());
+        result = CassandraCommandFunction.controlCassandra(commandDao, ServiceAction.STOP);
+        Assert.assertTrue(result.isActed());
+        Assert.assertTrue(result.isReached());
+        Assert.assertFalse(CassandraCommandFunction.isCassandraRunning(commandDao));
+    }
+
     /**
      * Test of isCassandraRunning method, of class CassandraCommandFunction.
      */
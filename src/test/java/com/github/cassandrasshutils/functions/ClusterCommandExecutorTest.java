@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.domain.HostResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ClusterCommandExecutor. Uses fake DAOs, so no docker box is
+ * needed; we only care about the fan out, not the SSH.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ClusterCommandExecutorTest
+{
+
+    /**
+     * Test of execute method, of class ClusterCommandExecutor. Makes sure we
+     * never work on more servers at once than the parallelism allows, and
+     * that every server gets a result.
+     */
+    @Test
+    public void testExecuteBoundedParallelism() throws Exception
+    {
+        System.out.println("executeBoundedParallelism");
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        ClusterCommandExecutor instance = new ClusterCommandExecutor(FakeRemoteCommandDao.factory(FakeRemoteCommandDao.NO_COMMANDS), 4, 10000);
+        final List<HostResult<String>> heard = new ArrayList<>();
+        Map<Server, HostResult<String>> results = instance.execute(buildServers(20), new ServerTask<String>()
+        {
+            @Override
+            public String execute(RemoteCommandDao command) throws Exception
+            {
+                int now = running.incrementAndGet();
+                synchronized (maxRunning)
+                {
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                }
+                Thread.sleep(50);
+                running.decrementAndGet();
+                return command.getHost();
+            }
+        }, new HostResultListener<String>()
+        {
+            @Override
+            public void onResult(HostResult<String> result)
+            {
+                heard.add(result);
+            }
+        });
+        assertEquals(20, results.size());
+        assertEquals(20, heard.size());
+        assertTrue("Ran " + maxRunning.get() + " at once", maxRunning.get() <= 4);
+        for (HostResult<String> result : results.values())
+        {
+            assertTrue(result.isSuccess());
+            assertEquals(result.getServer().getIp(), result.getResult());
+        }
+    }
+
+    /**
+     * Test of execute method, of class ClusterCommandExecutor. One server
+     * fails, one hangs past the timeout; the rest should be unaffected.
+     */
+    @Test
+    public void testExecuteFailuresAndTimeouts() throws Exception
+    {
+        System.out.println("executeFailuresAndTimeouts");
+        ClusterCommandExecutor instance = new ClusterCommandExecutor(FakeRemoteCommandDao.factory(FakeRemoteCommandDao.NO_COMMANDS), 8, 500);
+        Map<Server, HostResult<String>> results = instance.execute(buildServers(5), new ServerTask<String>()
+        {
+            @Override
+            public String execute(RemoteCommandDao command) throws Exception
+            {
+                if (command.getHost().equals("10.0.0.1"))
+                {
+                    throw new IllegalStateException("boom");
+                }
+                if (command.getHost().equals("10.0.0.2"))
+                {
+                    Thread.sleep(60000);
+                }
+                return "ok";
+            }
+        }, null);
+        assertEquals(5, results.size());
+        HostResult<String> failed = results.get(new Server("10.0.0.1", "test"));
+        assertFalse(failed.isSuccess());
+        assertFalse(failed.isTimedOut());
+        assertTrue(failed.getError() instanceof IllegalStateException);
+        HostResult<String> hung = results.get(new Server("10.0.0.2", "test"));
+        assertFalse(hung.isSuccess());
+        assertTrue(hung.isTimedOut());
+        assertTrue(hung.getError() instanceof TimeoutException);
+        assertTrue(results.get(new Server("10.0.0.0", "test")).isSuccess());
+        assertTrue(results.get(new Server("10.0.0.4", "test")).isSuccess());
+    }
+
+    private static List<Server> buildServers(int count)
+    {
+        List<Server> servers = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            servers.add(new Server("10.0.0." + i, "test"));
+        }
+        return servers;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.ConfigPushResult;
+import com.github.cassandrasshutils.command.domain.ConfigPushResult.Outcome;
+import com.github.cassandrasshutils.command.domain.HostResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ConfigDistributor. Uses fake DAOs that keep each server's copy of
+ * the file's digest in a map, so no docker box is needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ConfigDistributorTest
+{
+
+    private File localFile;
+
+    /**
+     * Digest of the file on each fake server; absent if it has no copy.
+     */
+    private final Map<String, String> remoteDigests = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pushes = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        localFile = File.createTempFile("cassandra", ".yaml");
+        FileUtils.writeStringToFile(localFile, "cluster_name: 'Test Cluster'\nnum_tokens: 256\n");
+    }
+
+    @After
+    public void tearDown()
+    {
+        localFile.delete();
+    }
+
+    /**
+     * Test of distribute method, of class ConfigDistributor. Only servers that
+     * are missing the file or have different content get a push; a second run
+     * pushes nothing, and a hand edit in between shows up as drift.
+     */
+    @Test
+    public void testDistribute() throws Exception
+    {
+        System.out.println("distribute");
+        String digest = ConfigDistributor.sha256(localFile);
+        List<Server> servers = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            servers.add(new Server("10.0.0." + i, "test"));
+        }
+        remoteDigests.put("10.0.0.1", digest);
+        remoteDigests.put("10.0.0.2", "0000000000000000000000000000000000000000000000000000000000000000");
+        remoteDigests.put("10.0.0.3", digest);
+        ConfigDistributor instance = new ConfigDistributor(new ClusterCommandExecutor(new FakeDaoFactory(), 4, 10000));
+
+        Map<Server, HostResult<ConfigPushResult>> results = instance.distribute(servers, localFile, "/etc/cassandra");
+        assertEquals(Outcome.CREATED, results.get(servers.get(0)).getResult().getOutcome());
+        assertEquals(Outcome.UNCHANGED, results.get(servers.get(1)).getResult().getOutcome());
+        assertEquals(Outcome.UPDATED, results.get(servers.get(2)).getResult().getOutcome());
+        assertEquals(Outcome.UNCHANGED, results.get(servers.get(3)).getResult().getOutcome());
+        assertEquals(2, pushes.get());
+        assertEquals(digest, instance.getCachedDigest("10.0.0.2", "/etc/cassandra/" + localFile.getName()));
+
+        remoteDigests.put("10.0.0.3", "1111111111111111111111111111111111111111111111111111111111111111");//someone edited it by hand
+        results = instance.distribute(servers, localFile, "/etc/cassandra/");
+        assertEquals(3, pushes.get());
+        for (HostResult<ConfigPushResult> result : results.values())
+        {
+            assertTrue(result.isSuccess());
+            boolean isEdited = result.getServer().getIp().equals("10.0.0.3");
+            assertEquals(isEdited, result.getResult().isChanged());
+            assertEquals(isEdited, result.getResult().isDrifted());
+        }
+    }
+
+    /**
+     * Fake DAOs that answer the hash command from the map and record pushes
+     * in it.
+     */
+    private class FakeDaoFactory implements RemoteCommandDaoFactory
+    {
+
+        @Override
+        public RemoteCommandDao createRemoteCommandDao(Server server)
+        {
+            return new FakeRemoteCommandDao(server.getIp(), new FakeRemoteCommandDao.Answer()
+            {
+                @Override
+                public String answer(String host, String command)
+                {
+                    assertTrue(command.contains("sha256sum"));
+                    String digest = remoteDigests.get(host);
+                    return digest == null ? "MISSING" : digest;
+                }
+            })
+            {
+                @Override
+                public void pushFile(File localFile, String remotePath) throws IOException
+                {
+                    pushes.incrementAndGet();
+                    remoteDigests.put(getHost(), ConfigDistributor.sha256(localFile));
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.domain.DrainResult;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for DrainFunction. Uses a fake DAO whose drain finishes after a few
+ * polls, with flushes outstanding until then.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class DrainFunctionTest
+{
+
+    /**
+     * The fake nodes reuse the same IPs, so clear any statuses a previous
+     * test left in the shared cache.
+     */
+    @Before
+    public void setUp()
+    {
+        ServiceStatusCache.getDefault().invalidateAll();
+    }
+
+    /**
+     * Test of drainAndStop method, of class DrainFunction. The drain is
+     * followed until it exits, then the service is stopped.
+     */
+    @Test
+    public void testDrainAndStop() throws Exception
+    {
+        System.out.println("drainAndStop");
+        List<String> sent = new ArrayList<>();
+        DrainResult result = buildInstance().drainAndStop(fakeNode(3, "0", sent));
+        assertTrue(result.isDrained());
+        assertTrue(result.isStopped());
+        assertNull(result.getDrainError());
+        assertEquals(4, result.getPeakPendingFlushes());
+        assertTrue(sent.indexOf("rm -rf '/tmp/csu-drain.abc123'") >= 0);
+        assertTrue(sent.indexOf("rm -rf '/tmp/csu-drain.abc123'") < sent.indexOf("service cassandra stop"));
+    }
+
+    /**
+     * Test of drainAndStop method, of class DrainFunction. A failed drain is
+     * reported, and the node is stopped anyway.
+     */
+    @Test
+    public void testDrainFailsStillStops() throws Exception
+    {
+        System.out.println("drainFailsStillStops");
+        List<String> sent = new ArrayList<>();
+        DrainResult result = buildInstance().drainAndStop(fakeNode(1, "1", sent));
+        assertFalse(result.isDrained());
+        assertTrue(result.isStopped());
+        assertTrue(result.getDrainError(), result.getDrainError().contains("JMX is down"));
+    }
+
+    private static DrainFunction buildInstance()
+    {
+        DrainFunction instance = new DrainFunction();
+        instance.setDrainPoller(fastPoller());
+        instance.setStopPoller(fastPoller());
+        return instance;
+    }
+
+    private static ReadinessPoller fastPoller()
+    {
+        ReadinessPoller poller = new ReadinessPoller(1000);
+        poller.setInitialDelayMs(1);
+        poller.setMaxDelayMs(10);
+        return poller;
+    }
+
+    /**
+     * A running node whose drain exits with exitCode after the given number
+     * of polls.
+     */
+    private static RemoteCommandDao fakeNode(final int pollsUntilDone, final String exitCode, final List<String> sent)
+    {
+        return new FakeRemoteCommandDao("10.0.0.1", new FakeRemoteCommandDao.Answer()
+        {
+            int polls = 0;
+            boolean running = true;
+
+            @Override
+            public String answer(String host, String command)
+            {
+                sent.add(command);
+                if (command.contains("service cassandra status"))
+                {
+                    return running ? "running" : "stopped";
+                } else if (command.equals(ServiceManagerResolver.DETECT_COMMAND))
+                {
+                    return "sysv";
+                } else if (command.equals("service cassandra stop"))
+                {
+                    running = false;
+                    return "";
+                } else if (command.startsWith("d=$(mktemp"))
+                {
+                    return "/tmp/csu-drain.abc123\n";
+                } else if (command.contains("CSU_DRAIN_RC="))
+                {
+                    polls++;
+                    boolean done = polls > pollsUntilDone;
+                    return "Pool Name                    Active   Pending      Completed   Blocked  All time blocked\n"
+                            + "MutationStage                     0         0           1234         0                 0\n"
+                            + "MemtableFlushWriter               " + (done ? 0 : 1) + "         " + (done ? 0 : pollsUntilDone) + "             10         0                 0\n"
+                            + "\n"
+                            + "Message type           Dropped\n"
+                            + "READ                         0\n"
+                            + "CSU_DRAIN_RC=" + (done ? exitCode : "") + "\n";
+                } else if (command.startsWith("cat "))
+                {
+                    return "error: JMX is down\n";
+                } else if (command.startsWith("rm -rf"))
+                {
+                    return "";
+                }
+                throw new IllegalArgumentException("Unexpected command: " + command);
+            }
+        });
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ReadinessPoller and CassandraReadinessChecks. Uses a fake DAO, so
+ * no docker box is needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ReadinessPollerTest
+{
+
+    /**
+     * Test of await method, of class ReadinessPoller. Should return as soon
+     * as the check passes, without waiting out the deadline.
+     */
+    @Test
+    public void testAwaitReturnsWhenReady() throws Exception
+    {
+        System.out.println("awaitReturnsWhenReady");
+        final AtomicInteger checks = new AtomicInteger();
+        ReadinessPoller instance = new ReadinessPoller(60000);
+        instance.setInitialDelayMs(10);
+        long start = System.currentTimeMillis();
+        boolean result = instance.await(fakeDao("unused"), new ReadinessCheck()
+        {
+            @Override
+            public boolean isReady(RemoteCommandDao command)
+            {
+                return checks.incrementAndGet() == 4;
+            }
+        });
+        assertTrue(result);
+        assertEquals(4, checks.get());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    /**
+     * Test of await method, of class ReadinessPoller. A check that never
+     * passes gives up at the deadline, having checked a handful of times
+     * rather than spinning.
+     */
+    @Test
+    public void testAwaitGivesUpAtDeadline() throws Exception
+    {
+        System.out.println("awaitGivesUpAtDeadline");
+        final AtomicInteger checks = new AtomicInteger();
+        ReadinessPoller instance = new ReadinessPoller(300);
+        instance.setInitialDelayMs(10);
+        instance.setMaxDelayMs(80);
+        long start = System.currentTimeMillis();
+        boolean result = instance.await(fakeDao("unused"), new ReadinessCheck()
+        {
+            @Override
+            public boolean isReady(RemoteCommandDao command)
+            {
+                checks.incrementAndGet();
+                return false;
+            }
+        });
+        long elapsed = System.currentTimeMillis() - start;
+        assertFalse(result);
+        assertTrue("Took " + elapsed + "ms", elapsed >= 300 && elapsed < 2000);
+        assertTrue("Checked " + checks.get() + " times", checks.get() >= 3 && checks.get() <= 15);
+    }
+
+    /**
+     * Test of await method, of class ReadinessPoller. A crash stops the
+     * polling straight away.
+     */
+    @Test(expected = CassandraCrashedException.class)
+    public void testAwaitStopsOnCrash() throws Exception
+    {
+        System.out.println("awaitStopsOnCrash");
+        new ReadinessPoller(60000).await(fakeDao("unused"), new ReadinessCheck()
+        {
+            @Override
+            public boolean isReady(RemoteCommandDao command) throws CassandraCrashedException
+            {
+                throw new CassandraCrashedException(command.getHost());
+            }
+        });
+    }
+
+    /**
+     * Test of binaryRunning method, of class CassandraReadinessChecks.
+     */
+    @Test
+    public void testBinaryRunning() throws Exception
+    {
+        System.out.println("binaryRunning");
+        assertTrue(CassandraReadinessChecks.binaryRunning().isReady(fakeDao("running")));
+        assertFalse(CassandraReadinessChecks.binaryRunning().isReady(fakeDao("not running")));
+        assertFalse(CassandraReadinessChecks.binaryRunning().isReady(fakeDao("nodetool: Failed to connect to '127.0.0.1:7199'")));
+    }
+
+    /**
+     * Fake DAO that answers every command with the same response.
+     */
+    private static RemoteCommandDao fakeDao(final String response)
+    {
+        return new FakeRemoteCommandDao("10.0.0.1", new FakeRemoteCommandDao.Answer()
+        {
+            @Override
+            public String answer(String host, String command)
+            {
+                return response;
+            }
+        });
+    }
+}
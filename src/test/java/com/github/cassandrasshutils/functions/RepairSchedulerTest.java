@@ -0,0 +1,383 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.LineHandler;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.RepairResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for RepairScheduler. Uses a fake six node cluster that answers
+ * nodetool describering and nodetool repair, so no docker box is needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class RepairSchedulerTest
+{
+
+    /**
+     * Test of repair method, of class RepairScheduler. With one job per node,
+     * repairs that run at the same time never share a replica, and every
+     * subrange is repaired.
+     */
+    @Test
+    public void testRepairNoSharedReplicas() throws Exception
+    {
+        System.out.println("repairNoSharedReplicas");
+        FakeCluster cluster = new FakeCluster();
+        RepairScheduler instance = new RepairScheduler(cluster, 6, 1);
+        instance.setSubrangesPerRange(2);
+        RepairResult result = instance.repair(cluster.servers, "ks", null);
+        assertTrue(result.isComplete());
+        assertEquals(12, result.getTotalSubranges());
+        assertEquals(12, result.getRepaired());
+        assertEquals(12, cluster.repairs.size());
+        assertEquals(1, cluster.maxPerNode);
+        //6 nodes, 3 replicas each: two disjoint replica sets at a time
+        assertEquals(2, cluster.maxRunning);
+        assertTrue(cluster.repairs.get(0).startsWith("nodetool repair -full -st "));
+        assertTrue(cluster.repairs.get(0).endsWith(" ks"));
+    }
+
+    /**
+     * Test of repair method, of class RepairScheduler. A higher per node cap
+     * lets more repairs run at once, but never more than the cap on any node.
+     */
+    @Test
+    public void testRepairPerNodeCap() throws Exception
+    {
+        System.out.println("repairPerNodeCap");
+        FakeCluster cluster = new FakeCluster();
+        RepairScheduler instance = new RepairScheduler(cluster, 16, 2);
+        instance.setSubrangesPerRange(4);
+        RepairResult result = instance.repair(cluster.servers, "ks", null, "events");
+        assertTrue(result.isComplete());
+        assertEquals(24, result.getRepaired());
+        assertEquals(2, cluster.maxPerNode);
+        assertTrue(cluster.maxRunning > 2);
+        assertTrue(cluster.repairs.get(0).endsWith(" ks events"));
+    }
+
+    /**
+     * Test of repair method, of class RepairScheduler. A subrange that keeps
+     * failing is retried on a different coordinator, then given up on; a
+     * second run with the same progress file only repairs that subrange, and
+     * deletes the file once everything is repaired.
+     */
+    @Test
+    public void testRepairResume() throws Exception
+    {
+        System.out.println("repairResume");
+        File progressFile = File.createTempFile("repair", ".properties");
+        progressFile.delete();
+        progressFile.deleteOnExit();
+        FakeCluster cluster = new FakeCluster();
+        cluster.failing.add(BigInteger.valueOf(-2000));
+        RepairScheduler instance = new RepairScheduler(cluster, 6, 1);
+        instance.setMaxAttempts(2);
+        RepairResult result = instance.repair(cluster.servers, "ks", progressFile);
+        assertFalse(result.isComplete());
+        assertEquals(6, result.getTotalSubranges());
+        assertEquals(5, result.getRepaired());
+        assertEquals(1, result.getFailures().size());
+        TokenRange failed = result.getFailures().keySet().iterator().next();
+        assertEquals(BigInteger.valueOf(-2000), failed.getStart());
+        assertTrue(result.getFailures().get(failed).contains("Repair job has failed"));
+        assertEquals(2, cluster.coordinators.get(BigInteger.valueOf(-2000)).size());
+        assertTrue(progressFile.isFile());
+
+        //a different plan must not overwrite the unfinished one
+        String contents = FileUtils.readFileToString(progressFile);
+        instance.setSubrangesPerRange(2);
+        try
+        {
+            instance.repair(cluster.servers, "ks", progressFile);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().contains(progressFile.getAbsolutePath()));
+        }
+        assertEquals(contents, FileUtils.readFileToString(progressFile));
+        instance.setSubrangesPerRange(1);
+
+        cluster.failing.clear();
+        cluster.repairs.clear();
+        result = instance.repair(cluster.servers, "ks", progressFile);
+        assertTrue(result.isComplete());
+        assertEquals(5, result.getPreviouslyRepaired());
+        assertEquals(1, result.getRepaired());
+        assertEquals(1, cluster.repairs.size());
+        assertTrue(cluster.repairs.get(0).contains("-st -2000 -et -1000 "));
+        assertFalse(progressFile.exists());
+
+        //the next run starts over
+        result = instance.repair(cluster.servers, "ks", progressFile);
+        assertTrue(result.isComplete());
+        assertEquals(0, result.getPreviouslyRepaired());
+        assertEquals(6, result.getRepaired());
+        assertFalse(progressFile.exists());
+        new File(progressFile.getPath() + ".tmp").delete();
+        progressFile.delete();
+    }
+
+    /**
+     * Test of repair method, of class RepairScheduler. A progress file that
+     * can't be read stops the repair rather than being overwritten.
+     */
+    @Test
+    public void testRepairUnreadableProgress() throws Exception
+    {
+        System.out.println("repairUnreadableProgress");
+        File progressFile = File.createTempFile("repair", ".properties");
+        progressFile.deleteOnExit();
+        String contents = "tables=\nsubrangesPerRange=1\ndone.-3000_-2000=true\n";
+        FileUtils.writeStringToFile(progressFile, contents);
+        FakeCluster cluster = new FakeCluster();
+        RepairScheduler instance = new RepairScheduler(cluster, 6, 1);
+        try
+        {
+            instance.repair(cluster.servers, "ks", progressFile);
+            fail("Expected an IOException");
+        } catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains(progressFile.getAbsolutePath()));
+        }
+        assertTrue(cluster.repairs.isEmpty());
+        assertEquals(contents, FileUtils.readFileToString(progressFile));
+        progressFile.delete();
+    }
+
+    /**
+     * Test of repair method, of class RepairScheduler. Repairs stop being
+     * started once too many subranges have failed.
+     */
+    @Test
+    public void testRepairHalts() throws Exception
+    {
+        System.out.println("repairHalts");
+        FakeCluster cluster = new FakeCluster();
+        for (int i = 0; i < 6; i++)
+        {
+            cluster.failing.add(BigInteger.valueOf(-3000 + i * 1000));
+        }
+        RepairScheduler instance = new RepairScheduler(cluster, 1, 1);
+        instance.setMaxAttempts(1);
+        instance.setMaxFailures(2);
+        RepairResult result = instance.repair(cluster.servers, "ks", null);
+        assertTrue(result.isHalted());
+        assertEquals(2, result.getFailures().size());
+        assertEquals(2, cluster.repairs.size());
+    }
+
+    /**
+     * Test of split method, of class RepairScheduler, including ranges that
+     * wrap around the end of the ring.
+     */
+    @Test
+    public void testSplit()
+    {
+        System.out.println("split");
+        List<String> replicas = Arrays.asList("10.0.0.1");
+        List<TokenRange> subranges = RepairScheduler.split(range(0, 100, replicas), 4, RepairScheduler.Partitioner.MURMUR3);
+        assertEquals(Arrays.asList(range(0, 25, replicas), range(25, 50, replicas), range(50, 75, replicas), range(75, 100, replicas)), subranges);
+        assertEquals(replicas, subranges.get(3).getEndpoints());
+
+        subranges = RepairScheduler.split(range(Long.MAX_VALUE - 9, Long.MIN_VALUE + 10, replicas), 2, RepairScheduler.Partitioner.MURMUR3);
+        assertEquals(Arrays.asList(range(Long.MAX_VALUE - 9, Long.MIN_VALUE, replicas), range(Long.MIN_VALUE, Long.MIN_VALUE + 10, replicas)), subranges);
+
+        subranges = RepairScheduler.split(range(5, 5, replicas), 4, RepairScheduler.Partitioner.MURMUR3);
+        assertEquals(4, subranges.size());
+        assertEquals(BigInteger.valueOf(5).add(BigInteger.ONE.shiftLeft(62)), subranges.get(0).getEnd());
+        assertEquals(BigInteger.valueOf(5), subranges.get(3).getEnd());
+
+        assertEquals(2, RepairScheduler.split(range(0, 2, replicas), 4, RepairScheduler.Partitioner.MURMUR3).size());
+
+        BigInteger max = BigInteger.ONE.shiftLeft(127);
+        subranges = RepairScheduler.split(new TokenRange(max.subtract(BigInteger.TEN), BigInteger.TEN, replicas), 2, RepairScheduler.Partitioner.RANDOM);
+        assertEquals(BigInteger.ZERO, subranges.get(0).getEnd());
+
+        assertEquals(RepairScheduler.Partitioner.MURMUR3, RepairScheduler.Partitioner.detect(Arrays.asList(range(-5, 5, replicas))));
+        assertEquals(RepairScheduler.Partitioner.RANDOM, RepairScheduler.Partitioner.detect(Arrays.asList(new TokenRange(BigInteger.ONE, max, replicas))));
+    }
+
+    /**
+     * Test of interleave method, of class RepairScheduler.
+     */
+    @Test
+    public void testInterleave()
+    {
+        System.out.println("interleave");
+        List<String> a = Arrays.asList("10.0.0.1");
+        List<String> b = Arrays.asList("10.0.0.2");
+        List<TokenRange> subranges = RepairScheduler.interleave(Arrays.asList(range(0, 100, a), range(100, 200, b)), 2, RepairScheduler.Partitioner.MURMUR3);
+        assertEquals(Arrays.asList(range(0, 50, a), range(100, 150, b), range(50, 100, a), range(150, 200, b)), subranges);
+    }
+
+    private static TokenRange range(long start, long end, List<String> replicas)
+    {
+        return new TokenRange(BigInteger.valueOf(start), BigInteger.valueOf(end), replicas);
+    }
+
+    /**
+     * A fake cluster of six nodes, 10.0.0.1 to 10.0.0.6, with a node at
+     * every thousandth token from -3000 to 2000. Each range is held by the
+     * node that owns it and the next two. Repairs take a little while, so
+     * they overlap, and a repair of a failing range prints an error.
+     */
+    private static class FakeCluster implements RemoteCommandDaoFactory, FakeRemoteCommandDao.Answer
+    {
+
+        private static final Pattern SUBRANGE = Pattern.compile("-st (-?\\d+) -et (-?\\d+)");
+
+        final List<Server> servers = new ArrayList<>();
+        final List<String> repairs = Collections.synchronizedList(new ArrayList<String>());
+        final Set<BigInteger> failing = Collections.synchronizedSet(new HashSet<BigInteger>());
+        final Map<BigInteger, List<String>> coordinators = new HashMap<>();
+        final Map<BigInteger, List<String>> replicasByEnd = new HashMap<>();
+        final Map<String, Integer> running = new HashMap<>();
+        final String ring;
+        int maxPerNode = 0;
+        int maxRunning = 0;
+        int runningTotal = 0;
+
+        FakeCluster()
+        {
+            StringBuilder out = new StringBuilder("TokenRange: \n");
+            for (int i = 0; i < 6; i++)
+            {
+                servers.add(new Server("10.0.0." + (i + 1), "test"));
+            }
+            for (int i = 0; i < 6; i++)
+            {
+                long end = -3000 + i * 1000;
+                long start = i == 0 ? 2000 : end - 1000;
+                List<String> replicas = Arrays.asList("10.0.0." + (i + 1), "10.0.0." + ((i + 1) % 6 + 1), "10.0.0." + ((i + 2) % 6 + 1));
+                replicasByEnd.put(BigInteger.valueOf(end), replicas);
+                out.append("\tTokenRange(start_token:").append(start).append(", end_token:").append(end)
+                        .append(", endpoints:[").append(replicas.get(0)).append(", ").append(replicas.get(1)).append(", ").append(replicas.get(2))
+                        .append("], rpc_endpoints:[], endpoint_details:[])\n");
+            }
+            ring = out.toString();
+        }
+
+        /**
+         * Replicas of the range a subrange ends in.
+         */
+        private List<String> replicas(BigInteger end)
+        {
+            BigInteger rangeEnd = BigInteger.valueOf(-3000);
+            while (rangeEnd.compareTo(end) < 0 && rangeEnd.intValue() < 2000)
+            {
+                rangeEnd = rangeEnd.add(BigInteger.valueOf(1000));
+            }
+            return rangeEnd.compareTo(end) < 0 ? replicasByEnd.get(BigInteger.valueOf(-3000)) : replicasByEnd.get(rangeEnd);
+        }
+
+        private int repair(String host, String command, LineHandler handler) throws IOException, InterruptedException
+        {
+            repairs.add(command);
+            Matcher m = SUBRANGE.matcher(command);
+            assertTrue(command, m.find());
+            BigInteger start = new BigInteger(m.group(1));
+            List<String> replicas = replicas(new BigInteger(m.group(2)));
+            assertTrue(host + " doesn't hold " + command, replicas.contains(host));
+            synchronized (this)
+            {
+                List<String> hosts = coordinators.get(start);
+                if (hosts == null)
+                {
+                    hosts = new ArrayList<>();
+                    coordinators.put(start, hosts);
+                }
+                hosts.add(host);
+                runningTotal++;
+                maxRunning = Math.max(maxRunning, runningTotal);
+                for (String replica : replicas)
+                {
+                    Integer count = running.get(replica);
+                    count = count == null ? 1 : count + 1;
+                    running.put(replica, count);
+                    maxPerNode = Math.max(maxPerNode, count);
+                }
+            }
+            Thread.sleep(30);
+            synchronized (this)
+            {
+                runningTotal--;
+                for (String replica : replicas)
+                {
+                    running.put(replica, running.get(replica) - 1);
+                }
+            }
+            if (failing.contains(start))
+            {
+                handler.handleLine("[2016-06-01 10:00:00,000] Starting repair command #1");
+                handler.handleLine("error: Repair job has failed with the error message: [2016-06-01 10:00:01,000] Some repair failed");
+                return 2;
+            }
+            handler.handleLine("[2016-06-01 10:00:01,000] Repair completed successfully");
+            return 0;
+        }
+
+        @Override
+        public String answer(String host, String command)
+        {
+            assertEquals("nodetool describering ks", command);
+            return ring;
+        }
+
+        @Override
+        public RemoteCommandDao createRemoteCommandDao(Server server)
+        {
+            return new FakeRemoteCommandDao(server.getIp(), this)
+            {
+                @Override
+                public int sendCommand(String commandToSend, LineHandler handler) throws IOException
+                {
+                    try
+                    {
+                        return repair(getHost(), commandToSend, handler);
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException(e.getMessage());
+                    }
+                }
+            };
+        }
+    }
+}
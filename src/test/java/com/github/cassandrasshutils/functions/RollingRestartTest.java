@@ -0,0 +1,367 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.RollingRestartResult;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TokenRange;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for RollingRestart. Uses a fake cluster behind fake DAOs: a restarted
+ * node shows as DN until it starts serving again.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class RollingRestartTest
+{
+
+    /**
+     * The fake nodes reuse the same IPs, so clear any statuses a previous
+     * test left in the shared cache.
+     */
+    @Before
+    public void setUp()
+    {
+        ServiceStatusCache.getDefault().invalidateAll();
+    }
+
+    /**
+     * Test of restart method, of class RollingRestart. Nodes should be
+     * restarted one at a time, in order.
+     */
+    @Test
+    public void testRestartOneAtATime() throws Exception
+    {
+        System.out.println("restartOneAtATime");
+        FakeCluster cluster = new FakeCluster(6, 3);
+        RollingRestartResult result = buildInstance(cluster).restart(cluster.servers);
+        assertFalse(result.isHalted());
+        assertEquals(6, result.getNodeResults().size());
+        assertEquals(new ArrayList<>(cluster.servers), new ArrayList<>(result.getNodeResults().keySet()));
+        assertEquals(cluster.servers, cluster.restartOrder);
+        assertEquals(1, cluster.maxDown);
+    }
+
+    /**
+     * Test of restart method, of class RollingRestart. With batching on,
+     * nodes that share no range go down together, and nodes that do never
+     * do.
+     */
+    @Test
+    public void testRestartBatchesByReplicaSets() throws Exception
+    {
+        System.out.println("restartBatchesByReplicaSets");
+        FakeCluster cluster = new FakeCluster(6, 3);
+        RollingRestart instance = buildInstance(cluster);
+        instance.setMaxBatchSize(2);
+        instance.setKeyspaces(Arrays.asList("ks"));
+        RollingRestartResult result = instance.restart(cluster.servers);
+        assertFalse(result.isHalted());
+        assertEquals(6, result.getNodeResults().size());
+        assertTrue("Had " + cluster.maxDown + " down at once", cluster.maxDown <= 2);
+        assertFalse("Two replicas of a range were down at once", cluster.sharedRangeDown);
+        assertEquals(new HashSet<>(Arrays.asList(new Server("10.0.0.0", "test"), new Server("10.0.0.3", "test"))),
+                new HashSet<>(cluster.restartOrder.subList(0, 2)));
+    }
+
+    /**
+     * Test of restart method, of class RollingRestart. Without keyspaces to
+     * protect, or if the ring can't be read, nothing is batched.
+     */
+    @Test
+    public void testRestartUnbatchedWithoutRing() throws Exception
+    {
+        System.out.println("restartUnbatchedWithoutRing");
+        FakeCluster cluster = new FakeCluster(6, 3);
+        RollingRestart instance = buildInstance(cluster);
+        instance.setMaxBatchSize(3);
+        RollingRestartResult result = instance.restart(cluster.servers);
+        assertFalse(result.isHalted());
+        assertEquals(cluster.servers, cluster.restartOrder);
+        assertEquals(1, cluster.maxDown);
+
+        cluster = new FakeCluster(6, 3);
+        instance = buildInstance(cluster);
+        instance.setMaxBatchSize(3);
+        instance.setKeyspaces(Arrays.asList("missing"));
+        result = instance.restart(cluster.servers);
+        assertFalse(result.isHalted());
+        assertEquals(cluster.servers, cluster.restartOrder);
+        assertEquals(1, cluster.maxDown);
+    }
+
+    /**
+     * Test of planBatches method, of class RollingRestart. Each node joins
+     * the first batch it shares no range with.
+     */
+    @Test
+    public void testPlanBatchesByReplicaSets() throws Exception
+    {
+        System.out.println("planBatchesByReplicaSets");
+        FakeCluster cluster = new FakeCluster(6, 3);
+        List<List<Server>> batches = RollingRestart.planBatches(cluster.servers, cluster.ranges(), 2);
+        assertEquals(3, batches.size());
+        assertEquals(Arrays.asList(new Server("10.0.0.0", "test"), new Server("10.0.0.3", "test")), batches.get(0));
+        assertEquals(Arrays.asList(new Server("10.0.0.1", "test"), new Server("10.0.0.4", "test")), batches.get(1));
+        assertEquals(Arrays.asList(new Server("10.0.0.2", "test"), new Server("10.0.0.5", "test")), batches.get(2));
+        //without a ring nothing is batched
+        assertEquals(6, RollingRestart.planBatches(cluster.servers, new ArrayList<TokenRange>(), 2).size());
+        //nor is a node that holds no range
+        List<Server> withStranger = new ArrayList<>(cluster.servers);
+        withStranger.add(1, new Server("10.0.1.0", "test"));
+        batches = RollingRestart.planBatches(withStranger, cluster.ranges(), 2);
+        assertEquals(4, batches.size());
+        assertEquals(Arrays.asList(new Server("10.0.1.0", "test")), batches.get(1));
+        //every node holds a replica of every range
+        cluster.replicationFactor = 6;
+        assertEquals(6, RollingRestart.planBatches(cluster.servers, cluster.ranges(), 6).size());
+    }
+
+    /**
+     * Test of planBatches method, of class RollingRestart. SimpleStrategy
+     * puts replicas on the next nodes round the ring whatever their rack, so
+     * nodes in the same rack can share a range and must not be batched.
+     */
+    @Test
+    public void testPlanBatchesSimpleStrategy() throws Exception
+    {
+        System.out.println("planBatchesSimpleStrategy");
+        FakeCluster cluster = new FakeCluster(6, 3);
+        cluster.replicationFactor = 2;
+        for (int i = 0; i < 6; i++)
+        {
+            cluster.racks.put("10.0.0." + i, "rack" + (i / 2));//neighbours share a rack
+        }
+        List<List<Server>> batches = RollingRestart.planBatches(cluster.servers, cluster.ranges(), 3);
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList(new Server("10.0.0.0", "test"), new Server("10.0.0.2", "test"), new Server("10.0.0.4", "test")), batches.get(0));
+        assertEquals(Arrays.asList(new Server("10.0.0.1", "test"), new Server("10.0.0.3", "test"), new Server("10.0.0.5", "test")), batches.get(1));
+        for (TokenRange range : cluster.ranges())
+        {
+            for (List<Server> batch : batches)
+            {
+                int replicasInBatch = 0;
+                for (Server server : batch)
+                {
+                    replicasInBatch += range.getEndpoints().contains(server.getIp()) ? 1 : 0;
+                }
+                assertTrue(range + " has " + replicasInBatch + " replicas in " + batch, replicasInBatch <= 1);
+            }
+        }
+    }
+
+    /**
+     * Test of restart method, of class RollingRestart. A node that never
+     * comes back halts the restart; later nodes are left alone.
+     */
+    @Test
+    public void testRestartHaltsOnFailure() throws Exception
+    {
+        System.out.println("restartHaltsOnFailure");
+        FakeCluster cluster = new FakeCluster(5, 1);
+        cluster.broken.add("10.0.0.2");
+        RollingRestartResult result = buildInstance(cluster).restart(cluster.servers);
+        assertTrue(result.isHalted());
+        assertNotNull(result.getHaltReason());
+        assertEquals(3, result.getNodeResults().size());
+        assertFalse(result.getNodeResults().get(new Server("10.0.0.2", "test")).isSuccess());
+        assertEquals(3, cluster.restartOrder.size());
+    }
+
+    /**
+     * Test of restart method, of class RollingRestart. Nothing is restarted
+     * if a node is already down.
+     */
+    @Test
+    public void testRestartRefusesUnhealthyCluster() throws Exception
+    {
+        System.out.println("restartRefusesUnhealthyCluster");
+        FakeCluster cluster = new FakeCluster(3, 1);
+        cluster.states.put("10.0.0.1", "DN");
+        RollingRestartResult result = buildInstance(cluster).restart(cluster.servers);
+        assertTrue(result.isHalted());
+        assertTrue(result.getNodeResults().isEmpty());
+        assertTrue(cluster.restartOrder.isEmpty());
+    }
+
+    private static RollingRestart buildInstance(FakeCluster cluster)
+    {
+        RollingRestart instance = new RollingRestart(cluster);
+        instance.setRestartPoller(fastPoller(200));
+        instance.setUpPoller(fastPoller(2000));
+        return instance;
+    }
+
+    private static ReadinessPoller fastPoller(long deadlineMs)
+    {
+        ReadinessPoller poller = new ReadinessPoller(deadlineMs);
+        poller.setInitialDelayMs(1);
+        poller.setMaxDelayMs(10);
+        return poller;
+    }
+
+    /**
+     * A fake cluster that answers the commands RollingRestart sends. Servers
+     * are spread over racks round robin. Keyspace ks uses SimpleStrategy:
+     * node i owns the range ending at token i * 1000, and it is replicated to
+     * the next nodes round the ring.
+     */
+    private static class FakeCluster implements RemoteCommandDaoFactory, FakeRemoteCommandDao.Answer
+    {
+
+        final List<Server> servers = new ArrayList<>();
+        final Map<String, String> states = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+        final Map<String, String> racks = new LinkedHashMap<>();
+        final Set<String> broken = new HashSet<>();
+        final List<Server> restartOrder = Collections.synchronizedList(new ArrayList<Server>());
+        int replicationFactor = 3;
+        int maxDown = 0;
+        boolean sharedRangeDown = false;
+
+        FakeCluster(int count, int rackCount)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                Server server = new Server("10.0.0." + i, "test");
+                servers.add(server);
+                states.put(server.getIp(), "UN");
+                racks.put(server.getIp(), "rack" + (i % rackCount));
+            }
+        }
+
+        synchronized String status()
+        {
+            StringBuilder sb = new StringBuilder("Datacenter: dc1\n==========\nStatus=Up/Down\n|/ State=Normal/Leaving/Joining/Moving\n"
+                    + "--  Address    Load       Tokens  Owns (effective)  Host ID                               Rack\n");
+            for (Map.Entry<String, String> node : states.entrySet())
+            {
+                sb.append(node.getValue()).append("  ").append(node.getKey()).append("  105.12 KB  256  33.3%  6d194555-f6eb-41d0-c000-000000000001  ")
+                        .append(racks.get(node.getKey())).append("\n");
+            }
+            return sb.toString();
+        }
+
+        synchronized List<TokenRange> ranges()
+        {
+            List<TokenRange> ranges = new ArrayList<>();
+            int count = servers.size();
+            for (int i = 0; i < count; i++)
+            {
+                List<String> replicas = new ArrayList<>();
+                for (int r = 0; r < replicationFactor; r++)
+                {
+                    replicas.add(servers.get((i + r) % count).getIp());
+                }
+                long start = (i == 0 ? count - 1 : i - 1) * 1000L;
+                ranges.add(new TokenRange(BigInteger.valueOf(start), BigInteger.valueOf(i * 1000L), replicas));
+            }
+            return ranges;
+        }
+
+        synchronized String describering()
+        {
+            StringBuilder sb = new StringBuilder("Schema Version:1176b7ac-8993-395d-85fd-41b89ef49fbb\nTokenRange: \n");
+            for (TokenRange range : ranges())
+            {
+                sb.append("\tTokenRange(start_token:").append(range.getStart()).append(", end_token:").append(range.getEnd())
+                        .append(", endpoints:").append(range.getEndpoints()).append(", rpc_endpoints:[], endpoint_details:[])\n");
+            }
+            return sb.toString();
+        }
+
+        synchronized void goDown(String ip)
+        {
+            states.put(ip, "DN");
+            List<String> down = new ArrayList<>();
+            for (Map.Entry<String, String> node : states.entrySet())
+            {
+                if (node.getValue().equals("DN"))
+                {
+                    down.add(node.getKey());
+                }
+            }
+            maxDown = Math.max(maxDown, down.size());
+            for (TokenRange range : ranges())
+            {
+                int replicasDown = 0;
+                for (String node : down)
+                {
+                    replicasDown += range.getEndpoints().contains(node) ? 1 : 0;
+                }
+                sharedRangeDown |= replicasDown > 1;
+            }
+        }
+
+        @Override
+        public synchronized String answer(String ip, String command)
+        {
+            if (command.equals("nodetool status"))
+            {
+                return status();
+            } else if (command.equals("nodetool describering ks"))
+            {
+                return describering();
+            } else if (command.startsWith("nodetool describering"))
+            {
+                return "error: Keyspace does not exist";
+            } else if (command.equals("service cassandra restart"))
+            {
+                restartOrder.add(new Server(ip, "test"));
+                goDown(ip);
+                return "";
+            } else if (command.equals("nodetool statusbinary"))
+            {
+                if (broken.contains(ip))
+                {
+                    return "not running";
+                }
+                states.put(ip, "UN");
+                return "running";
+            } else if (command.contains("service cassandra status"))
+            {
+                return "running";
+            } else if (command.equals(ServiceManagerResolver.DETECT_COMMAND))
+            {
+                return "sysv";
+            } else if (command.contains("/proc/net/tcp"))
+            {
+                return "LISTENING";
+            }
+            throw new IllegalArgumentException("Unexpected command: " + command);
+        }
+
+        @Override
+        public RemoteCommandDao createRemoteCommandDao(Server server)
+        {
+            return new FakeRemoteCommandDao(server.getIp(), this);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.domain.ServiceAction;
+import com.github.cassandrasshutils.command.domain.ServiceControlResult;
+import com.github.cassandrasshutils.command.domain.ServiceState;
+import com.github.cassandrasshutils.command.impl.SysVServiceManager;
+import com.github.cassandrasshutils.command.impl.SystemdServiceManager;
+import com.github.cassandrasshutils.exceptions.CassandraCrashedException;
+import com.github.cassandrasshutils.exceptions.CassandraPermissionsException;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ServiceControlScript.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ServiceControlScriptTest
+{
+
+    /**
+     * Test of build method, of class ServiceControlScript. Only the action
+     * asked for is taken, and only a start waits on the native port.
+     */
+    @Test
+    public void testBuild()
+    {
+        System.out.println("build");
+        String start = ServiceControlScript.build(new SysVServiceManager(), ServiceAction.START, 1500, 9042);
+        assertTrue(start.contains("if [ $was = 0 ]; then service cassandra start"));
+        assertTrue(start.contains(":2352 "));
+        assertTrue(start.contains("+ 2 ))"));
+        assertTrue(start.contains("[ $delay -gt 5 ] && delay=5\n"));
+        assertFalse(start.contains("service cassandra stop"));
+        assertTrue(start.contains("; } < /dev/null\nst=$(status)"));
+        assertTrue(start.contains("statusbinary 2>/dev/null | grep -q '^ *running *$'\n} < /dev/null\n"));
+        String stop = ServiceControlScript.build(new SystemdServiceManager(), ServiceAction.STOP, 60000, 9042);
+        assertTrue(stop.contains("if [ $was = 1 ]; then systemctl stop cassandra"));
+        assertTrue(stop.contains("systemctl is-active --quiet cassandra"));
+        assertFalse(stop.contains("/proc/net/tcp"));
+    }
+
+    /**
+     * Test of parse method, of class ServiceControlScript.
+     */
+    @Test
+    public void testParse() throws Exception
+    {
+        System.out.println("parse");
+        String output = "CSU_RESULT was_running=0\nsome noise from the init script\nCSU_RESULT acted=1\nCSU_RESULT reached=1\n"
+                + "CSU_RESULT status=running";
+        ServiceControlResult result = ServiceControlScript.parse("10.0.0.1", ServiceAction.START, output, 1234);
+        assertEquals("10.0.0.1", result.getHost());
+        assertEquals(ServiceAction.START, result.getAction());
+        assertFalse(result.isWasRunning());
+        assertTrue(result.isActed());
+        assertTrue(result.isReached());
+        assertEquals(ServiceState.RUNNING, result.getFinalState());
+        assertEquals(1234, result.getElapsedMs());
+    }
+
+    /**
+     * Test of parse method, of class ServiceControlScript. Crashes,
+     * permission problems and garbage each get their own exception.
+     */
+    @Test
+    public void testParseFailures() throws Exception
+    {
+        System.out.println("parseFailures");
+        try
+        {
+            ServiceControlScript.parse("10.0.0.1", ServiceAction.START, "CSU_RESULT was_running=0\nCSU_RESULT acted=1\nCSU_RESULT error=crashed\nCSU_RESULT reached=0", 1);
+            fail("Expected a CassandraCrashedException");
+        } catch (CassandraCrashedException e)
+        {
+            //expected
+        }
+        try
+        {
+            ServiceControlScript.parse("10.0.0.1", ServiceAction.STOP, "CSU_RESULT error=denied", 1);
+            fail("Expected a CassandraPermissionsException");
+        } catch (CassandraPermissionsException e)
+        {
+            //expected
+        }
+        try
+        {
+            ServiceControlScript.parse("10.0.0.1", ServiceAction.STOP, "sh: 1: Syntax error", 1);
+            fail("Expected an IOException");
+        } catch (IOException e)
+        {
+            //expected
+        }
+    }
+}
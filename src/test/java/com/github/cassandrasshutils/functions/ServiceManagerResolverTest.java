@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.ServiceManager;
+import com.github.cassandrasshutils.command.impl.CustomServiceManager;
+import com.github.cassandrasshutils.command.impl.SysVServiceManager;
+import com.github.cassandrasshutils.command.impl.SystemdServiceManager;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ServiceManagerResolver. Uses fake DAOs that answer the detection
+ * command.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ServiceManagerResolverTest
+{
+
+    /**
+     * Test of resolve method, of class ServiceManagerResolver. Each host is
+     * detected once.
+     */
+    @Test
+    public void testResolveDetectsOnce() throws Exception
+    {
+        System.out.println("resolveDetectsOnce");
+        ServiceManagerResolver instance = new ServiceManagerResolver();
+        AtomicInteger detections = new AtomicInteger();
+        RemoteCommandDao systemdHost = fakeNode("10.0.0.1", "systemd", detections);
+        RemoteCommandDao sysvHost = fakeNode("10.0.0.2", "sysv", detections);
+        assertTrue(instance.resolve(systemdHost) instanceof SystemdServiceManager);
+        assertTrue(instance.resolve(systemdHost) instanceof SystemdServiceManager);
+        assertTrue(instance.resolve(sysvHost) instanceof SysVServiceManager);
+        assertEquals(2, detections.get());
+        instance.invalidate(systemdHost);
+        instance.resolve(systemdHost);
+        assertEquals(3, detections.get());
+    }
+
+    /**
+     * Test of register and setOverride methods, of class
+     * ServiceManagerResolver. Neither needs a detection.
+     */
+    @Test
+    public void testRegisterAndOverride() throws Exception
+    {
+        System.out.println("registerAndOverride");
+        ServiceManagerResolver instance = new ServiceManagerResolver();
+        AtomicInteger detections = new AtomicInteger();
+        ServiceManager custom = new CustomServiceManager("/opt/cassandra/bin/cassandra", "pkill -f CassandraDaemon", "pgrep -f CassandraDaemon");
+        RemoteCommandDao registered = fakeNode("10.0.0.1", "systemd", detections);
+        instance.register(registered, custom);
+        assertSame(custom, instance.resolve(registered));
+        ServiceManager systemd = new SystemdServiceManager("cassandra@main");
+        instance.setOverride(systemd);
+        assertSame(systemd, instance.resolve(fakeNode("10.0.0.2", "sysv", detections)));
+        assertEquals(0, detections.get());
+        assertEquals("systemctl start cassandra@main", systemd.getStartCommand());
+        assertEquals("{ pkill -f CassandraDaemon; } && { /opt/cassandra/bin/cassandra; }", custom.getRestartCommand());
+    }
+
+    /**
+     * Test of resolve method, of class ServiceManagerResolver. Two machines
+     * behind one IP (on different SSH ports) are detected separately.
+     */
+    @Test
+    public void testKeyedByConnection() throws Exception
+    {
+        System.out.println("keyedByConnection");
+        ServiceManagerResolver instance = new ServiceManagerResolver();
+        AtomicInteger detections = new AtomicInteger();
+        RemoteCommandDao first = fakeNode("10.0.0.1", "systemd", detections);
+        RemoteCommandDao second = fakeNode("10.0.0.1", "sysv", detections, "root@10.0.0.1:2222");
+        assertTrue(instance.resolve(first) instanceof SystemdServiceManager);
+        assertTrue(instance.resolve(second) instanceof SysVServiceManager);
+        assertTrue(instance.resolve(first) instanceof SystemdServiceManager);
+        assertEquals(2, detections.get());
+    }
+
+    /**
+     * A node that answers the detection command with the given answer.
+     */
+    private static RemoteCommandDao fakeNode(String host, String detected, AtomicInteger detections)
+    {
+        return fakeNode(host, detected, detections, host);
+    }
+
+    /**
+     * A node that answers the detection command with the given answer, and
+     * has the given connection key.
+     */
+    private static RemoteCommandDao fakeNode(final String host, final String detected, final AtomicInteger detections, final String connectionKey)
+    {
+        return new FakeRemoteCommandDao(host, new FakeRemoteCommandDao.Answer()
+        {
+            @Override
+            public String answer(String host, String command)
+            {
+                assertEquals(ServiceManagerResolver.DETECT_COMMAND, command);
+                detections.incrementAndGet();
+                return detected;
+            }
+        })
+        {
+            @Override
+            public String getConnectionKey()
+            {
+                return connectionKey;
+            }
+        };
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ServiceStatusCache. Uses a fake DAO that counts the status
+ * checks it is asked to make.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class ServiceStatusCacheTest
+{
+
+    /**
+     * Test of isRunning method, of class ServiceStatusCache. A status is
+     * reused until the TTL passes or it is invalidated.
+     */
+    @Test
+    public void testTtlAndInvalidate() throws Exception
+    {
+        System.out.println("ttlAndInvalidate");
+        AtomicInteger checks = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        RemoteCommandDao command = fakeNode(checks, running, 0, false);
+        ServiceStatusCache instance = new ServiceStatusCache(200);
+        assertTrue(instance.isRunning(command));
+        running.set(false);
+        assertTrue(instance.isRunning(command));
+        assertEquals(1, checks.get());
+        instance.invalidate(command);
+        assertFalse(instance.isRunning(command));
+        assertEquals(2, checks.get());
+        Thread.sleep(250);
+        assertFalse(instance.isRunning(command));
+        assertEquals(3, checks.get());
+        instance.put(command, true);
+        assertTrue(instance.isRunning(command));
+        assertEquals(3, checks.get());
+    }
+
+    /**
+     * Test of isRunning method, of class ServiceStatusCache. Callers asking
+     * while a check is in flight share it, even with no TTL.
+     */
+    @Test
+    public void testConcurrentCallersShareCheck() throws Exception
+    {
+        System.out.println("concurrentCallersShareCheck");
+        final AtomicInteger checks = new AtomicInteger();
+        final RemoteCommandDao command = fakeNode(checks, new AtomicBoolean(true), 300, false);
+        final ServiceStatusCache instance = new ServiceStatusCache(0);
+        final CountDownLatch go = new CountDownLatch(1);
+        final AtomicInteger answers = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            Thread t = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        go.await();
+                        if (instance.isRunning(command))
+                        {
+                            answers.incrementAndGet();
+                        }
+                    } catch (Exception e)
+                    {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            t.start();
+            threads.add(t);
+        }
+        go.countDown();
+        for (Thread t : threads)
+        {
+            t.join();
+        }
+        assertEquals(10, answers.get());
+        assertEquals(1, checks.get());
+    }
+
+    /**
+     * Test of isRunning method, of class ServiceStatusCache. DAOs on the same
+     * IP but reaching different machines (eg: different ports) don't share a
+     * status.
+     */
+    @Test
+    public void testKeyedByConnection() throws Exception
+    {
+        System.out.println("keyedByConnection");
+        AtomicInteger checks = new AtomicInteger();
+        RemoteCommandDao first = fakeNode(checks, new AtomicBoolean(true), 0, false);
+        RemoteCommandDao second = fakeNode(checks, new AtomicBoolean(false), 0, false, "root@10.0.0.1:2222");
+        ServiceStatusCache instance = new ServiceStatusCache(60000);
+        assertTrue(instance.isRunning(first));
+        assertFalse(instance.isRunning(second));
+        assertTrue(instance.isRunning(first));
+        assertEquals(2, checks.get());
+        instance.invalidate(second);
+        assertTrue(instance.isRunning(first));
+        assertEquals(2, checks.get());
+    }
+
+    /**
+     * Test of isRunning method, of class ServiceStatusCache. A failed check
+     * isn't cached.
+     */
+    @Test
+    public void testFailuresNotCached() throws Exception
+    {
+        System.out.println("failuresNotCached");
+        AtomicInteger checks = new AtomicInteger();
+        ServiceStatusCache instance = new ServiceStatusCache(60000);
+        RemoteCommandDao command = fakeNode(checks, new AtomicBoolean(true), 0, true);
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                instance.isRunning(command);
+                fail("Expected an IOException");
+            } catch (IOException e)
+            {
+                //expected
+            }
+        }
+        assertEquals(2, checks.get());
+    }
+
+    /**
+     * A node whose status check takes delayMs and optionally fails.
+     */
+    private static RemoteCommandDao fakeNode(AtomicInteger checks, AtomicBoolean running, long delayMs, boolean fail)
+    {
+        return fakeNode(checks, running, delayMs, fail, "10.0.0.1");
+    }
+
+    /**
+     * A node on 10.0.0.1, reached with the given connection key, whose
+     * status check takes delayMs and optionally fails.
+     */
+    private static RemoteCommandDao fakeNode(final AtomicInteger checks, final AtomicBoolean running, final long delayMs, final boolean fail,
+            final String connectionKey)
+    {
+        return new FakeRemoteCommandDao("10.0.0.1", new FakeRemoteCommandDao.Answer()
+        {
+            @Override
+            public String answer(String host, String command) throws Exception
+            {
+                if (command.equals(ServiceManagerResolver.DETECT_COMMAND))
+                {
+                    return "sysv";
+                }
+                checks.incrementAndGet();
+                Thread.sleep(delayMs);
+                if (fail)
+                {
+                    throw new IOException("Channel closed");
+                }
+                return running.get() ? "running" : "stopped";
+            }
+        })
+        {
+            @Override
+            public String getConnectionKey()
+            {
+                return connectionKey;
+            }
+        };
+    }
+}
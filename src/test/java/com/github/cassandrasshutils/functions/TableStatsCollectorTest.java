@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 Jeffrey DeYoung.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.cassandrasshutils.functions;
+
+import com.github.cassandrasshutils.command.FakeRemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDao;
+import com.github.cassandrasshutils.command.RemoteCommandDaoFactory;
+import com.github.cassandrasshutils.command.domain.ClusterTableStats;
+import com.github.cassandrasshutils.command.domain.Server;
+import com.github.cassandrasshutils.command.domain.TableSummary;
+import com.github.cassandrasshutils.command.impl.JmxCassandraCommandDaoImpl;
+import java.net.ServerSocket;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.management.MBeanServerFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXServiceURL;
+import javax.management.remote.rmi.RMIConnectorServer;
+import javax.management.remote.rmi.RMIJRMPServerImpl;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for TableStatsCollector. Uses fake DAOs that answer nodetool
+ * tablestats, and a local JMX server, so no docker box is needed.
+ *
+ * @author Jeffrey DeYoung
+ */
+public class TableStatsCollectorTest
+{
+
+    /**
+     * Test of collect method, of class TableStatsCollector. Every node is
+     * read, and one that can't be reached is reported rather than failing
+     * the collection.
+     */
+    @Test
+    public void testCollect() throws Exception
+    {
+        System.out.println("collect");
+        FakeCluster cluster = new FakeCluster();
+        List<Server> servers = new ArrayList<>();
+        for (int i = 1; i <= 4; i++)
+        {
+            servers.add(new Server("10.0.0." + i, "test"));
+        }
+        TableStatsCollector instance = new TableStatsCollector(cluster, 4, 10000);
+        ClusterTableStats stats = instance.collect(servers);
+        assertEquals(3, stats.getNodes().size());
+        assertEquals(1, stats.getFailures().size());
+        assertTrue(stats.getFailures().containsKey(new Server("10.0.0.4", "test")));
+        assertEquals(Collections.singleton("ks"), stats.getKeyspaces());
+        TableSummary events = stats.getTable("ks", "events");
+        assertEquals(3, events.getNodes());
+        assertEquals(1 + 2 + 3, events.getSSTableCount());
+        assertEquals(3, events.getMaxSSTableCount());
+        assertEquals(3 * 1000, events.getLiveDiskSpaceUsed());
+        assertEquals((0.1 * 10 + 0.2 * 20 + 0.3 * 30) / 60, events.getReadLatencyMs(), 0.0001);
+        assertEquals(3000, events.getMaxPartitionBytes());
+        assertEquals(30, events.getMaxTombstonesPerSlice());
+        assertTrue(cluster.commands.contains("nodetool tablestats"));
+
+        stats = instance.collect(servers, "ks");
+        assertEquals(3, stats.getNodes().size());
+        assertTrue(cluster.commands.contains("nodetool tablestats ks"));
+    }
+
+    /**
+     * Test of collect method, of class TableStatsCollector, over JMX. While
+     * another node whose JMX stub gives the same address is connected, nodes
+     * are read with nodetool instead; once it logs off they are read over
+     * JMX.
+     */
+    @Test
+    public void testCollectFallsBackToNodetoolOnSharedStubAddress() throws Exception
+    {
+        System.out.println("collectFallsBackToNodetoolOnSharedStubAddress");
+        int jmxPort;
+        try (ServerSocket s = new ServerSocket(0))
+        {
+            jmxPort = s.getLocalPort();
+        }
+        Registry registry = LocateRegistry.createRegistry(jmxPort);
+        RMIJRMPServerImpl server = new RMIJRMPServerImpl(jmxPort, null, null, null);
+        JMXConnectorServer jmxServer = new RMIConnectorServer(new JMXServiceURL("service:jmx:rmi://127.0.0.1:" + jmxPort), null, server,
+                MBeanServerFactory.newMBeanServer());
+        jmxServer.start();
+        registry.rebind("jmxrmi", server.toStub());
+        JmxCassandraCommandDaoImpl holder = new JmxCassandraCommandDaoImpl(new Server("10.0.9.9", "test"),
+                new FakeRemoteCommandDao("10.0.9.9", FakeRemoteCommandDao.NO_COMMANDS), jmxPort);
+        try
+        {
+            FakeCluster cluster = new FakeCluster();
+            List<Server> servers = new ArrayList<>();
+            for (int i = 1; i <= 3; i++)
+            {
+                servers.add(new Server("10.0.0." + i, "test"));
+            }
+            TableStatsCollector instance = new TableStatsCollector(cluster, 1, 10000);
+            instance.setUseJmx(true);
+            instance.setJmxPort(jmxPort);
+            holder.connect();
+            ClusterTableStats stats = instance.collect(servers);
+            assertEquals(3, stats.getNodes().size());
+            assertTrue(stats.getFailures().isEmpty());
+            assertEquals(3, cluster.commands.size());
+
+            holder.logOff();
+            stats = instance.collect(servers);
+            assertEquals(3, stats.getNodes().size());
+            assertEquals("Should have read over JMX", 3, cluster.commands.size());
+        } finally
+        {
+            holder.logOff();
+            jmxServer.stop();
+            UnicastRemoteObject.unexportObject(registry, true);
+        }
+    }
+
+    /**
+     * A fake cluster; node n has n SSTables, n x 10 reads at n / 10 ms, and
+     * node 4 can't be reached.
+     */
+    private static class FakeCluster implements RemoteCommandDaoFactory, FakeRemoteCommandDao.Answer
+    {
+
+        final List<String> commands = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public String answer(String host, String command)
+        {
+            int n = Integer.parseInt(host.substring(host.lastIndexOf('.') + 1));
+            commands.add(command);
+            return "Total number of tables: 1\n"
+                    + "----------------\n"
+                    + "Keyspace : ks\n"
+                    + "\t\tTable: events\n"
+                    + "\t\tSSTable count: " + n + "\n"
+                    + "\t\tSpace used (live): 1000\n"
+                    + "\t\tNumber of partitions (estimate): 10\n"
+                    + "\t\tLocal read count: " + (n * 10) + "\n"
+                    + "\t\tLocal read latency: 0." + n + " ms\n"
+                    + "\t\tCompacted partition minimum bytes: 10\n"
+                    + "\t\tCompacted partition maximum bytes: " + (n * 1000) + "\n"
+                    + "\t\tCompacted partition mean bytes: 100\n"
+                    + "\t\tAverage tombstones per slice (last five minutes): 1.0\n"
+                    + "\t\tMaximum tombstones per slice (last five minutes): " + (n * 10) + "\n"
+                    + "----------------\n";
+        }
+
+        @Override
+        public RemoteCommandDao createRemoteCommandDao(Server server)
+        {
+            return new FakeRemoteCommandDao(server.getIp(), this, Collections.singleton("10.0.0.4"));
+        }
+    }
+}